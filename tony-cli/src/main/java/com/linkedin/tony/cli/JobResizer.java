@@ -0,0 +1,96 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+
+package com.linkedin.tony.cli;
+
+import com.linkedin.tony.Constants;
+import com.linkedin.tony.rpc.impl.ApplicationRpcClient;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+import org.apache.hadoop.yarn.security.client.ClientToAMTokenIdentifier;
+import org.apache.hadoop.yarn.util.ConverterUtils;
+
+
+/**
+ * JobResizer changes the number of instances of an elastic job type of a running Tony job.
+ * A job type is elastic when tony.[job].min-instances is set; the new number of instances
+ * is clamped to [min-instances, max-instances].
+ *
+ * Usage:
+ * java -cp tony-cli-x.x.x-all.jar com.linkedin.tony.cli.JobResizer
+ * --app_id application_1234567890123_0001 --job_name worker --instances 8
+ */
+public class JobResizer {
+  private static final Log LOG = LogFactory.getLog(JobResizer.class);
+
+  private JobResizer() { }
+
+  public static int resize(String[] args) throws ParseException, IOException, YarnException {
+    Options opts = new Options();
+    opts.addOption("app_id", true, "The id of the running application.");
+    opts.addOption("job_name", true, "The elastic job type to resize, e.g. worker.");
+    opts.addOption("instances", true, "The new number of instances of the job type.");
+    CommandLine cliParser = new GnuParser().parse(opts, args);
+    if (!cliParser.hasOption("app_id") || !cliParser.hasOption("job_name") || !cliParser.hasOption("instances")) {
+      new HelpFormatter().printHelp("JobResizer", opts);
+      return -1;
+    }
+    String jobName = cliParser.getOptionValue("job_name");
+    int numInstances = Integer.parseInt(cliParser.getOptionValue("instances"));
+
+    YarnConfiguration yarnConf = new YarnConfiguration();
+    if (System.getenv(Constants.HADOOP_CONF_DIR) != null) {
+      yarnConf.addResource(new Path(System.getenv(Constants.HADOOP_CONF_DIR) + File.separatorChar + Constants.CORE_SITE_CONF));
+      yarnConf.addResource(new Path(System.getenv(Constants.HADOOP_CONF_DIR) + File.separatorChar + Constants.YARN_SITE_CONF));
+    }
+    YarnClient yarnClient = YarnClient.createYarnClient();
+    yarnClient.init(yarnConf);
+    yarnClient.start();
+    ApplicationReport report;
+    try {
+      report = yarnClient.getApplicationReport(ConverterUtils.toApplicationId(cliParser.getOptionValue("app_id")));
+    } finally {
+      yarnClient.stop();
+    }
+    if (report.getRpcPort() <= 0) {
+      LOG.error("Application " + report.getApplicationId() + " has no running AM to resize.");
+      return -1;
+    }
+
+    if (UserGroupInformation.isSecurityEnabled()) {
+      InetSocketAddress serviceAddr = NetUtils.createSocketAddrForHost(report.getHost(), report.getRpcPort());
+      Token<ClientToAMTokenIdentifier> token = ConverterUtils.convertFromYarn(report.getClientToAMToken(), serviceAddr);
+      UserGroupInformation.getCurrentUser().addToken(token);
+    }
+    ApplicationRpcClient amRpcClient = ApplicationRpcClient.getInstance(report.getHost(), report.getRpcPort(), yarnConf);
+    int resized = amRpcClient.resizeJob(jobName, numInstances);
+    if (resized < 0) {
+      LOG.error("Job type " + jobName + " is not elastic, set tony." + jobName + ".min-instances to make it elastic.");
+      return -1;
+    }
+    LOG.info("Job type " + jobName + " now has " + resized + " instances.");
+    return 0;
+  }
+
+  public static void main(String[] args) throws ParseException, IOException, YarnException {
+    System.exit(resize(args));
+  }
+}
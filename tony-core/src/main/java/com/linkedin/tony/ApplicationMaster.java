@@ -5,9 +5,8 @@
 package com.linkedin.tony;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
 import com.linkedin.tony.events.TaskFinished;
+import com.linkedin.tony.events.TaskPreempted;
 import com.linkedin.tony.events.TaskStarted;
 import com.linkedin.tony.models.JobMetadata;
 import com.linkedin.tony.events.ApplicationFinished;
@@ -15,12 +14,17 @@ import com.linkedin.tony.events.ApplicationInited;
 import com.linkedin.tony.events.Event;
 import com.linkedin.tony.events.EventHandler;
 import com.linkedin.tony.events.EventType;
+import com.linkedin.tony.events.Metric;
+import com.linkedin.tony.events.NodeBlacklisted;
+import com.linkedin.tony.rpc.AdmissionController;
 import com.linkedin.tony.rpc.ApplicationRpc;
+import com.linkedin.tony.rpc.ApplicationRpcMetrics;
 import com.linkedin.tony.rpc.ApplicationRpcServer;
-import com.linkedin.tony.rpc.MetricsRpc;
 import com.linkedin.tony.rpc.TaskInfo;
+import com.linkedin.tony.rpc.TaskInfoUpdate;
 import com.linkedin.tony.rpc.impl.MetricsRpcServer;
 import com.linkedin.tony.rpc.impl.TaskStatus;
+import com.linkedin.tony.tensorflow.JobContainerRequest;
 import com.linkedin.tony.tensorflow.TonySession;
 import com.linkedin.tony.tensorflow.TonySession.TonyTask;
 import com.linkedin.tony.util.Utils;
@@ -41,12 +45,19 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.GnuParser;
@@ -55,20 +66,18 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenIdentifier;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.api.protocolrecords.RegisterApplicationMasterResponse;
-import org.apache.hadoop.yarn.api.records.ApplicationAccessType;
 import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
 import org.apache.hadoop.yarn.api.records.Container;
 import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
@@ -78,6 +87,7 @@ import org.apache.hadoop.yarn.api.records.ContainerStatus;
 import org.apache.hadoop.yarn.api.records.FinalApplicationStatus;
 import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.api.records.NodeReport;
+import org.apache.hadoop.yarn.api.records.PreemptionMessage;
 import org.apache.hadoop.yarn.client.api.AMRMClient.ContainerRequest;
 import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
 import org.apache.hadoop.yarn.client.api.async.NMClientAsync;
@@ -86,13 +96,16 @@ import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.exceptions.YarnException;
 import org.apache.hadoop.yarn.security.client.ClientToAMTokenIdentifier;
 import org.apache.hadoop.yarn.security.client.ClientToAMTokenSecretManager;
-import org.apache.hadoop.yarn.util.AbstractLivelinessMonitor;
-import org.apache.hadoop.yarn.util.UTCClock;
 
 
 public class ApplicationMaster {
   private static final Log LOG = LogFactory.getLog(ApplicationMaster.class);
 
+  /** Upper bound on how long the monitor blocks without a state transition, used for progress logging. **/
+  private static final long MONITOR_PROGRESS_LOG_INTERVAL_MS = 100 * 1000;
+  /** How long to wait for running containers to exit and for the client to signal us to stop. **/
+  private static final long STOP_WAIT_TIMEOUT_MS = 15 * 1000;
+
   /**
    * Metadata + History Server related variables
    */
@@ -108,6 +121,13 @@ public class ApplicationMaster {
 
   // Container info
   private int amRetryCount;
+  private boolean reuseContainersOnRetry;
+  // Running containers of the failed session by task id, handed to the same tasks of the retried session
+  private final Map<String, Container> reusableContainers = new ConcurrentHashMap<>();
+  // Tasks of the current session that missed too many heartbeats, whose containers aren't worth keeping
+  private final Set<String> tasksDeemedDead = ConcurrentHashMap.newKeySet();
+  // The session reported in heartbeats, published once the session's tasks can register
+  private volatile int activeSessionId = 0;
   private long workerTimeout;
   private String hdfsClasspath;
   private int amPort;
@@ -127,9 +147,12 @@ public class ApplicationMaster {
 
   private Map<String, Map<String, LocalResource>> jobTypeToContainerResources = new HashMap<>();
 
+  /** Launch templates of the current session, by job type **/
+  private Map<String, ContainerLaunchTemplate> launchTemplates = new ConcurrentHashMap<>();
+
   /** Node manager delegate **/
   private NMClientAsync nmClientAsync;
-  private ExecutorService containersLauncherThreadPool = Executors.newCachedThreadPool();
+  private ContainerLaunchPool containerLaunchPool;
   /** Resource manager **/
   private AMRMClientAsync<ContainerRequest> amRMClient;
 
@@ -143,10 +166,24 @@ public class ApplicationMaster {
 
   /** Cluster spec **/
   private ApplicationRpcServer applicationRpcServer;
+  private RpcForClient rpcForClient;
+  private RegistrationBarrier registrationBarrier;
+  private AdmissionController admissionController;
+  private int numRpcHandlers;
+  private int numRpcReaders;
 
   /** Set to false when testing locally / running in insecure cluster **/
   private boolean secureMode;
 
+  /** Work-preserving AM restart **/
+  private boolean workPreservingRestart;
+  private long amStartTime;
+  // Journal of this attempt's session state, null if work-preserving restart is disabled or there is no job dir
+  private SessionJournal sessionJournal;
+  // Session state journaled by the previous attempt, null once recovered or if there is nothing to recover
+  private SessionJournal.RecoveredSession recoveredSession;
+  private List<Container> previousAttemptContainers = Collections.emptyList();
+
   /** Single node training **/
   private boolean singleNode;
   private boolean preprocessFinished = false;
@@ -168,42 +205,60 @@ public class ApplicationMaster {
   /** Metrics and events **/
   private MetricsRpcServer metricsRpcServer;
   private EventHandler eventHandler;
+  /** AM-level metrics, reported in the APPLICATION_FINISHED event. **/
+  private final Map<String, Double> applicationMetrics = new ConcurrentHashMap<>();
 
   /** HeartBeat monitor **/
-  private final AbstractLivelinessMonitor<TonyTask> hbMonitor;
+  private TaskLivenessMonitor hbMonitor;
   private int hbInterval;
   private int maxConsecutiveHBMiss;
   private volatile boolean taskHasMissesHB = false;
-  private Thread mainThread;
+
+  /**
+   * State transitions (task completion, missed heartbeats, preprocessing completion, client stop signal) are signalled
+   * through this condition so that {@link #monitor()} reacts immediately instead of polling.
+   */
+  private final ReentrantLock stateLock = new ReentrantLock();
+  private final Condition stateChanged = stateLock.newCondition();
+  private volatile long stateVersion = 0;
+  private volatile long lastStateChangeTime = 0;
 
   /** Task Scheduler **/
-  private TaskScheduler scheduler;
+  private volatile TaskScheduler scheduler;
+
+  // Holds allocated containers until the whole gang is allocated, null unless gang allocation is enabled
+  private GangAllocator gangAllocator;
+
+  // Plans data-local container requests and tracks how many allocations were data-local, across AM retries
+  private LocalityPlanner localityPlanner;
+
+  // Finds tasks far behind their peers, null unless straggler detection is enabled
+  private StragglerDetector stragglerDetector;
+  private ScheduledExecutorService stragglerCheckExecutor;
+  private int maxStragglerReplacements;
+  private final AtomicInteger numStragglersReplaced = new AtomicInteger();
+
+  // Warns tasks whose containers the RM is about to preempt and releases the containers after a grace period, null
+  // unless preemption handling is enabled
+  private PreemptionTracker preemptionTracker;
+
+  // Blacklists nodes tasks keep failing on, null unless node blacklisting is enabled
+  private NodeBlacklist nodeBlacklist;
+
+  // Relaunches tasks whose containers failed to start or didn't register in time
+  private ScheduledExecutorService registrationReaper;
+  private ScheduledExecutorService rpcMetricsLogger;
+  private long registrationTimeoutMs;
+  private int maxLaunchReplacements;
+  private final AtomicInteger numLaunchReplacements = new AtomicInteger();
+  // When the launch of each relaunched task that hasn't registered yet failed
+  private final Map<String, Long> launchFailureTimes = new ConcurrentHashMap<>();
+  private final AtomicLong maxLaunchRecoveryMs = new AtomicLong(-1);
+  private volatile boolean taskLaunchFailed = false;
 
   private ApplicationMaster() {
     hdfsConf = new Configuration(false);
     yarnConf = new Configuration(false);
-
-    hbMonitor = new AbstractLivelinessMonitor<TonyTask>("Tony Task liveliness Monitor", new UTCClock()) {
-      @Override
-      protected void expire(TonyTask task) {
-        onTaskDeemedDead(task);
-      }
-
-      @Override
-      protected void serviceStart() throws Exception {
-        // setMonitorInterval(int) changed to setMonitorInterval(long) in Hadoop 2.9,
-        // so to support both cases, we use reflection
-        int monitorInterval = hbInterval * 3;
-        for (Method m : this.getClass().getDeclaredMethods()) {
-          if (m.getName().equals(Constants.SET_MONITOR_INTERVAL_METHOD)) {
-            m.invoke(this, monitorInterval);
-            break;
-          }
-        }
-        setExpireInterval(hbInterval * Math.max(3, maxConsecutiveHBMiss)); // Be at least == monitoring interval
-        super.serviceStart();
-      }
-    };
   }
 
   /**
@@ -223,8 +278,6 @@ public class ApplicationMaster {
       return false;
     }
 
-    hbMonitor.init(tonyConf);
-
     Options opts = Utils.getCommonOptions();
     CommandLine cliParser;
     try {
@@ -249,14 +302,48 @@ public class ApplicationMaster {
     singleNode = Utils.getNumTotalTasks(tonyConf) == 0;
     secureMode = tonyConf.getBoolean(TonyConfigurationKeys.SECURITY_ENABLED,
         TonyConfigurationKeys.DEFAULT_SECURITY_ENABLED);
+    workPreservingRestart = tonyConf.getBoolean(TonyConfigurationKeys.AM_WORK_PRESERVING_RESTART_ENABLED,
+        TonyConfigurationKeys.DEFAULT_AM_WORK_PRESERVING_RESTART_ENABLED);
+    if (workPreservingRestart && secureMode) {
+      // Running tasks hold tokens for the previous attempt's RPC servers, which a new attempt can't verify.
+      LOG.warn("Work-preserving AM restart isn't supported in secure mode, disabling it.");
+      workPreservingRestart = false;
+    }
     enablePreprocessing = tonyConf.getBoolean(TonyConfigurationKeys.ENABLE_PREPROCESSING_JOB,
                                               TonyConfigurationKeys.DEFAULT_ENABLE_PREPROCESSING_JOB);
+    // Retried preprocessing jobs may hand new parameters to the tasks through their container environment.
+    reuseContainersOnRetry = !enablePreprocessing && tonyConf.getBoolean(
+        TonyConfigurationKeys.AM_RETRY_REUSE_CONTAINERS_ENABLED,
+        TonyConfigurationKeys.DEFAULT_AM_RETRY_REUSE_CONTAINERS_ENABLED);
     containerId = ContainerId.fromString(envs.get(ApplicationConstants.Environment.CONTAINER_ID.name()));
     appIdString = containerId.getApplicationAttemptId().getApplicationId().toString();
     hbInterval = tonyConf.getInt(TonyConfigurationKeys.TASK_HEARTBEAT_INTERVAL_MS,
         TonyConfigurationKeys.DEFAULT_TASK_HEARTBEAT_INTERVAL_MS);
     maxConsecutiveHBMiss = tonyConf.getInt(TonyConfigurationKeys.TASK_MAX_MISSED_HEARTBEATS,
         TonyConfigurationKeys.DEFAULT_TASK_MAX_MISSED_HEARTBEATS);
+    hbMonitor = new TaskLivenessMonitor(tonyConf, this::onTaskDeemedDead);
+    numRpcHandlers = Math.max(1, tonyConf.getInt(TonyConfigurationKeys.AM_RPC_HANDLER_COUNT,
+        TonyConfigurationKeys.DEFAULT_AM_RPC_HANDLER_COUNT));
+    numRpcReaders = Math.max(1, tonyConf.getInt(TonyConfigurationKeys.AM_RPC_READER_COUNT,
+        TonyConfigurationKeys.DEFAULT_AM_RPC_READER_COUNT));
+    registrationTimeoutMs = tonyConf.getInt(TonyConfigurationKeys.CONTAINER_ALLOCATION_TIMEOUT,
+        TonyConfigurationKeys.DEFAULT_CONTAINER_ALLOCATION_TIMEOUT);
+    maxLaunchReplacements = tonyConf.getInt(TonyConfigurationKeys.AM_MAX_LAUNCH_REPLACEMENTS,
+        TonyConfigurationKeys.DEFAULT_AM_MAX_LAUNCH_REPLACEMENTS);
+    if (tonyConf.getBoolean(TonyConfigurationKeys.AM_PREEMPTION_HANDLING_ENABLED,
+        TonyConfigurationKeys.DEFAULT_AM_PREEMPTION_HANDLING_ENABLED)) {
+      preemptionTracker = new PreemptionTracker(
+          tonyConf.getLong(TonyConfigurationKeys.AM_PREEMPTION_CHECKPOINT_GRACE_MS,
+              TonyConfigurationKeys.DEFAULT_AM_PREEMPTION_CHECKPOINT_GRACE_MS));
+    }
+    if (tonyConf.getBoolean(TonyConfigurationKeys.AM_NODE_BLACKLIST_ENABLED,
+        TonyConfigurationKeys.DEFAULT_AM_NODE_BLACKLIST_ENABLED)) {
+      nodeBlacklist = new NodeBlacklist(
+          tonyConf.getInt(TonyConfigurationKeys.AM_NODE_BLACKLIST_MAX_FAILURES,
+              TonyConfigurationKeys.DEFAULT_AM_NODE_BLACKLIST_MAX_FAILURES),
+          tonyConf.getInt(TonyConfigurationKeys.AM_NODE_BLACKLIST_MAX_NODES,
+              TonyConfigurationKeys.DEFAULT_AM_NODE_BLACKLIST_MAX_NODES));
+    }
     tonyHistoryFolder = tonyConf.get(TonyConfigurationKeys.TONY_HISTORY_LOCATION,
                                      TonyConfigurationKeys.DEFAULT_TONY_HISTORY_LOCATION);
 
@@ -307,6 +394,7 @@ public class ApplicationMaster {
 
   private boolean run(String[] args) throws IOException {
     long started = System.currentTimeMillis();
+    amStartTime = started;
     if (!init(args)) {
       return false;
     }
@@ -315,7 +403,6 @@ public class ApplicationMaster {
       return false;
     }
 
-    mainThread = Thread.currentThread();
     // Set up the builder with parameters that don't change
     JobMetadata.Builder metadataBuilder = new JobMetadata.Builder()
         .setId(appIdString)
@@ -361,8 +448,9 @@ public class ApplicationMaster {
     printTaskUrls();
     eventHandler.emitEvent(new Event(EventType.APPLICATION_FINISHED,
         new ApplicationFinished(appIdString, session.getNumCompletedTasks(),
-            session.getNumFailedTasks(), new ArrayList<>()),
+            session.getNumFailedTasks(), getApplicationMetrics()),
         System.currentTimeMillis()));
+    writeTaskMetrics();
     metadata = metadataBuilder
         .setCompleted(completed)
         .setStatus(succeeded ? Constants.SUCCEEDED : Constants.FAILED)
@@ -378,6 +466,7 @@ public class ApplicationMaster {
   private boolean prepare() throws IOException {
     LOG.info("Preparing application master..");
 
+    containerLaunchPool = new ContainerLaunchPool(tonyConf);
     NMCallbackHandler containerListener = createNMCallbackHandler();
     nmClientAsync = new NMClientAsyncImpl(containerListener);
     nmClientAsync.init(yarnConf);
@@ -389,18 +478,21 @@ public class ApplicationMaster {
     containerEnv.put(Constants.AM_HOST, amHostname);
     containerEnv.put(Constants.AM_PORT, Integer.toString(amPort));
 
-    // Setup metrics RPC server.
-    ServerSocket rpcSocket = new ServerSocket(0);
-    int metricsRpcPort = rpcSocket.getLocalPort();
-    rpcSocket.close();
-    metricsRpcServer = new MetricsRpcServer();
-    RPC.Builder metricsServerBuilder = new RPC.Builder(yarnConf).setProtocol(MetricsRpc.class)
-        .setInstance(metricsRpcServer).setPort(metricsRpcPort);
-    containerEnv.put(Constants.METRICS_RPC_PORT, Integer.toString(metricsRpcPort));
+    // Tasks report their metrics through the application RPC server.
+    metricsRpcServer = new MetricsRpcServer(TaskMonitor.METRICS_TO_COLLECT,
+        tonyConf.getInt(TonyConfigurationKeys.AM_METRICS_HISTORY_SIZE,
+            TonyConfigurationKeys.DEFAULT_AM_METRICS_HISTORY_SIZE),
+        tonyConf.getInt(TonyConfigurationKeys.TASK_METRICS_UPDATE_INTERVAL_MS,
+            TonyConfigurationKeys.DEFAULT_TASK_METRICS_UPDATE_INTERVAL_MS));
 
     // Init AMRMClient
     AMRMClientAsync.CallbackHandler allocListener = new RMCallbackHandler();
-    amRMClient = AMRMClientAsync.createAMRMClientAsync(1000, allocListener);
+    if (preemptionTracker != null) {
+      amRMClient = AMRMClientAsync.createAMRMClientAsync(new PreemptionAwareAMRMClient(this::onPreemptionMessage),
+          1000, allocListener);
+    } else {
+      amRMClient = AMRMClientAsync.createAMRMClientAsync(1000, allocListener);
+    }
     amRMClient.init(yarnConf);
     amRMClient.start();
 
@@ -411,6 +503,7 @@ public class ApplicationMaster {
       hostNameOrIpFromTokenConf = Utils.getHostNameOrIpFromTokenConf(yarnConf);
       response = amRMClient.registerApplicationMaster(amHostname, amPort, null);
       amHostPort = hostNameOrIpFromTokenConf + ":" + amPort;
+      previousAttemptContainers = response.getContainersFromPreviousAttempts();
     } catch (YarnException | SocketException e) {
       LOG.error("Exception while preparing AM", e);
       return false;
@@ -423,24 +516,21 @@ public class ApplicationMaster {
       byte[] secret = response.getClientToAMTokenMasterKey().array();
       ClientToAMTokenSecretManager secretManager = new ClientToAMTokenSecretManager(appAttemptID, secret);
       applicationRpcServer.setSecretManager(secretManager);
-      metricsServerBuilder.setSecretManager(secretManager);
 
       // create token for application RPC server
       Token<? extends TokenIdentifier> tensorflowClusterToken = new Token<>(identifier, secretManager);
       tensorflowClusterToken.setService(new Text(amHostPort));
       UserGroupInformation.getCurrentUser().addToken(tensorflowClusterToken);
 
-      // create token for metrics RPC server
-      Token<? extends TokenIdentifier> metricsToken = new Token<>(identifier, secretManager);
-      metricsToken.setService(new Text(hostNameOrIpFromTokenConf + ":" + metricsRpcPort));
-      UserGroupInformation.getCurrentUser().addToken(metricsToken);
-
       setupContainerCredentials();
     }
 
     try {
       setupJobDir(historyFs, tonyHistoryFolder, appIdString);
       writeConfigFile(historyFs, jobDir);
+      if (workPreservingRestart) {
+        setupSessionJournal(amHostname + ":" + amPort);
+      }
     } catch (IOException e) {
       LOG.error("Error while setting up history files", e);
       return false;
@@ -448,19 +538,303 @@ public class ApplicationMaster {
 
     LOG.info("Starting application RPC server at: " + amHostPort);
     applicationRpcServer.start();
+    startRpcMetrics();
 
-    LOG.info("Starting metrics RPC server at: " + amHostname + ":" + metricsRpcPort);
-    RPC.Server metricsServer = metricsServerBuilder.build();
-    if (yarnConf.getBoolean(CommonConfigurationKeysPublic.HADOOP_SECURITY_AUTHORIZATION, false)) {
-      metricsServer.refreshServiceAclWithLoadedConfiguration(yarnConf, new TonyPolicyProvider());
+    hbMonitor.start();
+
+    if (registrationTimeoutMs > 0) {
+      startRegistrationReaper();
     }
-    metricsServer.start();
 
-    hbMonitor.start();
+    if (tonyConf.getBoolean(TonyConfigurationKeys.STRAGGLER_DETECTION_ENABLED,
+        TonyConfigurationKeys.DEFAULT_STRAGGLER_DETECTION_ENABLED)) {
+      startStragglerDetection();
+    }
+
+    return true;
+  }
+
+  private void startStragglerDetection() {
+    stragglerDetector = new StragglerDetector(tonyConf);
+    maxStragglerReplacements = tonyConf.getInt(TonyConfigurationKeys.STRAGGLER_MAX_REPLACEMENTS,
+        TonyConfigurationKeys.DEFAULT_STRAGGLER_MAX_REPLACEMENTS);
+    long checkIntervalMs = tonyConf.getLong(TonyConfigurationKeys.STRAGGLER_CHECK_INTERVAL_MS,
+        TonyConfigurationKeys.DEFAULT_STRAGGLER_CHECK_INTERVAL_MS);
+    stragglerCheckExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "straggler-detector");
+      thread.setDaemon(true);
+      return thread;
+    });
+    stragglerCheckExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        checkForStragglers();
+      } catch (RuntimeException e) {
+        LOG.error("Failed to check for stragglers", e);
+      }
+    }, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    LOG.info("Checking for stragglers by " + stragglerDetector.getMetricName() + " every " + checkIntervalMs + " ms.");
+  }
+
+  /**
+   * Publishes the application RPC server's call metrics through metrics2, and so JMX, and logs a summary of them every
+   * {@link TonyConfigurationKeys#AM_RPC_METRICS_LOG_INTERVAL_MS}.
+   */
+  private void startRpcMetrics() {
+    ApplicationRpcMetrics rpcMetrics = applicationRpcServer.getRpcMetrics();
+    try {
+      DefaultMetricsSystem.initialize("TonyAM");
+      DefaultMetricsSystem.instance().register(ApplicationRpcMetrics.RECORD_NAME,
+          "Calls to the AM's application RPC server", rpcMetrics);
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to publish the application RPC metrics", e);
+    }
+
+    long logIntervalMs = tonyConf.getLong(TonyConfigurationKeys.AM_RPC_METRICS_LOG_INTERVAL_MS,
+        TonyConfigurationKeys.DEFAULT_AM_RPC_METRICS_LOG_INTERVAL_MS);
+    if (logIntervalMs <= 0) {
+      return;
+    }
+    rpcMetricsLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "rpc-metrics-logger");
+      thread.setDaemon(true);
+      return thread;
+    });
+    rpcMetricsLogger.scheduleWithFixedDelay(() -> {
+      String summary = rpcMetrics.getSummary();
+      if (!summary.isEmpty()) {
+        LOG.info("Application RPC calls (queue length " + applicationRpcServer.getCallQueueLength() + "): " + summary);
+      }
+    }, logIntervalMs, logIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void startRegistrationReaper() {
+    long checkIntervalMs = tonyConf.getLong(TonyConfigurationKeys.AM_REGISTRATION_CHECK_INTERVAL_MS,
+        TonyConfigurationKeys.DEFAULT_AM_REGISTRATION_CHECK_INTERVAL_MS);
+    registrationReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "registration-reaper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    registrationReaper.scheduleWithFixedDelay(() -> {
+      try {
+        checkRegistrationTimeouts();
+      } catch (RuntimeException e) {
+        LOG.error("Failed to check for task registration timeouts", e);
+      }
+    }, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Relaunches the tasks whose containers haven't registered within the registration timeout, and fails the session
+   * once a task can't be relaunched anymore. Relaunched tasks have the registration timeout from their launch failure
+   * to get a new container and register.
+   */
+  private void checkRegistrationTimeouts() {
+    TonySession currentSession = session;
+    if (currentSession == null || currentSession.isTrainingFinished()
+        || currentSession.getFinalStatus() == FinalApplicationStatus.FAILED) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (TonyTask task : getUnregisteredTasks()) {
+      if (task.isCompleted() || task.isReleased()) {
+        continue;
+      }
+      long since = task.isRetried() ? launchFailureTimes.getOrDefault(task.getId(), task.getStartTime())
+          : task.getStartTime();
+      if (now - since <= registrationTimeoutMs) {
+        continue;
+      }
+      Container container = task.getContainer();
+      if (!task.isRetried() && container != null) {
+        recordNodeFailure(task, container.getId(), NodeBlacklist.Reason.LAUNCH_FAILED);
+        if (replaceFailedLaunch(task, "didn't register within " + registrationTimeoutMs + " ms")) {
+          continue;
+        }
+      }
+      String errorMsg = String.format("Stopping AM for task [%s:%s] registration timeout: "
+              + "allocated container is %s on host %s",
+          task.getJobName(), task.getTaskIndex(),
+          (container != null ? container.getId().toString() : "none"),
+          (container != null ? container.getNodeId().getHost() : "none"));
+      LOG.error(errorMsg);
+      currentSession.setFinalStatus(FinalApplicationStatus.FAILED, errorMsg);
+      taskLaunchFailed = true;
+      signalStateChange();
+      return;
+    }
+  }
 
+  /**
+   * Releases the container of {@code task}, which failed to start or to register, and relaunches the task in a new
+   * container. Like stragglers, relaunched tasks don't use up their retries.
+   * @return whether the task will be relaunched
+   */
+  private synchronized boolean replaceFailedLaunch(TonyTask task, String reason) {
+    Container container = task.getContainer();
+    if (task.isRetried() || task.getHost() != null || container == null) {
+      return false;
+    }
+    if (numLaunchReplacements.get() >= maxLaunchReplacements) {
+      LOG.error("Container " + container.getId() + " of task " + task + " " + reason + ", but "
+          + maxLaunchReplacements + " failed launches have already been replaced.");
+      return false;
+    }
+    // Holding the task's lock keeps the task from registering while it is queued for relaunch
+    synchronized (task) {
+      if (task.getHost() != null || !session.replaceTask(task)) {
+        return false;
+      }
+    }
+    numLaunchReplacements.incrementAndGet();
+    launchFailureTimes.putIfAbsent(task.getId(), System.currentTimeMillis());
+    LOG.warn("Container " + container.getId() + " of task " + task + " " + reason + ", releasing it and relaunching "
+        + "the task in a new container.");
+    scheduler.onTaskRetried(task.getJobName());
+    amRMClient.releaseAssignedContainer(container.getId());
+    onAttemptRequeued(task);
     return true;
   }
 
+  /**
+   * Records how long it took a relaunched task to register since the launch of its previous container failed.
+   */
+  private void onTaskRegistered(TonyTask task) {
+    if (launchFailureTimes.isEmpty()) {
+      return;
+    }
+    Long failureTime = launchFailureTimes.remove(task.getId());
+    if (failureTime != null) {
+      long recoveryMs = System.currentTimeMillis() - failureTime;
+      LOG.info("Task " + task + " registered " + recoveryMs + " ms after its launch failed.");
+      maxLaunchRecoveryMs.accumulateAndGet(recoveryMs, Math::max);
+    }
+  }
+
+  /**
+   * Compares the progress of the running tasks of each job type, and replaces the slowest task of a job type once it
+   * has been a straggler for long enough.
+   */
+  private void checkForStragglers() {
+    TonySession currentSession = session;
+    if (scheduler == null || currentSession.isTrainingFinished()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, TonyTask[]> entry : currentSession.getTonyTasks().entrySet()) {
+      String jobName = entry.getKey();
+      Map<String, TonyTask> running = new HashMap<>();
+      Map<String, Double> samples = new HashMap<>();
+      for (TonyTask task : entry.getValue()) {
+        // Only registered tasks make progress, and only tasks whose container was started can be stopped.
+        if (task == null || task.getHost() == null || task.isCompleted() || task.isRetried()
+            || task.getTaskInfo().getStatus() != TaskStatus.RUNNING) {
+          continue;
+        }
+        // A relaunched task starts over, so each attempt is tracked separately.
+        String attemptId = task.getId() + "#" + task.getSessionId() + "." + task.getAttempt();
+        running.put(attemptId, task);
+        samples.put(attemptId, metricsRpcServer.getMetric(jobName, Integer.parseInt(task.getTaskIndex()),
+            stragglerDetector.getMetricName()));
+      }
+      String straggler = stragglerDetector.update(jobName, samples, now);
+      if (straggler != null) {
+        replaceStraggler(running.get(straggler));
+      }
+    }
+  }
+
+  /**
+   * Relaunches {@code task} in a new container, on another node than its current one.
+   */
+  private void replaceStraggler(TonyTask task) {
+    if (numStragglersReplaced.get() >= maxStragglerReplacements) {
+      LOG.warn("Task " + task + " is a straggler, but " + maxStragglerReplacements + " stragglers have already been "
+          + "replaced.");
+      return;
+    }
+    Container container = task.getContainer();
+    if (!session.replaceTask(task)) {
+      return;
+    }
+    numStragglersReplaced.incrementAndGet();
+    String host = container.getNodeId().getHost();
+    LOG.warn("Task " + task + " is a straggler on " + host + ", replacing it on another node.");
+    // The scheduler keeps the replacement off the host either way, the node blacklist also records it and counts it
+    // towards its maximum.
+    if (nodeBlacklist != null && nodeBlacklist.onStraggler(host)) {
+      blacklistNode(host, NodeBlacklist.Reason.STRAGGLER);
+    }
+    hbMonitor.unregister(task);
+    scheduler.onTaskReplaced(task.getJobName(), host);
+    nmClientAsync.stopContainerAsync(container.getId(), container.getNodeId());
+    onAttemptRequeued(task);
+  }
+
+  /**
+   * Warns the tasks whose containers the RM asks back for the first time, and releases the containers whose tasks have
+   * had the grace period to checkpoint. Called with every allocate response, with null if the RM doesn't ask for any
+   * containers.
+   */
+  private void onPreemptionMessage(PreemptionMessage message) {
+    long now = System.currentTimeMillis();
+    TonySession currentSession = session;
+    for (ContainerId containerId : preemptionTracker.update(PreemptionTracker.getContainers(message), now)) {
+      TonyTask task = currentSession.getTask(containerId);
+      if (task == null) {
+        LOG.info("RM is about to preempt container " + containerId + ", which runs no task.");
+        continue;
+      }
+      LOG.warn("RM is about to preempt container " + containerId + " of task " + task + ", warning the task.");
+      emitTaskPreemptedEvent(task, containerId, now);
+    }
+    for (ContainerId containerId : preemptionTracker.pollDue(now)) {
+      TonyTask task = currentSession.getTask(containerId);
+      if (task != null && currentSession.replaceTask(task)) {
+        LOG.warn("Releasing container " + containerId + " of task " + task + " ahead of its preemption, relaunching "
+            + "the task in a new container.");
+        hbMonitor.unregister(task);
+        scheduler.onTaskRetried(task.getJobName());
+        amRMClient.releaseAssignedContainer(containerId);
+        onAttemptRequeued(task);
+      } else {
+        LOG.info("Releasing container " + containerId + " ahead of its preemption.");
+        amRMClient.releaseAssignedContainer(containerId);
+      }
+    }
+  }
+
+  /**
+   * Counts a failure of {@code task} against the node of its container {@code containerId}, and blacklists the node
+   * once it had too many failures.
+   */
+  private void recordNodeFailure(TonyTask task, ContainerId containerId, NodeBlacklist.Reason reason) {
+    Container container = task.getContainer();
+    if (nodeBlacklist == null || container == null || !container.getId().equals(containerId)) {
+      return;
+    }
+    String host = container.getNodeId().getHost();
+    if (nodeBlacklist.recordFailure(host)) {
+      LOG.warn("Node " + host + " had " + nodeBlacklist.getNumFailures(host) + " task failures, the last one of task "
+          + task + ", blacklisting it.");
+      blacklistNode(host, reason);
+    }
+  }
+
+  private void blacklistNode(String host, NodeBlacklist.Reason reason) {
+    amRMClient.updateBlacklist(Collections.singletonList(host), Collections.emptyList());
+    eventHandler.emitEvent(new Event(EventType.NODE_BLACKLISTED,
+        new NodeBlacklisted(host, reason.name(), nodeBlacklist.getNumFailures(host), session.sessionId),
+        System.currentTimeMillis()));
+  }
+
+  private void emitTaskPreemptedEvent(TonyTask task, ContainerId containerId, long now) {
+    eventHandler.emitEvent(new Event(EventType.TASK_PREEMPTED,
+        new TaskPreempted(task.getJobName(), Integer.parseInt(task.getTaskIndex()), containerId.toString(),
+            task.getSessionId(), task.getAttempt()),
+        now));
+  }
+
   /**
    * Create job directory under intermediate folder.
    * @param fs FileSystem object.
@@ -485,6 +859,23 @@ public class ApplicationMaster {
     Utils.createDirIfNotExists(fs, jobDir, Constants.PERM770);
   }
 
+  /**
+   * Writes the metrics of all tasks over time into the job directory, if any were kept.
+   */
+  private void writeTaskMetrics() {
+    if (jobDir == null || tonyConf.getInt(TonyConfigurationKeys.AM_METRICS_HISTORY_SIZE,
+        TonyConfigurationKeys.DEFAULT_AM_METRICS_HISTORY_SIZE) <= 0) {
+      return;
+    }
+    Path metricsFile = new Path(jobDir, Constants.TASK_METRICS_FILE_NAME);
+    try {
+      metricsRpcServer.writeTimeSeries(historyFs, metricsFile);
+      LOG.info("Wrote task metrics history to " + metricsFile);
+    } catch (IOException e) {
+      LOG.warn("Failed to write task metrics history to " + metricsFile, e);
+    }
+  }
+
   /**
    * Generate config file in {@code jobDir} folder.
    * @param fs FileSystem object.
@@ -503,6 +894,34 @@ public class ApplicationMaster {
     }
   }
 
+  /**
+   * Reads the session journal of the previous AM attempt, if any, starts this attempt's journal and publishes this
+   * attempt's address so that the running tasks of the previous attempt can reconnect.
+   * @param amAddress the AM's host and application RPC port, separated by a colon
+   */
+  private void setupSessionJournal(String amAddress) throws IOException {
+    if (jobDir == null) {
+      LOG.warn("No job directory to journal the session to, AM restarts won't preserve running tasks.");
+      return;
+    }
+    int attemptId = containerId.getApplicationAttemptId().getAttemptId();
+    if (attemptId > 1) {
+      recoveredSession = SessionJournal.readLatest(historyFs, jobDir, attemptId);
+      LOG.info("Attempt " + attemptId + " found " + previousAttemptContainers.size() + " running containers and "
+          + (recoveredSession == null ? "no" : recoveredSession.getTasks().size()) + " journaled tasks from the "
+          + "previous attempts.");
+    }
+    sessionJournal = new SessionJournal(historyFs, SessionJournal.getJournalPath(jobDir, attemptId));
+
+    Path addressFile = new Path(jobDir, Constants.AM_ADDRESS_FILE_NAME);
+    Path tmpFile = new Path(jobDir, Constants.AM_ADDRESS_FILE_NAME + ".tmp");
+    try (FSDataOutputStream out = historyFs.create(tmpFile, true)) {
+      out.write(amAddress.getBytes(StandardCharsets.UTF_8));
+    }
+    historyFs.delete(addressFile, false);
+    historyFs.rename(tmpFile, addressFile);
+  }
+
   /**
    * This method start the training job. It also does the training preprocessing in this function as well
    * preprocessing job is used to abstract out common computation in each worker to a single place, however,
@@ -535,22 +954,194 @@ public class ApplicationMaster {
       return;
     }
 
+    // The session id survives rebuilding the session, so that tasks can tell a retried session from the failed one.
+    int sessionId = session.sessionId;
     buildTonySession();
+    session.sessionId = sessionId;
+    launchTemplates = new ConcurrentHashMap<>();
+    containerEnv.put(Constants.ATTEMPT_NUMBER, String.valueOf(0));
     session.setResources(yarnConf, hdfsConf, localResources, containerEnv, hdfsClasspath);
-    scheduler = new TaskScheduler(session, amRMClient, localResources, resourceFs, tonyConf, jobTypeToContainerResources);
-    scheduler.scheduleTasks();
+    // The allocator outlives AM retries, so that its wait time covers all sessions.
+    if (gangAllocator == null && tonyConf.getBoolean(TonyConfigurationKeys.GANG_ALLOCATION_ENABLED,
+        TonyConfigurationKeys.DEFAULT_GANG_ALLOCATION_ENABLED)) {
+      gangAllocator = new GangAllocator(amRMClient,
+          container -> containerLaunchPool.submit(container, new ContainerLauncher(container)),
+          container -> scheduler.onContainerReleased(container), tonyConf);
+    }
+    if (localityPlanner == null) {
+      localityPlanner = new LocalityPlanner(hdfsConf, tonyConf);
+    }
+    // Read here rather than while scheduling, which also happens on RPC handler threads.
+    localityPlanner.loadBlockLocations(session.getContainersRequests().stream().map(JobContainerRequest::getJobName)
+        .collect(Collectors.toList()));
+    scheduler = new TaskScheduler(session, amRMClient, localResources, resourceFs, tonyConf, jobTypeToContainerResources,
+        gangAllocator, localityPlanner);
+    if (recoveredSession != null) {
+      recoverSession();
+      scheduler.scheduleTasks();
+      // Replay registrations and completions to catch the scheduler's dependency graph up with the previous attempt.
+      for (TonyTask[] tasks : session.getTonyTasks().values()) {
+        for (TonyTask task : tasks) {
+          if (task != null && task.getHost() != null) {
+            scheduler.registerDependencyRegistered(task.getJobName());
+          }
+          if (task != null && task.isCompleted()) {
+            scheduler.registerDependencyCompleted(task.getJobName(),
+                task.getTaskInfo().getStatus() == TaskStatus.SUCCEEDED);
+          }
+        }
+      }
+      applicationMetrics.put(Constants.AM_RECOVERY_TIME_MS, (double) (System.currentTimeMillis() - amStartTime));
+      signalStateChange();
+    } else {
+      if (sessionJournal != null) {
+        sessionJournal.sessionStarted(session.sessionId);
+      }
+      adoptReusableContainers();
+      scheduler.scheduleTasks();
+    }
+    activeSessionId = session.sessionId;
+  }
+
+  /**
+   * Restores the session journaled by the previous AM attempt. Tasks whose containers are still running are adopted,
+   * completed tasks keep their exit status, and tasks whose containers exited while no AM was running get new
+   * containers once the tasks are scheduled. Containers of the previous attempt that no task is recovered into are
+   * released.
+   */
+  private void recoverSession() {
+    Map<String, Container> runningContainers = new HashMap<>();
+    for (Container container : previousAttemptContainers) {
+      runningContainers.put(container.getId().toString(), container);
+    }
+    session.sessionId = recoveredSession.getSessionId();
+    List<SessionJournal.RecoveredTask> recoveredTasks = new ArrayList<>();
+    int numCompletedTasks = 0;
+    for (SessionJournal.RecoveredTask recovered : recoveredSession.getTasks()) {
+      Container container = runningContainers.remove(recovered.getContainerId());
+      if (container == null && recovered.getExitStatus() == null) {
+        LOG.info("Container " + recovered.getContainerId() + " of task " + recovered.getId() + " exited while no AM"
+            + " was running, the task will be relaunched.");
+        continue;
+      }
+      TonyTask task = session.recoverTask(recovered.getJobName(), recovered.getIndex(), recovered.getAttempt(),
+          container, Utils.constructContainerUrl(recovered.getNodeHttpAddress(),
+              ContainerId.fromString(recovered.getContainerId())));
+      if (task == null) {
+        LOG.warn("Task " + recovered.getId() + " isn't part of the session anymore, not recovering it.");
+        if (container != null) {
+          amRMClient.releaseAssignedContainer(container.getId());
+        }
+        continue;
+      }
+      recoveredTasks.add(recovered);
+      if (container != null) {
+        sessionContainersMap.computeIfAbsent(session.sessionId, key ->
+            Collections.synchronizedList(new ArrayList<>())
+        ).add(container);
+      }
+      if (recovered.getHostPort() != null) {
+        task.setHostPort(recovered.getHostPort());
+        rpcForClient.onTaskRecovered(task);
+      }
+      if (recovered.getExitStatus() != null) {
+        session.onTaskCompleted(task.getJobName(), task.getTaskIndex(), recovered.getExitStatus());
+        numCompletedTasks++;
+      }
+    }
+    for (Container container : runningContainers.values()) {
+      LOG.info("Releasing container " + container.getId() + " of the previous attempt, which has no task.");
+      amRMClient.releaseAssignedContainer(container.getId());
+    }
+    sessionJournal.writeSnapshot(session.sessionId, recoveredTasks);
+    applicationMetrics.put(Constants.AM_RECOVERED_TASKS, (double) recoveredTasks.size());
+    LOG.info("Recovered " + recoveredTasks.size() + " tasks of session " + session.sessionId + ", "
+        + numCompletedTasks + " of which had completed.");
+    recoveredSession = null;
+  }
+
+  /**
+   * Hands the containers kept from the failed session to the same tasks of the retried session, so that only the
+   * other tasks get new containers. The executors in the kept containers restart their tasks once their heartbeats
+   * report the new session, and then register like the tasks of new containers.
+   */
+  private void adoptReusableContainers() {
+    int numReused = 0;
+    for (Map.Entry<String, Container> entry : reusableContainers.entrySet()) {
+      String[] jobNameAndIndex = entry.getKey().split(":");
+      Container container = entry.getValue();
+      TonyTask task = session.recoverTask(jobNameAndIndex[0], Integer.parseInt(jobNameAndIndex[1]), 0, container,
+          Utils.constructContainerUrl(container));
+      if (task == null) {
+        LOG.info("Task " + entry.getKey() + " isn't part of session " + session.sessionId + ", stopping its container "
+            + container.getId());
+        nmClientAsync.stopContainerAsync(container.getId(), container.getNodeId());
+        continue;
+      }
+      sessionContainersMap.computeIfAbsent(session.sessionId, key ->
+          Collections.synchronizedList(new ArrayList<>())
+      ).add(container);
+      if (sessionJournal != null) {
+        sessionJournal.taskAssigned(task, container);
+      }
+      eventHandler.emitEvent(new Event(EventType.TASK_STARTED,
+          new TaskStarted(task.getJobName(), Integer.parseInt(task.getTaskIndex()),
+              container.getNodeHttpAddress().split(":")[0], task.getSessionId(), task.getAttempt()),
+          System.currentTimeMillis()));
+      numReused++;
+    }
+    reusableContainers.clear();
+    if (numReused > 0) {
+      applicationMetrics.merge(Constants.AM_REUSED_CONTAINERS, (double) numReused, Double::sum);
+      LOG.info("Session " + session.sessionId + " reuses " + numReused + " containers of the previous session.");
+    }
+  }
+
+  /**
+   * Whether {@code container} can be kept for the retried session: it must be the running container of a live task.
+   * Job types that depend on other job types are only scheduled once their dependencies are met again, so their
+   * containers are replaced as before.
+   */
+  private boolean isReusable(Container container) {
+    if (!reuseContainersOnRetry) {
+      return false;
+    }
+    TonyTask task = session.getTask(container.getId());
+    return task != null && task.getContainer() == container && !task.isCompleted() && !task.isReleased()
+        && !tasksDeemedDead.contains(task.getId())
+        && session.getContainerRequestForType(task.getJobName()).getDependencies().isEmpty();
   }
 
   // Reset state to prepare for retryCount.
   private void reset() {
-    List<Container> containers = sessionContainersMap.get(session.sessionId);
-    for (Container container : containers) {
-      nmClientAsync.stopContainerAsync(container.getId(), container.getNodeId());
-      LOG.info("Stop a task in container: containerId = " + container.getId() + ", containerNode = "
-               + container.getNodeId().getHost());
+    List<Container> containers = sessionContainersMap.getOrDefault(session.sessionId, Collections.emptyList());
+    synchronized (containers) {
+      for (Container container : containers) {
+        if (isReusable(container)) {
+          reusableContainers.put(session.getTask(container.getId()).getId(), container);
+          continue;
+        }
+        nmClientAsync.stopContainerAsync(container.getId(), container.getNodeId());
+        LOG.info("Stop a task in container: containerId = " + container.getId() + ", containerNode = "
+                 + container.getNodeId().getHost());
+      }
+    }
+    if (!reusableContainers.isEmpty()) {
+      LOG.info("Keeping " + reusableContainers.size() + " running containers for the retried session.");
+    }
+    tasksDeemedDead.clear();
+    launchFailureTimes.clear();
+    taskLaunchFailed = false;
+    // The retried session asks for its containers afresh.
+    if (scheduler != null) {
+      scheduler.withdrawOutstandingAsks();
+    }
+    if (gangAllocator != null) {
+      gangAllocator.reset();
     }
 
     // Reset session
+    hbMonitor.unregisterAll();
     session = sessionBuilder.build();
     applicationRpcServer.reset();
     session.sessionId += 1;
@@ -561,12 +1152,12 @@ public class ApplicationMaster {
    * @return if the tensorflow job finishes successfully.
    */
   private boolean monitor() {
-    int attempt = 0;
-    containerEnv.put(Constants.ATTEMPT_NUMBER, String.valueOf(attempt));
     long expireTime = appTimeout == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + appTimeout;
-    int counter = 0;
+    long lastProgressLogTime = 0;
     while (true) {
-      counter += 1;
+      // Any transition after this point wakes up the wait at the end of the loop.
+      long observedStateVersion = stateVersion;
+
       // Checking timeout
       if (System.currentTimeMillis() > expireTime) {
         LOG.error("Application times out.");
@@ -599,6 +1190,11 @@ public class ApplicationMaster {
         break;
       }
 
+      if (this.taskLaunchFailed) {
+        LOG.error("Application failed due to a task that failed to launch or register");
+        break;
+      }
+
       if (this.untrackedTaskFailed) {
         LOG.error("One of the untracked tasks has failed with a non-zero exit code.");
         break;
@@ -618,17 +1214,21 @@ public class ApplicationMaster {
         }
 
         // Reduce logging frequency to every 100s.
-        if (counter % 20 == 1) {
+        if (System.currentTimeMillis() - lastProgressLogTime >= MONITOR_PROGRESS_LOG_INTERVAL_MS) {
           Utils.printCompletedTrackedTasks(numCompletedTrackedTasks, numTotalTrackedTasks);
+          lastProgressLogTime = System.currentTimeMillis();
         }
       }
 
-      // Pause before refresh job status
-      try {
-        Thread.sleep(5000);
-      } catch (InterruptedException e) {
-        LOG.error("Thread interrupted", e);
-      }
+      // Block until the next state transition, the next progress log or the application timeout.
+      long waitMs = Math.min(MONITOR_PROGRESS_LOG_INTERVAL_MS, expireTime - System.currentTimeMillis());
+      awaitCondition(() -> stateVersion != observedStateVersion, Math.max(waitMs, 0));
+    }
+
+    if (lastStateChangeTime > 0) {
+      long timeToExitMs = System.currentTimeMillis() - lastStateChangeTime;
+      LOG.info("Monitor exited " + timeToExitMs + " ms after the last state transition.");
+      applicationMetrics.put(Constants.AM_TIME_TO_EXIT_MS, (double) timeToExitMs);
     }
 
     session.updateSessionStatus();
@@ -650,7 +1250,52 @@ public class ApplicationMaster {
   }
 
   private void stop() {
+    if (gangAllocator != null) {
+      gangAllocator.stop();
+      applicationMetrics.put(Constants.AM_GANG_ALLOCATION_WAIT_MS, (double) gangAllocator.getTotalWaitMs());
+      applicationMetrics.put(Constants.AM_GANG_ALLOCATION_RELEASES, (double) gangAllocator.getNumReleases());
+    }
+    if (localityPlanner != null) {
+      applicationMetrics.putAll(localityPlanner.getLocalityMetrics());
+    }
     stopRunningContainers();
+    containerLaunchPool.stop();
+    if (sessionJournal != null) {
+      sessionJournal.stop();
+    }
+    applicationMetrics.putAll(containerLaunchPool.getMetrics());
+    applicationMetrics.put(Constants.AM_TASK_RETRIES, (double) session.getNumRetriedTasks());
+    if (registrationBarrier != null && registrationBarrier.getLatencyMs() >= 0) {
+      applicationMetrics.put(Constants.AM_REGISTRATION_BARRIER_MS, (double) registrationBarrier.getLatencyMs());
+    }
+    if (admissionController != null) {
+      applicationMetrics.put(Constants.AM_RPC_REJECTED_CALLS, (double) admissionController.getNumRejected());
+    }
+    if (rpcMetricsLogger != null) {
+      rpcMetricsLogger.shutdownNow();
+    }
+    LOG.info("Application RPC calls: " + applicationRpcServer.getRpcMetrics().getSummary());
+    applicationMetrics.putAll(applicationRpcServer.getRpcMetrics().getMetrics());
+    hbMonitor.stop();
+    applicationMetrics.putAll(hbMonitor.getMetrics());
+    if (preemptionTracker != null) {
+      applicationMetrics.put(Constants.AM_PREEMPTION_WARNINGS, (double) preemptionTracker.getNumWarned());
+      applicationMetrics.put(Constants.AM_PREEMPTED_CONTAINERS_RELEASED, (double) preemptionTracker.getNumReleased());
+    }
+    if (nodeBlacklist != null) {
+      applicationMetrics.put(Constants.AM_BLACKLISTED_NODES, (double) nodeBlacklist.getNumBlacklisted());
+    }
+    if (registrationReaper != null) {
+      registrationReaper.shutdownNow();
+    }
+    applicationMetrics.put(Constants.AM_LAUNCH_REPLACEMENTS, (double) numLaunchReplacements.get());
+    if (maxLaunchRecoveryMs.get() >= 0) {
+      applicationMetrics.put(Constants.AM_MAX_LAUNCH_RECOVERY_MS, (double) maxLaunchRecoveryMs.get());
+    }
+    if (stragglerCheckExecutor != null) {
+      stragglerCheckExecutor.shutdownNow();
+      applicationMetrics.put(Constants.AM_STRAGGLERS_REPLACED, (double) numStragglersReplaced.get());
+    }
 
     FinalApplicationStatus status = session.getFinalStatus();
     String appMessage = session.getFinalMessage();
@@ -662,8 +1307,8 @@ public class ApplicationMaster {
 
     nmClientAsync.stop();
     amRMClient.stop();
-    // Poll until TonyClient signals we should exit
-    boolean result = Utils.poll(() -> clientSignalToStop, 1, 15);
+    // Wait until TonyClient signals we should exit
+    boolean result = awaitCondition(() -> clientSignalToStop, STOP_WAIT_TIMEOUT_MS);
     if (!result) {
       LOG.warn("TonyClient didn't signal Tony AM to stop.");
     }
@@ -685,7 +1330,8 @@ public class ApplicationMaster {
     }
 
     // Give 15 seconds for containers to exit
-    boolean result = Utils.poll(() -> session.getNumCompletedTasks() == session.getTotalTasks(), 1, 15);
+    boolean result = awaitCondition(() -> session.getNumCompletedTasks() == session.getTotalTasks(),
+        STOP_WAIT_TIMEOUT_MS);
     if (!result) {
       LOG.warn("Not all containers were stopped or completed. Only " + session.getNumCompletedTasks() + " out of "
           + session.getTotalTasks() + " finished.");
@@ -724,6 +1370,7 @@ public class ApplicationMaster {
 
     preprocessExitCode = exitCode;
     preprocessFinished = true;
+    signalStateChange();
 
     // Short circuit if preprocessing job fails.
     if (exitCode != 0) {
@@ -747,6 +1394,53 @@ public class ApplicationMaster {
     return exitCode;
   }
 
+  /**
+   * Wakes up {@link #monitor()} and anything else blocked in {@link #awaitCondition} after a task or application state
+   * transition.
+   */
+  private void signalStateChange() {
+    stateLock.lock();
+    try {
+      stateVersion++;
+      lastStateChangeTime = System.currentTimeMillis();
+      stateChanged.signalAll();
+    } finally {
+      stateLock.unlock();
+    }
+  }
+
+  /**
+   * Blocks until {@code condition} holds or {@code timeoutMs} elapses. The condition is re-evaluated on every
+   * transition signalled through {@link #signalStateChange()}.
+   * @return whether {@code condition} held before timing out.
+   */
+  private boolean awaitCondition(BooleanSupplier condition, long timeoutMs) {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    stateLock.lock();
+    try {
+      while (!condition.getAsBoolean()) {
+        long remainingMs = deadline - System.currentTimeMillis();
+        if (remainingMs <= 0) {
+          return false;
+        }
+        stateChanged.await(remainingMs, TimeUnit.MILLISECONDS);
+      }
+      return true;
+    } catch (InterruptedException e) {
+      LOG.error("Interrupted while waiting for a state transition", e);
+      Thread.currentThread().interrupt();
+      return condition.getAsBoolean();
+    } finally {
+      stateLock.unlock();
+    }
+  }
+
+  private List<Metric> getApplicationMetrics() {
+    return applicationMetrics.entrySet().stream()
+        .map(entry -> new Metric(entry.getKey(), entry.getValue()))
+        .collect(Collectors.toList());
+  }
+
   private void printTaskUrls() {
     if (session != null) {
       session.getTonyTasks()
@@ -762,7 +1456,19 @@ public class ApplicationMaster {
   }
 
   private ApplicationRpcServer setupRPCService(String hostname) {
-    ApplicationRpcServer rpcServer = new ApplicationRpcServer(hostname, new RpcForClient(), yarnConf);
+    rpcForClient = new RpcForClient();
+    ApplicationRpcServer rpcServer = new ApplicationRpcServer(hostname, rpcForClient, yarnConf, numRpcHandlers,
+        numRpcReaders);
+    // Registrations waiting at the barrier leave at least half of the handlers free for heartbeats
+    registrationBarrier = new RegistrationBarrier(rpcForClient::allTasksRegistered, rpcServer.getNumHandlers() / 2);
+    int maxQueueLength = tonyConf.getInt(TonyConfigurationKeys.AM_RPC_ADMISSION_MAX_QUEUE_LENGTH,
+        TonyConfigurationKeys.DEFAULT_AM_RPC_ADMISSION_MAX_QUEUE_LENGTH);
+    if (maxQueueLength > 0) {
+      admissionController = new AdmissionController(maxQueueLength,
+          tonyConf.getInt(TonyConfigurationKeys.AM_RPC_ADMISSION_RETRY_AFTER_MS,
+              TonyConfigurationKeys.DEFAULT_AM_RPC_ADMISSION_RETRY_AFTER_MS));
+      rpcServer.setAdmissionController(admissionController);
+    }
     amPort = rpcServer.getRpcPort();
     return rpcServer;
   }
@@ -770,19 +1476,86 @@ public class ApplicationMaster {
   private final class RpcForClient implements ApplicationRpc {
     private static final long REGISTRATION_STATUS_INTERVAL_MS = 15 * 1000;
 
-    private long registrationTimeoutMs = tonyConf.getInt(TonyConfigurationKeys.CONTAINER_ALLOCATION_TIMEOUT,
-            TonyConfigurationKeys.DEFAULT_CONTAINER_ALLOCATION_TIMEOUT);
+    // Called concurrently by all RPC handlers, so its state is either concurrent or guarded by a lock
+    private volatile Set<String> registeredTasks = ConcurrentHashMap.newKeySet();
+    // Registered tasks recovered from the previous AM attempt, monitored once they reconnect to this attempt
+    private final Set<TonyTask> reconnectingTasks = ConcurrentHashMap.newKeySet();
+    private final AtomicLong lastRegisterWorkerTime = new AtomicLong(System.currentTimeMillis());
 
-    private Set<String> registeredTasks = new HashSet<>();
-    private long lastRegisterWorkerTime = System.currentTimeMillis();
+    // Task infos served to clients, and what they were last built from
+    private TaskInfoSnapshot taskInfoSnapshot = TaskInfoSnapshot.create(System.currentTimeMillis());
+    private TonySession snapshotSession = null;
+    private boolean snapshotAllTasksScheduled = false;
+    private long snapshotSourceVersion = -1;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Cluster spec serialized for clusterSpecJsonVersion, shared by all callers until the spec changes
+    private String clusterSpecJson = null;
+    private long clusterSpecJsonVersion = -1;
 
     @Override
     public void reset() {
-      registeredTasks =  new HashSet<>();
+      registeredTasks = ConcurrentHashMap.newKeySet();
+      reconnectingTasks.clear();
+      synchronized (objectMapper) {
+        clusterSpecJson = null;
+      }
+      registrationBarrier.reset();
+    }
+
+    private boolean allTasksRegistered() {
+      return registeredTasks.size() == session.getNumExpectedTasks();
+    }
+
+    /**
+     * Counts a registered task recovered from the previous AM attempt as registered. Its heartbeats are monitored once
+     * it has reconnected, as it may take a while to find this attempt.
+     */
+    private void onTaskRecovered(TonyTask task) {
+      registeredTasks.add(task.getId());
+      reconnectingTasks.add(task);
+    }
+
+    private void onTaskReconnected(TonyTask task) {
+      if (!reconnectingTasks.isEmpty() && reconnectingTasks.remove(task)) {
+        LOG.info("[" + task.getId() + "] Reconnected after AM restart, registering for HB.");
+        hbMonitor.register(task);
+      }
+    }
+
+    /**
+     * Forgets the registration of a released task, so that it no longer counts towards the registration barrier.
+     */
+    private void onTaskReleased(TonyTask task) {
+      registeredTasks.remove(task.getId());
+      registrationBarrier.update();
     }
 
     @Override
     public Set<TaskInfo> getTaskInfos() {
+      return getTaskInfos(-1).getTaskInfos();
+    }
+
+    /**
+     * Serves the task infos from {@link #taskInfoSnapshot}, which is only rebuilt when a task info changed.
+     */
+    @Override
+    public synchronized TaskInfoUpdate getTaskInfos(long sinceVersion) {
+      TonySession currentSession = session;
+      boolean allTasksScheduled = currentSession != null && currentSession.allTasksScheduled();
+      long sourceVersion = currentSession == null ? -1 : currentSession.getTaskInfosVersion();
+      // The notebook's task infos aren't versioned, but there are only two of them
+      if (singleNode || currentSession != snapshotSession || allTasksScheduled != snapshotAllTasksScheduled
+          || sourceVersion != snapshotSourceVersion) {
+        taskInfoSnapshot = taskInfoSnapshot.update(collectTaskInfos(currentSession, allTasksScheduled));
+        snapshotSession = currentSession;
+        snapshotAllTasksScheduled = allTasksScheduled;
+        snapshotSourceVersion = sourceVersion;
+      }
+      return taskInfoSnapshot.getUpdate(sinceVersion);
+    }
+
+    private Set<TaskInfo> collectTaskInfos(TonySession currentSession, boolean allTasksScheduled) {
       // Special handling for NotebookSubmitter.
       if (singleNode && proxyUrl != null) {
         HashSet<TaskInfo> additionalTasks = new HashSet<>();
@@ -793,39 +1566,143 @@ public class ApplicationMaster {
         return additionalTasks;
       }
 
-      if (!singleNode && session != null && session.allTasksScheduled()) {
-        return session.getTonyTasks().values().stream()
-            .flatMap(tasks -> Arrays.stream(tasks).map(TonyTask::getTaskInfo))
+      if (!singleNode && allTasksScheduled) {
+        return currentSession.getTonyTasks().values().stream()
+            .flatMap(tasks -> Arrays.stream(tasks).filter(Objects::nonNull).map(TonyTask::getTaskInfo))
+            .filter(Objects::nonNull)
             .collect(Collectors.toSet());
       }
 
       return Collections.emptySet();
     }
 
+    /**
+     * Returns the cluster spec as JSON, serialized once per cluster spec version.
+     */
     @Override
     public String getClusterSpec() throws IOException {
-      ObjectMapper objectMapper = new ObjectMapper();
-      return objectMapper.writeValueAsString(session.getClusterSpec());
+      synchronized (objectMapper) {
+        // Read the version first, so that a spec changed while serializing is serialized again on the next call
+        long version = session.getClusterSpecVersion();
+        if (clusterSpecJson == null || version != clusterSpecJsonVersion) {
+          clusterSpecJson = objectMapper.writeValueAsString(session.getClusterSpec());
+          clusterSpecJsonVersion = version;
+        }
+        return clusterSpecJson;
+      }
     }
 
     @Override
-    public void taskExecutorHeartbeat(String taskId) {
+    public boolean taskExecutorHeartbeat(String taskId) {
       TonyTask task = session.getTask(taskId);
-      if (task != null) {
-        LOG.debug("[" + taskId + "] Received HB Ping !!");
-        hbMonitor.receivedPing(task);
-      } else {
+      if (task == null) {
         LOG.warn("[" + taskId + "] Not registered for heartbeat monitoring !!");
+        return false;
+      }
+      LOG.debug("[" + taskId + "] Received HB Ping !!");
+      return onHeartbeat(task, null);
+    }
+
+    @Override
+    public boolean taskExecutorHeartbeat(int taskHandle) {
+      return taskExecutorHeartbeat(taskHandle, null);
+    }
+
+    @Override
+    public boolean taskExecutorHeartbeat(int taskHandle, double[] metrics) {
+      TonyTask task = session.getTask(taskHandle);
+      if (task == null) {
+        LOG.warn("Task handle " + taskHandle + " not registered for heartbeat monitoring !!");
+        return false;
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("[" + task.getId() + "] Received HB Ping !!");
+      }
+      return onHeartbeat(task, metrics);
+    }
+
+    /**
+     * Handles a heartbeat of {@code task}, which is resolved once per call so that a concurrent retry or replacement
+     * can't swap the attempt the heartbeat is counted, and its metrics recorded, for.
+     * @return whether the RM is about to preempt the task's container
+     */
+    private boolean onHeartbeat(TonyTask task, double[] metrics) {
+      onTaskReconnected(task);
+      hbMonitor.receivedPing(task);
+      if (metrics != null) {
+        metricsRpcServer.updateMetrics(task.getJobName(), Integer.parseInt(task.getTaskIndex()), task.getSessionId(),
+            task.getAttempt(), metrics);
+      }
+      return isPreempted(task);
+    }
+
+    private boolean isPreempted(TonyTask task) {
+      if (preemptionTracker == null) {
+        return false;
+      }
+      Container container = task.getContainer();
+      return container != null && preemptionTracker.isWarned(container.getId());
+    }
+
+    @Override
+    public void updateMetrics(String taskType, int taskIndex, double[] values) {
+      TonyTask task = session.getTask(taskType, String.valueOf(taskIndex));
+      if (task == null) {
+        LOG.warn("Dropping metrics of unknown task " + taskType + ":" + taskIndex);
+        return;
       }
+      metricsRpcServer.updateMetrics(taskType, taskIndex, task.getSessionId(), task.getAttempt(), values);
+    }
+
+    @Override
+    public int getTaskHandle(String taskId) {
+      TonyTask task = session.getTask(taskId);
+      return task == null ? -1 : task.getRpcHandle();
+    }
+
+    @Override
+    public long getClusterSpecVersion() {
+      return session.getClusterSpecVersion();
+    }
+
+    /**
+     * Returns the current session id if containers are kept across retries, or -1 so that executors never restart
+     * their tasks otherwise.
+     */
+    @Override
+    public int getSessionId() {
+      return reuseContainersOnRetry ? activeSessionId : -1;
+    }
+
+    @Override
+    public int resizeJob(String jobName, int numInstances) {
+      return ApplicationMaster.this.resizeJob(jobName, numInstances);
     }
 
     @Override
     public String registerWorkerSpec(String taskId, String spec) throws IOException {
+      return registerWorkerSpec(taskId, spec, 0);
+    }
+
+    @Override
+    public String registerWorkerSpec(String taskId, String spec, long waitMs) throws IOException {
       TonyTask task = session.getTask(taskId);
-      if (task.getHost() == null) {
+      if (task == null) {
+        // E.g. an executor kept from the failed session, which registers before its task has been adopted
+        LOG.warn("Received cluster spec registration request from unknown task " + taskId + ", ignoring it.");
+        return null;
+      }
+      if (task.registerHostPort(spec)) {
         LOG.info("Received cluster spec registration request from task " + taskId + " with spec: " + spec);
-        task.setHostPort(spec);
-        registeredTasks.add(taskId);
+        if (registeredTasks.add(taskId)) {
+          // Relaunched tasks don't count twice towards dependencies on registration
+          scheduler.registerDependencyRegistered(task.getJobName());
+        }
+        registrationBarrier.onTaskRegistered();
+        onTaskRegistered(task);
+        if (sessionJournal != null) {
+          sessionJournal.taskRegistered(task, spec);
+        }
 
         // HB Registration should happen only after worker registration..
         // The Task registration timeout will take care of rescheduling the task
@@ -841,30 +1718,27 @@ public class ApplicationMaster {
         LOG.info("All " + numExpectedTasks + " expected tasks registered.");
         return getClusterSpec();
       } else {
-        // Periodically print a list of all tasks we are still awaiting registration from.
-        if (System.currentTimeMillis() - lastRegisterWorkerTime > REGISTRATION_STATUS_INTERVAL_MS) {
+        // Periodically print a list of all tasks we are still awaiting registration from, from a single handler.
+        long lastStatusTime = lastRegisterWorkerTime.get();
+        long now = System.currentTimeMillis();
+        if (now - lastStatusTime > REGISTRATION_STATUS_INTERVAL_MS
+            && lastRegisterWorkerTime.compareAndSet(lastStatusTime, now)) {
           Set<TonyTask> unregisteredTasks = getUnregisteredTasks();
           LOG.info(String.format("Received registrations from %d tasks, awaiting registration from %d tasks.",
               registeredTasks.size(), numExpectedTasks - registeredTasks.size()));
-          unregisteredTasks.forEach(t -> {
-            // Stop application when timeout
-            if (registrationTimeoutMs > 0 && System.currentTimeMillis() - t.getStartTime() > registrationTimeoutMs) {
-              String errorMsg = String.format("Stopping AM for task [%s:%s] registration timeout: "
-                              + "allocated container is %s on host %s",
-                  t.getJobName(), t.getTaskIndex(),
-                  (t.getContainer() != null ? t.getContainer().getId().toString() : "none"),
-                  (t.getContainer() != null ? t.getContainer().getNodeId().getHost() : "none"));
-              LOG.error(errorMsg);
-              session.setFinalStatus(FinalApplicationStatus.FAILED, errorMsg);
-              stop();
-            } else {
-                LOG.info(String.format("Awaiting registration from task %s %s in %s on host %s",
-                    t.getJobName(), t.getTaskIndex(),
-                    (t.getContainer() != null ? t.getContainer().getId().toString() : "none"),
-                    (t.getContainer() != null ? t.getContainer().getNodeId().getHost() : "none")));
-            }
-          });
-          lastRegisterWorkerTime = System.currentTimeMillis();
+          // Tasks that don't register in time are relaunched by the registration reaper.
+          unregisteredTasks.forEach(t -> LOG.info(String.format(
+              "Awaiting registration from task %s %s in %s on host %s", t.getJobName(), t.getTaskIndex(),
+              (t.getContainer() != null ? t.getContainer().getId().toString() : "none"),
+              (t.getContainer() != null ? t.getContainer().getNodeId().getHost() : "none"))));
+        }
+        // Hold the call until the remaining tasks registered, so that the task doesn't have to poll
+        try {
+          if (registrationBarrier.await(waitMs)) {
+            return getClusterSpec();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
         }
         return null;
       }
@@ -890,7 +1764,7 @@ public class ApplicationMaster {
       // Unregister task after completion..
       // Since in the case of asynchronous exec, containers might
       // end at different times..
-      TonyTask task = session.getTask(jobName + ":" + jobIndex);
+      TonyTask task = session.getTask(jobName, jobIndex);
       if (task != null) {
         LOG.info("Unregistering task [" + task.getId() + "] from Heartbeat monitor..");
         hbMonitor.unregister(task);
@@ -911,6 +1785,7 @@ public class ApplicationMaster {
     public void finishApplication() {
       LOG.info("Client signals AM to finish application.");
       clientSignalToStop = true;
+      signalStateChange();
     }
   }
 
@@ -953,7 +1828,7 @@ public class ApplicationMaster {
   class NMCallbackHandler implements NMClientAsync.CallbackHandler {
     @Override
     public void onContainerStopped(ContainerId containerId) {
-      processFinishedContainer(containerId, ContainerExitStatus.KILLED_BY_APPMASTER);
+      processFinishedContainer(containerId, ContainerExitStatus.KILLED_BY_APPMASTER, null);
     }
 
     @Override
@@ -964,11 +1839,20 @@ public class ApplicationMaster {
     @Override
     public void onContainerStarted(ContainerId containerId, Map<String, ByteBuffer> allServiceResponse) {
       LOG.info("Successfully started container " + containerId);
+      containerLaunchPool.onContainerStarted(containerId);
     }
 
     @Override
     public void onStartContainerError(ContainerId containerId, Throwable t) {
       LOG.error("Failed to start container " + containerId, t);
+      containerLaunchPool.onStartContainerError(containerId);
+      TonyTask task = session.getTask(containerId);
+      if (task != null && task.getContainer() != null && task.getContainer().getId().equals(containerId)
+          && task.getSessionId() == session.sessionId) {
+        recordNodeFailure(task, containerId, NodeBlacklist.Reason.LAUNCH_FAILED);
+        // If the task can't be relaunched, the registration reaper fails the session once it times out.
+        replaceFailedLaunch(task, "failed to start");
+      }
     }
 
     @Override
@@ -1000,7 +1884,7 @@ public class ApplicationMaster {
           LOG.info(diagnostics);
         }
 
-        processFinishedContainer(containerStatus.getContainerId(), exitStatus);
+        processFinishedContainer(containerStatus.getContainerId(), exitStatus, diagnostics);
       }
     }
 
@@ -1021,24 +1905,74 @@ public class ApplicationMaster {
     @Override
     public void onContainersAllocated(List<Container> containers) {
       LOG.info("Allocated: " + containers.size() + " containers.");
+      List<Container> usableContainers = new ArrayList<>(containers.size());
       for (Container container : containers) {
+        if (scheduler.onContainerAllocated(container)) {
+          usableContainers.add(container);
+        }
+      }
+      if (gangAllocator != null) {
+        gangAllocator.onContainersAllocated(usableContainers);
+        return;
+      }
+      for (Container container : usableContainers) {
         LOG.info("Launching a task in container"
             + ", containerId = " + container.getId()
             + ", containerNode = " + container.getNodeId().getHost() + ":" + container.getNodeId().getPort()
             + ", resourceRequest = " + container.getResource()
-            + ", priority = " + container.getPriority());
-        containersLauncherThreadPool.execute(new ContainerLauncher(container));
+            + ", priority = " + container.getPriority()
+            + ", allocationRequestId = " + Utils.getAllocationRequestId(container));
+        containerLaunchPool.submit(container, new ContainerLauncher(container));
+      }
+      if (containerLaunchPool.getQueueDepth() > 0) {
+        LOG.info(containerLaunchPool.getQueueDepth() + " container launches queued.");
       }
     }
 
     @Override
     public void onShutdownRequest() {
       LOG.info("onShutdownRequest called in RMCallbackHandler");
+      if (preemptionTracker == null) {
+        return;
+      }
+      // The RM is about to kill the whole application, so give all tasks the chance to checkpoint.
+      TonySession currentSession = session;
+      long now = System.currentTimeMillis();
+      List<Container> containers = sessionContainersMap.getOrDefault(currentSession.sessionId,
+          Collections.emptyList());
+      Map<ContainerId, TonyTask> runningTasks = new HashMap<>();
+      synchronized (containers) {
+        for (Container container : containers) {
+          TonyTask task = currentSession.getTask(container.getId());
+          if (task != null && !task.isCompleted()) {
+            runningTasks.put(container.getId(), task);
+          }
+        }
+      }
+      for (ContainerId containerId : preemptionTracker.warn(runningTasks.keySet(), now)) {
+        emitTaskPreemptedEvent(runningTasks.get(containerId), containerId, now);
+      }
     }
 
     @Override
     public void onNodesUpdated(List<NodeReport> list) {
       LOG.info("onNodesUpdated called in RMCallbackHandler");
+      if (nodeBlacklist == null) {
+        return;
+      }
+      for (NodeReport report : list) {
+        String host = report.getNodeId().getHost();
+        if (report.getNodeState().isUnusable()) {
+          if (nodeBlacklist.onNodeUnusable(host)) {
+            LOG.warn("Node " + host + " is " + report.getNodeState() + " (" + report.getHealthReport()
+                + "), blacklisting it.");
+            blacklistNode(host, NodeBlacklist.Reason.NODE_UNUSABLE);
+          }
+        } else if (nodeBlacklist.onNodeUsable(host)) {
+          LOG.info("Node " + host + " is " + report.getNodeState() + " again, removing it from the blacklist.");
+          amRMClient.updateBlacklist(Collections.emptyList(), Collections.singletonList(host));
+        }
+      }
     }
 
     @Override
@@ -1054,6 +1988,21 @@ public class ApplicationMaster {
     }
   }
 
+  /**
+   * Returns the launch template for {@code jobName}'s containers in the current session, building it on first use.
+   * Templates are built lazily because job type specific resources are only set up once the job type is scheduled.
+   */
+  private ContainerLaunchTemplate getLaunchTemplate(String jobName) {
+    return launchTemplates.computeIfAbsent(jobName, name -> {
+      ContainerLaunchTemplate template = new ContainerLaunchTemplate(name, containerEnv,
+          Utils.getContainerEnvForDocker(tonyConf, name), jobTypeToContainerResources.get(name),
+          session.getTaskCommand(), secureMode ? allTokens : null);
+      LOG.info("Constructed command for " + name + ": " + template.getCommands());
+      LOG.info("Container environment for " + name + ": " + template.getEnvironment());
+      return template;
+    });
+  }
+
   /**
    * The command to prepare inside containers.
    */
@@ -1068,59 +2017,33 @@ public class ApplicationMaster {
      * Set up container's launch command and start the container.
      */
     public void run() {
-      TonyTask task = session.getAndInitMatchingTaskByPriority(container.getPriority().getPriority());
-      Preconditions.checkNotNull(task, "Task was null! Nothing to schedule.");
+      TonyTask task = scheduler.getAndInitMatchingTask(container);
+      if (task == null) {
+        // All tasks of the job type have containers, e.g. because an elastic job type shrank while this container
+        // was being allocated.
+        LOG.warn("No task left to schedule in container " + container.getId() + ", releasing it.");
+        amRMClient.releaseAssignedContainer(container.getId());
+        containerLaunchPool.onLaunchCancelled(container.getId());
+        return;
+      }
 
       task.setTaskInfo(container);
-      TaskInfo taskInfo = task.getTaskInfo();
-      taskInfo.setStatus(TaskStatus.READY);
-
-      // Add job type specific resources
-      Map<String, LocalResource> containerResources = jobTypeToContainerResources.get(task.getJobName());
+      task.setStatus(TaskStatus.READY);
 
       task.addContainer(container);
+      if (sessionJournal != null) {
+        sessionJournal.taskAssigned(task, container);
+      }
       LOG.info("Setting Container [" + container.getId() + "] for task [" + task.getId() + "]..");
 
-      Map<String, String> containerLaunchEnv = new ConcurrentHashMap<>(containerEnv);
-
-      /*
-       * Add additional environment vars. We always set job_name task_index & task_num and
-       * task_num and TaskExecutor is responsible for setting up the actual shell environment
-       * for different deep learning frameworks.
-       */
       String jobName = task.getJobName();
       String taskIndex = task.getTaskIndex();
-      Map<String, String> dockerEnv = Utils.getContainerEnvForDocker(tonyConf, jobName);
-      containerLaunchEnv.putAll(dockerEnv);
-      containerLaunchEnv.put(Constants.JOB_NAME, jobName);
-      containerLaunchEnv.put(Constants.TASK_INDEX, taskIndex);
-      containerLaunchEnv.put(Constants.TASK_NUM, String.valueOf(session.getTotalTrackedTasks()));
-      if (session.isChief(jobName, taskIndex)) {
-        containerLaunchEnv.put(Constants.IS_CHIEF, Boolean.TRUE.toString());
-      }
-      // Specify session id in the env to distinguish between different sessions.
-      containerLaunchEnv.put(Constants.SESSION_ID, String.valueOf(session.sessionId));
-
-      List<CharSequence> arguments = new ArrayList<>(5);
-      arguments.add(session.getTaskCommand());
-      arguments.add("1>" + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stdout");
-      arguments.add("2>" + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stderr");
-      List<String> commands = ImmutableList.of(String.join(" ", arguments));
-
-      LOG.info("Constructed command: " + commands);
-      LOG.info("Container environment: " + containerLaunchEnv);
-
-      // Set logs to be readable by everyone.
-      Map<ApplicationAccessType, String> acls = new HashMap<>(2);
-      acls.put(ApplicationAccessType.VIEW_APP, "*");
-      acls.put(ApplicationAccessType.MODIFY_APP, " ");
-
-      ByteBuffer tokens = null;
-      if (secureMode) {
-        tokens = allTokens.duplicate();
-      }
-      ContainerLaunchContext ctx = ContainerLaunchContext.newInstance(containerResources, containerLaunchEnv,
-                                                                      commands, null, tokens, acls);
+      ContainerLaunchContext ctx = getLaunchTemplate(jobName)
+          .newLaunchContext(taskIndex, session.isChief(jobName, taskIndex), session.sessionId,
+              session.getTotalTrackedTasks());
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Container environment for task [" + task.getId() + "]: " + ctx.getEnvironment());
+      }
 
       sessionContainersMap.computeIfAbsent(session.sessionId, key ->
           Collections.synchronizedList(new ArrayList<>())
@@ -1128,50 +2051,141 @@ public class ApplicationMaster {
 
       Utils.printTaskUrl(task.getTaskInfo(), LOG);
       nmClientAsync.startContainerAsync(container, ctx);
-      taskInfo.setStatus(TaskStatus.RUNNING);
+      task.setStatus(TaskStatus.RUNNING);
       eventHandler.emitEvent(new Event(EventType.TASK_STARTED,
           new TaskStarted(task.getJobName(), Integer.parseInt(task.getTaskIndex()),
-              container.getNodeHttpAddress().split(":")[0]),
+              container.getNodeHttpAddress().split(":")[0], task.getSessionId(), task.getAttempt()),
           System.currentTimeMillis()));
     }
   }
 
+  /**
+   * Grows or shrinks elastic job type {@code jobName} to {@code numInstances}: containers are requested for added
+   * instances and the containers of released tasks are stopped.
+   * @return the number of instances of the job type after the resize, or -1 if it isn't an elastic job type
+   */
+  private synchronized int resizeJob(String jobName, int numInstances) {
+    TonySession.Resize resize = session.resizeJob(jobName, numInstances);
+    if (resize == null) {
+      LOG.warn("Ignoring request to resize " + jobName + ", which isn't an elastic job type.");
+      return -1;
+    }
+    if (resize.getNumAdded() > 0) {
+      scheduler.onInstancesAdded(jobName, resize.getNumAdded());
+    }
+    if (resize.getNumDropped() > 0) {
+      scheduler.onInstancesDropped(jobName, resize.getNumDropped());
+    }
+    for (TonyTask task : resize.getReleasedTasks()) {
+      releaseTask(task);
+    }
+    LOG.info("Resized " + jobName + " to " + resize.getNumInstances() + " instances (requested " + numInstances
+        + "): added " + resize.getNumAdded() + ", dropped " + resize.getNumDropped() + " pending and released "
+        + resize.getReleasedTasks().size() + " running instances.");
+    return resize.getNumInstances();
+  }
+
+  /**
+   * Stops the container of a task released from an elastic job type.
+   */
+  private void releaseTask(TonyTask task) {
+    LOG.info("Releasing task [" + task.getId() + "]..");
+    hbMonitor.unregister(task);
+    session.addNumExpectedTask(-1);
+    rpcForClient.onTaskReleased(task);
+    Container container = task.getContainer();
+    if (container != null) {
+      nmClientAsync.stopContainerAsync(container.getId(), container.getNodeId());
+    }
+  }
+
   private void onTaskDeemedDead(TonyTask task) {
     String msg = "Task with id [" + task.getId() + "] has missed"
         + " [" + maxConsecutiveHBMiss + "] heartbeats. Ending application!";
     LOG.error(msg);
+    tasksDeemedDead.add(task.getId());
+    if (task.getContainer() != null) {
+      recordNodeFailure(task, task.getContainer().getId(), NodeBlacklist.Reason.MISSED_HEARTBEATS);
+    }
     taskHasMissesHB = true;
     session.setFinalStatus(FinalApplicationStatus.FAILED, msg);
-    mainThread.interrupt();
+    signalStateChange();
   }
 
-  private void processFinishedContainer(ContainerId containerId, int exitStatus) {
+  private void processFinishedContainer(ContainerId containerId, int exitStatus, String diagnostics) {
+    if (preemptionTracker != null) {
+      preemptionTracker.remove(containerId);
+    }
     TonyTask task = session.getTask(containerId);
+    if (task != null && NodeBlacklist.isNodeFailure(exitStatus, diagnostics)) {
+      recordNodeFailure(task, containerId, NodeBlacklist.Reason.TASK_FAILED);
+    }
     if (task != null) {
-      // Ignore tasks from past sessions.
-      if (task.getSessionId() != session.sessionId) {
+      // Ignore tasks from past sessions, and failed attempts that have already been queued for a retry.
+      if (task.getSessionId() != session.sessionId || task.isRetried()) {
         return;
       }
 
       LOG.info("Container " + containerId + " for task " + task + " finished with exitStatus " + exitStatus + ".");
+      // Elastic job types keep training without preempted tasks, and get replacements once capacity frees up.
+      int numInstances = session.getNumInstances(task.getJobName());
+      boolean preemptedTaskReleased = exitStatus == ContainerExitStatus.PREEMPTED
+          && session.releasePreemptedTask(task);
+      if (preemptedTaskReleased) {
+        LOG.warn("Task " + task + " was preempted, continuing without it.");
+        hbMonitor.unregister(task);
+        session.addNumExpectedTask(-1);
+        rpcForClient.onTaskReleased(task);
+      } else if (session.retryTask(task, exitStatus)) {
+        // Relaunch just this task, leaving the rest of the session's containers running.
+        LOG.warn("Attempt " + task.getAttempt() + " of task " + task + " failed with exit status " + exitStatus
+            + ", relaunching it in a new container.");
+        hbMonitor.unregister(task);
+        scheduler.onTaskRetried(task.getJobName());
+        onAttemptRequeued(task);
+        return;
+      }
       session.onTaskCompleted(task.getJobName(), task.getTaskIndex(), exitStatus);
-      scheduler.registerDependencyCompleted(task.getJobName());
-      eventHandler.emitEvent(new Event(EventType.TASK_FINISHED,
-          new TaskFinished(task.getJobName(), Integer.parseInt(task.getTaskIndex()),
-              task.getTaskInfo().getStatus().toString(),
-              metricsRpcServer.getMetrics(task.getJobName(), Integer.parseInt(task.getTaskIndex()))),
-          System.currentTimeMillis()));
+      if (sessionJournal != null && !task.isReleased()) {
+        sessionJournal.taskCompleted(task, exitStatus);
+      }
+      if (preemptedTaskReleased) {
+        resizeJob(task.getJobName(), numInstances);
+      }
+      scheduler.registerDependencyCompleted(task.getJobName(),
+          task.getTaskInfo().getStatus() == TaskStatus.SUCCEEDED);
+      emitTaskFinishedEvent(task);
 
       // Detect if an untracked task has crashed to prevent application hangups.
-      if (!Utils.isJobTypeTracked(task.getJobName(), tonyConf) && task.isFailed()) {
+      if (!session.isJobTypeTracked(task.getJobName()) && task.isFailed()) {
         untrackedTaskFailed = true;
       }
-
+      signalStateChange();
+    } else if (reusableContainers.values().removeIf(container -> container.getId().equals(containerId))) {
+      LOG.info("Container " + containerId + " kept for the retried session exited before it was reused.");
     } else {
       LOG.warn("No task found for container : [" + containerId + "]!");
     }
   }
 
+  /**
+   * Records the end of an attempt of {@code task} whose index is relaunched, and drops the attempt's metrics so that
+   * they aren't taken for the next attempt's.
+   */
+  private void onAttemptRequeued(TonyTask task) {
+    emitTaskFinishedEvent(task);
+    metricsRpcServer.clearMetrics(task.getJobName(), Integer.parseInt(task.getTaskIndex()));
+  }
+
+  private void emitTaskFinishedEvent(TonyTask task) {
+    List<Metric> metrics = hbMonitor.getTaskMetrics(task);
+    metrics.addAll(metricsRpcServer.getMetrics(task.getJobName(), Integer.parseInt(task.getTaskIndex())));
+    eventHandler.emitEvent(new Event(EventType.TASK_FINISHED,
+        new TaskFinished(task.getJobName(), Integer.parseInt(task.getTaskIndex()),
+            task.getTaskInfo().getStatus().toString(), metrics, task.getSessionId(), task.getAttempt()),
+        System.currentTimeMillis()));
+  }
+
   //region testing
 
   private void killChiefWorkerIfTesting(String taskId) {
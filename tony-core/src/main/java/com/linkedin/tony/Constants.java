@@ -19,7 +19,7 @@ public class Constants {
       "org.apache.hadoop.yarn.server.nodemanager.containermanager.linux.runtime.DockerLinuxContainerRuntime";
   public static final String ENV_CONTAINER_TYPE = "ENV_CONTAINER_TYPE";
   public static final String ENV_DOCKER_CONTAINER_IMAGE = "ENV_DOCKER_CONTAINER_IMAGE";
-  public static final String SET_MONITOR_INTERVAL_METHOD = "setMonitorInterval";
+  public static final String GET_ALLOCATION_REQUEST_ID_METHOD = "getAllocationRequestId";
 
   // File Permission
   public static final FsPermission PERM770 = new FsPermission((short) 0770);
@@ -42,6 +42,15 @@ public class Constants {
   public static final String IS_CHIEF = "IS_CHIEF";
   public static final String CLUSTER_SPEC = "CLUSTER_SPEC";
   public static final String TF_CONFIG = "TF_CONFIG";
+  // Path of the file holding the latest cluster spec when it can change while tasks run, rewritten when it changes
+  public static final String CLUSTER_SPEC_FILE = "CLUSTER_SPEC_FILE";
+  public static final String CLUSTER_SPEC_FILE_NAME = "cluster_spec.json";
+  // Path of the file a task can write its current training step to, used to detect stragglers
+  public static final String STEP_FILE = "TONY_STEP_FILE";
+  public static final String STEP_FILE_NAME = "step";
+  // Path of the file the TaskExecutor creates when the task's container is about to be preempted
+  public static final String PREEMPTION_FILE = "TONY_PREEMPTION_FILE";
+  public static final String PREEMPTION_FILE_NAME = "preemption_notice";
 
   // PyTorch constants
   public static final String COORDINATOR_ID = "worker:0";
@@ -122,6 +131,11 @@ public class Constants {
   public static final String TONY_FOLDER = ".tony";
 
   public static final String TONY_HISTORY_INTERMEDIATE = "intermediate";
+  // Files in the job directory used to recover a running job when the AM restarts
+  public static final String SESSION_JOURNAL_FILE_PREFIX = "session.journal.";
+  public static final String AM_ADDRESS_FILE_NAME = "am.address";
+  // File in the job directory with the metrics of all tasks over time
+  public static final String TASK_METRICS_FILE_NAME = "task-metrics.avro";
 
   // Configuration related constants
   public static final String APP_TYPE = "TONY";
@@ -145,7 +159,6 @@ public class Constants {
   public static final String JVM_PID = "JVM_PID";
 
   // Metrics
-  public static final String METRICS_RPC_PORT = "METRICS_RPC_PORT";
   public static final String MAX_MEMORY_BYTES = "MAX_MEMORY_BYTES";
   public static final String AVG_MEMORY_BYTES = "AVG_MEMORY_BYTES";
   // Maximum percent of time one or more kernels was executing on GPU
@@ -160,8 +173,51 @@ public class Constants {
   public static final String MAX_GPU_MAIN_MEMORY_USAGE = "MAX_GPU_MAIN_MEMORY_USAGE";
   // Average across GPUs of BAR1 memory used
   public static final String AVG_GPU_MAIN_MEMORY_USAGE = "AVG_GPU_MAIN_MEMORY_USAGE";
+  // Latest percent of a CPU core used by the task's processes
+  public static final String CPU_UTILIZATION = "CPU_UTILIZATION";
+  // Latest average across GPUs of percent of time one or more kernels was executing on GPU
+  public static final String GPU_UTILIZATION = "GPU_UTILIZATION";
+  // Latest training step the task wrote to its step file
+  public static final String TRAINING_STEP = "TRAINING_STEP";
+  // Longest time between two heartbeats the AM received from the task
+  public static final String MAX_HEARTBEAT_INTERVAL_MS = "MAX_HEARTBEAT_INTERVAL_MS";
+  // Heartbeat intervals that passed without a heartbeat from the task
+  public static final String MISSED_HEARTBEATS = "MISSED_HEARTBEATS";
 
   public static final int MAX_REPEATED_GPU_ERROR_ALLOWED = 10;
 
+  // AM metrics reported in the APPLICATION_FINISHED event
+  public static final String AM_TIME_TO_EXIT_MS = "AM_TIME_TO_EXIT_MS";
+  public static final String AM_GANG_ALLOCATION_WAIT_MS = "AM_GANG_ALLOCATION_WAIT_MS";
+  public static final String AM_GANG_ALLOCATION_RELEASES = "AM_GANG_ALLOCATION_RELEASES";
+  // Share of a job type's allocations on a host or rack holding its input, reported per job type with the job name
+  // appended
+  public static final String AM_NODE_LOCAL_ALLOCATION_SHARE = "AM_NODE_LOCAL_ALLOCATION_SHARE";
+  public static final String AM_RACK_LOCAL_ALLOCATION_SHARE = "AM_RACK_LOCAL_ALLOCATION_SHARE";
+  public static final String AM_CONTAINER_LAUNCH_MAX_QUEUE_DEPTH = "AM_CONTAINER_LAUNCH_MAX_QUEUE_DEPTH";
+  public static final String AM_CONTAINER_LAUNCH_AVG_LATENCY_MS = "AM_CONTAINER_LAUNCH_AVG_LATENCY_MS";
+  public static final String AM_CONTAINER_LAUNCH_MAX_LATENCY_MS = "AM_CONTAINER_LAUNCH_MAX_LATENCY_MS";
+  public static final String AM_CONTAINER_START_ERRORS = "AM_CONTAINER_START_ERRORS";
+  public static final String AM_TASK_RETRIES = "AM_TASK_RETRIES";
+  // Containers kept across AM retries instead of being stopped and requested again
+  public static final String AM_REUSED_CONTAINERS = "AM_REUSED_CONTAINERS";
+  // Time from the first to the last task registration of the last session
+  public static final String AM_REGISTRATION_BARRIER_MS = "AM_REGISTRATION_BARRIER_MS";
+  // Calls the AM turned away because its RPC queue was too long
+  public static final String AM_RPC_REJECTED_CALLS = "AM_RPC_REJECTED_CALLS";
+  // Prefix of the per-method call metrics of the application RPC server, e.g. AM_RPC_REGISTER_WORKER_SPEC_P99_MS
+  public static final String AM_RPC_PREFIX = "AM_RPC_";
+  public static final String AM_RECOVERY_TIME_MS = "AM_RECOVERY_TIME_MS";
+  public static final String AM_RECOVERED_TASKS = "AM_RECOVERED_TASKS";
+  public static final String AM_STRAGGLERS_REPLACED = "AM_STRAGGLERS_REPLACED";
+  public static final String AM_PREEMPTION_WARNINGS = "AM_PREEMPTION_WARNINGS";
+  public static final String AM_PREEMPTED_CONTAINERS_RELEASED = "AM_PREEMPTED_CONTAINERS_RELEASED";
+  public static final String AM_BLACKLISTED_NODES = "AM_BLACKLISTED_NODES";
+  public static final String AM_LAUNCH_REPLACEMENTS = "AM_LAUNCH_REPLACEMENTS";
+  public static final String AM_MAX_LAUNCH_RECOVERY_MS = "AM_MAX_LAUNCH_RECOVERY_MS";
+  public static final String AM_MAX_HEARTBEAT_INTERVAL_MS = "AM_MAX_HEARTBEAT_INTERVAL_MS";
+  public static final String AM_MISSED_HEARTBEATS = "AM_MISSED_HEARTBEATS";
+  public static final String AM_TASKS_EXPIRED = "AM_TASKS_EXPIRED";
+
   private Constants() { }
 }
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.NodeId;
+
+
+/**
+ * Launches containers on a bounded pool of threads, with a cap on the number of container starts in flight on each
+ * NodeManager and an optional global limit on the launch rate, so that a large allocation burst doesn't overload a
+ * few NodeManagers.
+ *
+ * A start is in flight from the moment its launch runs until the NodeManager reports the container as started or
+ * failed to start ({@link #onContainerStarted} / {@link #onStartContainerError}). Launches for a node at its cap are
+ * queued and run as earlier starts on that node complete.
+ */
+public class ContainerLaunchPool {
+  private static final Log LOG = LogFactory.getLog(ContainerLaunchPool.class);
+
+  private final ExecutorService launcherThreadPool;
+  private final int maxInFlightPerNode;
+  private final long launchIntervalNanos;
+
+  // Per node launch state, guarded by this.
+  private final Map<NodeId, NodeLaunches> launchesByNode = new HashMap<>();
+  // Launches that have been submitted but whose container hasn't been reported as started or failed yet.
+  private final Map<ContainerId, PendingLaunch> pendingLaunches = new ConcurrentHashMap<>();
+
+  private final Object rateLock = new Object();
+  private long nextLaunchNanos = 0;
+
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+  private final AtomicInteger numStarted = new AtomicInteger();
+  private final AtomicInteger numStartErrors = new AtomicInteger();
+  private final AtomicLong totalLaunchLatencyMs = new AtomicLong();
+  private final AtomicLong maxLaunchLatencyMs = new AtomicLong();
+
+  public ContainerLaunchPool(Configuration tonyConf) {
+    int numThreads = Math.max(1, tonyConf.getInt(TonyConfigurationKeys.CONTAINER_LAUNCHER_THREADS,
+        TonyConfigurationKeys.DEFAULT_CONTAINER_LAUNCHER_THREADS));
+    this.launcherThreadPool = Executors.newFixedThreadPool(numThreads, r -> {
+      Thread thread = new Thread(r, "container-launcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    int maxInFlight = tonyConf.getInt(TonyConfigurationKeys.CONTAINER_LAUNCHER_MAX_IN_FLIGHT_PER_NODE,
+        TonyConfigurationKeys.DEFAULT_CONTAINER_LAUNCHER_MAX_IN_FLIGHT_PER_NODE);
+    this.maxInFlightPerNode = maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE;
+    float maxLaunchesPerSecond = tonyConf.getFloat(TonyConfigurationKeys.CONTAINER_LAUNCHER_MAX_LAUNCHES_PER_SECOND,
+        TonyConfigurationKeys.DEFAULT_CONTAINER_LAUNCHER_MAX_LAUNCHES_PER_SECOND);
+    this.launchIntervalNanos = maxLaunchesPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxLaunchesPerSecond)
+        : 0;
+  }
+
+  /**
+   * Queues {@code launch}, which sets up and starts {@code container}. The container counts as in flight on its node
+   * until {@link #onContainerStarted} or {@link #onStartContainerError} is called for it.
+   */
+  public void submit(Container container, Runnable launch) {
+    PendingLaunch pendingLaunch = new PendingLaunch(container, launch);
+    pendingLaunches.put(container.getId(), pendingLaunch);
+    int depth = queueDepth.incrementAndGet();
+    maxQueueDepth.accumulateAndGet(depth, Math::max);
+
+    synchronized (this) {
+      NodeLaunches nodeLaunches = launchesByNode.computeIfAbsent(container.getNodeId(), k -> new NodeLaunches());
+      if (nodeLaunches.numInFlight < maxInFlightPerNode) {
+        nodeLaunches.numInFlight++;
+        dispatch(pendingLaunch);
+      } else {
+        nodeLaunches.waiting.add(pendingLaunch);
+      }
+    }
+  }
+
+  private void dispatch(PendingLaunch pendingLaunch) {
+    launcherThreadPool.execute(() -> {
+      queueDepth.decrementAndGet();
+      try {
+        acquireLaunchPermit();
+        pendingLaunch.launch.run();
+      } catch (RuntimeException e) {
+        LOG.error("Failed to launch container " + pendingLaunch.container.getId(), e);
+        onStartContainerError(pendingLaunch.container.getId());
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while waiting to launch container " + pendingLaunch.container.getId());
+        Thread.currentThread().interrupt();
+      }
+    });
+  }
+
+  /**
+   * Blocks until launching another container stays within the configured launch rate.
+   */
+  private void acquireLaunchPermit() throws InterruptedException {
+    if (launchIntervalNanos <= 0) {
+      return;
+    }
+    long waitNanos;
+    synchronized (rateLock) {
+      long now = System.nanoTime();
+      long launchNanos = Math.max(now, nextLaunchNanos);
+      nextLaunchNanos = launchNanos + launchIntervalNanos;
+      waitNanos = launchNanos - now;
+    }
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  public void onContainerStarted(ContainerId containerId) {
+    PendingLaunch pendingLaunch = complete(containerId);
+    if (pendingLaunch != null) {
+      long latencyMs = System.currentTimeMillis() - pendingLaunch.submitTime;
+      numStarted.incrementAndGet();
+      totalLaunchLatencyMs.addAndGet(latencyMs);
+      maxLaunchLatencyMs.accumulateAndGet(latencyMs, Math::max);
+    }
+  }
+
+  public void onStartContainerError(ContainerId containerId) {
+    if (complete(containerId) != null) {
+      numStartErrors.incrementAndGet();
+    }
+  }
+
+  /**
+   * Called when a submitted launch turned out to have nothing to start, e.g. because its container was surplus.
+   */
+  public void onLaunchCancelled(ContainerId containerId) {
+    complete(containerId);
+  }
+
+  private PendingLaunch complete(ContainerId containerId) {
+    PendingLaunch pendingLaunch = pendingLaunches.remove(containerId);
+    if (pendingLaunch == null) {
+      return null;
+    }
+    synchronized (this) {
+      NodeLaunches nodeLaunches = launchesByNode.get(pendingLaunch.container.getNodeId());
+      PendingLaunch next = nodeLaunches.waiting.poll();
+      if (next != null) {
+        dispatch(next);
+      } else if (--nodeLaunches.numInFlight == 0) {
+        launchesByNode.remove(pendingLaunch.container.getNodeId());
+      }
+    }
+    return pendingLaunch;
+  }
+
+  /**
+   * Number of submitted launches that haven't been picked up by a launcher thread yet.
+   */
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  public Map<String, Double> getMetrics() {
+    Map<String, Double> metrics = new HashMap<>();
+    int started = numStarted.get();
+    metrics.put(Constants.AM_CONTAINER_LAUNCH_MAX_QUEUE_DEPTH, (double) maxQueueDepth.get());
+    metrics.put(Constants.AM_CONTAINER_LAUNCH_AVG_LATENCY_MS,
+        started > 0 ? (double) totalLaunchLatencyMs.get() / started : 0);
+    metrics.put(Constants.AM_CONTAINER_LAUNCH_MAX_LATENCY_MS, (double) maxLaunchLatencyMs.get());
+    metrics.put(Constants.AM_CONTAINER_START_ERRORS, (double) numStartErrors.get());
+    return metrics;
+  }
+
+  @VisibleForTesting
+  synchronized int getNumInFlight(NodeId nodeId) {
+    NodeLaunches nodeLaunches = launchesByNode.get(nodeId);
+    return nodeLaunches == null ? 0 : nodeLaunches.numInFlight;
+  }
+
+  public void stop() {
+    launcherThreadPool.shutdownNow();
+  }
+
+  private static class NodeLaunches {
+    private int numInFlight = 0;
+    private final Queue<PendingLaunch> waiting = new ArrayDeque<>();
+  }
+
+  private static class PendingLaunch {
+    private final Container container;
+    private final Runnable launch;
+    private final long submitTime = System.currentTimeMillis();
+
+    PendingLaunch(Container container, Runnable launch) {
+      this.container = container;
+      this.launch = launch;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.yarn.api.ApplicationConstants;
+import org.apache.hadoop.yarn.api.records.ApplicationAccessType;
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.apache.hadoop.yarn.api.records.LocalResource;
+
+
+/**
+ * The parts of a job type's {@link ContainerLaunchContext} that are the same for all of its containers in a session:
+ * local resources, the environment shared by all tasks of the job type, the launch command, ACLs and tokens.
+ *
+ * Templates are immutable and built once per job type and session, so that launching a container only needs to
+ * overlay the task-specific environment variables. The number of tasks is one of them, since elastic job types can
+ * change it during the session.
+ */
+public class ContainerLaunchTemplate {
+  // Set logs to be readable by everyone.
+  private static final Map<ApplicationAccessType, String> ACLS = ImmutableMap.of(
+      ApplicationAccessType.VIEW_APP, "*",
+      ApplicationAccessType.MODIFY_APP, " ");
+
+  /** Number of environment variables each launch adds on top of the template's. **/
+  private static final int NUM_TASK_ENV_VARS = 4;
+
+  private final String jobName;
+  private final Map<String, LocalResource> localResources;
+  private final Map<String, String> environment;
+  private final List<String> commands;
+  private final ByteBuffer tokens;
+
+  /**
+   * @param jobName the job type the template is for
+   * @param containerEnv the environment set up for every TaskExecutor
+   * @param jobEnv job type specific environment, e.g. Docker settings, overriding {@code containerEnv}
+   * @param localResources the resources to localize for the job type's containers
+   * @param taskCommand the command launching the TaskExecutor
+   * @param tokens the tokens passed to the containers, or null in insecure mode
+   */
+  public ContainerLaunchTemplate(String jobName, Map<String, String> containerEnv, Map<String, String> jobEnv,
+      Map<String, LocalResource> localResources, String taskCommand, ByteBuffer tokens) {
+    this.jobName = jobName;
+    this.localResources = localResources == null ? ImmutableMap.of() : ImmutableMap.copyOf(localResources);
+
+    /*
+     * Add additional environment vars. We always set job_name task_index & task_num and
+     * task_num and TaskExecutor is responsible for setting up the actual shell environment
+     * for different deep learning frameworks.
+     */
+    Map<String, String> env = new HashMap<>(containerEnv);
+    env.putAll(jobEnv);
+    env.put(Constants.JOB_NAME, jobName);
+    this.environment = ImmutableMap.copyOf(env);
+
+    this.commands = ImmutableList.of(String.join(" ", taskCommand,
+        "1>" + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stdout",
+        "2>" + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stderr"));
+    this.tokens = tokens;
+  }
+
+  /**
+   * Creates the launch context of a single task of this job type.
+   * @param taskIndex the index of the task
+   * @param isChief whether the task is the chief
+   * @param sessionId the id of the session the task belongs to, to distinguish between different sessions
+   * @param numTasks the number of tracked tasks in the session
+   */
+  public ContainerLaunchContext newLaunchContext(String taskIndex, boolean isChief, int sessionId, int numTasks) {
+    Map<String, String> env = new HashMap<>((int) ((environment.size() + NUM_TASK_ENV_VARS) / 0.75f) + 1);
+    env.putAll(environment);
+    env.put(Constants.TASK_INDEX, taskIndex);
+    env.put(Constants.TASK_NUM, String.valueOf(numTasks));
+    if (isChief) {
+      env.put(Constants.IS_CHIEF, Boolean.TRUE.toString());
+    }
+    env.put(Constants.SESSION_ID, String.valueOf(sessionId));
+    return ContainerLaunchContext.newInstance(localResources, env, commands, null,
+        tokens == null ? null : tokens.duplicate(), ACLS);
+  }
+
+  public String getJobName() {
+    return jobName;
+  }
+
+  public Map<String, String> getEnvironment() {
+    return environment;
+  }
+
+  public List<String> getCommands() {
+    return commands;
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.client.api.AMRMClient;
+import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
+
+
+/**
+ * Holds allocated containers unlaunched until the whole gang of outstanding containers (or a configured quorum of it)
+ * has been allocated, so that a partially allocated job does not sit on resources it cannot use yet.
+ *
+ * If the gang does not form within the configured timeout, the containers held so far are released back to YARN and
+ * re-requested after an exponentially growing backoff. Once a gang has formed, the rest of its containers are
+ * launched as soon as they arrive.
+ *
+ * The allocator only counts containers; which ask a container fulfilled, and so what to ask for again when it is
+ * released, is up to the {@link TaskScheduler}.
+ */
+public class GangAllocator {
+  private static final Log LOG = LogFactory.getLog(GangAllocator.class);
+
+  private final AMRMClientAsync<AMRMClient.ContainerRequest> amRMClient;
+  private final Consumer<Container> launcher;
+  private final Consumer<Container> rerequester;
+  private final ScheduledExecutorService timer;
+  private final float quorum;
+  private final long timeoutMs;
+  private final long initialBackoffMs;
+  private final long maxBackoffMs;
+
+  private final List<Container> heldContainers = new ArrayList<>();
+
+  // Containers requested from YARN (including ones waiting on a backoff) that have not been launched yet.
+  private int numOutstanding = 0;
+  private boolean gangFormed = false;
+  private long waitStartTime = 0;
+  private long totalWaitMs = 0;
+  private int numReleases = 0;
+  private int numConsecutiveReleases = 0;
+  private ScheduledFuture<?> deadline;
+  // Bumped by reset(), so that re-requests scheduled before it are dropped.
+  private int generation = 0;
+
+  /**
+   * @param launcher launches a container once its gang has formed
+   * @param rerequester asks again for the container that a released container was allocated for
+   */
+  public GangAllocator(AMRMClientAsync<AMRMClient.ContainerRequest> amRMClient, Consumer<Container> launcher,
+      Consumer<Container> rerequester, Configuration tonyConf) {
+    this(amRMClient, launcher, rerequester, tonyConf, Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "gang-allocator");
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  @VisibleForTesting
+  GangAllocator(AMRMClientAsync<AMRMClient.ContainerRequest> amRMClient, Consumer<Container> launcher,
+      Consumer<Container> rerequester, Configuration tonyConf, ScheduledExecutorService timer) {
+    this.amRMClient = amRMClient;
+    this.launcher = launcher;
+    this.rerequester = rerequester;
+    this.timer = timer;
+    this.quorum = Math.min(1.0f, Math.max(0.0f, tonyConf.getFloat(TonyConfigurationKeys.GANG_ALLOCATION_QUORUM,
+        TonyConfigurationKeys.DEFAULT_GANG_ALLOCATION_QUORUM)));
+    this.timeoutMs = tonyConf.getInt(TonyConfigurationKeys.GANG_ALLOCATION_TIMEOUT_MS,
+        TonyConfigurationKeys.DEFAULT_GANG_ALLOCATION_TIMEOUT_MS);
+    this.initialBackoffMs = tonyConf.getInt(TonyConfigurationKeys.GANG_ALLOCATION_BACKOFF_MS,
+        TonyConfigurationKeys.DEFAULT_GANG_ALLOCATION_BACKOFF_MS);
+    this.maxBackoffMs = tonyConf.getInt(TonyConfigurationKeys.GANG_ALLOCATION_MAX_BACKOFF_MS,
+        TonyConfigurationKeys.DEFAULT_GANG_ALLOCATION_MAX_BACKOFF_MS);
+  }
+
+  /**
+   * Called after {@code numContainers} containers were asked for. Requests made while no containers are outstanding
+   * start a new gang.
+   */
+  public synchronized void onContainersRequested(int numContainers) {
+    if (numOutstanding == 0) {
+      gangFormed = false;
+      waitStartTime = System.currentTimeMillis();
+    }
+    numOutstanding += numContainers;
+  }
+
+  /**
+   * Called after {@code numContainers} outstanding asks were withdrawn, so that the gang no longer waits for them.
+   */
+  public synchronized void onContainerRequestsRemoved(int numContainers) {
+    numOutstanding = Math.max(0, numOutstanding - numContainers);
+  }
+
+  public synchronized void onContainersAllocated(List<Container> containers) {
+    for (Container container : containers) {
+      if (gangFormed) {
+        launch(container);
+      } else {
+        heldContainers.add(container);
+      }
+    }
+
+    if (!gangFormed && !heldContainers.isEmpty()) {
+      int gangSize = numOutstanding;
+      int quorumSize = Math.max(1, (int) Math.ceil(quorum * gangSize));
+      if (heldContainers.size() >= quorumSize) {
+        long waitMs = System.currentTimeMillis() - waitStartTime;
+        totalWaitMs += waitMs;
+        LOG.info("Gang of " + heldContainers.size() + " out of " + gangSize + " containers formed after " + waitMs
+            + " ms, launching.");
+        gangFormed = true;
+        numConsecutiveReleases = 0;
+        cancelDeadline();
+        for (Container container : heldContainers) {
+          launch(container);
+        }
+        heldContainers.clear();
+      } else {
+        LOG.info("Holding " + heldContainers.size() + " containers until " + quorumSize + " out of " + gangSize
+            + " are allocated.");
+        if (deadline == null) {
+          deadline = timer.schedule(this::onDeadline, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+  }
+
+  private void launch(Container container) {
+    numOutstanding--;
+    launcher.accept(container);
+  }
+
+  @VisibleForTesting
+  synchronized void onDeadline() {
+    deadline = null;
+    if (gangFormed || heldContainers.isEmpty()) {
+      return;
+    }
+
+    numReleases++;
+    long backoffMs = initialBackoffMs << Math.min(numConsecutiveReleases, 20);
+    backoffMs = Math.min(backoffMs > 0 ? backoffMs : Long.MAX_VALUE, maxBackoffMs);
+    numConsecutiveReleases++;
+    LOG.warn("Gang did not form within " + timeoutMs + " ms, releasing " + heldContainers.size() + " held containers"
+        + " and re-requesting them in " + backoffMs + " ms.");
+
+    List<Container> released = new ArrayList<>(heldContainers);
+    for (Container container : released) {
+      amRMClient.releaseAssignedContainer(container.getId());
+    }
+    heldContainers.clear();
+    int releaseGeneration = generation;
+    timer.schedule(() -> rerequest(released, releaseGeneration), backoffMs, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void rerequest(List<Container> released, int releaseGeneration) {
+    if (releaseGeneration != generation) {
+      return;
+    }
+    LOG.info("Re-requesting " + released.size() + " containers released by gang allocation.");
+    released.forEach(rerequester);
+  }
+
+  private void cancelDeadline() {
+    if (deadline != null) {
+      deadline.cancel(false);
+      deadline = null;
+    }
+  }
+
+  /**
+   * Returns the total time spent waiting for gangs to form, including the wait for a gang that has not formed yet.
+   */
+  public synchronized long getTotalWaitMs() {
+    return gangFormed || numOutstanding == 0 ? totalWaitMs : totalWaitMs + System.currentTimeMillis() - waitStartTime;
+  }
+
+  public synchronized int getNumReleases() {
+    return numReleases;
+  }
+
+  @VisibleForTesting
+  synchronized int getNumHeldContainers() {
+    return heldContainers.size();
+  }
+
+  /**
+   * Releases any held containers and forgets the outstanding ones, which the AM withdraws when it resets its session.
+   * Released containers waiting to be re-requested are not asked for again. Wait times and release counts are kept.
+   */
+  public synchronized void reset() {
+    if (!gangFormed && numOutstanding > 0) {
+      totalWaitMs += System.currentTimeMillis() - waitStartTime;
+    }
+    cancelDeadline();
+    for (Container container : heldContainers) {
+      amRMClient.releaseAssignedContainer(container.getId());
+    }
+    heldContainers.clear();
+    numOutstanding = 0;
+    gangFormed = false;
+    numConsecutiveReleases = 0;
+    generation++;
+  }
+
+  /**
+   * Releases any held containers and stops the deadline timer.
+   */
+  public synchronized void stop() {
+    cancelDeadline();
+    for (Container container : heldContainers) {
+      amRMClient.releaseAssignedContainer(container.getId());
+    }
+    heldContainers.clear();
+    timer.shutdownNow();
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.linkedin.tony.tensorflow.JobContainerRequest;
+import com.linkedin.tony.tensorflow.JobDependency;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Graph of the dependencies between job types, deciding when each job type can be scheduled.
+ *
+ * Every dependency is an edge from the upstream job type to the dependent one, with a condition on the upstream tasks
+ * ({@link JobDependency}). Each job type counts its unmet incoming edges, and each edge counts the upstream tasks that
+ * met its condition, so a task event only touches the outgoing edges of its own job type. A job type is ready once
+ * all its incoming edges are met.
+ *
+ * Not thread safe, {@link TaskScheduler} serializes access.
+ */
+public class JobDependencyGraph {
+  private static final Log LOG = LogFactory.getLog(JobDependencyGraph.class);
+
+  private final Map<String, Node> nodes = new LinkedHashMap<>();
+  private final List<String> topologicalOrder;
+
+  private JobDependencyGraph(List<JobContainerRequest> requests) {
+    for (JobContainerRequest request : requests) {
+      nodes.put(request.getJobName(), new Node(request));
+    }
+    for (Node node : nodes.values()) {
+      for (JobDependency dependency : node.request.getDependencies()) {
+        Node upstream = nodes.get(dependency.getUpstream());
+        if (upstream == null) {
+          // E.g. a job type without instances, which never has tasks to wait for.
+          LOG.warn(node.request.getJobName() + " depends on " + dependency.getUpstream() + ", which has no tasks. "
+              + "Ignoring the dependency.");
+          continue;
+        }
+        Edge edge = new Edge(node, dependency, dependency.getThreshold(upstream.request.getNumInstances()));
+        upstream.outgoing.add(edge);
+        if (!edge.met) {
+          node.numUnmetDependencies++;
+        }
+      }
+    }
+    this.topologicalOrder = sortTopologically();
+  }
+
+  /**
+   * Builds the dependency graph of {@code requests}.
+   * @return the graph, or null if the dependencies have a cycle
+   */
+  public static JobDependencyGraph build(List<JobContainerRequest> requests) {
+    JobDependencyGraph graph = new JobDependencyGraph(requests);
+    return graph.topologicalOrder == null ? null : graph;
+  }
+
+  /**
+   * Kahn's algorithm over all edges, met or not.
+   * @return job names ordered so that every job type comes after the job types it depends on, or null if there is a
+   *     cycle
+   */
+  private List<String> sortTopologically() {
+    Map<Node, Integer> inDegrees = new LinkedHashMap<>();
+    for (Node node : nodes.values()) {
+      inDegrees.putIfAbsent(node, 0);
+      for (Edge edge : node.outgoing) {
+        inDegrees.merge(edge.downstream, 1, Integer::sum);
+      }
+    }
+    Queue<Node> roots = new ArrayDeque<>();
+    inDegrees.forEach((node, inDegree) -> {
+      if (inDegree == 0) {
+        roots.add(node);
+      }
+    });
+    List<String> order = new ArrayList<>();
+    while (!roots.isEmpty()) {
+      Node node = roots.poll();
+      order.add(node.request.getJobName());
+      for (Edge edge : node.outgoing) {
+        if (inDegrees.merge(edge.downstream, -1, Integer::sum) == 0) {
+          roots.add(edge.downstream);
+        }
+      }
+    }
+    return order.size() == nodes.size() ? order : null;
+  }
+
+  public List<String> getTopologicalOrder() {
+    return Collections.unmodifiableList(topologicalOrder);
+  }
+
+  /**
+   * Returns the job types that don't wait for anything, in topological order.
+   */
+  public List<JobContainerRequest> getReadyJobs() {
+    List<JobContainerRequest> ready = new ArrayList<>();
+    for (String jobName : topologicalOrder) {
+      Node node = nodes.get(jobName);
+      if (node.numUnmetDependencies == 0) {
+        ready.add(node.request);
+      }
+    }
+    return ready;
+  }
+
+  public boolean isReady(JobContainerRequest request) {
+    Node node = nodes.get(request.getJobName());
+    return node == null || node.numUnmetDependencies == 0;
+  }
+
+  /**
+   * Records that a task of {@code jobName} finished.
+   * @return the job types that became ready
+   */
+  public List<JobContainerRequest> onTaskCompleted(String jobName, boolean succeeded) {
+    List<JobContainerRequest> ready = new ArrayList<>();
+    onTaskEvent(jobName, JobDependency.Condition.COMPLETED, ready);
+    if (succeeded) {
+      onTaskEvent(jobName, JobDependency.Condition.SUCCEEDED, ready);
+    }
+    return ready;
+  }
+
+  /**
+   * Records that a task of {@code jobName} registered its address.
+   * @return the job types that became ready
+   */
+  public List<JobContainerRequest> onTaskRegistered(String jobName) {
+    List<JobContainerRequest> ready = new ArrayList<>();
+    onTaskEvent(jobName, JobDependency.Condition.REGISTERED, ready);
+    return ready;
+  }
+
+  /**
+   * Recomputes how many upstream tasks the dependencies on {@code jobName} wait for, after the elastic job type was
+   * resized to {@code numInstances}. Dependencies that were already met stay met.
+   * @return the job types that became ready
+   */
+  public List<JobContainerRequest> onInstancesChanged(String jobName, int numInstances) {
+    List<JobContainerRequest> ready = new ArrayList<>();
+    Node node = nodes.get(jobName);
+    if (node == null) {
+      return ready;
+    }
+    for (Edge edge : node.outgoing) {
+      if (!edge.met) {
+        edge.threshold = edge.dependency.getThreshold(numInstances);
+        checkMet(edge, ready);
+      }
+    }
+    return ready;
+  }
+
+  private void onTaskEvent(String jobName, JobDependency.Condition condition, List<JobContainerRequest> ready) {
+    Node node = nodes.get(jobName);
+    if (node == null) {
+      return;
+    }
+    for (Edge edge : node.outgoing) {
+      if (edge.dependency.getCondition() != condition || edge.met) {
+        continue;
+      }
+      edge.count++;
+      checkMet(edge, ready);
+    }
+  }
+
+  private static void checkMet(Edge edge, List<JobContainerRequest> ready) {
+    if (edge.count >= edge.threshold) {
+      edge.met = true;
+      LOG.info("Dependency of " + edge.downstream.request.getJobName() + " on " + edge.dependency + " is met.");
+      if (--edge.downstream.numUnmetDependencies == 0) {
+        ready.add(edge.downstream.request);
+      }
+    }
+  }
+
+  private static class Node {
+    private final JobContainerRequest request;
+    private final List<Edge> outgoing = new ArrayList<>();
+    private int numUnmetDependencies = 0;
+
+    Node(JobContainerRequest request) {
+      this.request = request;
+    }
+  }
+
+  private static class Edge {
+    private final Node downstream;
+    private final JobDependency dependency;
+    // Number of upstream tasks that have to meet the dependency's condition, which follows elastic resizes
+    private int threshold;
+    private int count = 0;
+    // Once met, a dependency stays met even if its upstream job type grows
+    private boolean met;
+
+    Edge(Node downstream, JobDependency dependency, int threshold) {
+      this.downstream = downstream;
+      this.dependency = dependency;
+      this.threshold = threshold;
+      this.met = threshold <= 0;
+    }
+  }
+}
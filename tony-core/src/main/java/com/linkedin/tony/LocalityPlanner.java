@@ -0,0 +1,253 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.yarn.util.RackResolver;
+
+
+/**
+ * Turns the HDFS block locations of a job type's input paths (configured through
+ * {@link TonyConfigurationKeys#getInputPathsKey(String)}) into preferred hosts and racks for each of its task
+ * instances, and keeps track of how many of the containers allocated for those instances were node-local or
+ * rack-local.
+ *
+ * The input blocks are split into one contiguous shard of roughly equal size per instance, and each instance prefers
+ * the hosts holding most of its shard's bytes. Block locations are read once, ahead of scheduling, by
+ * {@link #loadBlockLocations(Collection)}.
+ */
+public class LocalityPlanner {
+  private static final Log LOG = LogFactory.getLog(LocalityPlanner.class);
+
+  /** Maximum number of hosts a single task instance asks for. **/
+  @VisibleForTesting
+  static final int MAX_PREFERRED_HOSTS_PER_TASK = 3;
+
+  private final Configuration fsConf;
+  private final Configuration tonyConf;
+
+  // job name -> blocks of its input paths, for job types with input paths
+  private final Map<String, List<BlockLocation>> blocksByJob = new ConcurrentHashMap<>();
+  // host -> rack, as reported in the topology paths of the input blocks
+  private final Map<String, String> rackByHost = new ConcurrentHashMap<>();
+  private final Map<String, LocalityCounters> countersByJob = new ConcurrentHashMap<>();
+
+  public LocalityPlanner(Configuration fsConf, Configuration tonyConf) {
+    this.fsConf = fsConf;
+    this.tonyConf = tonyConf;
+  }
+
+  /**
+   * Reads the block locations of the input paths of those of {@code jobNames} that have input paths configured and
+   * weren't read before. Listing the input paths can take a while on a busy NameNode, so the AM does it before
+   * scheduling rather than while scheduling, which also happens on RPC handler threads.
+   */
+  public void loadBlockLocations(Collection<String> jobNames) {
+    for (String jobName : jobNames) {
+      String[] inputPaths = tonyConf.getTrimmedStrings(TonyConfigurationKeys.getInputPathsKey(jobName));
+      if (inputPaths == null || inputPaths.length == 0 || blocksByJob.containsKey(jobName)) {
+        continue;
+      }
+      List<BlockLocation> blocks = new ArrayList<>();
+      try {
+        for (String inputPath : inputPaths) {
+          Path path = new Path(inputPath);
+          FileSystem fs = path.getFileSystem(fsConf);
+          RemoteIterator<LocatedFileStatus> files = fs.listFiles(path, true);
+          while (files.hasNext()) {
+            Collections.addAll(blocks, files.next().getBlockLocations());
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Failed to read block locations of the input paths of " + jobName + ", not requesting locality", e);
+        blocks.clear();
+      }
+      blocksByJob.put(jobName, blocks);
+    }
+  }
+
+  /**
+   * Returns the preferred placement of each of the {@code numInstances} instances of {@code jobName}, or null if the
+   * job type has no input paths configured or their block locations could not be read.
+   */
+  public List<Placement> planPlacements(String jobName, int numInstances) {
+    List<BlockLocation> blocks = blocksByJob.get(jobName);
+    if (blocks == null || numInstances <= 0) {
+      return null;
+    }
+
+    List<Placement> placements = planPlacements(jobName, blocks, numInstances);
+    if (placements == null) {
+      LOG.info("Input paths of " + jobName + " have no blocks, not requesting locality");
+      return null;
+    }
+    LOG.info("Planned locality for " + numInstances + " instances of " + jobName + " from " + blocks.size()
+        + " input blocks: " + placements);
+    return placements;
+  }
+
+  @VisibleForTesting
+  List<Placement> planPlacements(String jobName, List<BlockLocation> blocks, int numInstances) {
+    if (blocks.isEmpty()) {
+      return null;
+    }
+    long totalBytes = 0;
+    for (BlockLocation block : blocks) {
+      totalBytes += block.getLength();
+    }
+
+    long bytesPerShard = Math.max(1, (totalBytes + numInstances - 1) / numInstances);
+    List<Placement> shards = new ArrayList<>(numInstances);
+    Map<String, Long> shardBytesByHost = new HashMap<>();
+    long shardBytes = 0;
+    try {
+      for (BlockLocation block : blocks) {
+        String[] hosts = block.getHosts();
+        String[] topologyPaths = block.getTopologyPaths();
+        for (int i = 0; i < hosts.length; i++) {
+          shardBytesByHost.merge(hosts[i], block.getLength(), Long::sum);
+          if (i < topologyPaths.length) {
+            // Topology paths look like /rack/host:port.
+            int rackEnd = topologyPaths[i].lastIndexOf('/');
+            if (rackEnd > 0) {
+              rackByHost.put(hosts[i], topologyPaths[i].substring(0, rackEnd));
+            }
+          }
+        }
+        shardBytes += block.getLength();
+        if (shardBytes >= bytesPerShard && shards.size() < numInstances - 1) {
+          shards.add(toPlacement(shardBytesByHost));
+          shardBytesByHost.clear();
+          shardBytes = 0;
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to read block hosts", e);
+      return null;
+    }
+    if (!shardBytesByHost.isEmpty()) {
+      shards.add(toPlacement(shardBytesByHost));
+    }
+    if (shards.isEmpty()) {
+      return null;
+    }
+
+    // With fewer blocks than instances, instances share the shards.
+    List<Placement> placements = new ArrayList<>(numInstances);
+    for (int i = 0; i < numInstances; i++) {
+      placements.add(shards.get(i % shards.size()));
+    }
+    return placements;
+  }
+
+  private Placement toPlacement(Map<String, Long> bytesByHost) {
+    List<String> nodes = bytesByHost.entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+        .limit(MAX_PREFERRED_HOSTS_PER_TASK)
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+    List<String> racks = nodes.stream().map(rackByHost::get).filter(rack -> rack != null).distinct()
+        .collect(Collectors.toList());
+    return new Placement(nodes, racks);
+  }
+
+  /**
+   * Records a container allocated on {@code host} for the instance of {@code jobName} that asked for
+   * {@code placement}. It is node-local if {@code host} is one of the placement's hosts, not any host holding input of
+   * the job type.
+   */
+  public void onContainerAllocated(String jobName, String host, Placement placement) {
+    LocalityCounters counters = countersByJob.computeIfAbsent(jobName, k -> new LocalityCounters());
+    counters.numAllocated.incrementAndGet();
+    if (placement.nodes.contains(host)) {
+      counters.numNodeLocal.incrementAndGet();
+    } else if (placement.racks.contains(resolveRack(host))) {
+      counters.numRackLocal.incrementAndGet();
+    }
+  }
+
+  private String resolveRack(String host) {
+    String rack = rackByHost.get(host);
+    if (rack == null) {
+      RackResolver.init(fsConf);
+      rack = RackResolver.resolve(host).getNetworkLocation();
+      rackByHost.put(host, rack);
+    }
+    return rack;
+  }
+
+  /**
+   * Returns the node-local and rack-local share of the allocations for planned instances of each job type, keyed by
+   * {@link Constants#AM_NODE_LOCAL_ALLOCATION_SHARE} and {@link Constants#AM_RACK_LOCAL_ALLOCATION_SHARE} suffixed
+   * with the job name.
+   */
+  public Map<String, Double> getLocalityMetrics() {
+    Map<String, Double> metrics = new HashMap<>();
+    countersByJob.forEach((jobName, counters) -> {
+      int numAllocated = counters.numAllocated.get();
+      if (numAllocated > 0) {
+        metrics.put(Constants.AM_NODE_LOCAL_ALLOCATION_SHARE + "_" + jobName,
+            (double) counters.numNodeLocal.get() / numAllocated);
+        metrics.put(Constants.AM_RACK_LOCAL_ALLOCATION_SHARE + "_" + jobName,
+            (double) counters.numRackLocal.get() / numAllocated);
+      }
+    });
+    return metrics;
+  }
+
+  /**
+   * Preferred hosts and racks of a single task instance.
+   */
+  public static class Placement {
+    private final List<String> nodes;
+    private final List<String> racks;
+
+    Placement(List<String> nodes, List<String> racks) {
+      this.nodes = nodes;
+      this.racks = racks;
+    }
+
+    public String[] getNodes() {
+      return nodes.toArray(new String[0]);
+    }
+
+    public String[] getRacks() {
+      return racks.isEmpty() ? null : racks.toArray(new String[0]);
+    }
+
+    public boolean contains(String host) {
+      return nodes.contains(host);
+    }
+
+    @Override
+    public String toString() {
+      return nodes.toString();
+    }
+  }
+
+  private static class LocalityCounters {
+    private final AtomicInteger numAllocated = new AtomicInteger();
+    private final AtomicInteger numNodeLocal = new AtomicInteger();
+    private final AtomicInteger numRackLocal = new AtomicInteger();
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
+
+
+/**
+ * Decides which nodes the AM should ask the RM not to allocate containers on anymore.
+ *
+ * A node is blacklisted once {@code maxFailuresPerNode} task failures were seen on it (failed container launches,
+ * containers that failed because of the node and missed heartbeats), as soon as the RM reports it unusable, e.g.
+ * because of a failed health check, or as soon as a straggling task is replaced because of it.
+ * Nodes only blacklisted for being unusable are taken off the blacklist when the RM reports them usable again. At most
+ * {@code maxBlacklistedNodes} nodes are blacklisted, so that a job whose tasks fail everywhere isn't left waiting for
+ * containers the RM can't give it anymore.
+ */
+public class NodeBlacklist {
+  public enum Reason {
+    LAUNCH_FAILED, TASK_FAILED, MISSED_HEARTBEATS, NODE_UNUSABLE, STRAGGLER
+  }
+
+  // Diagnostics of the containers the RM releases when their node manager is lost
+  private static final String LOST_NODE_DIAGNOSTICS = "*lost* node";
+
+  private final int maxFailuresPerNode;
+  private final int maxBlacklistedNodes;
+
+  private final Map<String, Integer> failuresPerNode = new HashMap<>();
+  private final Set<String> blacklistedNodes = new HashSet<>();
+  // Blacklisted nodes that haven't reached maxFailuresPerNode, and leave the blacklist once usable again
+  private final Set<String> unusableNodes = new HashSet<>();
+
+  public NodeBlacklist(int maxFailuresPerNode, int maxBlacklistedNodes) {
+    this.maxFailuresPerNode = maxFailuresPerNode;
+    this.maxBlacklistedNodes = maxBlacklistedNodes;
+  }
+
+  /**
+   * Whether a container that finished with {@code exitStatus} and {@code diagnostics} failed because of its node: its
+   * disks failed, it couldn't be localized or launched, or its node manager was lost. Failures of the task itself,
+   * e.g. a script exiting with 1 or a container exceeding its memory, would fail on any node and don't count.
+   */
+  public static boolean isNodeFailure(int exitStatus, String diagnostics) {
+    switch (exitStatus) {
+      case ContainerExitStatus.DISKS_FAILED:
+      case ContainerExitStatus.INVALID:
+        return true;
+      case ContainerExitStatus.ABORTED:
+        return diagnostics != null && diagnostics.contains(LOST_NODE_DIAGNOSTICS);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Counts a task failure on {@code host}.
+   * @return whether {@code host} should now be blacklisted
+   */
+  public synchronized boolean recordFailure(String host) {
+    int numFailures = failuresPerNode.merge(host, 1, Integer::sum);
+    if (numFailures < maxFailuresPerNode) {
+      return false;
+    }
+    if (unusableNodes.remove(host)) {
+      // Already blacklisted, and now stays blacklisted once usable again.
+      return false;
+    }
+    return add(host);
+  }
+
+  /**
+   * Counts a task that was replaced for straggling on {@code host}, which is blacklisted right away.
+   * @return whether {@code host} should now be blacklisted
+   */
+  public synchronized boolean onStraggler(String host) {
+    if (unusableNodes.remove(host)) {
+      // Already blacklisted, and now stays blacklisted once usable again.
+      return false;
+    }
+    return add(host);
+  }
+
+  /**
+   * Marks {@code host} unusable, as reported by the RM.
+   * @return whether {@code host} should now be blacklisted
+   */
+  public synchronized boolean onNodeUnusable(String host) {
+    if (!add(host)) {
+      return false;
+    }
+    unusableNodes.add(host);
+    return true;
+  }
+
+  /**
+   * Marks {@code host} usable again, as reported by the RM.
+   * @return whether {@code host} should be taken off the blacklist
+   */
+  public synchronized boolean onNodeUsable(String host) {
+    if (!unusableNodes.remove(host)) {
+      return false;
+    }
+    blacklistedNodes.remove(host);
+    return true;
+  }
+
+  private boolean add(String host) {
+    return !blacklistedNodes.contains(host) && blacklistedNodes.size() < maxBlacklistedNodes
+        && blacklistedNodes.add(host);
+  }
+
+  public synchronized int getNumFailures(String host) {
+    return failuresPerNode.getOrDefault(host, 0);
+  }
+
+  public synchronized boolean isBlacklisted(String host) {
+    return blacklistedNodes.contains(host);
+  }
+
+  public synchronized int getNumBlacklisted() {
+    return blacklistedNodes.size();
+  }
+}
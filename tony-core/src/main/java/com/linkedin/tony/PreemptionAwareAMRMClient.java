@@ -0,0 +1,45 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.yarn.api.protocolrecords.AllocateResponse;
+import org.apache.hadoop.yarn.api.records.PreemptionMessage;
+import org.apache.hadoop.yarn.client.api.AMRMClient.ContainerRequest;
+import org.apache.hadoop.yarn.client.api.impl.AMRMClientImpl;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+
+
+/**
+ * AMRMClient that hands the preemption message of every allocate response to a listener. The callback handler of
+ * {@link org.apache.hadoop.yarn.client.api.async.AMRMClientAsync} drops preemption messages, so the AM wraps this
+ * client instead. The listener gets null if the RM doesn't want any containers back.
+ */
+class PreemptionAwareAMRMClient extends AMRMClientImpl<ContainerRequest> {
+  private static final Log LOG = LogFactory.getLog(PreemptionAwareAMRMClient.class);
+
+  private final Consumer<PreemptionMessage> preemptionListener;
+
+  PreemptionAwareAMRMClient(Consumer<PreemptionMessage> preemptionListener) {
+    this.preemptionListener = preemptionListener;
+  }
+
+  @Override
+  public AllocateResponse allocate(float progressIndicator) throws YarnException, IOException {
+    AllocateResponse response = super.allocate(progressIndicator);
+    if (response != null) {
+      // Failing here would fail the AM's heartbeat to the RM
+      try {
+        preemptionListener.accept(response.getPreemptionMessage());
+      } catch (RuntimeException e) {
+        LOG.error("Failed to handle preemption message", e);
+      }
+    }
+    return response;
+  }
+}
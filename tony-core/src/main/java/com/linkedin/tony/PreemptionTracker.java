@@ -0,0 +1,142 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.PreemptionContainer;
+import org.apache.hadoop.yarn.api.records.PreemptionMessage;
+
+
+/**
+ * Tracks the containers the RM asks the AM to give back, as read from the preemption messages of its allocate
+ * responses.
+ *
+ * The RM repeats its request in every allocate response until it has preempted the containers, so a container is only
+ * new the first time it shows up. A container that no longer shows up has been spared, e.g. because capacity freed up
+ * elsewhere. Containers still requested {@code graceMs} after they first showed up are due for release, which gives
+ * their tasks that long to checkpoint.
+ */
+public class PreemptionTracker {
+  private final long graceMs;
+
+  // Requested containers that haven't been released yet, with the time they were first requested
+  private final Map<ContainerId, Long> warnedContainers = new ConcurrentHashMap<>();
+  // Requested containers that have been released, until the RM stops requesting them
+  private final Set<ContainerId> releasedContainers = new HashSet<>();
+
+  private int numWarned = 0;
+  private int numReleased = 0;
+
+  public PreemptionTracker(long graceMs) {
+    this.graceMs = graceMs;
+  }
+
+  /**
+   * Returns the containers of both the strict and the negotiable contract of {@code message}. The negotiable contract
+   * would also be met by other containers of the same size, but every task is needed, so the AM has no better
+   * candidates than the RM's.
+   */
+  public static Set<ContainerId> getContainers(PreemptionMessage message) {
+    if (message == null) {
+      return Collections.emptySet();
+    }
+    Set<ContainerId> containers = new HashSet<>();
+    if (message.getStrictContract() != null) {
+      for (PreemptionContainer container : message.getStrictContract().getContainers()) {
+        containers.add(container.getId());
+      }
+    }
+    if (message.getContract() != null) {
+      for (PreemptionContainer container : message.getContract().getContainers()) {
+        containers.add(container.getId());
+      }
+    }
+    return containers;
+  }
+
+  /**
+   * Replaces the containers requested by the RM with {@code requested}.
+   * @return the containers requested for the first time, whose tasks should be warned
+   */
+  public synchronized List<ContainerId> update(Set<ContainerId> requested, long now) {
+    warnedContainers.keySet().retainAll(requested);
+    releasedContainers.retainAll(requested);
+    List<ContainerId> newContainers = new ArrayList<>();
+    for (ContainerId containerId : requested) {
+      if (!releasedContainers.contains(containerId) && warnedContainers.putIfAbsent(containerId, now) == null) {
+        newContainers.add(containerId);
+      }
+    }
+    numWarned += newContainers.size();
+    return newContainers;
+  }
+
+  /**
+   * Marks {@code containers} as requested, e.g. because the whole application is shutting down, without waiting for
+   * the RM to request them.
+   * @return the containers that weren't requested yet
+   */
+  public synchronized List<ContainerId> warn(Collection<ContainerId> containers, long now) {
+    List<ContainerId> newContainers = new ArrayList<>();
+    for (ContainerId containerId : containers) {
+      if (!releasedContainers.contains(containerId) && warnedContainers.putIfAbsent(containerId, now) == null) {
+        newContainers.add(containerId);
+      }
+    }
+    numWarned += newContainers.size();
+    return newContainers;
+  }
+
+  /**
+   * Returns the containers that have been requested for at least the grace period, each only once.
+   */
+  public synchronized List<ContainerId> pollDue(long now) {
+    List<ContainerId> due = new ArrayList<>();
+    Iterator<Map.Entry<ContainerId, Long>> it = warnedContainers.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<ContainerId, Long> entry = it.next();
+      if (now - entry.getValue() >= graceMs) {
+        due.add(entry.getKey());
+        releasedContainers.add(entry.getKey());
+        it.remove();
+      }
+    }
+    numReleased += due.size();
+    return due;
+  }
+
+  /**
+   * Whether the task in {@code containerId} has been warned and its container not released yet. Safe to call from
+   * any thread.
+   */
+  public boolean isWarned(ContainerId containerId) {
+    return warnedContainers.containsKey(containerId);
+  }
+
+  /**
+   * Forgets a container that completed.
+   */
+  public synchronized void remove(ContainerId containerId) {
+    warnedContainers.remove(containerId);
+    releasedContainers.remove(containerId);
+  }
+
+  public synchronized int getNumWarned() {
+    return numWarned;
+  }
+
+  public synchronized int getNumReleased() {
+    return numReleased;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Lets registering tasks wait on the AM until all expected tasks have registered, instead of polling for the cluster
+ * spec.
+ *
+ * A waiting call holds an RPC handler, so at most {@code maxWaiters} calls wait at a time, leaving the other handlers
+ * to heartbeats and the other RPCs. Calls beyond that return right away and the task asks again.
+ */
+public class RegistrationBarrier {
+  private static final Log LOG = LogFactory.getLog(RegistrationBarrier.class);
+
+  private final BooleanSupplier allTasksRegistered;
+  private final int maxWaiters;
+  private final LongSupplier clock;
+
+  private int numWaiters = 0;
+  // When the first task of the session registered, negative before that
+  private long firstRegistrationTime = -1;
+  // Time from the first to the last registration of the session, negative until all tasks registered
+  private long latencyMs = -1;
+
+  public RegistrationBarrier(BooleanSupplier allTasksRegistered, int maxWaiters) {
+    this(allTasksRegistered, maxWaiters, System::currentTimeMillis);
+  }
+
+  RegistrationBarrier(BooleanSupplier allTasksRegistered, int maxWaiters, LongSupplier clock) {
+    this.allTasksRegistered = allTasksRegistered;
+    this.maxWaiters = Math.max(0, maxWaiters);
+    this.clock = clock;
+  }
+
+  public synchronized void onTaskRegistered() {
+    if (firstRegistrationTime < 0) {
+      firstRegistrationTime = clock.getAsLong();
+    }
+    update();
+  }
+
+  /**
+   * Releases the waiting calls if all expected tasks have registered. Called whenever a task registers or the
+   * number of expected tasks drops.
+   */
+  public synchronized void update() {
+    if (!allTasksRegistered.getAsBoolean()) {
+      return;
+    }
+    if (latencyMs < 0 && firstRegistrationTime >= 0) {
+      latencyMs = clock.getAsLong() - firstRegistrationTime;
+      LOG.info("All tasks registered " + latencyMs + " ms after the first one.");
+    }
+    notifyAll();
+  }
+
+  /**
+   * Waits up to {@code waitMs} for all expected tasks to register. Returns right away if {@code maxWaiters} calls are
+   * already waiting.
+   * @return whether all expected tasks have registered
+   */
+  public synchronized boolean await(long waitMs) throws InterruptedException {
+    if (allTasksRegistered.getAsBoolean() || waitMs <= 0 || numWaiters >= maxWaiters) {
+      return allTasksRegistered.getAsBoolean();
+    }
+    numWaiters++;
+    try {
+      long deadline = System.currentTimeMillis() + waitMs;
+      long remainingMs = waitMs;
+      while (!allTasksRegistered.getAsBoolean() && remainingMs > 0) {
+        wait(remainingMs);
+        remainingMs = deadline - System.currentTimeMillis();
+      }
+      return allTasksRegistered.getAsBoolean();
+    } finally {
+      numWaiters--;
+    }
+  }
+
+  /**
+   * Starts over for a new session. Calls still waiting re-check the barrier against the new session.
+   */
+  public synchronized void reset() {
+    firstRegistrationTime = -1;
+    latencyMs = -1;
+    notifyAll();
+  }
+
+  /**
+   * Time from the first to the last registration of the session, or a negative value if not all tasks registered.
+   */
+  public synchronized long getLatencyMs() {
+    return latencyMs;
+  }
+}
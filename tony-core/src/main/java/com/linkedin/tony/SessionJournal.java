@@ -0,0 +1,298 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.linkedin.tony.tensorflow.TonySession.TonyTask;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.yarn.api.records.Container;
+
+
+/**
+ * Append-only journal of the AM's session state, written to the job directory so that a new AM attempt can pick up
+ * the containers of the previous attempt instead of starting over.
+ *
+ * Each record is a tab separated line:
+ * <pre>
+ *   S  sessionId                                                  a session started, discarding earlier records
+ *   A  jobName  index  attempt  containerId  nodeHttpAddress      a task attempt was assigned a container
+ *   R  jobName  index  host:port                                  a task registered its address
+ *   C  jobName  index  exitStatus                                 a task completed
+ * </pre>
+ * Records are written by a background thread and flushed in batches, so that journaling doesn't add HDFS latency to
+ * RPC handlers. A torn last line left by a crashed AM is ignored on replay. Every attempt writes its own journal,
+ * starting with a compacted copy of the state it recovered.
+ */
+public class SessionJournal {
+  private static final Log LOG = LogFactory.getLog(SessionJournal.class);
+  private static final String SEPARATOR = "\t";
+  // Queued by stop() to tell the writer that no more records follow
+  private static final String END_OF_JOURNAL = "";
+
+  private final BlockingQueue<String> records = new LinkedBlockingQueue<>();
+  private final FSDataOutputStream out;
+  private final Thread writer;
+
+  public SessionJournal(FileSystem fs, Path journalFile) throws IOException {
+    this.out = fs.create(journalFile, true);
+    this.writer = new Thread(this::writeRecords, "session-journal");
+    this.writer.setDaemon(true);
+    this.writer.start();
+    LOG.info("Journaling session state to " + journalFile);
+  }
+
+  /**
+   * Returns the journal of the given AM attempt in {@code jobDir}.
+   */
+  public static Path getJournalPath(Path jobDir, int appAttemptId) {
+    return new Path(jobDir, Constants.SESSION_JOURNAL_FILE_PREFIX + appAttemptId);
+  }
+
+  public void sessionStarted(int sessionId) {
+    append("S", sessionId);
+  }
+
+  public void taskAssigned(TonyTask task, Container container) {
+    append("A", task.getJobName(), task.getTaskIndex(), task.getAttempt(), container.getId(),
+        container.getNodeHttpAddress());
+  }
+
+  public void taskRegistered(TonyTask task, String hostPort) {
+    append("R", task.getJobName(), task.getTaskIndex(), hostPort);
+  }
+
+  public void taskCompleted(TonyTask task, int exitStatus) {
+    append("C", task.getJobName(), task.getTaskIndex(), exitStatus);
+  }
+
+  /**
+   * Writes the tasks recovered from the previous attempt, so that the next attempt doesn't need older journals.
+   */
+  public void writeSnapshot(int sessionId, Collection<RecoveredTask> tasks) {
+    sessionStarted(sessionId);
+    for (RecoveredTask task : tasks) {
+      append("A", task.jobName, task.index, task.attempt, task.containerId, task.nodeHttpAddress);
+      if (task.hostPort != null) {
+        append("R", task.jobName, task.index, task.hostPort);
+      }
+      if (task.exitStatus != null) {
+        append("C", task.jobName, task.index, task.exitStatus);
+      }
+    }
+  }
+
+  private void append(Object... fields) {
+    StringBuilder record = new StringBuilder();
+    for (Object field : fields) {
+      if (record.length() > 0) {
+        record.append(SEPARATOR);
+      }
+      record.append(field);
+    }
+    records.add(record.append('\n').toString());
+  }
+
+  private void writeRecords() {
+    List<String> batch = new ArrayList<>();
+    boolean ended = false;
+    while (!ended) {
+      try {
+        batch.add(records.take());
+        records.drainTo(batch);
+        for (String line : batch) {
+          if (line.isEmpty()) {
+            ended = true;
+            break;
+          }
+          out.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+        out.hflush();
+      } catch (InterruptedException e) {
+        LOG.warn("Session journal writer interrupted");
+        ended = true;
+      } catch (IOException e) {
+        LOG.error("Failed to write " + batch.size() + " session journal records", e);
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Writes out the queued records and closes the journal.
+   */
+  public void stop() {
+    records.add(END_OF_JOURNAL);
+    try {
+      writer.join();
+      out.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      LOG.error("Failed to close session journal", e);
+    }
+  }
+
+  /**
+   * Replays the journal at {@code journalFile}.
+   * @return the session state it recorded, or null if there is no journal
+   */
+  public static RecoveredSession read(FileSystem fs, Path journalFile) throws IOException {
+    try (FSDataInputStream in = fs.open(journalFile)) {
+      return replay(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Replays the journal of the latest AM attempt before {@code appAttemptId} in {@code jobDir} that started a session.
+   * Attempts that failed before writing their snapshot, e.g. while recovering, are skipped.
+   * @return the session state, or null if no earlier attempt started a session
+   */
+  public static RecoveredSession readLatest(FileSystem fs, Path jobDir, int appAttemptId) throws IOException {
+    for (int attemptId = appAttemptId - 1; attemptId > 0; attemptId--) {
+      RecoveredSession session = read(fs, getJournalPath(jobDir, attemptId));
+      if (session != null && session.started) {
+        return session;
+      }
+    }
+    return null;
+  }
+
+  @VisibleForTesting
+  static RecoveredSession replay(BufferedReader reader) throws IOException {
+    RecoveredSession session = new RecoveredSession();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String[] fields = line.split(SEPARATOR, -1);
+      try {
+        switch (fields[0]) {
+          case "S":
+            session = new RecoveredSession();
+            session.sessionId = Integer.parseInt(fields[1]);
+            session.started = true;
+            break;
+          case "A":
+            RecoveredTask task = new RecoveredTask(fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                fields[4], fields[5]);
+            session.tasks.put(task.getId(), task);
+            break;
+          case "R":
+            session.getTask(fields[1], fields[2]).hostPort = fields[3];
+            break;
+          case "C":
+            session.getTask(fields[1], fields[2]).exitStatus = Integer.parseInt(fields[3]);
+            break;
+          default:
+            LOG.warn("Skipping unknown session journal record: " + line);
+            break;
+        }
+      } catch (RuntimeException e) {
+        // A record torn by a crash, or one about a task that was never assigned.
+        LOG.warn("Skipping malformed session journal record: " + line);
+      }
+    }
+    return session;
+  }
+
+  /**
+   * Session state replayed from a journal.
+   */
+  public static class RecoveredSession {
+    private int sessionId = 0;
+    // Whether the journal recorded the start of the session, which an attempt's snapshot begins with
+    private boolean started = false;
+    // Latest attempt of every task that was assigned a container, in assignment order
+    private final Map<String, RecoveredTask> tasks = new LinkedHashMap<>();
+
+    public int getSessionId() {
+      return sessionId;
+    }
+
+    public Collection<RecoveredTask> getTasks() {
+      return tasks.values();
+    }
+
+    private RecoveredTask getTask(String jobName, String index) {
+      RecoveredTask task = tasks.get(jobName + ":" + index);
+      if (task == null) {
+        throw new IllegalStateException("No container was assigned to " + jobName + ":" + index);
+      }
+      return task;
+    }
+  }
+
+  /**
+   * The latest attempt of a task as recorded in a journal.
+   */
+  public static class RecoveredTask {
+    private final String jobName;
+    private final int index;
+    private final int attempt;
+    private final String containerId;
+    private final String nodeHttpAddress;
+    private String hostPort;
+    private Integer exitStatus;
+
+    RecoveredTask(String jobName, int index, int attempt, String containerId, String nodeHttpAddress) {
+      this.jobName = jobName;
+      this.index = index;
+      this.attempt = attempt;
+      this.containerId = containerId;
+      this.nodeHttpAddress = nodeHttpAddress;
+    }
+
+    public String getId() {
+      return jobName + ":" + index;
+    }
+
+    public String getJobName() {
+      return jobName;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public int getAttempt() {
+      return attempt;
+    }
+
+    public String getContainerId() {
+      return containerId;
+    }
+
+    public String getNodeHttpAddress() {
+      return nodeHttpAddress;
+    }
+
+    /** The address the task registered, or null if it hadn't registered yet. **/
+    public String getHostPort() {
+      return hostPort;
+    }
+
+    /** The task's exit status, or null if it was still running. **/
+    public Integer getExitStatus() {
+      return exitStatus;
+    }
+  }
+}
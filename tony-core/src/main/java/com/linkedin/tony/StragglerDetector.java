@@ -0,0 +1,134 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * Finds tasks that make much less progress than the other tasks of their job type. In synchronous training the
+ * slowest task sets the pace of the whole job, so a task on a bad node is worth replacing.
+ *
+ * A task's progress is one of the metrics reported by its {@link TaskMonitor}: its CPU or GPU utilization, or the
+ * rate at which its training step advances. A task is a straggler once the median progress of its job type has been
+ * more than {@code slowdown-factor} times its own for {@code min-duration-ms}. Job types with fewer than
+ * {@link #MIN_TASKS_TO_COMPARE} reporting tasks have no meaningful median and are skipped.
+ */
+public class StragglerDetector {
+  static final int MIN_TASKS_TO_COMPARE = 3;
+
+  enum Signal {
+    CPU(Constants.CPU_UTILIZATION, false),
+    GPU(Constants.GPU_UTILIZATION, false),
+    STEP(Constants.TRAINING_STEP, true);
+
+    private final String metricName;
+    // Whether the metric is a counter whose rate of change is the progress, rather than the progress itself
+    private final boolean cumulative;
+
+    Signal(String metricName, boolean cumulative) {
+      this.metricName = metricName;
+      this.cumulative = cumulative;
+    }
+  }
+
+  private final Signal signal;
+  private final double slowdownFactor;
+  private final long minDurationMs;
+
+  // Progress state of the task attempts of each job type, keyed by attempt
+  private final Map<String, Map<String, Progress>> progressByJob = new HashMap<>();
+
+  public StragglerDetector(Configuration tonyConf) {
+    this.signal = Signal.valueOf(tonyConf.get(TonyConfigurationKeys.STRAGGLER_SIGNAL,
+        TonyConfigurationKeys.DEFAULT_STRAGGLER_SIGNAL).toUpperCase());
+    this.slowdownFactor = tonyConf.getFloat(TonyConfigurationKeys.STRAGGLER_SLOWDOWN_FACTOR,
+        TonyConfigurationKeys.DEFAULT_STRAGGLER_SLOWDOWN_FACTOR);
+    this.minDurationMs = tonyConf.getLong(TonyConfigurationKeys.STRAGGLER_MIN_DURATION_MS,
+        TonyConfigurationKeys.DEFAULT_STRAGGLER_MIN_DURATION_MS);
+  }
+
+  /**
+   * Name of the task metric progress is measured by.
+   */
+  public String getMetricName() {
+    return signal.metricName;
+  }
+
+  /**
+   * Records the latest metric value of every running task attempt of {@code jobName}. Attempts that aren't in
+   * {@code samples} are forgotten, and negative values, which mean a metric isn't available yet, are ignored.
+   * @param samples the metric value of each task attempt, keyed by an id that changes when a task is relaunched
+   * @return the id of the slowest attempt if it has been a straggler for long enough, or null
+   */
+  public synchronized String update(String jobName, Map<String, Double> samples, long now) {
+    Map<String, Progress> previous = progressByJob.getOrDefault(jobName, Collections.emptyMap());
+    Map<String, Progress> current = new HashMap<>();
+    for (Map.Entry<String, Double> sample : samples.entrySet()) {
+      if (sample.getValue() == null || sample.getValue() < 0) {
+        continue;
+      }
+      Progress progress = previous.get(sample.getKey());
+      current.put(sample.getKey(), progress == null ? new Progress() : progress);
+      current.get(sample.getKey()).update(sample.getValue(), now);
+    }
+    progressByJob.put(jobName, current);
+
+    List<Double> rates = new ArrayList<>();
+    for (Progress progress : current.values()) {
+      if (progress.rate >= 0) {
+        rates.add(progress.rate);
+      }
+    }
+    if (rates.size() < MIN_TASKS_TO_COMPARE) {
+      current.values().forEach(progress -> progress.behindSince = -1);
+      return null;
+    }
+    Collections.sort(rates);
+    double median = rates.get(rates.size() / 2);
+
+    String straggler = null;
+    double stragglerRate = Double.MAX_VALUE;
+    for (Map.Entry<String, Progress> entry : current.entrySet()) {
+      Progress progress = entry.getValue();
+      if (progress.rate < 0 || progress.rate * slowdownFactor >= median) {
+        progress.behindSince = -1;
+        continue;
+      }
+      if (progress.behindSince < 0) {
+        progress.behindSince = now;
+      }
+      if (now - progress.behindSince >= minDurationMs && progress.rate < stragglerRate) {
+        straggler = entry.getKey();
+        stragglerRate = progress.rate;
+      }
+    }
+    return straggler;
+  }
+
+  private class Progress {
+    private double lastValue = -1;
+    private long lastTime = -1;
+    // Progress since the previous sample, negative until known
+    private double rate = -1;
+    // When the task fell behind its peers, negative if it isn't behind
+    private long behindSince = -1;
+
+    private void update(double value, long now) {
+      if (!signal.cumulative) {
+        rate = value;
+      } else if (lastTime >= 0 && now > lastTime && value >= lastValue) {
+        rate = (value - lastValue) * 1000 / (now - lastTime);
+      }
+      lastValue = value;
+      lastTime = now;
+    }
+  }
+}
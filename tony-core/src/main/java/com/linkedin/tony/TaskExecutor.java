@@ -5,22 +5,28 @@
 package com.linkedin.tony;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.linkedin.tony.rpc.MetricsRpc;
 import com.linkedin.tony.rpc.impl.ApplicationRpcClient;
 import com.linkedin.tony.util.Utils;
+import java.io.File;
 import java.io.IOException;
-import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.api.records.ContainerId;
 
@@ -35,6 +41,9 @@ public class TaskExecutor {
   private static final Log LOG = LogFactory.getLog(TaskExecutor.class);
 
   private static final int MAX_NUM_FAILED_HB_ATTEMPTS = 5;
+  private static final long REGISTRATION_RETRY_INTERVAL_MS = 1000;
+  // How long a task killed to restart it for a new session has to exit before it's killed forcibly
+  private static final long TASK_KILL_GRACE_PERIOD_MS = 10 * 1000;
 
   @VisibleForTesting
   protected Configuration tonyConf = new Configuration(false);
@@ -49,12 +58,15 @@ public class TaskExecutor {
   private String amHost;
   private int amPort;
 
-  private MetricsRpc metricsProxy;
-  private int metricsRPCPort;
   private int metricsIntervalMs;
 
   private String taskCommand;
-  private String clusterSpec;
+  private volatile String clusterSpec;
+  // When the cluster can change while tasks run (elastic job types, or failed tasks relaunched at a new address), tasks
+  // get the latest cluster spec in a file, which is rewritten when tasks join or leave the cluster
+  private boolean dynamicClusterSpec;
+  private File clusterSpecFile;
+  private long clusterSpecVersion = -1;
   private String jobName;
   private int taskIndex;
   private String taskId;
@@ -62,12 +74,27 @@ public class TaskExecutor {
   private boolean isChief;
   private Configuration yarnConf = new Configuration(false);
   private Configuration hdfsConf = new Configuration(false);
-  private ApplicationRpcClient proxy;
+  private volatile ApplicationRpcClient proxy;
   private Map<String, String> shellEnv = new HashMap<>();
   private int hbInterval;
+  private long registrationWaitMs;
   private final ScheduledExecutorService scheduledThreadPool = Executors.newScheduledThreadPool(2);
   private int numFailedHBAttempts = 0;
+  private TaskMonitor taskMonitor;
+  // When the AM is restarted with work preserving restart, reconnect to the new attempt instead of giving up
+  private boolean workPreservingRestart;
+  private long amReconnectTimeoutMs;
+  private long firstFailedHBTime = -1;
   private MLFramework framework;
+  // The session the task runs for. When the AM retries the job and keeps this container, the task is killed and
+  // restarted for the new session.
+  private volatile int sessionId;
+  private int restartSessionId;
+  private Process taskProcess;
+  // Created, and the optional signal sent to the task, when the task's container is about to be preempted
+  private File preemptionFile;
+  private String preemptionSignal;
+  private volatile boolean preemptionWarned = false;
 
   protected TaskExecutor() { }
 
@@ -116,86 +143,103 @@ public class TaskExecutor {
 
     LOG.info("Setting up application RPC client, connecting to: " + executor.amHost + ":" + executor.amPort);
     executor.proxy = ApplicationRpcClient.getInstance(executor.amHost, executor.amPort, executor.yarnConf);
-
-    LOG.info("Setting up metrics RPC client, connecting to: " + executor.amHost + ":" + executor.metricsRPCPort);
-    executor.metricsProxy = RPC.getProxy(MetricsRpc.class, RPC.getProtocolVersion(MetricsRpc.class),
-        new InetSocketAddress(executor.amHost, executor.metricsRPCPort), executor.yarnConf);
+    executor.taskMonitor = new TaskMonitor(executor.jobName, executor.taskIndex, executor.yarnConf, executor.tonyConf,
+        executor.proxy);
     executor.scheduledThreadPool.scheduleAtFixedRate(
-        new TaskMonitor(executor.jobName, executor.taskIndex, executor.yarnConf, executor.tonyConf, executor.metricsProxy),
+        executor.taskMonitor,
         0,
         executor.metricsIntervalMs,
         TimeUnit.MILLISECONDS);
 
-    executor.setupPorts();
-    executor.clusterSpec = executor.registerAndGetClusterSpec();
+    // Start the Heartbeater..
+    executor.scheduledThreadPool.scheduleAtFixedRate(executor.new Heartbeater(),
+        0, executor.hbInterval, TimeUnit.MILLISECONDS);
+    return executor;
+  }
 
-    if (executor.clusterSpec == null) {
+  /**
+   * Registers with the AM, waits for the cluster spec and sets up the task's environment with it. Called again when
+   * the task restarts for a new session.
+   */
+  private void registerAndSetUpTaskEnv() throws Exception {
+    setupPorts();
+    clusterSpec = registerAndGetClusterSpec();
+
+    if (clusterSpec == null) {
       LOG.error("Failed to register worker with AM.");
       throw new Exception("Failed to register worker with AM.");
     }
-    LOG.info("Successfully registered and got cluster spec: " + executor.clusterSpec);
+    LOG.info("Successfully registered and got cluster spec: " + clusterSpec);
+    if (dynamicClusterSpec) {
+      writeClusterSpecFile(clusterSpec);
+      shellEnv.put(Constants.CLUSTER_SPEC_FILE, clusterSpecFile.getAbsolutePath());
+    }
+    shellEnv.put(Constants.STEP_FILE, new File(Constants.STEP_FILE_NAME).getAbsolutePath());
+    // A warning about the preemption of the container doesn't apply to a restarted task.
+    Files.deleteIfExists(preemptionFile.toPath());
+    shellEnv.put(Constants.PREEMPTION_FILE, preemptionFile.getAbsolutePath());
 
-    switch (executor.framework) {
+    switch (framework) {
       case TENSORFLOW:
         LOG.info("Setting up TensorFlow job...");
-        executor.shellEnv.put(Constants.JOB_NAME, String.valueOf(executor.jobName));
-        executor.shellEnv.put(Constants.TASK_INDEX, String.valueOf(executor.taskIndex));
-        executor.shellEnv.put(Constants.CLUSTER_SPEC, String.valueOf(executor.clusterSpec));
-        executor.shellEnv.put(Constants.TF_CONFIG, Utils.constructTFConfig(executor.clusterSpec, executor.jobName, executor.taskIndex));
+        shellEnv.put(Constants.JOB_NAME, String.valueOf(jobName));
+        shellEnv.put(Constants.TASK_INDEX, String.valueOf(taskIndex));
+        shellEnv.put(Constants.CLUSTER_SPEC, String.valueOf(clusterSpec));
+        shellEnv.put(Constants.TF_CONFIG, Utils.constructTFConfig(clusterSpec, jobName, taskIndex));
         break;
       case PYTORCH:
         LOG.info("Setting up PyTorch job...");
-        String initMethod = Utils.parseClusterSpecForPytorch(executor.clusterSpec);
+        String initMethod = Utils.parseClusterSpecForPytorch(clusterSpec);
         if (initMethod == null) {
           System.exit(-1);
         }
         LOG.info("Init method is: " + initMethod);
-        executor.shellEnv.put(Constants.INIT_METHOD, initMethod);
-        executor.shellEnv.put(Constants.RANK, String.valueOf(executor.taskIndex));
-        executor.shellEnv.put(Constants.WORLD, String.valueOf(executor.numTasks));
+        shellEnv.put(Constants.INIT_METHOD, initMethod);
+        shellEnv.put(Constants.RANK, String.valueOf(taskIndex));
+        shellEnv.put(Constants.WORLD, String.valueOf(numTasks));
         break;
       case MXNET:
         LOG.info("Setting up MXNet job...");
-        String[] dmlcServer = Utils.parseClusterSpecForMXNet(executor.clusterSpec);
+        String[] dmlcServer = Utils.parseClusterSpecForMXNet(clusterSpec);
         if (dmlcServer == null) {
           System.exit(-1);
         }
-        int numServer = executor.tonyConf.getInt(TonyConfigurationKeys.getInstancesKey(Constants.SERVER_JOB_NAME), 0);
-        int numWorker = executor.tonyConf.getInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 0);
+        int numServer = tonyConf.getInt(TonyConfigurationKeys.getInstancesKey(Constants.SERVER_JOB_NAME), 0);
+        int numWorker = tonyConf.getInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 0);
         LOG.info("init DMLC is: " + dmlcServer[0] + " port: " + dmlcServer[1]);
-        LOG.info("init DMLC ROLE: " + executor.jobName);
+        LOG.info("init DMLC ROLE: " + jobName);
         LOG.info("init DMLC NUM_PS: " + numServer);
         LOG.info("init DMLC NUM_WORKER: " + numWorker);
-        executor.shellEnv.put(Constants.DMLC_ROLE, executor.jobName);
-        executor.shellEnv.put(Constants.DMLC_PS_ROOT_URI, dmlcServer[0]);
-        executor.shellEnv.put(Constants.DMLC_PS_ROOT_PORT, dmlcServer[1]);
-        executor.shellEnv.put("DMLC_LOCAL", "0");
-        //executor.shellEnv.put("DMLC_USE_KUBERNETES", "0");
-        executor.shellEnv.put(Constants.DMLC_NUM_SERVER, String.valueOf(numServer));
-        executor.shellEnv.put(Constants.DMLC_NUM_WORKER, String.valueOf(numWorker));
-        //executor.shellEnv.put(Constants.PS_VERBOSE, "2");
+        shellEnv.put(Constants.DMLC_ROLE, jobName);
+        shellEnv.put(Constants.DMLC_PS_ROOT_URI, dmlcServer[0]);
+        shellEnv.put(Constants.DMLC_PS_ROOT_PORT, dmlcServer[1]);
+        shellEnv.put("DMLC_LOCAL", "0");
+        //shellEnv.put("DMLC_USE_KUBERNETES", "0");
+        shellEnv.put(Constants.DMLC_NUM_SERVER, String.valueOf(numServer));
+        shellEnv.put(Constants.DMLC_NUM_WORKER, String.valueOf(numWorker));
+        //shellEnv.put(Constants.PS_VERBOSE, "2");
         break;
       case HOROVOD:
         // No extra environment variables needed; horovodrun takes care of setup.
         // Setting TF_CONFIG causes problems if "chief" isn't set.
         break;
       default:
-        throw new RuntimeException("Unsupported executor framework: " + executor.framework);
+        throw new RuntimeException("Unsupported executor framework: " + framework);
     }
-    return executor;
   }
+
   public static void main(String[] unused) throws Exception {
     LOG.info("TaskExecutor is running..");
-    TaskExecutor executor = null;
-    try {
-      executor = requireNonNull(createExecutor());
-    } finally {
-      if (executor != null) {
+    TaskExecutor executor = requireNonNull(createExecutor());
+    int exitCode;
+    do {
+      try {
+        executor.registerAndSetUpTaskEnv();
+      } finally {
         executor.releasePorts();
       }
-    }
-
-    int exitCode = Utils.executeShell(executor.taskCommand, executor.timeOut, executor.shellEnv);
+      exitCode = executor.executeTask();
+    } while (executor.prepareRestart());
     // START - worker skew testing:
     executor.skewAndHangIfTesting();
     // END - worker skew testing:
@@ -205,6 +249,132 @@ public class TaskExecutor {
     System.exit(exitCode);
   }
 
+  /**
+   * Runs the task command until it exits. Returns right away if the task is to be restarted for a new session before it
+   * started.
+   */
+  private int executeTask() throws IOException, InterruptedException {
+    Process process;
+    synchronized (this) {
+      if (restartSessionId > sessionId) {
+        return -1;
+      }
+      process = Utils.startShell(taskCommand, shellEnv);
+      taskProcess = process;
+    }
+    if (timeOut > 0) {
+      process.waitFor(timeOut, TimeUnit.MILLISECONDS);
+    } else {
+      process.waitFor();
+    }
+    synchronized (this) {
+      taskProcess = null;
+    }
+    return process.exitValue();
+  }
+
+  /**
+   * Kills the task, so that it's restarted for session {@code newSessionId} of the AM, which kept this container when
+   * it retried the job. The task gets {@link #TASK_KILL_GRACE_PERIOD_MS} to exit before it's killed forcibly.
+   */
+  private synchronized void restartForSession(int newSessionId) {
+    if (newSessionId <= restartSessionId) {
+      return;
+    }
+    LOG.info("[" + taskId + "] AM retried the job in session " + newSessionId + ", restarting the task.");
+    restartSessionId = newSessionId;
+    Process process = taskProcess;
+    if (process != null) {
+      // Destroying the process only kills the shell running the task command, so signal all of the task's processes.
+      int pid = Utils.getPid(process);
+      List<Integer> processTree = pid < 0 ? Collections.emptyList() : Utils.getProcessTree(pid);
+      if (processTree.isEmpty()) {
+        process.destroy();
+      } else {
+        Utils.signalProcesses(processTree, "TERM");
+      }
+      scheduledThreadPool.schedule(() -> {
+        List<Integer> alive = processTree.stream().filter(Utils::isProcessAlive).collect(Collectors.toList());
+        if (process.isAlive() || !alive.isEmpty()) {
+          LOG.warn("[" + taskId + "] Task didn't exit within " + TASK_KILL_GRACE_PERIOD_MS + " ms, killing it.");
+          process.destroyForcibly();
+          if (!alive.isEmpty()) {
+            Utils.signalProcesses(alive, "KILL");
+          }
+        }
+      }, TASK_KILL_GRACE_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Switches to the AM's new session if the task was killed to restart it.
+   * @return whether the task should be restarted
+   */
+  private synchronized boolean prepareRestart() {
+    if (restartSessionId <= sessionId) {
+      return false;
+    }
+    sessionId = restartSessionId;
+    shellEnv.put(Constants.SESSION_ID, String.valueOf(sessionId));
+    // Re-registration fetches the cluster spec of the new session.
+    clusterSpec = null;
+    clusterSpecVersion = -1;
+    // The restarted task is warned again if the container is still about to be preempted.
+    if (preemptionWarned) {
+      preemptionWarned = false;
+      try {
+        Files.deleteIfExists(preemptionFile.toPath());
+      } catch (IOException e) {
+        LOG.error("[" + taskId + "] Failed to delete preemption file " + preemptionFile, e);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Warns the task once the AM reports that its container is about to be preempted, so that it can checkpoint, by
+   * creating the preemption file and sending it the preemption signal if one is configured. The file is deleted if the
+   * RM spares the container after all.
+   */
+  private void updatePreemptionWarning(boolean preempted) {
+    if (preempted == preemptionWarned) {
+      return;
+    }
+    preemptionWarned = preempted;
+    try {
+      if (!preempted) {
+        LOG.info("[" + taskId + "] Container is no longer about to be preempted.");
+        Files.deleteIfExists(preemptionFile.toPath());
+        return;
+      }
+      LOG.warn("[" + taskId + "] Container is about to be preempted, warning the task.");
+      Files.write(preemptionFile.toPath(), String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      LOG.error("[" + taskId + "] Failed to update preemption file " + preemptionFile, e);
+    }
+    if (preemptionSignal != null && !preemptionSignal.isEmpty()) {
+      signalTask(preemptionSignal);
+    }
+  }
+
+  private synchronized void signalTask(String signal) {
+    int pid = taskProcess == null ? -1 : Utils.getPid(taskProcess);
+    if (pid < 0) {
+      LOG.warn("[" + taskId + "] Task isn't running, not sending it signal " + signal + ".");
+      return;
+    }
+    try {
+      int exitCode = new ProcessBuilder("kill", "-s", signal, String.valueOf(pid)).inheritIO().start().waitFor();
+      if (exitCode != 0) {
+        LOG.warn("[" + taskId + "] Failed to send signal " + signal + " to the task, kill exited with " + exitCode);
+      }
+    } catch (IOException e) {
+      LOG.warn("[" + taskId + "] Failed to send signal " + signal + " to the task", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   protected void initConfigs() {
     jobName = System.getenv(Constants.JOB_NAME);
     taskIndex = Integer.parseInt(System.getenv(Constants.TASK_INDEX));
@@ -214,6 +384,9 @@ public class TaskExecutor {
 
     String isChiefEnvValue = System.getenv(Constants.IS_CHIEF);
     isChief = Boolean.parseBoolean(isChiefEnvValue);
+    String sessionIdEnvValue = System.getenv(Constants.SESSION_ID);
+    sessionId = sessionIdEnvValue == null ? 0 : Integer.parseInt(sessionIdEnvValue);
+    restartSessionId = sessionId;
 
     amHost = System.getenv(Constants.AM_HOST);
     amPort = Integer.parseInt(System.getenv(Constants.AM_PORT));
@@ -223,6 +396,8 @@ public class TaskExecutor {
         TonyConfigurationKeys.DEFAULT_WORKER_TIMEOUT);
     hbInterval = tonyConf.getInt(TonyConfigurationKeys.TASK_HEARTBEAT_INTERVAL_MS,
         TonyConfigurationKeys.DEFAULT_TASK_HEARTBEAT_INTERVAL_MS);
+    registrationWaitMs = tonyConf.getLong(TonyConfigurationKeys.TASK_REGISTRATION_WAIT_MS,
+        TonyConfigurationKeys.DEFAULT_TASK_REGISTRATION_WAIT_MS);
     String[] shellEnvs = tonyConf.getStrings(TonyConfigurationKeys.EXECUTION_ENV);
     shellEnv = Utils.parseKeyValue(shellEnvs);
     taskCommand = tonyConf.get(TonyConfigurationKeys.getExecuteCommandKey(jobName),
@@ -235,8 +410,18 @@ public class TaskExecutor {
     LOG.info("Task command: " + taskCommand);
     framework = MLFramework.valueOf(
         tonyConf.get(TonyConfigurationKeys.FRAMEWORK_NAME, TonyConfigurationKeys.DEFAULT_FRAMEWORK_NAME).toUpperCase());
-
-    metricsRPCPort = Integer.parseInt(System.getenv(Constants.METRICS_RPC_PORT));
+    // Replaced stragglers come back at a new address, like retried tasks.
+    dynamicClusterSpec = Utils.isJobTypeElastic(jobName, tonyConf) || Utils.isTaskRetryEnabled(tonyConf)
+        || tonyConf.getBoolean(TonyConfigurationKeys.STRAGGLER_DETECTION_ENABLED,
+            TonyConfigurationKeys.DEFAULT_STRAGGLER_DETECTION_ENABLED);
+    clusterSpecFile = new File(Constants.CLUSTER_SPEC_FILE_NAME);
+    preemptionFile = new File(Constants.PREEMPTION_FILE_NAME);
+    preemptionSignal = tonyConf.get(TonyConfigurationKeys.TASK_PREEMPTION_SIGNAL);
+
+    workPreservingRestart = tonyConf.getBoolean(TonyConfigurationKeys.AM_WORK_PRESERVING_RESTART_ENABLED,
+        TonyConfigurationKeys.DEFAULT_AM_WORK_PRESERVING_RESTART_ENABLED);
+    amReconnectTimeoutMs = tonyConf.getLong(TonyConfigurationKeys.TASK_AM_RECONNECT_TIMEOUT_MS,
+        TonyConfigurationKeys.DEFAULT_TASK_AM_RECONNECT_TIMEOUT_MS);
     metricsIntervalMs = tonyConf.getInt(TonyConfigurationKeys.TASK_METRICS_UPDATE_INTERVAL_MS,
         TonyConfigurationKeys.DEFAULT_TASK_METRICS_UPDATE_INTERVAL_MS);
 
@@ -249,15 +434,56 @@ public class TaskExecutor {
     String hostName = Utils.getCurrentHostName();
     LOG.info("ContainerId is: " + containerId + " HostName is: " + hostName);
 
-    // Start the Heartbeater..
-    scheduledThreadPool.scheduleAtFixedRate(new Heartbeater(),
-        0, hbInterval, TimeUnit.MILLISECONDS);
-
     LOG.info("Connecting to " + amHost + ":" + amPort + " to register worker spec: " + jobName + " " + taskIndex + " "
              + hostName + ":" + rpcPort);
-    return Utils.pollTillNonNull(() ->
-        proxy.registerWorkerSpec(jobName + ":" + taskIndex,
-            hostName + ":" + rpcPort), 3, 0);
+    long startTime = System.currentTimeMillis();
+    try {
+      while (true) {
+        // The AM holds the call until all expected tasks registered, or up to registrationWaitMs
+        long callTime = System.currentTimeMillis();
+        String spec = proxy.registerWorkerSpec(jobName + ":" + taskIndex, hostName + ":" + rpcPort,
+            registrationWaitMs);
+        if (spec != null) {
+          LOG.info("Got the cluster spec " + (System.currentTimeMillis() - startTime) + " ms after registering.");
+          return spec;
+        }
+        // The AM answers right away when no RPC handler is free to wait, so don't ask again too quickly, and don't
+        // ask again at the same time as the other tasks
+        long sleepMs = Utils.jitter(REGISTRATION_RETRY_INTERVAL_MS) - (System.currentTimeMillis() - callTime);
+        if (sleepMs > 0) {
+          Thread.sleep(sleepMs);
+        }
+      }
+    } catch (Exception e) {
+      LOG.error("Failed to register with the AM", e);
+      return null;
+    }
+  }
+
+  /**
+   * Atomically replaces the cluster spec file, so that readers never see a partially written spec.
+   */
+  private void writeClusterSpecFile(String spec) throws IOException {
+    File tmpFile = new File(clusterSpecFile.getAbsolutePath() + ".tmp");
+    Files.write(tmpFile.toPath(), spec.getBytes(StandardCharsets.UTF_8));
+    Files.move(tmpFile.toPath(), clusterSpecFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Re-fetches the cluster spec if the AM reported a newer version in its last heartbeat response.
+   */
+  private void refreshClusterSpecIfChanged() throws Exception {
+    long version = proxy.getClusterSpecVersion();
+    if (version > clusterSpecVersion) {
+      String spec = proxy.getClusterSpec();
+      writeClusterSpecFile(spec);
+      if (!spec.equals(clusterSpec)) {
+        LOG.info("[" + taskId + "] Cluster spec changed to version " + version + ": " + spec);
+      }
+      clusterSpec = spec;
+      clusterSpecVersion = version;
+    }
   }
 
   private void registerTensorBoardUrl() {
@@ -271,9 +497,8 @@ public class TaskExecutor {
   }
 
   private void registerExecutionResult(int exitCode, String jobName, String jobIndex) {
-    String sessionId = System.getenv(Constants.SESSION_ID);
     String response = Utils.pollTillNonNull(
-        () -> proxy.registerExecutionResult(exitCode, jobName, jobIndex, sessionId), 1, 60);
+        () -> proxy.registerExecutionResult(exitCode, jobName, jobIndex, String.valueOf(sessionId)), 1, 60);
     if (response != null) {
       LOG.info("AM response for result execution run: " + response);
     }
@@ -300,8 +525,27 @@ public class TaskExecutor {
       try {
         if (hbMissCounter == 0) {
           LOG.debug("[" + taskId + "] Sending Ping !!");
-          proxy.taskExecutorHeartbeat(taskId);
+          // Once the AM has handed out our task handle, heartbeat with it to skip task id parsing on the AM.
+          int taskHandle = proxy.getTaskHandle(taskId);
+          double[] metrics = taskMonitor.pollPendingMetrics();
+          boolean preempted;
+          if (taskHandle >= 0) {
+            preempted = proxy.taskExecutorHeartbeat(taskHandle, metrics);
+          } else {
+            preempted = proxy.taskExecutorHeartbeat(taskId);
+            if (metrics != null) {
+              proxy.updateMetrics(jobName, taskIndex, metrics);
+            }
+          }
+          if (dynamicClusterSpec && clusterSpec != null) {
+            refreshClusterSpecIfChanged();
+          }
+          if (proxy.getSessionId() > sessionId) {
+            restartForSession(proxy.getSessionId());
+          }
+          updatePreemptionWarning(preempted);
           numFailedHBAttempts = 0;
+          firstFailedHBTime = -1;
           hbMissCounter = numHbToMiss;
         } else {
           LOG.debug("[" + taskId + "] Skipping heartbeat for Testing !!");
@@ -309,7 +553,17 @@ public class TaskExecutor {
         }
       } catch (Exception e) {
         LOG.error("[" + taskId + "] Failed to send Heart Beat.", e);
-        if (++numFailedHBAttempts > MAX_NUM_FAILED_HB_ATTEMPTS) {
+        if (workPreservingRestart) {
+          if (firstFailedHBTime < 0) {
+            firstFailedHBTime = System.currentTimeMillis();
+          }
+          if (System.currentTimeMillis() - firstFailedHBTime > amReconnectTimeoutMs) {
+            LOG.error("[" + taskId + "] Couldn't reach the AM for " + amReconnectTimeoutMs + " ms. "
+                + "Going to stop heartbeating!");
+            throw new RuntimeException(e);
+          }
+          reconnectIfAMMoved();
+        } else if (++numFailedHBAttempts > MAX_NUM_FAILED_HB_ATTEMPTS) {
           LOG.error("[" + taskId + "] Exceeded max number of allowed failed heart beat send attempts. "
               + "Going to stop heartbeating!");
           e.printStackTrace();
@@ -321,6 +575,38 @@ public class TaskExecutor {
     }
   }
 
+  /**
+   * Reads the address the current AM attempt published in the job directory, and switches the RPC client over to it
+   * if it's not the AM this executor is talking to.
+   */
+  private void reconnectIfAMMoved() {
+    String appId = ContainerId.fromString(System.getenv(ApplicationConstants.Environment.CONTAINER_ID.name()))
+        .getApplicationAttemptId().getApplicationId().toString();
+    Path historyRoot = new Path(tonyConf.get(TonyConfigurationKeys.TONY_HISTORY_LOCATION,
+        TonyConfigurationKeys.DEFAULT_TONY_HISTORY_LOCATION));
+    Path addressFile = new Path(new Path(new Path(historyRoot, Constants.TONY_HISTORY_INTERMEDIATE), appId),
+        Constants.AM_ADDRESS_FILE_NAME);
+    String newAmHost;
+    int newAmPort;
+    try (FSDataInputStream in = historyRoot.getFileSystem(hdfsConf).open(addressFile)) {
+      String[] address = IOUtils.toString(in, StandardCharsets.UTF_8).trim().split(":");
+      newAmHost = address[0];
+      newAmPort = Integer.parseInt(address[1]);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("[" + taskId + "] Failed to read AM address from " + addressFile, e);
+      return;
+    }
+    if (newAmHost.equals(amHost) && newAmPort == amPort) {
+      return;
+    }
+
+    LOG.info("[" + taskId + "] AM moved to " + newAmHost + ":" + newAmPort + ", reconnecting.");
+    amHost = newAmHost;
+    amPort = newAmPort;
+    proxy = ApplicationRpcClient.getInstance(amHost, amPort, yarnConf);
+    taskMonitor.setRpcClient(proxy);
+  }
+
   private void skewAndHangIfTesting() {
     String skewInstr = System.getenv(Constants.TEST_TASK_EXECUTOR_SKEW);
     if (skewInstr != null) {
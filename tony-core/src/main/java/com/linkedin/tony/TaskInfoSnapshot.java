@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.linkedin.tony.rpc.TaskInfo;
+import com.linkedin.tony.rpc.TaskInfoUpdate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * Immutable, versioned copy of the task infos the AM serves to clients. Each version remembers the version at which
+ * every task info last changed, so that a client which already has a version only gets the task infos that changed
+ * since.
+ *
+ * A version in which task infos disappeared can't be expressed as a delta, so clients older than it get all task infos.
+ * So do clients ahead of the snapshot, e.g. of a previous AM attempt. Versions start at the time the first snapshot
+ * was created, so that the versions of a new AM attempt are ahead of the ones of previous attempts.
+ */
+public final class TaskInfoSnapshot {
+  private final long version;
+  // Clients with an older version need all task infos
+  private final long fullUpdateVersion;
+  // name:index -> task info
+  private final Map<String, TaskInfo> taskInfos;
+  // name:index -> version at which the task info last changed
+  private final Map<String, Long> changeVersions;
+
+  private TaskInfoSnapshot(long version, long fullUpdateVersion, Map<String, TaskInfo> taskInfos,
+      Map<String, Long> changeVersions) {
+    this.version = version;
+    this.fullUpdateVersion = fullUpdateVersion;
+    this.taskInfos = taskInfos;
+    this.changeVersions = changeVersions;
+  }
+
+  public static TaskInfoSnapshot create(long initialVersion) {
+    return new TaskInfoSnapshot(initialVersion, initialVersion, Collections.emptyMap(), Collections.emptyMap());
+  }
+
+  /**
+   * Returns the next version of this snapshot, holding copies of {@code current}, or this snapshot if none of the task
+   * infos changed.
+   */
+  public TaskInfoSnapshot update(Collection<TaskInfo> current) {
+    long nextVersion = version + 1;
+    Map<String, TaskInfo> nextTaskInfos = new HashMap<>();
+    Map<String, Long> nextChangeVersions = new HashMap<>();
+    boolean changed = false;
+    for (TaskInfo taskInfo : current) {
+      String key = taskInfo.getName() + ":" + taskInfo.getIndex();
+      TaskInfo previous = taskInfos.get(key);
+      if (taskInfo.equals(previous)) {
+        nextTaskInfos.put(key, previous);
+        nextChangeVersions.put(key, changeVersions.get(key));
+      } else {
+        // Copied, as the task's own task info keeps changing
+        TaskInfo copy = new TaskInfo(taskInfo.getName(), taskInfo.getIndex(), taskInfo.getUrl());
+        copy.setStatus(taskInfo.getStatus());
+        nextTaskInfos.put(key, copy);
+        nextChangeVersions.put(key, nextVersion);
+        changed = true;
+      }
+    }
+    boolean removed = !nextTaskInfos.keySet().containsAll(taskInfos.keySet());
+    if (!changed && !removed) {
+      return this;
+    }
+    return new TaskInfoSnapshot(nextVersion, removed ? nextVersion : fullUpdateVersion, nextTaskInfos,
+        nextChangeVersions);
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public Set<TaskInfo> getTaskInfos() {
+    return new HashSet<>(taskInfos.values());
+  }
+
+  /**
+   * Returns the task infos that changed after {@code sinceVersion}, or all task infos if they can't be expressed as a
+   * delta, e.g. for a negative {@code sinceVersion}.
+   */
+  public TaskInfoUpdate getUpdate(long sinceVersion) {
+    if (sinceVersion < fullUpdateVersion || sinceVersion > version) {
+      return new TaskInfoUpdate(version, false, getTaskInfos());
+    }
+    Set<TaskInfo> changed = sinceVersion == version ? Collections.emptySet() : changeVersions.entrySet().stream()
+        .filter(entry -> entry.getValue() > sinceVersion)
+        .map(entry -> taskInfos.get(entry.getKey()))
+        .collect(Collectors.toSet());
+    return new TaskInfoUpdate(version, true, changed);
+  }
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.linkedin.tony.events.Metric;
+import com.linkedin.tony.tensorflow.TonySession.TonyTask;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+
+/**
+ * Tracks the heartbeats of registered tasks, and reports a task as dead once it missed too many heartbeats in a row.
+ *
+ * Heartbeats arrive on the RPC handler threads, so recording one is lock-free: the time a task was last seen lives in
+ * a primitive array indexed by the task's handle ({@link TonyTask#getHandle()}). Expiry runs on a single thread driven
+ * by a {@link TimerWheel}, with a timer per task set to when the task would expire if it sent no more heartbeats. When
+ * the timer fires the task is either expired, or the timer is set again from its latest heartbeat, so heartbeats never
+ * touch the wheel.
+ *
+ * Registering a task again, e.g. the next attempt on the same handle, replaces the previous registration. Timers of
+ * replaced and unregistered tasks are recognized by the generation of their handle and dropped.
+ */
+public class TaskLivenessMonitor {
+  private static final Log LOG = LogFactory.getLog(TaskLivenessMonitor.class);
+
+  private final long heartbeatIntervalMs;
+  private final long expireIntervalMs;
+  private final Consumer<TonyTask> onExpired;
+  private final LongSupplier clock;
+  private final TimerWheel wheel;
+  private ScheduledExecutorService ticker;
+
+  private volatile Slots slots = new Slots(0);
+  // Timers of newly registered tasks, moved to the wheel on the next tick
+  private final Queue<Long> newTimers = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong maxHeartbeatIntervalMs = new AtomicLong();
+  private final LongAdder numMissedHeartbeats = new LongAdder();
+  private final LongAdder numExpiredTasks = new LongAdder();
+
+  public TaskLivenessMonitor(Configuration tonyConf, Consumer<TonyTask> onExpired) {
+    this(tonyConf, onExpired, System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  TaskLivenessMonitor(Configuration tonyConf, Consumer<TonyTask> onExpired, LongSupplier clock) {
+    this.heartbeatIntervalMs = tonyConf.getInt(TonyConfigurationKeys.TASK_HEARTBEAT_INTERVAL_MS,
+        TonyConfigurationKeys.DEFAULT_TASK_HEARTBEAT_INTERVAL_MS);
+    int maxMissedHeartbeats = tonyConf.getInt(TonyConfigurationKeys.TASK_MAX_MISSED_HEARTBEATS,
+        TonyConfigurationKeys.DEFAULT_TASK_MAX_MISSED_HEARTBEATS);
+    this.expireIntervalMs = heartbeatIntervalMs * Math.max(3, maxMissedHeartbeats);
+    this.onExpired = onExpired;
+    this.clock = clock;
+    // Tasks expire at most a heartbeat interval late
+    this.wheel = new TimerWheel(heartbeatIntervalMs, clock.getAsLong());
+  }
+
+  public synchronized void start() {
+    ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "task-liveness-monitor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ticker.scheduleAtFixedRate(() -> {
+      try {
+        tick();
+      } catch (RuntimeException e) {
+        LOG.error("Failed to check task heartbeats", e);
+      }
+    }, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    LOG.info("Expiring tasks after " + expireIntervalMs + " ms without heartbeats.");
+  }
+
+  public synchronized void stop() {
+    if (ticker != null) {
+      ticker.shutdownNow();
+    }
+  }
+
+  /**
+   * Starts monitoring {@code task}'s heartbeats, as if it just sent one.
+   */
+  public synchronized void register(TonyTask task) {
+    int handle = task.getHandle();
+    if (handle < 0) {
+      LOG.warn("Task " + task.getId() + " has no handle, not monitoring its heartbeats.");
+      return;
+    }
+    if (handle >= slots.tasks.length()) {
+      slots = slots.grow(Math.max(handle + 1, 2 * slots.tasks.length()));
+    }
+    Slots current = slots;
+    long now = clock.getAsLong();
+    int generation = current.generations.incrementAndGet(handle);
+    current.lastSeen.set(handle, now);
+    current.maxIntervalMs.set(handle, 0);
+    current.numMissed.set(handle, 0);
+    current.tasks.set(handle, task);
+    newTimers.add(timerKey(handle, generation));
+  }
+
+  /**
+   * Stops monitoring {@code task}. Does nothing if {@code task} isn't registered, e.g. if another attempt took over its
+   * handle. Its heartbeat metrics are kept until the handle is registered again.
+   */
+  public synchronized void unregister(TonyTask task) {
+    Slots current = slots;
+    int handle = task.getHandle();
+    if (handle >= 0 && handle < current.tasks.length() && current.tasks.compareAndSet(handle, task, null)) {
+      current.generations.incrementAndGet(handle);
+    }
+  }
+
+  /**
+   * Stops monitoring all tasks, e.g. when the session is reset.
+   */
+  public synchronized void unregisterAll() {
+    Slots current = slots;
+    for (int handle = 0; handle < current.tasks.length(); handle++) {
+      if (current.tasks.getAndSet(handle, null) != null) {
+        current.generations.incrementAndGet(handle);
+      }
+    }
+  }
+
+  /**
+   * Records a heartbeat from {@code task}, without locking.
+   * @return false if {@code task} isn't registered, in which case the heartbeat is ignored
+   */
+  public boolean receivedPing(TonyTask task) {
+    Slots current = slots;
+    int handle = task.getHandle();
+    if (handle < 0 || handle >= current.tasks.length() || current.tasks.get(handle) != task) {
+      return false;
+    }
+    long now = clock.getAsLong();
+    long intervalMs = now - current.lastSeen.getAndSet(handle, now);
+    if (intervalMs > current.maxIntervalMs.get(handle)) {
+      current.maxIntervalMs.accumulateAndGet(handle, intervalMs, Math::max);
+      maxHeartbeatIntervalMs.accumulateAndGet(intervalMs, Math::max);
+    }
+    long missed = intervalMs / heartbeatIntervalMs - 1;
+    if (missed > 0) {
+      current.numMissed.addAndGet(handle, missed);
+      numMissedHeartbeats.add(missed);
+    }
+    return true;
+  }
+
+  /**
+   * Expires the tasks whose timers are due. Called by the ticker thread, tasks expired by the call are reported after
+   * releasing the lock so that the callback can call back into the monitor.
+   */
+  @VisibleForTesting
+  void tick() {
+    List<TonyTask> expired = new ArrayList<>();
+    synchronized (this) {
+      Slots current = slots;
+      long now = clock.getAsLong();
+      Long key;
+      while ((key = newTimers.poll()) != null) {
+        int handle = handle(key);
+        wheel.schedule(key, current.lastSeen.get(handle) + expireIntervalMs);
+      }
+      wheel.advance(now, timer -> {
+        int handle = handle(timer);
+        if (generation(timer) != current.generations.get(handle)) {
+          return;
+        }
+        TonyTask task = current.tasks.get(handle);
+        long lastSeen = current.lastSeen.get(handle);
+        if (task == null) {
+          return;
+        }
+        if (now - lastSeen < expireIntervalMs) {
+          wheel.schedule(timer, lastSeen + expireIntervalMs);
+        } else if (current.tasks.compareAndSet(handle, task, null)) {
+          current.generations.incrementAndGet(handle);
+          expired.add(task);
+        }
+      });
+    }
+    for (TonyTask task : expired) {
+      LOG.warn("Task " + task.getId() + " sent no heartbeat for " + expireIntervalMs + " ms.");
+      numExpiredTasks.increment();
+      onExpired.accept(task);
+    }
+  }
+
+  /**
+   * Heartbeat metrics of {@code task}, reported in its TASK_FINISHED event.
+   */
+  public List<Metric> getTaskMetrics(TonyTask task) {
+    Slots current = slots;
+    int handle = task.getHandle();
+    if (handle < 0 || handle >= current.tasks.length()) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(Arrays.asList(
+        new Metric(Constants.MAX_HEARTBEAT_INTERVAL_MS, (double) current.maxIntervalMs.get(handle)),
+        new Metric(Constants.MISSED_HEARTBEATS, (double) current.numMissed.get(handle))));
+  }
+
+  /**
+   * Heartbeat metrics across all tasks, reported in the APPLICATION_FINISHED event.
+   */
+  public Map<String, Double> getMetrics() {
+    Map<String, Double> metrics = new HashMap<>();
+    metrics.put(Constants.AM_MAX_HEARTBEAT_INTERVAL_MS, (double) maxHeartbeatIntervalMs.get());
+    metrics.put(Constants.AM_MISSED_HEARTBEATS, numMissedHeartbeats.doubleValue());
+    metrics.put(Constants.AM_TASKS_EXPIRED, numExpiredTasks.doubleValue());
+    return metrics;
+  }
+
+  private static long timerKey(int handle, int generation) {
+    return ((long) generation << 32) | (handle & 0xFFFFFFFFL);
+  }
+
+  private static int handle(long timerKey) {
+    return (int) timerKey;
+  }
+
+  private static int generation(long timerKey) {
+    return (int) (timerKey >>> 32);
+  }
+
+  /**
+   * Per-handle state. Replaced by a larger copy when a task with a handle out of range registers, a heartbeat racing
+   * with the copy may be lost, which is harmless.
+   */
+  private static class Slots {
+    private final AtomicReferenceArray<TonyTask> tasks;
+    private final AtomicIntegerArray generations;
+    private final AtomicLongArray lastSeen;
+    private final AtomicLongArray maxIntervalMs;
+    private final AtomicLongArray numMissed;
+
+    Slots(int numHandles) {
+      tasks = new AtomicReferenceArray<>(numHandles);
+      generations = new AtomicIntegerArray(numHandles);
+      lastSeen = new AtomicLongArray(numHandles);
+      maxIntervalMs = new AtomicLongArray(numHandles);
+      numMissed = new AtomicLongArray(numHandles);
+    }
+
+    Slots grow(int numHandles) {
+      Slots grown = new Slots(numHandles);
+      for (int handle = 0; handle < tasks.length(); handle++) {
+        grown.tasks.set(handle, tasks.get(handle));
+        grown.generations.set(handle, generations.get(handle));
+        grown.lastSeen.set(handle, lastSeen.get(handle));
+        grown.maxIntervalMs.set(handle, maxIntervalMs.get(handle));
+        grown.numMissed.set(handle, numMissed.get(handle));
+      }
+      return grown;
+    }
+  }
+}
@@ -6,13 +6,17 @@ package com.linkedin.tony;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
-import com.linkedin.tony.rpc.MetricWritable;
-import com.linkedin.tony.rpc.MetricsRpc;
-import com.linkedin.tony.rpc.impl.MetricsWritable;
+import com.linkedin.tony.rpc.ApplicationRpc;
 import com.linkedin.tony.util.gpu.GpuDeviceInformation;
 import com.linkedin.tony.util.gpu.GpuDiscoverer;
 import com.linkedin.tony.util.gpu.GpuInfoException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -27,14 +31,15 @@ class TaskMonitor implements Runnable {
 
   private String taskType;
   private int taskIndex;
-  private MetricsRpc metricsRpcClient;
+  private volatile ApplicationRpc rpcClient;
   private ResourceCalculatorProcessTree resourceCalculator;
   private GpuDiscoverer gpuDiscoverer;
 
   public static final List<String> METRICS_TO_COLLECT =
       ImmutableList.of(Constants.MAX_MEMORY_BYTES, Constants.AVG_MEMORY_BYTES, Constants.MAX_GPU_UTILIZATION,
           Constants.AVG_GPU_UTILIZATION, Constants.MAX_GPU_FB_MEMORY_USAGE, Constants.AVG_GPU_FB_MEMORY_USAGE,
-          Constants.MAX_GPU_MAIN_MEMORY_USAGE, Constants.AVG_GPU_MAIN_MEMORY_USAGE);
+          Constants.MAX_GPU_MAIN_MEMORY_USAGE, Constants.AVG_GPU_MAIN_MEMORY_USAGE, Constants.CPU_UTILIZATION,
+          Constants.GPU_UTILIZATION, Constants.TRAINING_STEP);
 
   public static final int MAX_MEMORY_BYTES_INDEX = 0;
   public static final int AVG_MEMORY_BYTES_INDEX = 1;
@@ -44,22 +49,31 @@ class TaskMonitor implements Runnable {
   public static final int AVG_GPU_FB_MEMORY_USAGE_INDEX = 5;
   public static final int MAX_GPU_MAIN_MEMORY_USAGE_INDEX = 6;
   public static final int AVG_GPU_MAIN_MEMORY_USAGE_INDEX = 7;
+  public static final int CPU_UTILIZATION_INDEX = 8;
+  public static final int GPU_UTILIZATION_INDEX = 9;
+  public static final int TRAINING_STEP_INDEX = 10;
 
   private Boolean isGpuMachine;
   private Boolean gpuMetricsEnabled;
 
-  private MetricsWritable metrics = new MetricsWritable(METRICS_TO_COLLECT.size());
+  // Values of METRICS_TO_COLLECT, in that order
+  private final double[] metrics = new double[METRICS_TO_COLLECT.size()];
+  // Whether metrics are sent along with the next heartbeat instead of in their own call
+  private final boolean metricsOnHeartbeat;
+  private final AtomicReference<double[]> pendingMetrics = new AtomicReference<>();
 
   @VisibleForTesting
   protected int numRefreshes = 0;
 
   TaskMonitor(String taskType, int taskIndex,
-      Configuration yarnConf, Configuration tonyConf, MetricsRpc metricsRpcClient) {
+      Configuration yarnConf, Configuration tonyConf, ApplicationRpc rpcClient) {
     this.taskType = taskType;
     this.taskIndex = taskIndex;
 
     initMetrics();
-    this.metricsRpcClient = metricsRpcClient;
+    this.rpcClient = rpcClient;
+    this.metricsOnHeartbeat = tonyConf.getBoolean(TonyConfigurationKeys.TASK_METRICS_ON_HEARTBEAT_ENABLED,
+        TonyConfigurationKeys.DEFAULT_TASK_METRICS_ON_HEARTBEAT_ENABLED);
 
     String pid = System.getenv(Constants.JVM_PID);
     LOG.info("Task pid is: " + pid);
@@ -75,11 +89,16 @@ class TaskMonitor implements Runnable {
     }
   }
 
+  /**
+   * Points the monitor at a new AM, e.g. after the AM restarted on another host.
+   */
+  void setRpcClient(ApplicationRpc rpcClient) {
+    this.rpcClient = rpcClient;
+  }
+
   @VisibleForTesting
   void initMetrics() {
-    for (int i = 0; i < METRICS_TO_COLLECT.size(); i++) {
-      metrics.setMetric(i, new MetricWritable(METRICS_TO_COLLECT.get(i), -1d));
-    }
+    Arrays.fill(metrics, -1d);
   }
 
   private boolean checkIsGpuMachine(Configuration conf) {
@@ -91,18 +110,31 @@ class TaskMonitor implements Runnable {
   @Override
   public void run() {
     refreshMetrics();
+    if (metricsOnHeartbeat) {
+      pendingMetrics.set(metrics.clone());
+      return;
+    }
     try {
-      metricsRpcClient.updateMetrics(taskType, taskIndex, metrics);
+      rpcClient.updateMetrics(taskType, taskIndex, metrics.clone());
     } catch (Exception e) {
       LOG.error("Encountered exception updating metrics", e);
     }
   }
 
+  /**
+   * Returns the metrics collected since the last call, if metrics are sent along with heartbeats, or null.
+   */
+  double[] pollPendingMetrics() {
+    return pendingMetrics.getAndSet(null);
+  }
+
   private void refreshMetrics() {
     refreshMemoryBytesMetrics();
+    refreshCpuMetrics();
     if (isGpuMachine && gpuMetricsEnabled) {
       refreshGPUMetrics();
     }
+    refreshTrainingStep();
     numRefreshes++;
   }
 
@@ -113,6 +145,28 @@ class TaskMonitor implements Runnable {
     setAvgMetrics(AVG_MEMORY_BYTES_INDEX, memoryBytes);
   }
 
+  private void refreshCpuMetrics() {
+    // Measured against the previous update of the process tree, unavailable on the first one
+    float cpuUsagePercent = resourceCalculator.getCpuUsagePercent();
+    if (cpuUsagePercent >= 0) {
+      setLatestMetrics(CPU_UTILIZATION_INDEX, cpuUsagePercent);
+    }
+  }
+
+  private void refreshTrainingStep() {
+    File stepFile = new File(Constants.STEP_FILE_NAME);
+    if (!stepFile.exists()) {
+      return;
+    }
+    try {
+      String step = new String(Files.readAllBytes(stepFile.toPath()), StandardCharsets.UTF_8).trim();
+      setLatestMetrics(TRAINING_STEP_INDEX, Double.parseDouble(step));
+    } catch (IOException | NumberFormatException e) {
+      // The task may be rewriting the file, try again on the next refresh.
+      LOG.debug("Failed to read training step from " + stepFile, e);
+    }
+  }
+
   private void refreshGPUMetrics() {
     try {
       GpuDeviceInformation gpuInfo = gpuDiscoverer.getGpuDeviceInformation();
@@ -152,6 +206,7 @@ class TaskMonitor implements Runnable {
           .getAsDouble();
 
       setMaxMetrics(MAX_GPU_UTILIZATION_INDEX, maxGpuUtilization);
+      setLatestMetrics(GPU_UTILIZATION_INDEX, avgGpuUtilization);
       setAvgMetrics(AVG_GPU_UTILIZATION_INDEX, avgGpuUtilization);
       setMaxMetrics(MAX_GPU_FB_MEMORY_USAGE_INDEX, maxGpuFBMemoryUsage);
       setAvgMetrics(AVG_GPU_FB_MEMORY_USAGE_INDEX, avgGpuFBMemoryUsage);
@@ -171,22 +226,23 @@ class TaskMonitor implements Runnable {
 
   @VisibleForTesting
   void setAvgMetrics(int metricIndex, double newMetricValue) {
-    MetricWritable metric = metrics.getMetric(metricIndex);
-    metric.setValue((metric.getValue() * numRefreshes + newMetricValue) / (numRefreshes + 1));
-    metrics.setMetric(metricIndex, metric);
+    metrics[metricIndex] = (metrics[metricIndex] * numRefreshes + newMetricValue) / (numRefreshes + 1);
   }
 
   @VisibleForTesting
   void setMaxMetrics(int metricIndex, double newMetricValue) {
-    MetricWritable metric = metrics.getMetric(metricIndex);
-    if (newMetricValue > metric.getValue()) {
-      metric.setValue(newMetricValue);
-      metrics.setMetric(metricIndex, metric);
+    if (newMetricValue > metrics[metricIndex]) {
+      metrics[metricIndex] = newMetricValue;
     }
   }
 
   @VisibleForTesting
-  MetricsWritable getMetrics() {
+  void setLatestMetrics(int metricIndex, double newMetricValue) {
+    metrics[metricIndex] = newMetricValue;
+  }
+
+  @VisibleForTesting
+  double[] getMetrics() {
     return this.metrics;
   }
 }
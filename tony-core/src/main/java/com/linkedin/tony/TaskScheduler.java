@@ -8,7 +8,10 @@ import com.google.common.annotations.VisibleForTesting;
 import com.linkedin.tony.tensorflow.JobContainerRequest;
 import com.linkedin.tony.tensorflow.TonySession;
 import com.linkedin.tony.util.Utils;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -16,11 +19,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.FinalApplicationStatus;
 import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.api.records.Priority;
@@ -36,85 +40,301 @@ public class TaskScheduler {
   private FileSystem resourceFs;
   private Configuration tonyConf;
 
-  // job with dependency -> (dependent job name, number of instances for that job)
-  private Map<JobContainerRequest, Map<String, Integer>> taskDependencyMap = new HashMap<>();
+  // Decides when each job type can be scheduled, null until the tasks are scheduled
+  private JobDependencyGraph dependencyGraph;
   private Map<String, LocalResource> localResources;
   private Map<String, List<AMRMClient.ContainerRequest>> jobTypeToContainerRequestsMap = new HashMap<>();
   private Map<String, Map<String, LocalResource>> jobTypeToContainerResources;
+  // Asks that haven't been allocated yet, so that they can be withdrawn when an elastic job type shrinks and so that
+  // asks added later (e.g. to retry a failed task) don't re-request containers that were already allocated. Guarded
+  // by this.
+  private final Map<String, Deque<Ask>> outstandingAsks = new HashMap<>();
+  // Asks fulfilled by allocated containers that haven't been assigned a task yet
+  private final Map<ContainerId, Ask> fulfilledAsks = new ConcurrentHashMap<>();
+  // Hosts stragglers were replaced on, which containers are turned down on. Guarded by this.
+  private final Set<String> excludedHosts = new HashSet<>();
+  private GangAllocator gangAllocator;
+  private LocalityPlanner localityPlanner;
 
   boolean dependencyCheckPassed = true;
 
   public TaskScheduler(TonySession session, AMRMClientAsync<AMRMClient.ContainerRequest> amRMClient, Map<String, LocalResource> localResources,
       FileSystem resourceFs, Configuration tonyConf, Map<String, Map<String, LocalResource>> jobTypeToContainerResources) {
+    this(session, amRMClient, localResources, resourceFs, tonyConf, jobTypeToContainerResources, null, null);
+  }
+
+  public TaskScheduler(TonySession session, AMRMClientAsync<AMRMClient.ContainerRequest> amRMClient, Map<String, LocalResource> localResources,
+      FileSystem resourceFs, Configuration tonyConf, Map<String, Map<String, LocalResource>> jobTypeToContainerResources,
+      GangAllocator gangAllocator, LocalityPlanner localityPlanner) {
     this.session = session;
     this.amRMClient = amRMClient;
     this.localResources = localResources;
     this.resourceFs = resourceFs;
     this.tonyConf = tonyConf;
     this.jobTypeToContainerResources = jobTypeToContainerResources;
+    this.gangAllocator = gangAllocator;
+    this.localityPlanner = localityPlanner;
   }
 
-  public void scheduleTasks() {
+  public synchronized void scheduleTasks() {
     final List<JobContainerRequest> requests = session.getContainersRequests();
 
-    if (!isDAG(requests)) {
+    dependencyGraph = JobDependencyGraph.build(requests);
+    if (dependencyGraph == null) {
       LOG.error("TonY execution graph does not form a DAG, exiting.");
       session.setFinalStatus(FinalApplicationStatus.FAILED, "App failed due to it not being a DAG.");
       dependencyCheckPassed = false;
       return;
     }
-
-    buildTaskDependencyGraph(requests);
+    LOG.info("Job types in dependency order: " + dependencyGraph.getTopologicalOrder());
 
     // start/schedule jobs that have no dependency requirements
-    for (JobContainerRequest request : requests) {
-      if (checkDependencySatisfied(request)) {
-        scheduleJob(request);
-      }
-    }
-  }
-
-  private void buildTaskDependencyGraph(List<JobContainerRequest> requests) {
-    for (JobContainerRequest request : requests) {
-      for (String dependsOn : request.getDependsOn()) {
-        if (!dependsOn.isEmpty()) {
-          taskDependencyMap.putIfAbsent(request, new HashMap<>());
-          Map<String, Integer> dependenciesForTask = taskDependencyMap.get(request);
-          dependenciesForTask.put(dependsOn, session.getContainerRequestForType(dependsOn).getNumInstances());
-          taskDependencyMap.put(request, dependenciesForTask);
-        }
-      }
+    for (JobContainerRequest request : dependencyGraph.getReadyJobs()) {
+      scheduleJob(request);
     }
   }
 
   @VisibleForTesting
   boolean checkDependencySatisfied(JobContainerRequest request) {
-    return taskDependencyMap.get(request) == null || taskDependencyMap.get(request).isEmpty();
+    return dependencyGraph == null || dependencyGraph.isReady(request);
   }
 
   private void scheduleJob(JobContainerRequest request) {
-    AMRMClient.ContainerRequest containerAsk = setupContainerRequestForRM(request);
     String jobName = request.getJobName();
     if (!jobTypeToContainerRequestsMap.containsKey(jobName)) {
       jobTypeToContainerRequestsMap.put(jobName, new ArrayList<>());
       jobTypeToContainerResources.put(jobName, getContainerResources(jobName));
     }
-    jobTypeToContainerRequestsMap.get(request.getJobName()).add(containerAsk);
-    for (int i = 0; i < request.getNumInstances(); i++) {
-      amRMClient.addContainerRequest(containerAsk);
+
+    // Elastic job types may have been resized before they were scheduled.
+    session.addNumExpectedTask(session.getNumInstances(jobName));
+    // Tasks recovered from a previous AM attempt already have containers.
+    List<Integer> pendingIndices = session.getPendingTaskIndices(jobName);
+    if (pendingIndices.isEmpty()) {
+      return;
+    }
+    List<LocalityPlanner.Placement> placements = localityPlanner == null ? null
+        : localityPlanner.planPlacements(jobName, pendingIndices.size());
+    if (placements == null) {
+      requestContainers(request, pendingIndices.size());
+      return;
+    }
+    // One ask per instance, each preferring the hosts holding its share of the input, and tagged with its own
+    // allocationRequestId where YARN supports it, so that the container allocated for it goes to that instance.
+    // Locality is relaxed, so instances still get containers elsewhere if their hosts are busy.
+    for (int i = 0; i < placements.size(); i++) {
+      LocalityPlanner.Placement placement = placements.get(i);
+      long allocationRequestId = Utils.isAllocationRequestIdSupported() ? session.newAllocationRequestId(jobName)
+          : request.getAllocationRequestId();
+      AMRMClient.ContainerRequest containerAsk = setupContainerRequestForRM(request, allocationRequestId,
+          placement.getNodes(), placement.getRacks());
+      jobTypeToContainerRequestsMap.get(jobName).add(containerAsk);
+      if (gangAllocator != null) {
+        gangAllocator.onContainersRequested(1);
+      }
+      addAsk(new Ask(jobName, containerAsk, allocationRequestId, pendingIndices.get(i), placement));
+    }
+  }
+
+  private void requestContainers(JobContainerRequest request, int numContainers) {
+    String jobName = request.getJobName();
+    AMRMClient.ContainerRequest containerAsk = setupContainerRequestForRM(request, request.getAllocationRequestId(),
+        null, null);
+    jobTypeToContainerRequestsMap.get(jobName).add(containerAsk);
+    if (gangAllocator != null) {
+      gangAllocator.onContainersRequested(numContainers);
+    }
+    for (int i = 0; i < numContainers; i++) {
+      addAsk(new Ask(jobName, containerAsk, request.getAllocationRequestId(), -1, null));
+    }
+  }
+
+  private void addAsk(Ask ask) {
+    amRMClient.addContainerRequest(ask.request);
+    outstandingAsks.computeIfAbsent(ask.jobName, k -> new ArrayDeque<>()).add(ask);
+  }
+
+  private void withdrawAsk(Ask ask) {
+    amRMClient.removeContainerRequest(ask.request);
+  }
+
+  /**
+   * Requests containers for instances added to elastic job type {@code jobName}. Job types that haven't been
+   * scheduled yet get containers for all their instances when they are.
+   */
+  synchronized void onInstancesAdded(String jobName, int numInstances) {
+    if (jobTypeToContainerRequestsMap.containsKey(jobName)) {
+      requestContainers(session.getContainerRequestForType(jobName), numInstances);
+      session.addNumExpectedTask(numInstances);
+    }
+    onInstancesChanged(jobName);
+  }
+
+  /**
+   * Withdraws the container requests of instances dropped from elastic job type {@code jobName} before they were
+   * assigned a container.
+   */
+  synchronized void onInstancesDropped(String jobName, int numInstances) {
+    if (!jobTypeToContainerRequestsMap.containsKey(jobName)) {
+      onInstancesChanged(jobName);
+      return;
+    }
+    Deque<Ask> asks = outstandingAsks.getOrDefault(jobName, new ArrayDeque<>());
+    int numWithdrawn = 0;
+    // First withdraw the asks of the dropped instances themselves, then any others.
+    Iterator<Ask> it = asks.descendingIterator();
+    while (it.hasNext() && numWithdrawn < numInstances) {
+      Ask ask = it.next();
+      if (ask.taskIndex >= 0 && !session.isTaskPending(jobName, ask.taskIndex)) {
+        it.remove();
+        withdrawAsk(ask);
+        numWithdrawn++;
+      }
+    }
+    while (numWithdrawn < numInstances && !asks.isEmpty()) {
+      withdrawAsk(asks.pollLast());
+      numWithdrawn++;
+    }
+    if (gangAllocator != null) {
+      gangAllocator.onContainerRequestsRemoved(numWithdrawn);
+    }
+    session.addNumExpectedTask(-numInstances);
+    onInstancesChanged(jobName);
+  }
+
+  // The job types depending on a resized job type wait for a share of its new number of instances.
+  private void onInstancesChanged(String jobName) {
+    if (dependencyGraph != null) {
+      dependencyGraph.onInstancesChanged(jobName, session.getNumInstances(jobName)).forEach(this::scheduleJob);
+    }
+  }
+
+  /**
+   * Requests a container to relaunch a failed task of {@code jobName} in. The task's index was already queued for the
+   * next container allocated for its job type by {@link TonySession#retryTask}.
+   */
+  synchronized void onTaskRetried(String jobName) {
+    requestContainers(session.getContainerRequestForType(jobName), 1);
+  }
+
+  /**
+   * Requests a container to relaunch a straggling task of {@code jobName} in, on another host than {@code host}. The
+   * host is blacklisted with the RM, and containers still allocated on it are turned down by
+   * {@link #onContainerAllocated(Container)}.
+   */
+  synchronized void onTaskReplaced(String jobName, String host) {
+    if (excludedHosts.add(host)) {
+      amRMClient.updateBlacklist(Collections.singletonList(host), Collections.emptyList());
     }
-    session.addNumExpectedTask(request.getNumInstances());
+    onTaskRetried(jobName);
   }
 
-  private AMRMClient.ContainerRequest setupContainerRequestForRM(JobContainerRequest request) {
+  private AMRMClient.ContainerRequest setupContainerRequestForRM(JobContainerRequest request, long allocationRequestId,
+      String[] nodes, String[] racks) {
     Priority priority = Priority.newInstance(request.getPriority());
     Resource capability = Resource.newInstance((int) request.getMemory(), request.getVCores());
     Utils.setCapabilityGPU(capability, request.getGPU());
-    AMRMClient.ContainerRequest containerRequest = new AMRMClient.ContainerRequest(capability, null, null, priority, true, request.getNodeLabelsExpression());
+    // Tagged with allocationRequestId where YARN supports it, otherwise containers are matched back to the request
+    // by its job type's unique priority and by host.
+    AMRMClient.ContainerRequest containerRequest = Utils.createContainerRequest(capability, nodes, racks, priority,
+        allocationRequestId, true, request.getNodeLabelsExpression());
     LOG.info("Requested container ask: " + containerRequest.toString());
     return containerRequest;
   }
 
+  /**
+   * Finds the outstanding ask {@code container} was allocated for and takes it out of the client's asks, so that
+   * withdrawing asks later doesn't cancel too many. Asks are matched by allocationRequestId where YARN supports it,
+   * otherwise by the job type's priority and then by host, preferring the ask of an instance that wanted the host.
+   * The ask is kept until the container is assigned a task by {@link #getAndInitMatchingTask(Container)}.
+   *
+   * Containers allocated on a host a straggler was replaced on, before the RM saw the blacklist, are released and
+   * their ask is made again.
+   * @return whether {@code container} can be used
+   */
+  synchronized boolean onContainerAllocated(Container container) {
+    long allocationRequestId = Utils.getAllocationRequestId(container);
+    String jobName = session.getJobName(allocationRequestId, container.getPriority().getPriority());
+    Deque<Ask> asks = jobName == null ? null : outstandingAsks.get(jobName);
+    String host = container.getNodeId().getHost();
+    Ask ask = asks == null ? null : findAsk(asks, allocationRequestId, host);
+    if (excludedHosts.contains(host)) {
+      LOG.info("Releasing container " + container.getId() + " on " + host + ", where a straggler was replaced.");
+      amRMClient.releaseAssignedContainer(container.getId());
+      if (ask != null) {
+        // The RM counted the ask as fulfilled, so it's sent again.
+        asks.remove(ask);
+        withdrawAsk(ask);
+        addAsk(ask);
+      }
+      return false;
+    }
+    if (ask == null) {
+      return true;
+    }
+    asks.remove(ask);
+    withdrawAsk(ask);
+    fulfilledAsks.put(container.getId(), ask);
+    if (localityPlanner != null && ask.placement != null) {
+      localityPlanner.onContainerAllocated(jobName, host, ask.placement);
+    }
+    return true;
+  }
+
+  /**
+   * Asks again for the container {@code container} was allocated for, after it was released unused by the
+   * {@link GangAllocator}. Asks of instances that were dropped in the meantime are not renewed.
+   */
+  synchronized void onContainerReleased(Container container) {
+    Ask ask = fulfilledAsks.remove(container.getId());
+    if (ask != null && (ask.taskIndex < 0 || session.isTaskPending(ask.jobName, ask.taskIndex))) {
+      addAsk(ask);
+    }
+  }
+
+  /**
+   * Withdraws all asks that haven't been allocated yet, e.g. because the session they were made for is being reset.
+   */
+  synchronized void withdrawOutstandingAsks() {
+    outstandingAsks.values().forEach(asks -> asks.forEach(this::withdrawAsk));
+    outstandingAsks.clear();
+    fulfilledAsks.clear();
+  }
+
+  private static Ask findAsk(Deque<Ask> asks, long allocationRequestId, String host) {
+    if (allocationRequestId >= 0) {
+      for (Ask ask : asks) {
+        if (ask.allocationRequestId == allocationRequestId) {
+          return ask;
+        }
+      }
+      return null;
+    }
+    Ask unplacedAsk = null;
+    for (Ask ask : asks) {
+      if (ask.placement == null) {
+        unplacedAsk = unplacedAsk == null ? ask : unplacedAsk;
+      } else if (ask.placement.contains(host)) {
+        return ask;
+      }
+    }
+    return unplacedAsk != null ? unplacedAsk : asks.peekFirst();
+  }
+
+  /**
+   * Returns the task to run in {@code container}: the instance whose ask it fulfilled if that instance is still waiting
+   * for a container, otherwise the next task of the job type waiting for one.
+   * @return the task, or null if no task of the container's job type is waiting for a container
+   */
+  TonySession.TonyTask getAndInitMatchingTask(Container container) {
+    Ask ask = fulfilledAsks.remove(container.getId());
+    if (ask == null) {
+      return session.getAndInitMatchingTask(Utils.getAllocationRequestId(container),
+          container.getPriority().getPriority());
+    }
+    return session.getAndInitMatchingTask(ask.jobName, ask.taskIndex);
+  }
+
   private Map<String, LocalResource> getContainerResources(String jobName) {
     Map<String, LocalResource> containerResources = new ConcurrentHashMap<>(localResources);
     String[] resources = tonyConf.getStrings(TonyConfigurationKeys.getResourcesKey(jobName));
@@ -126,65 +346,49 @@ public class TaskScheduler {
     return containerResources;
   }
 
-  synchronized void registerDependencyCompleted(String jobName) {
-    taskDependencyMap.forEach((k, v) -> {
-      if (v.containsKey(jobName)) {
-        int numContainersLeft = v.get(jobName);
-        numContainersLeft--;
-
-        if (numContainersLeft == 0) {
-          v.remove(jobName);
-        } else {
-          v.put(jobName, numContainersLeft);
-        }
-      }
-    });
-
-    Iterator<JobContainerRequest> waitingRequestItr = taskDependencyMap.keySet().iterator();
-    while (waitingRequestItr.hasNext()) {
-      JobContainerRequest waitingRequest = waitingRequestItr.next();
-      if (checkDependencySatisfied((waitingRequest))) {
-        waitingRequestItr.remove();
-        scheduleJob(waitingRequest);
-      }
+  /**
+   * Records that a task of {@code jobName} finished, and schedules the job types waiting for it once their
+   * dependencies are met.
+   */
+  synchronized void registerDependencyCompleted(String jobName, boolean succeeded) {
+    if (dependencyGraph != null) {
+      dependencyGraph.onTaskCompleted(jobName, succeeded).forEach(this::scheduleJob);
     }
   }
 
-  static boolean isDAG(final List<JobContainerRequest> containersRequests) {
-    Set<JobContainerRequest> visited = new HashSet<>();
-
-    for (JobContainerRequest containerRequest : containersRequests) {
-      if (!visited.contains(containerRequest) && !isSubgraphDAG(containerRequest, new ArrayList<>(), containersRequests, visited)) {
-        return false;
-      }
+  /**
+   * Records that a task of {@code jobName} registered its address, and schedules the job types waiting for it once
+   * their dependencies are met.
+   */
+  synchronized void registerDependencyRegistered(String jobName) {
+    if (dependencyGraph != null) {
+      dependencyGraph.onTaskRegistered(jobName).forEach(this::scheduleJob);
     }
-
-    return true;
   }
 
-  static boolean isSubgraphDAG(JobContainerRequest node, List<JobContainerRequest> pathTrace,
-      final List<JobContainerRequest> containerRequests, Set<JobContainerRequest> visited) {
-    if (pathTrace.contains(node)) {
-      return false;
-    }
-    if (visited.contains(node)) {
-      return true;
-    }
+  static boolean isDAG(final List<JobContainerRequest> containersRequests) {
+    return JobDependencyGraph.build(containersRequests) != null;
+  }
 
-    pathTrace.add(node);
-    visited.add(node);
+  /**
+   * A request for a single container, for any instance of a job type or, with a placement, for one instance.
+   * Several asks may share the same {@link AMRMClient.ContainerRequest}.
+   */
+  private static class Ask {
+    private final String jobName;
+    private final AMRMClient.ContainerRequest request;
+    private final long allocationRequestId;
+    // Index of the instance the ask is for, or -1 for any instance
+    private final int taskIndex;
+    private final LocalityPlanner.Placement placement;
 
-    List<JobContainerRequest> dependencies = containerRequests.stream()
-        .filter(x -> node.getDependsOn().contains(x.getJobName()))
-        .collect(Collectors.toList());
-    for (JobContainerRequest dependency : dependencies) {
-      if (!isSubgraphDAG(dependency, pathTrace, containerRequests, visited)) {
-        return false;
-      }
+    Ask(String jobName, AMRMClient.ContainerRequest request, long allocationRequestId, int taskIndex,
+        LocalityPlanner.Placement placement) {
+      this.jobName = jobName;
+      this.request = request;
+      this.allocationRequestId = allocationRequestId;
+      this.taskIndex = taskIndex;
+      this.placement = placement;
     }
-
-    pathTrace.remove(node);
-
-    return true;
   }
 }
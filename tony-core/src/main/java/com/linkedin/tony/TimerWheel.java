@@ -0,0 +1,130 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+
+/**
+ * Hierarchical timer wheel of {@code long} timer keys. Scheduling a timer and expiring a timer are both O(1),
+ * however many timers are pending.
+ *
+ * Time advances in ticks of {@code tickMs}. Level 0 has a slot per tick for the next {@link #WHEEL_SIZE} ticks, and
+ * each slot of level {@code i} spans a whole rotation of level {@code i - 1}. When a higher level slot comes due, its
+ * timers are cascaded down to the lower levels, until they reach level 0 and expire. Timers further out than the top
+ * level are parked in its last slot and re-placed when it comes due.
+ *
+ * Not thread safe, {@link TaskLivenessMonitor} serializes access.
+ */
+class TimerWheel {
+  static final int WHEEL_BITS = 6;
+  static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  static final int NUM_LEVELS = 4;
+  private static final int SLOT_MASK = WHEEL_SIZE - 1;
+
+  private final long tickMs;
+  private final Bucket[][] levels = new Bucket[NUM_LEVELS][WHEEL_SIZE];
+  // Last tick that was processed
+  private long currentTick;
+  private int size = 0;
+
+  TimerWheel(long tickMs, long nowMs) {
+    this.tickMs = tickMs;
+    this.currentTick = nowMs / tickMs;
+    for (Bucket[] level : levels) {
+      for (int i = 0; i < WHEEL_SIZE; i++) {
+        level[i] = new Bucket();
+      }
+    }
+  }
+
+  /**
+   * Schedules timer {@code key} to expire at {@code deadlineMs}. Deadlines that have passed expire on the next tick.
+   */
+  void schedule(long key, long deadlineMs) {
+    long deadlineTick = Math.max((deadlineMs + tickMs - 1) / tickMs, currentTick + 1);
+    add(key, deadlineTick);
+    size++;
+  }
+
+  /**
+   * Processes the ticks up to {@code nowMs}, passing every timer that expired to {@code expired}. {@code expired} may
+   * schedule new timers.
+   */
+  void advance(long nowMs, LongConsumer expired) {
+    long targetTick = nowMs / tickMs;
+    while (currentTick < targetTick) {
+      currentTick++;
+      for (int level = NUM_LEVELS - 1; level > 0; level--) {
+        if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+          cascade(levels[level][slot(currentTick, level)]);
+        }
+      }
+      Bucket bucket = levels[0][slot(currentTick, 0)];
+      // Timers scheduled by expired are always added to other buckets, see add
+      int numTimers = bucket.size;
+      bucket.size = 0;
+      for (int i = 0; i < numTimers; i++) {
+        if (bucket.deadlines[i] <= currentTick) {
+          size--;
+          expired.accept(bucket.keys[i]);
+        } else {
+          add(bucket.keys[i], bucket.deadlines[i]);
+        }
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void cascade(Bucket bucket) {
+    int numTimers = bucket.size;
+    bucket.size = 0;
+    for (int i = 0; i < numTimers; i++) {
+      // Lands on a lower level, as the timer is due within this slot's span
+      add(bucket.keys[i], bucket.deadlines[i]);
+    }
+  }
+
+  /**
+   * Adds a timer to the lowest level whose rotation reaches {@code deadlineTick}. A timer due at the current tick goes
+   * to level 0, whose current slot is processed after cascading.
+   */
+  private void add(long key, long deadlineTick) {
+    long delta = deadlineTick - currentTick;
+    int level = 0;
+    while (level < NUM_LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+      level++;
+    }
+    long slotTick = deadlineTick;
+    if (delta >= 1L << (WHEEL_BITS * NUM_LEVELS)) {
+      slotTick = currentTick + (1L << (WHEEL_BITS * NUM_LEVELS)) - 1;
+    }
+    levels[level][slot(slotTick, level)].add(key, deadlineTick);
+  }
+
+  private static int slot(long tick, int level) {
+    return (int) ((tick >>> (WHEEL_BITS * level)) & SLOT_MASK);
+  }
+
+  private static class Bucket {
+    private long[] keys = new long[4];
+    private long[] deadlines = new long[4];
+    private int size = 0;
+
+    void add(long key, long deadlineTick) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        deadlines = Arrays.copyOf(deadlines, size * 2);
+      }
+      keys[size] = key;
+      deadlines[size] = deadlineTick;
+      size++;
+    }
+  }
+}
@@ -12,6 +12,7 @@ import com.google.common.io.Files;
 import com.linkedin.tony.client.CallbackHandler;
 import com.linkedin.tony.client.TaskUpdateListener;
 import com.linkedin.tony.rpc.TaskInfo;
+import com.linkedin.tony.rpc.TaskInfoUpdate;
 import com.linkedin.tony.rpc.impl.ApplicationRpcClient;
 import com.linkedin.tony.security.TokenCache;
 import com.linkedin.tony.tensorflow.JobContainerRequest;
@@ -136,6 +137,9 @@ public class TonyClient implements AutoCloseable {
 
   // For access from CLI.
   private Set<TaskInfo> taskInfos = new HashSet<>();
+  // Latest task info of each task, keyed by name:index, and the AM's version of them
+  private final Map<String, TaskInfo> taskInfosByTask = new HashMap<>();
+  private long taskInfosVersion = -1;
 
   public TonyClient() {
     this(new Configuration(false));
@@ -256,6 +260,12 @@ public class TonyClient implements AutoCloseable {
     if (nodeLabel != null) {
       appContext.setNodeLabelExpression(nodeLabel);
     }
+    // A new AM attempt adopts the running containers of the previous attempt. Not supported in secure mode, see
+    // ApplicationMaster#init.
+    if (!secureMode && tonyConf.getBoolean(TonyConfigurationKeys.AM_WORK_PRESERVING_RESTART_ENABLED,
+        TonyConfigurationKeys.DEFAULT_AM_WORK_PRESERVING_RESTART_ENABLED)) {
+      appContext.setKeepContainersAcrossApplicationAttempts(true);
+    }
     LOG.info("Submitting YARN application");
     yarnClient.submitApplication(appContext);
     ApplicationReport report = yarnClient.getApplicationReport(appId);
@@ -612,6 +622,11 @@ public class TonyClient implements AutoCloseable {
         throw new RuntimeException("Job requested " + numInstancesRequested + " " + entry.getKey() + " task instances "
             + "but the limit is " + maxAllowedInstances + " " + entry.getKey() + " task instances.");
       }
+      int minInstances = tonyConf.getInt(TonyConfigurationKeys.getMinInstancesKey(entry.getKey()), 0);
+      if (minInstances > numInstancesRequested) {
+        throw new RuntimeException("Job requested " + numInstancesRequested + " " + entry.getKey() + " task instances "
+            + "but the min is " + minInstances + " " + entry.getKey() + " task instances.");
+      }
     }
 
     // check that we don't request more than the allowed total tasks
@@ -885,17 +900,34 @@ public class TonyClient implements AutoCloseable {
 
   private void updateTaskInfos() throws IOException, YarnException {
     if (amRpcClient != null) {
-      Set<TaskInfo> receivedInfos = amRpcClient.getTaskInfos();
-      Set<TaskInfo> taskInfoDiff = receivedInfos.stream()
+      // Only the task infos that changed since the version we have, unless the AM sends all of them
+      TaskInfoUpdate update = amRpcClient.getTaskInfos(taskInfosVersion);
+      taskInfosVersion = update.getVersion();
+      Set<TaskInfo> taskInfoDiff = update.getTaskInfos().stream()
           .filter(taskInfo -> !taskInfos.contains(taskInfo))
           .collect(Collectors.toSet());
+      Set<String> previousTasks = new HashSet<>(taskInfosByTask.keySet());
+      if (!update.isDelta()) {
+        taskInfosByTask.clear();
+      }
+      update.getTaskInfos().forEach(taskInfo ->
+          taskInfosByTask.put(taskInfo.getName() + ":" + taskInfo.getIndex(), taskInfo));
+      // Tasks missing from a full update are gone, e.g. released instances of an elastic job type.
+      previousTasks.removeAll(taskInfosByTask.keySet());
       // If task status is changed, invoke callback for all listeners.
-      if (!taskInfoDiff.isEmpty()) {
+      if (!taskInfoDiff.isEmpty() || !previousTasks.isEmpty()) {
         for (TaskInfo taskInfo : taskInfoDiff) {
           LOG.info("Task status updated: " + taskInfo);
         }
+        if (!previousTasks.isEmpty()) {
+          LOG.info("Tasks removed: " + previousTasks);
+        }
+        Set<TaskInfo> receivedInfos = new HashSet<>(taskInfosByTask.values());
         for (TaskUpdateListener listener : listeners) {
           listener.onTaskInfosUpdated(receivedInfos);
+          if (!taskInfoDiff.isEmpty()) {
+            listener.onTaskInfosChanged(taskInfoDiff);
+          }
         }
         taskInfos = receivedInfos;
       }
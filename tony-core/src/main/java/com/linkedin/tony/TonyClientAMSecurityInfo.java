@@ -5,7 +5,6 @@
 package com.linkedin.tony;
 
 
-import com.linkedin.tony.rpc.MetricsRpc;
 import com.linkedin.tony.rpc.TensorFlowClusterPB;
 import java.lang.annotation.Annotation;
 import org.apache.hadoop.classification.InterfaceAudience.Public;
@@ -30,7 +29,7 @@ public class TonyClientAMSecurityInfo extends SecurityInfo {
 
   @Override
   public TokenInfo getTokenInfo(Class<?> protocol, Configuration conf) {
-    if (!protocol.equals(TensorFlowClusterPB.class) && !protocol.equals(MetricsRpc.class)) {
+    if (!protocol.equals(TensorFlowClusterPB.class)) {
       return null;
     }
 
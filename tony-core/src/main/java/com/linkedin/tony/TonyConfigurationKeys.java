@@ -123,6 +123,84 @@ public class TonyConfigurationKeys {
   public static final String APPLICATION_PREPARE_STAGE = TONY_APPLICATION_PREFIX + "prepare-stage";
   public static final String APPLICATION_TRAINING_STAGE = TONY_APPLICATION_PREFIX + "training-stage";
 
+  /**
+   * When the training stage starts, as {@code condition[:fraction]} of the prepare stage tasks, e.g. succeeded:0.9.
+   */
+  public static final String APPLICATION_TRAINING_STAGE_START_CONDITION = APPLICATION_TRAINING_STAGE
+      + ".start-condition";
+  public static final String DEFAULT_APPLICATION_TRAINING_STAGE_START_CONDITION = "completed";
+
+  // Gang allocation configurations
+  public static final String GANG_ALLOCATION_PREFIX = TONY_APPLICATION_PREFIX + "gang-allocation.";
+
+  public static final String GANG_ALLOCATION_ENABLED = GANG_ALLOCATION_PREFIX + "enabled";
+  public static final boolean DEFAULT_GANG_ALLOCATION_ENABLED = false;
+
+  /**
+   * Fraction of the outstanding containers that must be allocated before any of them is launched.
+   */
+  public static final String GANG_ALLOCATION_QUORUM = GANG_ALLOCATION_PREFIX + "quorum";
+  public static final float DEFAULT_GANG_ALLOCATION_QUORUM = 1.0f;
+
+  public static final String GANG_ALLOCATION_TIMEOUT_MS = GANG_ALLOCATION_PREFIX + "timeout-ms";
+  public static final int DEFAULT_GANG_ALLOCATION_TIMEOUT_MS = 5 * 60 * 1000;
+
+  public static final String GANG_ALLOCATION_BACKOFF_MS = GANG_ALLOCATION_PREFIX + "backoff-ms";
+  public static final int DEFAULT_GANG_ALLOCATION_BACKOFF_MS = 30 * 1000;
+
+  public static final String GANG_ALLOCATION_MAX_BACKOFF_MS = GANG_ALLOCATION_PREFIX + "max-backoff-ms";
+  public static final int DEFAULT_GANG_ALLOCATION_MAX_BACKOFF_MS = 10 * 60 * 1000;
+
+  // Container launcher configurations
+  public static final String CONTAINER_LAUNCHER_PREFIX = TONY_APPLICATION_PREFIX + "container-launcher.";
+
+  public static final String CONTAINER_LAUNCHER_THREADS = CONTAINER_LAUNCHER_PREFIX + "threads";
+  public static final int DEFAULT_CONTAINER_LAUNCHER_THREADS = 32;
+
+  /**
+   * Max number of container starts in flight on a single NodeManager, non-positive for no limit.
+   */
+  public static final String CONTAINER_LAUNCHER_MAX_IN_FLIGHT_PER_NODE = CONTAINER_LAUNCHER_PREFIX
+      + "max-in-flight-per-node";
+  public static final int DEFAULT_CONTAINER_LAUNCHER_MAX_IN_FLIGHT_PER_NODE = 4;
+
+  /**
+   * Max number of container launches per second across all NodeManagers, non-positive for no limit.
+   */
+  public static final String CONTAINER_LAUNCHER_MAX_LAUNCHES_PER_SECOND = CONTAINER_LAUNCHER_PREFIX
+      + "max-launches-per-second";
+  public static final float DEFAULT_CONTAINER_LAUNCHER_MAX_LAUNCHES_PER_SECOND = 0f;
+
+  // Straggler detection configurations
+  public static final String STRAGGLER_PREFIX = TONY_APPLICATION_PREFIX + "straggler.";
+
+  public static final String STRAGGLER_DETECTION_ENABLED = STRAGGLER_PREFIX + "enabled";
+  public static final boolean DEFAULT_STRAGGLER_DETECTION_ENABLED = false;
+
+  /**
+   * Progress signal tasks are compared by: cpu, gpu or step.
+   */
+  public static final String STRAGGLER_SIGNAL = STRAGGLER_PREFIX + "signal";
+  public static final String DEFAULT_STRAGGLER_SIGNAL = "cpu";
+
+  /**
+   * How many times slower than the median of its job type a task has to be to count as a straggler.
+   */
+  public static final String STRAGGLER_SLOWDOWN_FACTOR = STRAGGLER_PREFIX + "slowdown-factor";
+  public static final float DEFAULT_STRAGGLER_SLOWDOWN_FACTOR = 2.0f;
+
+  /**
+   * How long a task has to stay behind before it is replaced.
+   */
+  public static final String STRAGGLER_MIN_DURATION_MS = STRAGGLER_PREFIX + "min-duration-ms";
+  public static final int DEFAULT_STRAGGLER_MIN_DURATION_MS = 5 * 60 * 1000;
+
+  public static final String STRAGGLER_CHECK_INTERVAL_MS = STRAGGLER_PREFIX + "check-interval-ms";
+  public static final int DEFAULT_STRAGGLER_CHECK_INTERVAL_MS = 30 * 1000;
+
+  public static final String STRAGGLER_MAX_REPLACEMENTS = STRAGGLER_PREFIX + "max-replacements";
+  public static final int DEFAULT_STRAGGLER_MAX_REPLACEMENTS = 3;
+
   // Task configurations
   public static final String TONY_TASK_PREFIX = TONY_PREFIX + "task.";
 
@@ -141,18 +219,95 @@ public class TonyConfigurationKeys {
   public static final String TASK_MAX_MISSED_HEARTBEATS = TONY_TASK_PREFIX + "max-missed-heartbeats";
   public static final int DEFAULT_TASK_MAX_MISSED_HEARTBEATS = 25;
 
+  // How long the AM may hold a TaskExecutor's registration until all expected tasks registered
+  public static final String TASK_REGISTRATION_WAIT_MS = TONY_TASK_PREFIX + "registration-wait-ms";
+  public static final int DEFAULT_TASK_REGISTRATION_WAIT_MS = 30 * 1000;
+
   public static final String TASK_METRICS_UPDATE_INTERVAL_MS = TONY_TASK_PREFIX + "metrics-interval-ms";
   public static final int DEFAULT_TASK_METRICS_UPDATE_INTERVAL_MS = 5000;
 
+  // Number of samples of each task's metrics the AM keeps at full resolution, and of older, downsampled samples
+  public static final String AM_METRICS_HISTORY_SIZE = AM_PREFIX + "metrics-history.size";
+  public static final int DEFAULT_AM_METRICS_HISTORY_SIZE = 360;
+
   public static final String TASK_GPU_METRICS_ENABLED = TONY_TASK_PREFIX + "gpu-metrics.enabled";
   public static final boolean DEFAULT_TASK_GPU_METRICS_ENABLED = true;
 
+  // Whether task executors send their metrics along with their heartbeats instead of in separate calls
+  public static final String TASK_METRICS_ON_HEARTBEAT_ENABLED = TONY_TASK_PREFIX + "metrics-on-heartbeat.enabled";
+  public static final boolean DEFAULT_TASK_METRICS_ON_HEARTBEAT_ENABLED = false;
+
+  // How long a TaskExecutor keeps trying to reach a restarted AM before giving up, with work-preserving AM restart
+  public static final String TASK_AM_RECONNECT_TIMEOUT_MS = TONY_TASK_PREFIX + "am-reconnect-timeout-ms";
+  public static final int DEFAULT_TASK_AM_RECONNECT_TIMEOUT_MS = 10 * 60 * 1000;
+
+  // Signal, e.g. USR1, sent to a task when its container is about to be preempted. Unset by default, in which case
+  // tasks only learn about the preemption from the file named by the TONY_PREEMPTION_FILE environment variable.
+  public static final String TASK_PREEMPTION_SIGNAL = TONY_TASK_PREFIX + "preemption-signal";
+
   // AM configurations
   public static final String AM_PREFIX = TONY_PREFIX + "am.";
 
   public static final String AM_RETRY_COUNT = AM_PREFIX + "retry-count";
   public static final int DEFAULT_AM_RETRY_COUNT = 0;
 
+  // Whether a retried session keeps the running containers of the failed one, restarting only their task processes
+  public static final String AM_RETRY_REUSE_CONTAINERS_ENABLED = AM_PREFIX + "retry-reuse-containers.enabled";
+  public static final boolean DEFAULT_AM_RETRY_REUSE_CONTAINERS_ENABLED = false;
+
+  // Whether a new AM attempt recovers the session and adopts the running containers of the previous attempt
+  public static final String AM_WORK_PRESERVING_RESTART_ENABLED = AM_PREFIX + "work-preserving-restart.enabled";
+  public static final boolean DEFAULT_AM_WORK_PRESERVING_RESTART_ENABLED = false;
+
+  // Whether the AM warns tasks whose containers the RM is about to preempt, and replaces them after a grace period
+  public static final String AM_PREEMPTION_HANDLING_ENABLED = AM_PREFIX + "preemption-handling.enabled";
+  public static final boolean DEFAULT_AM_PREEMPTION_HANDLING_ENABLED = false;
+
+  // How long warned tasks get to checkpoint before the AM releases their containers
+  public static final String AM_PREEMPTION_CHECKPOINT_GRACE_MS = AM_PREFIX + "preemption-checkpoint-grace-ms";
+  public static final int DEFAULT_AM_PREEMPTION_CHECKPOINT_GRACE_MS = 30 * 1000;
+
+  // Whether the AM blacklists nodes its tasks keep failing on, and nodes the RM reports unusable
+  public static final String AM_NODE_BLACKLIST_ENABLED = AM_PREFIX + "node-blacklist.enabled";
+  public static final boolean DEFAULT_AM_NODE_BLACKLIST_ENABLED = false;
+
+  // Number of task failures (failed launches, failed exits and missed heartbeats) after which a node is blacklisted
+  public static final String AM_NODE_BLACKLIST_MAX_FAILURES = AM_PREFIX + "node-blacklist.max-failures-per-node";
+  public static final int DEFAULT_AM_NODE_BLACKLIST_MAX_FAILURES = 3;
+
+  // Maximum number of nodes the AM blacklists
+  public static final String AM_NODE_BLACKLIST_MAX_NODES = AM_PREFIX + "node-blacklist.max-nodes";
+  public static final int DEFAULT_AM_NODE_BLACKLIST_MAX_NODES = 10;
+
+  // Maximum number of tasks relaunched because their container failed to start or didn't register in time
+  public static final String AM_MAX_LAUNCH_REPLACEMENTS = AM_PREFIX + "max-launch-replacements";
+  public static final int DEFAULT_AM_MAX_LAUNCH_REPLACEMENTS = 3;
+
+  // How often the AM checks for tasks that didn't register within the container allocation timeout
+  public static final String AM_REGISTRATION_CHECK_INTERVAL_MS = AM_PREFIX + "registration-check-interval-ms";
+  public static final int DEFAULT_AM_REGISTRATION_CHECK_INTERVAL_MS = 10 * 1000;
+
+  // Number of handler threads of each of the AM's RPC servers, which serve executor and client calls concurrently
+  public static final String AM_RPC_HANDLER_COUNT = AM_PREFIX + "rpc.handler-count";
+  public static final int DEFAULT_AM_RPC_HANDLER_COUNT = 10;
+
+  // Number of threads of each of the AM's RPC servers reading calls off client connections
+  public static final String AM_RPC_READER_COUNT = AM_PREFIX + "rpc.reader-count";
+  public static final int DEFAULT_AM_RPC_READER_COUNT = 1;
+
+  // Number of calls waiting for a handler of the application RPC server above which the AM turns task registrations
+  // away, telling them to retry later. 0 disables admission control.
+  public static final String AM_RPC_ADMISSION_MAX_QUEUE_LENGTH = AM_PREFIX + "rpc.admission.max-queue-length";
+  public static final int DEFAULT_AM_RPC_ADMISSION_MAX_QUEUE_LENGTH = 100;
+
+  // How long turned away calls are told to wait before retrying, when the queue is just over the limit
+  public static final String AM_RPC_ADMISSION_RETRY_AFTER_MS = AM_PREFIX + "rpc.admission.retry-after-ms";
+  public static final int DEFAULT_AM_RPC_ADMISSION_RETRY_AFTER_MS = 1000;
+
+  // How often the AM logs the latencies, queue times and error counts of the calls to its application RPC server
+  public static final String AM_RPC_METRICS_LOG_INTERVAL_MS = AM_PREFIX + "rpc.metrics-log-interval-ms";
+  public static final long DEFAULT_AM_RPC_METRICS_LOG_INTERVAL_MS = 60 * 1000;
+
   public static final String AM_MEMORY = AM_PREFIX + "memory";
   public static final String DEFAULT_AM_MEMORY = "2g";
 
@@ -183,6 +338,29 @@ public class TonyConfigurationKeys {
     return String.format(TONY_PREFIX + "%s.max-instances", jobName);
   }
 
+  /**
+   * Configuration key for the min number of {@code jobName} task instances. Setting it makes the job type elastic: its
+   * instances can be resized while the job runs, between the min instances and the max instances.
+   * @param jobName the task type for which to get the min instances config key
+   * @return the min instances configuration key for the {@code jobName}
+   */
+  public static String getMinInstancesKey(String jobName) {
+    return String.format(TONY_PREFIX + "%s.min-instances", jobName);
+  }
+
+  /**
+   * Configuration key for property controlling how many times a failed {@code jobName} task is relaunched in a new
+   * container, keeping its task index, before its failure fails the session. The other tasks keep running while the
+   * failed task is retried.
+   * @param jobName the task type for which to get the max task retries config key
+   * @return the max task retries configuration key for the {@code jobName}
+   */
+  public static String getMaxTaskRetriesKey(String jobName) {
+    return String.format(TONY_PREFIX + "%s.max-task-retries", jobName);
+  }
+
+  public static final int DEFAULT_MAX_TASK_RETRIES = 0;
+
   public static String getResourceKey(String jobName, String resource) {
     return String.format(TONY_PREFIX + "%s.%s", jobName, resource);
   }
@@ -191,6 +369,34 @@ public class TonyConfigurationKeys {
     return String.format(TONY_PREFIX + "%s.node-label", jobName);
   }
 
+  /**
+   * Configuration key for the priority of {@code jobName}'s container requests, lower being served first. Only used
+   * where YARN supports allocationRequestId; older versions of YARN need a unique priority per job type, which TonY
+   * picks itself.
+   * @param jobName the task type for which to get the priority config key
+   * @return the priority configuration key for the {@code jobName}
+   */
+  public static String getPriorityKey(String jobName) {
+    return String.format(TONY_PREFIX + "%s.priority", jobName);
+  }
+
+  public static final int DEFAULT_PRIORITY = 0;
+
+  /**
+   * Configuration key for the HDFS paths a job type reads its input from. Containers for the job type are requested
+   * on the hosts holding the blocks of these paths.
+   * @param jobName the task type for which to get the input paths config key
+   * @return the input paths configuration key for the {@code jobName}
+   */
+  public static String getInputPathsKey(String jobName) {
+    return String.format(TONY_PREFIX + "%s.input-paths", jobName);
+  }
+
+  /**
+   * Job types {@code jobName} waits for, each written as {@code upstream[:condition[:fraction]]} where condition is
+   * completed (the default), succeeded or registered, and fraction is the fraction of upstream tasks that have to meet
+   * it (1.0 by default).
+   */
   public static String getDependsOnKey(String jobName) {
     return String.format(TONY_PREFIX + "%s.depends-on", jobName);
   }
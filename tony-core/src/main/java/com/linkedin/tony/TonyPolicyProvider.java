@@ -4,7 +4,6 @@
  */
 package com.linkedin.tony;
 
-import com.linkedin.tony.rpc.MetricsRpc;
 import com.linkedin.tony.rpc.TensorFlowCluster;
 import org.apache.hadoop.security.authorize.PolicyProvider;
 import org.apache.hadoop.security.authorize.Service;
@@ -16,8 +15,7 @@ public class TonyPolicyProvider extends PolicyProvider {
     @Override
     public Service[] getServices() {
         return new Service[]{
-            new Service("tony.cluster", TensorFlowCluster.class),
-            new Service("tony.metrics", MetricsRpc.class)
+            new Service("tony.cluster", TensorFlowCluster.class)
         };
     }
 }
@@ -11,4 +11,7 @@ import java.util.Set;
 public interface TaskUpdateListener {
     // Called when TonyClient gets a set of taskUrls from TonyAM.
     void onTaskInfosUpdated(Set<TaskInfo> taskInfoSet);
+
+    // Called with just the task infos that are new or changed since the last update.
+    default void onTaskInfosChanged(Set<TaskInfo> changedTaskInfos) { }
 }
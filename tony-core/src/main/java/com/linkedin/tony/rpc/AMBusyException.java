@@ -0,0 +1,38 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+
+
+/**
+ * Thrown by the AM when it turns a call away because its RPC queue is too long, with how long the caller should wait
+ * before trying again.
+ */
+public class AMBusyException extends YarnException {
+  private static final Pattern RETRY_AFTER_PATTERN = Pattern.compile("retry after (\\d+) ms");
+
+  private final long retryAfterMs;
+
+  public AMBusyException(long retryAfterMs) {
+    super("AM is busy, retry after " + retryAfterMs + " ms");
+    this.retryAfterMs = retryAfterMs;
+  }
+
+  /**
+   * Recreates the exception on the client side, where the RPC layer only passes the message on.
+   */
+  public AMBusyException(String message) {
+    super(message);
+    Matcher matcher = RETRY_AFTER_PATTERN.matcher(message == null ? "" : message);
+    this.retryAfterMs = matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+  }
+
+  public long getRetryAfterMs() {
+    return retryAfterMs;
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Turns away calls the AM can put off, like task registrations, while more than {@code maxQueueLength} calls are
+ * waiting for an RPC handler, so that a job's tasks starting all at once don't push heartbeats back in the queue.
+ *
+ * A turned away caller is told to retry after {@code retryAfterMs} scaled by how far the queue is over the limit, up to
+ * ten times {@code retryAfterMs}, which spreads the retries out more the longer the queue gets.
+ */
+public class AdmissionController {
+  private static final int MAX_RETRY_AFTER_FACTOR = 10;
+
+  private final int maxQueueLength;
+  private final long retryAfterMs;
+  private final AtomicLong numRejected = new AtomicLong();
+
+  public AdmissionController(int maxQueueLength, long retryAfterMs) {
+    this.maxQueueLength = Math.max(1, maxQueueLength);
+    this.retryAfterMs = Math.max(1, retryAfterMs);
+  }
+
+  /**
+   * Returns how long a call that found {@code queueLength} calls waiting should wait before trying again, or 0 if it
+   * can go ahead.
+   */
+  public long getRetryAfterMs(int queueLength) {
+    if (queueLength <= maxQueueLength) {
+      return 0;
+    }
+    numRejected.incrementAndGet();
+    return Math.min(retryAfterMs * MAX_RETRY_AFTER_FACTOR, retryAfterMs * queueLength / maxQueueLength);
+  }
+
+  /**
+   * Throws an {@link AMBusyException} if a call that found {@code queueLength} calls waiting should try again later.
+   */
+  public void admit(int queueLength) throws AMBusyException {
+    long waitMs = getRetryAfterMs(queueLength);
+    if (waitMs > 0) {
+      throw new AMBusyException(waitMs);
+    }
+  }
+
+  public long getNumRejected() {
+    return numRejected.get();
+  }
+}
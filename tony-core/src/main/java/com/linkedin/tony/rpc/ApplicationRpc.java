@@ -16,11 +16,76 @@ public interface ApplicationRpc {
    */
   Set<TaskInfo> getTaskInfos() throws IOException, YarnException;
 
+  /**
+   * Returns the task infos that changed after version {@code sinceVersion} of the AM's task infos, or all of them if
+   * {@code sinceVersion} is negative or too old. Pass the version of the returned update in the next call.
+   */
+  TaskInfoUpdate getTaskInfos(long sinceVersion) throws IOException, YarnException;
+
   String getClusterSpec() throws IOException, YarnException;
   String registerWorkerSpec(String worker, String spec) throws IOException, YarnException;
+
+  /**
+   * Registers {@code worker} like {@link #registerWorkerSpec(String, String)}, but if other expected tasks haven't
+   * registered yet, the AM may hold the call up to {@code waitMs} for them instead of returning null right away.
+   */
+  String registerWorkerSpec(String worker, String spec, long waitMs) throws IOException, YarnException;
+
   String registerTensorBoardUrl(String spec) throws Exception;
   String registerExecutionResult(int exitCode, String jobName, String jobIndex, String sessionId) throws Exception;
   void finishApplication() throws YarnException, IOException;
-  void taskExecutorHeartbeat(String taskId) throws YarnException, IOException;
+
+  /**
+   * Heartbeat of task {@code taskId}.
+   * @return whether the RM is about to preempt the task's container, in which case the task should checkpoint before
+   *     the AM releases the container
+   */
+  boolean taskExecutorHeartbeat(String taskId) throws YarnException, IOException;
+
+  /**
+   * Heartbeat keyed by the integer handle returned from {@link #getTaskHandle(String)}, which lets the AM resolve the
+   * task without parsing the task id. Handles of earlier attempts of a task don't resolve to the current attempt.
+   * @return whether the RM is about to preempt the task's container, like {@link #taskExecutorHeartbeat(String)}
+   */
+  boolean taskExecutorHeartbeat(int taskHandle) throws YarnException, IOException;
+
+  /**
+   * Heartbeat like {@link #taskExecutorHeartbeat(int)} that also replaces the task's metrics with {@code metrics}, if
+   * not null, so that the executor doesn't need a separate call to report them.
+   * @return whether the RM is about to preempt the task's container, like {@link #taskExecutorHeartbeat(String)}
+   */
+  boolean taskExecutorHeartbeat(int taskHandle, double[] metrics) throws YarnException, IOException;
+
+  /**
+   * Replaces the metrics of task {@code taskType} {@code taskIndex} with {@code values}, the values of the metrics task
+   * executors collect in their fixed order.
+   */
+  void updateMetrics(String taskType, int taskIndex, double[] values) throws IOException, YarnException;
+
+  /**
+   * Returns the integer handle the AM assigned to {@code taskId} when it registered through
+   * {@link #registerWorkerSpec(String, String)}, or -1 if the task hasn't registered yet. The AM looks the task up,
+   * clients answer from the responses to the registrations made through them.
+   */
+  int getTaskHandle(String taskId);
+
+  /**
+   * Returns the version of the cluster spec, which the AM bumps whenever tasks join or leave the cluster. Executors
+   * re-fetch the cluster spec with {@link #getClusterSpec()} when it changes.
+   */
+  long getClusterSpecVersion();
+
+  /**
+   * Returns the id of the AM's current session, which is newer than a task's own session once the AM retried the job.
+   * Executors whose containers the AM kept across the retry restart their task for the new session. Returns -1 if the
+   * AM doesn't keep containers across retries.
+   */
+  int getSessionId();
+
+  /**
+   * Grows or shrinks an elastic job type to {@code numInstances}, clamped to the job type's min and max instances.
+   * @return the number of instances of the job type after the resize, or -1 if it isn't an elastic job type
+   */
+  int resizeJob(String jobName, int numInstances) throws IOException, YarnException;
   void reset();
 }
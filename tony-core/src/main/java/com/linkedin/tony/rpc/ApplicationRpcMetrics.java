@@ -0,0 +1,179 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import com.linkedin.tony.Constants;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+
+
+/**
+ * Per-method latency, queue time, in-flight and error counts of the calls to the AM's application RPC server.
+ *
+ * Latency is the time the AM spends on a call, from when a handler picks it up until it returns, and queue time is
+ * the time a call waited for a handler after being read off its connection. Both are kept in {@link LatencyHistogram}s,
+ * in microseconds, so RPC handlers record calls without contending on a lock.
+ *
+ * The metrics are published through Hadoop metrics2, and so JMX, once registered with the metrics system, and are
+ * summarized by {@link #getSummary()} and {@link #getMetrics()}.
+ */
+public class ApplicationRpcMetrics implements MetricsSource {
+  public static final String RECORD_NAME = "ApplicationRpc";
+
+  // When the call the current handler thread serves was read off its connection, in milliseconds
+  private static final ThreadLocal<Long> CALL_RECEIVE_TIME = new ThreadLocal<>();
+
+  private final Map<String, MethodMetrics> methodMetrics = new ConcurrentHashMap<>();
+
+  private static class MethodMetrics {
+    private final LatencyHistogram latencyUs = new LatencyHistogram();
+    private final LatencyHistogram queueTimeUs = new LatencyHistogram();
+    private final AtomicInteger numInFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final LongAdder numErrors = new LongAdder();
+    // Calls turned away by the admission controller, which aren't errors
+    private final LongAdder numRejected = new LongAdder();
+  }
+
+  /**
+   * Sets when the call the current handler thread is about to serve was received, or clears it if negative.
+   */
+  static void setCallReceiveTime(long receiveTimeMs) {
+    if (receiveTimeMs < 0) {
+      CALL_RECEIVE_TIME.remove();
+    } else {
+      CALL_RECEIVE_TIME.set(receiveTimeMs);
+    }
+  }
+
+  /**
+   * Returns a {@link TensorFlowCluster} that calls {@code cluster} and records each call's metrics under its method
+   * name.
+   */
+  public TensorFlowCluster instrument(TensorFlowCluster cluster) {
+    return (TensorFlowCluster) Proxy.newProxyInstance(TensorFlowCluster.class.getClassLoader(),
+        new Class<?>[] {TensorFlowCluster.class}, (proxy, method, args) -> invoke(cluster, method, args));
+  }
+
+  private Object invoke(TensorFlowCluster cluster, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() != TensorFlowCluster.class) {
+      return invokeUninstrumented(cluster, method, args);
+    }
+    MethodMetrics metrics = methodMetrics.computeIfAbsent(method.getName(), k -> new MethodMetrics());
+    Long receiveTimeMs = CALL_RECEIVE_TIME.get();
+    if (receiveTimeMs != null) {
+      metrics.queueTimeUs.record(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis() - receiveTimeMs));
+    }
+    metrics.maxInFlight.accumulateAndGet(metrics.numInFlight.incrementAndGet(), Math::max);
+    long start = System.nanoTime();
+    try {
+      return method.invoke(cluster, args);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof AMBusyException) {
+        metrics.numRejected.increment();
+      } else {
+        metrics.numErrors.increment();
+      }
+      throw e.getCause();
+    } finally {
+      metrics.latencyUs.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+      metrics.numInFlight.decrementAndGet();
+    }
+  }
+
+  private static Object invokeUninstrumented(TensorFlowCluster cluster, Method method, Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(cluster, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Returns one line summarizing the calls to each method so far, for the AM log.
+   */
+  public String getSummary() {
+    StringBuilder summary = new StringBuilder();
+    for (Map.Entry<String, MethodMetrics> entry : new TreeMap<>(methodMetrics).entrySet()) {
+      MethodMetrics metrics = entry.getValue();
+      if (summary.length() > 0) {
+        summary.append("; ");
+      }
+      summary.append(String.format("%s calls=%d errors=%d rejected=%d in-flight=%d p50=%.1fms p99=%.1fms "
+              + "max=%.1fms queue-p99=%.1fms", entry.getKey(), metrics.latencyUs.getCount(),
+          metrics.numErrors.sum(), metrics.numRejected.sum(), metrics.numInFlight.get(),
+          toMs(metrics.latencyUs.getPercentile(0.5)), toMs(metrics.latencyUs.getPercentile(0.99)),
+          toMs(metrics.latencyUs.getMax()), toMs(metrics.queueTimeUs.getPercentile(0.99))));
+    }
+    return summary.toString();
+  }
+
+  /**
+   * Per-method call metrics, reported in the APPLICATION_FINISHED event. Keys are {@link Constants#AM_RPC_PREFIX}
+   * followed by the method name, e.g. AM_RPC_REGISTER_WORKER_SPEC_P99_MS.
+   */
+  public Map<String, Double> getMetrics() {
+    Map<String, Double> metrics = new HashMap<>();
+    methodMetrics.forEach((method, m) -> {
+      String prefix = Constants.AM_RPC_PREFIX + toUpperSnakeCase(method) + "_";
+      metrics.put(prefix + "CALLS", (double) m.latencyUs.getCount());
+      metrics.put(prefix + "ERRORS", m.numErrors.doubleValue());
+      metrics.put(prefix + "REJECTED", m.numRejected.doubleValue());
+      metrics.put(prefix + "MAX_IN_FLIGHT", (double) m.maxInFlight.get());
+      metrics.put(prefix + "AVG_MS", m.latencyUs.getMean() / 1000);
+      metrics.put(prefix + "P99_MS", toMs(m.latencyUs.getPercentile(0.99)));
+      metrics.put(prefix + "MAX_MS", toMs(m.latencyUs.getMax()));
+      metrics.put(prefix + "QUEUE_AVG_MS", m.queueTimeUs.getMean() / 1000);
+      metrics.put(prefix + "QUEUE_P99_MS", toMs(m.queueTimeUs.getPercentile(0.99)));
+    });
+    return metrics;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    MetricsRecordBuilder record = collector.addRecord(RECORD_NAME).setContext("tony");
+    methodMetrics.forEach((method, m) -> {
+      record.addCounter(Interns.info(method + "NumOps", "Number of " + method + " calls"), m.latencyUs.getCount())
+          .addCounter(Interns.info(method + "NumErrors", "Number of failed " + method + " calls"), m.numErrors.sum())
+          .addCounter(Interns.info(method + "NumRejected", "Number of turned away " + method + " calls"),
+              m.numRejected.sum())
+          .addGauge(Interns.info(method + "NumInFlight", "Number of " + method + " calls being served"),
+              m.numInFlight.get())
+          .addGauge(Interns.info(method + "AvgTime", "Average " + method + " latency in milliseconds"),
+              m.latencyUs.getMean() / 1000)
+          .addGauge(Interns.info(method + "50thPercentileTime", "Median " + method + " latency in milliseconds"),
+              toMs(m.latencyUs.getPercentile(0.5)))
+          .addGauge(Interns.info(method + "99thPercentileTime", "99th percentile " + method
+              + " latency in milliseconds"), toMs(m.latencyUs.getPercentile(0.99)))
+          .addGauge(Interns.info(method + "MaxTime", "Maximum " + method + " latency in milliseconds"),
+              toMs(m.latencyUs.getMax()))
+          .addGauge(Interns.info(method + "QueueAvgTime", "Average time " + method
+              + " calls waited for a handler in milliseconds"), m.queueTimeUs.getMean() / 1000)
+          .addGauge(Interns.info(method + "Queue99thPercentileTime", "99th percentile time " + method
+              + " calls waited for a handler in milliseconds"), toMs(m.queueTimeUs.getPercentile(0.99)));
+    });
+  }
+
+  private static double toMs(long us) {
+    return us / 1000.0;
+  }
+
+  private static String toUpperSnakeCase(String camelCase) {
+    return camelCase.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+  }
+}
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.util.Random;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.ipc.ProtocolSignature;
 import org.apache.hadoop.ipc.ProtobufRpcEngine;
 import org.apache.hadoop.ipc.RPC;
@@ -28,21 +29,35 @@ public class ApplicationRpcServer extends Thread implements TensorFlowCluster {
   private final int rpcPort;
   private final String rpcAddress;
   private final ApplicationRpc appRpc;
+  private final int numHandlers;
+  private final int numReaders;
   private ClientToAMTokenSecretManager secretManager;
-  private Server server;
+  private AdmissionController admissionController;
+  private final ApplicationRpcMetrics rpcMetrics = new ApplicationRpcMetrics();
+  private volatile Server server;
   private Configuration conf;
 
-  public ApplicationRpcServer(String hostname, ApplicationRpc rpc, Configuration conf) {
+  /**
+   * @param rpc the AM side of the calls, which is called concurrently by {@code numHandlers} handler threads
+   * @param numReaders the number of threads reading calls off client connections
+   */
+  public ApplicationRpcServer(String hostname, ApplicationRpc rpc, Configuration conf, int numHandlers,
+      int numReaders) {
     this.rpcAddress = hostname;
     this.rpcPort = 10000 + RANDOM_NUMBER_GENERATOR.nextInt(5000) + 1;
     this.appRpc = rpc;
     this.conf = conf;
+    this.numHandlers = Math.max(1, numHandlers);
+    this.numReaders = Math.max(1, numReaders);
   }
 
   @Override
   public GetTaskInfosResponse getTaskInfos(GetTaskInfosRequest request) throws IOException, YarnException {
     GetTaskInfosResponse response = RECORD_FACTORY.newRecordInstance(GetTaskInfosResponse.class);
-    response.setTaskInfos(this.appRpc.getTaskInfos());
+    TaskInfoUpdate update = this.appRpc.getTaskInfos(request.getSinceVersion());
+    response.setTaskInfos(update.getTaskInfos());
+    response.setVersion(update.getVersion());
+    response.setDelta(update.isDelta());
     return response;
   }
 
@@ -57,15 +72,18 @@ public class ApplicationRpcServer extends Thread implements TensorFlowCluster {
   @Override
   public RegisterWorkerSpecResponse registerWorkerSpec(RegisterWorkerSpecRequest request)
           throws YarnException, IOException {
+    admit();
     RegisterWorkerSpecResponse response = RECORD_FACTORY.newRecordInstance(RegisterWorkerSpecResponse.class);
-    String clusterSpec = this.appRpc.registerWorkerSpec(request.getWorker(), request.getSpec());
+    String clusterSpec = this.appRpc.registerWorkerSpec(request.getWorker(), request.getSpec(), request.getWaitMs());
     response.setSpec(clusterSpec);
+    response.setTaskHandle(this.appRpc.getTaskHandle(request.getWorker()));
     return response;
   }
 
   @Override
   public RegisterTensorBoardUrlResponse registerTensorBoardUrl(RegisterTensorBoardUrlRequest request)
           throws Exception {
+    admit();
     RegisterTensorBoardUrlResponse response = RECORD_FACTORY.newRecordInstance(RegisterTensorBoardUrlResponse.class);
     String clusterSpec = this.appRpc.registerTensorBoardUrl(request.getSpec());
     response.setSpec(clusterSpec);
@@ -92,10 +110,42 @@ public class ApplicationRpcServer extends Thread implements TensorFlowCluster {
   public HeartbeatResponse taskExecutorHeartbeat(HeartbeatRequest request)
       throws YarnException, IOException {
     HeartbeatResponse response = RECORD_FACTORY.newRecordInstance(HeartbeatResponse.class);
-    this.appRpc.taskExecutorHeartbeat(request.getTaskId());
+    int taskHandle = request.getTaskHandle();
+    boolean preempted;
+    if (taskHandle >= 0) {
+      double[] metrics = request.getMetrics();
+      preempted = this.appRpc.taskExecutorHeartbeat(taskHandle, metrics.length > 0 ? metrics : null);
+    } else {
+      preempted = this.appRpc.taskExecutorHeartbeat(request.getTaskId());
+    }
+    response.setClusterSpecVersion(this.appRpc.getClusterSpecVersion());
+    response.setSessionId(this.appRpc.getSessionId());
+    response.setPreempted(preempted);
+    return response;
+  }
+
+  @Override
+  public ResizeJobResponse resizeJob(ResizeJobRequest request) throws YarnException, IOException {
+    ResizeJobResponse response = RECORD_FACTORY.newRecordInstance(ResizeJobResponse.class);
+    response.setNumInstances(this.appRpc.resizeJob(request.getJobName(), request.getNumInstances()));
     return response;
   }
 
+  @Override
+  public Empty updateMetrics(UpdateMetricsRequest request) throws YarnException, IOException {
+    this.appRpc.updateMetrics(request.getTaskType(), request.getTaskIndex(), request.getValues());
+    return RECORD_FACTORY.newRecordInstance(Empty.class);
+  }
+
+  /**
+   * Turns the call away if the admission controller, if any, finds too many calls waiting for a handler.
+   */
+  private void admit() throws AMBusyException {
+    if (admissionController != null) {
+      admissionController.admit(getCallQueueLength());
+    }
+  }
+
   // Reset the Application RPC's state
   public void reset() {
     this.appRpc.reset();
@@ -105,22 +155,60 @@ public class ApplicationRpcServer extends Thread implements TensorFlowCluster {
     return rpcPort;
   }
 
+  public int getNumHandlers() {
+    return numHandlers;
+  }
+
+  public ApplicationRpcMetrics getRpcMetrics() {
+    return rpcMetrics;
+  }
+
+  /**
+   * Returns the number of calls waiting for a handler, or 0 if the server hasn't started.
+   */
+  public int getCallQueueLength() {
+    Server rpcServer = server;
+    return rpcServer == null ? 0 : rpcServer.getCallQueueLen();
+  }
+
   public void setSecretManager(ClientToAMTokenSecretManager secretManager) {
     this.secretManager = secretManager;
   }
 
+  /**
+   * Sets the admission controller deciding which task registrations to turn away while the AM is busy. Must be called
+   * before the server starts.
+   */
+  public void setAdmissionController(AdmissionController admissionController) {
+    this.admissionController = admissionController;
+  }
+
   @Override
   public void run() {
     try {
       RPC.setProtocolEngine(conf, TensorFlowClusterPB.class, ProtobufRpcEngine.class);
       TensorFlowClusterPBServiceImpl
-              translator = new TensorFlowClusterPBServiceImpl(this);
+              translator = new TensorFlowClusterPBServiceImpl(rpcMetrics.instrument(this));
       BlockingService service = com.linkedin.tony.rpc.proto.TensorFlowCluster.TensorFlowClusterService
               .newReflectiveBlockingService(translator);
-      server = new RPC.Builder(conf).setProtocol(TensorFlowClusterPB.class)
-              .setInstance(service).setBindAddress(rpcAddress)
-              .setPort(rpcPort) // TODO: let RPC randomly generate it
-              .setSecretManager(secretManager).build();
+      // What RPC.Builder builds for protobuf protocols, but handing each call's receive time to the metrics so that
+      // they can tell how long calls wait for a handler.
+      server = new ProtobufRpcEngine.Server(TensorFlowClusterPB.class, service, conf, rpcAddress,
+              rpcPort, // TODO: let RPC randomly generate it
+              numHandlers, numReaders, -1, false, secretManager, null) {
+        @Override
+        public Writable call(RPC.RpcKind rpcKind, String protocol, Writable rpcRequest, long receiveTime)
+            throws Exception {
+          ApplicationRpcMetrics.setCallReceiveTime(receiveTime);
+          try {
+            return super.call(rpcKind, protocol, rpcRequest, receiveTime);
+          } finally {
+            ApplicationRpcMetrics.setCallReceiveTime(-1);
+          }
+        }
+      };
+      // Turned away calls are expected under load, and are retried by the clients
+      server.addTerseExceptions(AMBusyException.class);
       server.start();
       if (conf.getBoolean(
               CommonConfigurationKeysPublic.HADOOP_SECURITY_AUTHORIZATION,
@@ -131,6 +219,16 @@ public class ApplicationRpcServer extends Thread implements TensorFlowCluster {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Stops the RPC server, if it has started.
+   */
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
   private synchronized void refreshServiceAcls(Configuration configuration,
                                                PolicyProvider policyProvider) {
     server.refreshServiceAclWithLoadedConfiguration(configuration,
@@ -5,4 +5,6 @@
 package com.linkedin.tony.rpc;
 
 public interface GetTaskInfosRequest {
+  long getSinceVersion();
+  void setSinceVersion(long sinceVersion);
 }
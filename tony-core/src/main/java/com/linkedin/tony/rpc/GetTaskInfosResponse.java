@@ -11,4 +11,12 @@ public interface GetTaskInfosResponse {
     Set<TaskInfo> getTaskInfos();
 
     void setTaskInfos(Set<TaskInfo> taskInfos);
+
+    long getVersion();
+
+    void setVersion(long version);
+
+    boolean isDelta();
+
+    void setDelta(boolean delta);
 }
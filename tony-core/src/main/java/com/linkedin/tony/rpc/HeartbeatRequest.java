@@ -7,4 +7,8 @@ package com.linkedin.tony.rpc;
 public interface HeartbeatRequest {
   String getTaskId();
   void setTaskId(String taskId);
+  int getTaskHandle();
+  void setTaskHandle(int taskHandle);
+  double[] getMetrics();
+  void setMetrics(double[] metrics);
 }
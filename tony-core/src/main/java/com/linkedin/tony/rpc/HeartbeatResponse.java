@@ -5,4 +5,10 @@
 package com.linkedin.tony.rpc;
 
 public interface HeartbeatResponse {
+  long getClusterSpecVersion();
+  void setClusterSpecVersion(long clusterSpecVersion);
+  int getSessionId();
+  void setSessionId(int sessionId);
+  boolean getPreempted();
+  void setPreempted(boolean preempted);
 }
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Histogram of non-negative values, e.g. latencies in microseconds, that many threads can record into without locking.
+ *
+ * Values are counted in power-of-two buckets: bucket 0 counts 0 and bucket i counts values in [2^(i-1), 2^i). So
+ * percentiles are only accurate to within a factor of two, which is plenty to tell a slow AM from a fast one.
+ */
+public class LatencyHistogram {
+  private static final int NUM_BUCKETS = 48;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long value) {
+    long v = Math.max(0, value);
+    buckets.incrementAndGet(getBucket(v));
+    count.increment();
+    sum.add(v);
+    max.accumulateAndGet(v, Math::max);
+  }
+
+  private static int getBucket(long value) {
+    return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Returns an upper bound of the {@code percentile} (between 0 and 1) of the recorded values, or 0 if none were
+   * recorded. Values recorded concurrently may or may not be taken into account.
+   */
+  public long getPercentile(double percentile) {
+    long[] snapshot = new long[NUM_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile * total));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        long upperBound = i == 0 ? 0 : (1L << i) - 1;
+        return Math.min(upperBound, getMax());
+      }
+    }
+    return getMax();
+  }
+}
@@ -10,4 +10,6 @@ public interface RegisterWorkerSpecRequest {
   String getSpec();
   void setWorker(String worker);
   void setSpec(String spec);
+  long getWaitMs();
+  void setWaitMs(long waitMs);
 }
\ No newline at end of file
@@ -8,4 +8,6 @@ package com.linkedin.tony.rpc;
 public interface RegisterWorkerSpecResponse {
   String getSpec();
   void setSpec(String spec);
+  int getTaskHandle();
+  void setTaskHandle(int taskHandle);
 }
@@ -0,0 +1,11 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+
+public interface ResizeJobResponse {
+  int getNumInstances();
+  void setNumInstances(int numInstances);
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import java.util.Collections;
+import java.util.Set;
+
+
+/**
+ * The task infos of a version of the AM's task info snapshot: either all of them, or only the ones that changed since
+ * the version the caller already has.
+ */
+public class TaskInfoUpdate {
+  private final long version;
+  private final boolean delta;
+  private final Set<TaskInfo> taskInfos;
+
+  public TaskInfoUpdate(long version, boolean delta, Set<TaskInfo> taskInfos) {
+    this.version = version;
+    this.delta = delta;
+    this.taskInfos = Collections.unmodifiableSet(taskInfos);
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Whether {@link #getTaskInfos()} only holds the task infos that changed, rather than all task infos. A delta without
+   * task infos means nothing changed.
+   */
+  public boolean isDelta() {
+    return delta;
+  }
+
+  public Set<TaskInfo> getTaskInfos() {
+    return taskInfos;
+  }
+}
@@ -33,4 +33,8 @@ public interface TensorFlowCluster extends VersionedProtocol {
 
   HeartbeatResponse taskExecutorHeartbeat(HeartbeatRequest request) throws YarnException, IOException;
 
+  ResizeJobResponse resizeJob(ResizeJobRequest request) throws YarnException, IOException;
+
+  Empty updateMetrics(UpdateMetricsRequest request) throws YarnException, IOException;
+
 }
@@ -0,0 +1,15 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+
+public interface UpdateMetricsRequest {
+  String getTaskType();
+  void setTaskType(String taskType);
+  int getTaskIndex();
+  void setTaskIndex(int taskIndex);
+  double[] getValues();
+  void setValues(double[] values);
+}
@@ -11,25 +11,31 @@ import com.linkedin.tony.rpc.GetClusterSpecResponse;
 import com.linkedin.tony.rpc.GetTaskInfosRequest;
 import com.linkedin.tony.rpc.GetTaskInfosResponse;
 import com.linkedin.tony.rpc.HeartbeatRequest;
+import com.linkedin.tony.rpc.HeartbeatResponse;
 import com.linkedin.tony.rpc.RegisterExecutionResultRequest;
 import com.linkedin.tony.rpc.RegisterExecutionResultResponse;
 import com.linkedin.tony.rpc.RegisterTensorBoardUrlRequest;
 import com.linkedin.tony.rpc.RegisterTensorBoardUrlResponse;
 import com.linkedin.tony.rpc.RegisterWorkerSpecRequest;
 import com.linkedin.tony.rpc.RegisterWorkerSpecResponse;
+import com.linkedin.tony.rpc.ResizeJobRequest;
+import com.linkedin.tony.rpc.ResizeJobResponse;
 import com.linkedin.tony.rpc.ApplicationRpc;
 import com.linkedin.tony.rpc.TensorFlowCluster;
 import com.linkedin.tony.rpc.TaskInfo;
+import com.linkedin.tony.rpc.TaskInfoUpdate;
+import com.linkedin.tony.rpc.UpdateMetricsRequest;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.PrivilegedAction;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.retry.RetryPolicies;
 import org.apache.hadoop.io.retry.RetryPolicy;
 import org.apache.hadoop.io.retry.RetryProxy;
+import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.yarn.ipc.YarnRPC;
 import org.apache.hadoop.yarn.exceptions.YarnException;
@@ -38,14 +44,29 @@ import org.apache.hadoop.yarn.factory.providers.RecordFactoryProvider;
 
 
 public class ApplicationRpcClient implements ApplicationRpc {
+  // Failed calls are retried with randomized, growing sleeps, so that the executors of a job don't retry in lockstep
+  private static final int MAX_RETRIES = 10;
+  private static final long RETRY_BASE_SLEEP_MS = 500;
+  private static final long RETRY_MAX_SLEEP_MS = 4000;
+  // Calls the AM turns away while busy are retried after the time it asks for
+  private static final int MAX_BUSY_RETRIES = 60;
+
   private RecordFactory recordFactory = RecordFactoryProvider.getRecordFactory(null);
   private TensorFlowCluster tensorflow;
+  // task id -> handle the AM assigned to it when it registered through this client
+  private final Map<String, Integer> taskHandles = new ConcurrentHashMap<>();
+  private volatile long clusterSpecVersion = -1;
+  private volatile int sessionId = -1;
   private static ApplicationRpcClient instance = null;
   private static int port = 0;
   private static String address = "";
 
   public static ApplicationRpcClient getInstance(String serverAddress, int serverPort, Configuration conf) {
     if (null == instance || !serverAddress.equals(address) || serverPort != port) {
+      if (instance != null) {
+        // The AM moved to a new attempt, the old one is gone.
+        instance.stop();
+      }
       instance = new ApplicationRpcClient(serverAddress, serverPort, conf);
       address = serverAddress;
       port = serverPort;
@@ -64,8 +85,8 @@ public class ApplicationRpcClient implements ApplicationRpc {
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    RetryPolicy retryPolicy = RetryPolicies.retryUpToMaximumCountWithFixedSleep(
-            10, 2000, TimeUnit.MILLISECONDS);
+    RetryPolicy retryPolicy = new DecorrelatedJitterRetryPolicy(MAX_RETRIES, RETRY_BASE_SLEEP_MS, RETRY_MAX_SLEEP_MS,
+        MAX_BUSY_RETRIES);
     this.tensorflow = getProxy(conf, rpc, ugi, address, TensorFlowCluster.class, retryPolicy);
   }
 
@@ -77,9 +98,15 @@ public class ApplicationRpcClient implements ApplicationRpc {
 
   @Override
   public Set<TaskInfo> getTaskInfos() throws IOException, YarnException {
-    GetTaskInfosResponse response =
-        tensorflow.getTaskInfos(recordFactory.newRecordInstance(GetTaskInfosRequest.class));
-    return response.getTaskInfos();
+    return getTaskInfos(-1).getTaskInfos();
+  }
+
+  @Override
+  public TaskInfoUpdate getTaskInfos(long sinceVersion) throws IOException, YarnException {
+    GetTaskInfosRequest request = recordFactory.newRecordInstance(GetTaskInfosRequest.class);
+    request.setSinceVersion(sinceVersion);
+    GetTaskInfosResponse response = tensorflow.getTaskInfos(request);
+    return new TaskInfoUpdate(response.getVersion(), response.isDelta(), response.getTaskInfos());
   }
 
   @Override
@@ -91,10 +118,19 @@ public class ApplicationRpcClient implements ApplicationRpc {
 
   @Override
   public String registerWorkerSpec(String worker, String spec) throws IOException, YarnException {
+    return registerWorkerSpec(worker, spec, 0);
+  }
+
+  @Override
+  public String registerWorkerSpec(String worker, String spec, long waitMs) throws IOException, YarnException {
     RegisterWorkerSpecRequest request = recordFactory.newRecordInstance(RegisterWorkerSpecRequest.class);
     request.setWorker(worker);
     request.setSpec(spec);
+    request.setWaitMs(waitMs);
     RegisterWorkerSpecResponse response = tensorflow.registerWorkerSpec(request);
+    if (response.getTaskHandle() >= 0) {
+      taskHandles.put(worker, response.getTaskHandle());
+    }
     return response.getSpec();
   }
 
@@ -124,11 +160,85 @@ public class ApplicationRpcClient implements ApplicationRpc {
   }
 
   @Override
-  public void taskExecutorHeartbeat(String taskId) throws YarnException, IOException {
+  public boolean taskExecutorHeartbeat(String taskId) throws YarnException, IOException {
     HeartbeatRequest request = recordFactory.newRecordInstance(HeartbeatRequest.class);
     request.setTaskId(taskId);
-    tensorflow.taskExecutorHeartbeat(request);
+    return onHeartbeatResponse(tensorflow.taskExecutorHeartbeat(request));
+  }
+
+  @Override
+  public boolean taskExecutorHeartbeat(int taskHandle) throws YarnException, IOException {
+    return taskExecutorHeartbeat(taskHandle, null);
+  }
+
+  @Override
+  public boolean taskExecutorHeartbeat(int taskHandle, double[] metrics) throws YarnException, IOException {
+    HeartbeatRequest request = recordFactory.newRecordInstance(HeartbeatRequest.class);
+    request.setTaskHandle(taskHandle);
+    request.setMetrics(metrics);
+    return onHeartbeatResponse(tensorflow.taskExecutorHeartbeat(request));
+  }
+
+  @Override
+  public void updateMetrics(String taskType, int taskIndex, double[] values) throws IOException, YarnException {
+    UpdateMetricsRequest request = recordFactory.newRecordInstance(UpdateMetricsRequest.class);
+    request.setTaskType(taskType);
+    request.setTaskIndex(taskIndex);
+    request.setValues(values);
+    tensorflow.updateMetrics(request);
+  }
+
+  private boolean onHeartbeatResponse(HeartbeatResponse response) {
+    if (response == null) {
+      return false;
+    }
+    clusterSpecVersion = response.getClusterSpecVersion();
+    sessionId = response.getSessionId();
+    return response.getPreempted();
+  }
+
+  /**
+   * Returns the handle the AM assigned to {@code taskId} in its response to the task's last
+   * {@link #registerWorkerSpec(String, String)} call through this client, or -1 if the task hasn't registered through
+   * it.
+   */
+  @Override
+  public int getTaskHandle(String taskId) {
+    return taskHandles.getOrDefault(taskId, -1);
+  }
+
+  /**
+   * Returns the cluster spec version the AM reported in its response to the last heartbeat, or -1 before the first
+   * heartbeat.
+   */
+  @Override
+  public long getClusterSpecVersion() {
+    return clusterSpecVersion;
+  }
+
+  /**
+   * Returns the session id the AM reported in its response to the last heartbeat, or -1 before the first heartbeat.
+   */
+  @Override
+  public int getSessionId() {
+    return sessionId;
+  }
+
+  @Override
+  public int resizeJob(String jobName, int numInstances) throws IOException, YarnException {
+    ResizeJobRequest request = recordFactory.newRecordInstance(ResizeJobRequest.class);
+    request.setJobName(jobName);
+    request.setNumInstances(numInstances);
+    ResizeJobResponse response = tensorflow.resizeJob(request);
+    return response.getNumInstances();
   }
 
   public void reset() { }
+
+  /**
+   * Closes the connection to the AM.
+   */
+  public void stop() {
+    RPC.stopProxy(tensorflow);
+  }
 }
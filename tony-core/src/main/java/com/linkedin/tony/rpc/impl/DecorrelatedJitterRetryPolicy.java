@@ -0,0 +1,71 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc.impl;
+
+import com.linkedin.tony.rpc.AMBusyException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.hadoop.io.retry.RetryPolicy;
+
+
+/**
+ * Retries failed calls up to {@code maxRetries} times, sleeping a random time between {@code baseSleepMs} and three
+ * times the previous sleep, capped at {@code maxSleepMs}, before each retry. Unlike a fixed sleep, this keeps the
+ * executors of a job that failed together, e.g. because the AM was restarting, from retrying in lockstep.
+ *
+ * Calls the AM turned away with an {@link AMBusyException} are retried up to {@code maxBusyRetries} times, without
+ * counting against {@code maxRetries}, after the time the AM asked for plus up to as much again.
+ */
+public class DecorrelatedJitterRetryPolicy implements RetryPolicy {
+  private final int maxRetries;
+  private final long baseSleepMs;
+  private final long maxSleepMs;
+  private final int maxBusyRetries;
+
+  // Retries of a call happen on the calling thread, so each thread tracks the call it is retrying
+  private final ThreadLocal<CallState> callState = ThreadLocal.withInitial(CallState::new);
+
+  private static class CallState {
+    private long lastSleepMs;
+    private int numBusyRetries;
+  }
+
+  public DecorrelatedJitterRetryPolicy(int maxRetries, long baseSleepMs, long maxSleepMs, int maxBusyRetries) {
+    this.maxRetries = maxRetries;
+    this.baseSleepMs = Math.max(1, baseSleepMs);
+    this.maxSleepMs = Math.max(this.baseSleepMs, maxSleepMs);
+    this.maxBusyRetries = maxBusyRetries;
+  }
+
+  @Override
+  public RetryAction shouldRetry(Exception e, int retries, int failovers, boolean isIdempotentOrAtMostOnce) {
+    CallState state = callState.get();
+    if (retries == 0) {
+      state.lastSleepMs = baseSleepMs;
+      state.numBusyRetries = 0;
+    }
+
+    long sleepMs;
+    if (e instanceof AMBusyException) {
+      if (state.numBusyRetries >= maxBusyRetries) {
+        return RetryAction.FAIL;
+      }
+      state.numBusyRetries++;
+      long retryAfterMs = Math.max(1, ((AMBusyException) e).getRetryAfterMs());
+      sleepMs = retryAfterMs + ThreadLocalRandom.current().nextLong(retryAfterMs);
+    } else {
+      if (retries - state.numBusyRetries >= maxRetries) {
+        return RetryAction.FAIL;
+      }
+      sleepMs = nextSleepMs(state.lastSleepMs);
+    }
+    state.lastSleepMs = sleepMs;
+    return new RetryAction(RetryAction.RetryDecision.RETRY, sleepMs);
+  }
+
+  private long nextSleepMs(long lastSleepMs) {
+    long upperMs = Math.max(baseSleepMs + 1, Math.min(maxSleepMs, lastSleepMs * 3) + 1);
+    return Math.min(maxSleepMs, ThreadLocalRandom.current().nextLong(baseSleepMs, upperMs));
+  }
+}
@@ -5,52 +5,223 @@
 package com.linkedin.tony.rpc.impl;
 
 import com.linkedin.tony.events.Metric;
-import com.linkedin.tony.rpc.MetricsRpc;
+import com.linkedin.tony.events.MetricTimeSeries;
+import com.linkedin.tony.events.TaskMetricsTimeSeries;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.hadoop.ipc.ProtocolSignature;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 
 
 /**
- * Stores metrics and handles metric updates for all tasks.
+ * Stores metrics and handles metric updates for all tasks. Tasks send their metrics through the application RPC
+ * server, either in their own call or along with their heartbeats, as the values of {@code metricNames} in that order.
+ *
+ * Besides the latest values, which go into the TASK_FINISHED events, the store keeps each task attempt's values over
+ * time in a {@link TaskMetricsHistory} of {@code historySize} samples, if positive, to answer range queries and to
+ * write into the job's history directory when the job finishes. Attempts are told apart by session id and attempt
+ * number, so that a retried or replaced task's samples don't mix with those of its failed attempt.
  */
-public class MetricsRpcServer implements MetricsRpc {
+public class MetricsRpcServer {
   private static final Log LOG = LogFactory.getLog(MetricsRpcServer.class);
 
-  private Map<String, Map<Integer, MetricsWritable>> metricsMap = new HashMap<>();
+  private final List<String> metricNames;
+  private final Map<String, Integer> metricIndices = new HashMap<>();
+  private final int historySize;
+  private final long sampleIntervalMs;
+  private final LongSupplier clock;
+
+  // Updated by RPC handlers and read by the AM
+  private final Map<String, Map<Integer, double[]>> metricsMap = new ConcurrentHashMap<>();
+  private final Map<AttemptKey, TaskMetricsHistory> histories = new ConcurrentHashMap<>();
+
+  /**
+   * @param historySize number of samples of each task's metrics kept at full resolution, and of older, downsampled
+   *                    samples, or 0 to only keep the latest values
+   * @param sampleIntervalMs minimum time between two full resolution samples, usually the tasks' metrics interval
+   */
+  public MetricsRpcServer(List<String> metricNames, int historySize, long sampleIntervalMs) {
+    this(metricNames, historySize, sampleIntervalMs, System::currentTimeMillis);
+  }
+
+  MetricsRpcServer(List<String> metricNames, int historySize, long sampleIntervalMs, LongSupplier clock) {
+    this.metricNames = metricNames;
+    for (int i = 0; i < metricNames.size(); i++) {
+      metricIndices.put(metricNames.get(i), i);
+    }
+    this.historySize = historySize;
+    this.sampleIntervalMs = sampleIntervalMs;
+    this.clock = clock;
+  }
 
   public List<Metric> getMetrics(String taskType, int taskIndex) {
-    if (!metricsMap.containsKey(taskType) || !metricsMap.get(taskType).containsKey(taskIndex)) {
+    double[] values = getValues(taskType, taskIndex);
+    if (values == null) {
       LOG.warn("No metrics for " + taskType + " " + taskIndex + "!");
       return Collections.EMPTY_LIST;
     }
-    return metricsMap.get(taskType).get(taskIndex).getMetricsAsList();
+    List<Metric> metrics = new ArrayList<>(values.length);
+    for (int i = 0; i < values.length; i++) {
+      metrics.add(new Metric(metricNames.get(i), values[i]));
+    }
+    return metrics;
+  }
+
+  /**
+   * Returns the latest value of metric {@code name} of {@code taskType} {@code taskIndex}, or null if the task hasn't
+   * reported it.
+   */
+  public Double getMetric(String taskType, int taskIndex, String name) {
+    double[] values = getValues(taskType, taskIndex);
+    Integer index = metricIndices.get(name);
+    if (values == null || index == null || index >= values.length) {
+      return null;
+    }
+    return values[index];
+  }
+
+  private double[] getValues(String taskType, int taskIndex) {
+    Map<Integer, double[]> taskMetrics = metricsMap.get(taskType);
+    return taskMetrics == null ? null : taskMetrics.get(taskIndex);
+  }
+
+  /**
+   * Returns the values of metric {@code name} of attempt {@code attempt} of {@code taskType} {@code taskIndex} in
+   * session {@code sessionId} reported from {@code startMs} to {@code endMs}, e.g. the memory of worker 17 over the
+   * last 30 minutes, or null if there are none because the metric is unknown, the attempt hasn't reported metrics or
+   * no history is kept.
+   */
+  public TaskMetricsHistory.TimeSeries getTimeSeries(String taskType, int taskIndex, int sessionId, int attempt,
+      String name, long startMs, long endMs) {
+    TaskMetricsHistory history = histories.get(new AttemptKey(taskType, taskIndex, sessionId, attempt));
+    Integer index = metricIndices.get(name);
+    if (history == null || index == null) {
+      return null;
+    }
+    return history.get(index, startMs, endMs);
+  }
+
+  /**
+   * Drops the latest metrics of {@code taskType} {@code taskIndex}, e.g. because the task is relaunched and its next
+   * attempt hasn't reported any yet. The task's history is kept.
+   */
+  public void clearMetrics(String taskType, int taskIndex) {
+    Map<Integer, double[]> taskMetrics = metricsMap.get(taskType);
+    if (taskMetrics != null) {
+      taskMetrics.remove(taskIndex);
+    }
   }
 
   /**
-   * Replaces the metrics stored for {@code taskType} {@code taskIndex} with {@code metrics}.
+   * Replaces the metrics stored for {@code taskType} {@code taskIndex} with {@code values}, reported by attempt
+   * {@code attempt} of the task in session {@code sessionId}. Values beyond the known metrics, e.g. from executors of a
+   * newer version, are dropped.
    */
-  @Override
-  public void updateMetrics(String taskType, int taskIndex, MetricsWritable metrics) {
-    if (!metricsMap.containsKey(taskType)) {
-      metricsMap.put(taskType, new HashMap<>());
+  public void updateMetrics(String taskType, int taskIndex, int sessionId, int attempt, double[] values) {
+    if (taskType == null || values == null) {
+      return;
+    }
+    double[] stored = values.length > metricNames.size() ? Arrays.copyOf(values, metricNames.size())
+        : values;
+    metricsMap.computeIfAbsent(taskType, k -> new ConcurrentHashMap<>()).put(taskIndex, stored);
+    if (historySize > 0) {
+      histories.computeIfAbsent(new AttemptKey(taskType, taskIndex, sessionId, attempt),
+          k -> new TaskMetricsHistory(metricNames.size(), historySize, sampleIntervalMs))
+          .add(clock.getAsLong(), stored);
     }
-    metricsMap.get(taskType).put(taskIndex, metrics);
   }
 
-  @Override
-  public long getProtocolVersion(String protocol, long clientVersion) {
-    return versionID;
+  /**
+   * Writes the metrics history of all task attempts to {@code file}, as deflated Avro {@link TaskMetricsTimeSeries}
+   * records, one per attempt. Sample times are stored as differences to the previous sample, which take a byte or two
+   * each.
+   */
+  public void writeTimeSeries(FileSystem fs, Path file) throws IOException {
+    try (FSDataOutputStream out = fs.create(file, true);
+        DataFileWriter<TaskMetricsTimeSeries> writer =
+            new DataFileWriter<>(new SpecificDatumWriter<>(TaskMetricsTimeSeries.class))) {
+      writer.setCodec(CodecFactory.deflateCodec(6));
+      writer.create(TaskMetricsTimeSeries.SCHEMA$, out);
+      for (Map.Entry<AttemptKey, TaskMetricsHistory> entry : new TreeMap<>(histories).entrySet()) {
+        writer.append(toTimeSeries(entry.getKey(), entry.getValue().getAll()));
+      }
+    }
+  }
+
+  private TaskMetricsTimeSeries toTimeSeries(AttemptKey key, TaskMetricsHistory.TimeSeries[] series) {
+    long[] times = series.length == 0 ? new long[0] : series[0].getTimes();
+    List<Long> timeDeltas = new ArrayList<>(times.length);
+    for (int i = 0; i < times.length; i++) {
+      timeDeltas.add(i == 0 ? 0 : times[i] - times[i - 1]);
+    }
+    List<MetricTimeSeries> metrics = new ArrayList<>(series.length);
+    for (int metric = 0; metric < series.length; metric++) {
+      List<Double> values = new ArrayList<>(times.length);
+      for (double value : series[metric].getValues()) {
+        values.add(value);
+      }
+      metrics.add(new MetricTimeSeries(metricNames.get(metric), values));
+    }
+    return new TaskMetricsTimeSeries(key.taskType, key.taskIndex, key.sessionId, key.attempt,
+        times.length == 0 ? 0 : times[0], timeDeltas, metrics);
   }
 
-  @Override
-  public ProtocolSignature getProtocolSignature(String protocol, long clientVersion, int clientMethodsHash)
-      throws IOException {
-    return ProtocolSignature.getProtocolSignature(this, protocol, clientVersion, clientMethodsHash);
+  /**
+   * Identifies one attempt of a task, ordered by task type, task index, session and attempt.
+   */
+  private static final class AttemptKey implements Comparable<AttemptKey> {
+    private final String taskType;
+    private final int taskIndex;
+    private final int sessionId;
+    private final int attempt;
+
+    AttemptKey(String taskType, int taskIndex, int sessionId, int attempt) {
+      this.taskType = taskType;
+      this.taskIndex = taskIndex;
+      this.sessionId = sessionId;
+      this.attempt = attempt;
+    }
+
+    @Override
+    public int compareTo(AttemptKey other) {
+      int result = taskType.compareTo(other.taskType);
+      if (result == 0) {
+        result = Integer.compare(taskIndex, other.taskIndex);
+      }
+      if (result == 0) {
+        result = Integer.compare(sessionId, other.sessionId);
+      }
+      return result != 0 ? result : Integer.compare(attempt, other.attempt);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof AttemptKey)) {
+        return false;
+      }
+      AttemptKey other = (AttemptKey) o;
+      return taskType.equals(other.taskType) && taskIndex == other.taskIndex && sessionId == other.sessionId
+          && attempt == other.attempt;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(taskType, taskIndex, sessionId, attempt);
+    }
   }
 }
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc.impl;
+
+/**
+ * The metrics one task reported over time, kept in fixed-size primitive arrays: one of sample times, and one of
+ * values per metric.
+ *
+ * The latest {@code capacity} samples, at most one per {@code sampleIntervalMs}, are kept at full resolution in a ring
+ * buffer. Samples falling out of the ring buffer are downsampled into an archive of the same size: once the archive is
+ * full, its sample interval doubles and only the latest sample of each doubled interval is kept. So a long job's whole
+ * run is kept, at a coarser resolution the older it is.
+ *
+ * Downsampling keeps the latest sample of an interval rather than an average, which keeps the metrics that are
+ * maxima or averages since the task started exact.
+ */
+public class TaskMetricsHistory {
+  private final long sampleIntervalMs;
+  private final Samples recent;
+  private final Samples archive;
+  private long archiveIntervalMs;
+
+  public TaskMetricsHistory(int numMetrics, int capacity, long sampleIntervalMs) {
+    this.sampleIntervalMs = Math.max(1, sampleIntervalMs);
+    this.recent = new Samples(numMetrics, capacity);
+    this.archive = new Samples(numMetrics, capacity);
+    this.archiveIntervalMs = this.sampleIntervalMs;
+  }
+
+  /**
+   * A metric's samples between two times, oldest first.
+   */
+  public static class TimeSeries {
+    private final long[] times;
+    private final double[] values;
+
+    TimeSeries(long[] times, double[] values) {
+      this.times = times;
+      this.values = values;
+    }
+
+    public long[] getTimes() {
+      return times;
+    }
+
+    public double[] getValues() {
+      return values;
+    }
+  }
+
+  /**
+   * Samples in a circular buffer, oldest first.
+   */
+  private static class Samples {
+    private final long[] times;
+    private final double[][] values;
+    private int start = 0;
+    private int size = 0;
+
+    Samples(int numMetrics, int capacity) {
+      times = new long[Math.max(2, capacity)];
+      values = new double[numMetrics][times.length];
+    }
+
+    private int index(int i) {
+      return (start + i) % times.length;
+    }
+
+    boolean isFull() {
+      return size == times.length;
+    }
+
+    long getTime(int i) {
+      return times[index(i)];
+    }
+
+    void set(int i, long time, double[] sample) {
+      int index = index(i);
+      times[index] = time;
+      for (int metric = 0; metric < values.length; metric++) {
+        values[metric][index] = metric < sample.length ? sample[metric] : -1;
+      }
+    }
+
+    void copy(int i, Samples from, int j) {
+      int to = index(i);
+      int index = from.index(j);
+      times[to] = from.times[index];
+      for (int metric = 0; metric < values.length; metric++) {
+        values[metric][to] = from.values[metric][index];
+      }
+    }
+
+    void removeOldest() {
+      start = index(1);
+      size--;
+    }
+  }
+
+  /**
+   * Adds the values of all metrics, in the order they were given to the store, at {@code time}. A sample older than
+   * the latest one is dropped, and one in the same interval as the latest one replaces it.
+   */
+  public synchronized void add(long time, double[] sample) {
+    if (recent.size > 0) {
+      long lastTime = recent.getTime(recent.size - 1);
+      if (time < lastTime) {
+        return;
+      }
+      if (time / sampleIntervalMs == lastTime / sampleIntervalMs) {
+        recent.set(recent.size - 1, time, sample);
+        return;
+      }
+    }
+    if (recent.isFull()) {
+      archiveOldest();
+      recent.removeOldest();
+    }
+    recent.size++;
+    recent.set(recent.size - 1, time, sample);
+  }
+
+  private void archiveOldest() {
+    long time = recent.getTime(0);
+    if (archive.size > 0 && archive.getTime(archive.size - 1) / archiveIntervalMs == time / archiveIntervalMs) {
+      archive.copy(archive.size - 1, recent, 0);
+      return;
+    }
+    if (archive.isFull()) {
+      downsampleArchive();
+    }
+    archive.size++;
+    archive.copy(archive.size - 1, recent, 0);
+  }
+
+  /**
+   * Doubles the archive's sample interval until keeping only the latest sample of each interval leaves room for a new
+   * sample.
+   */
+  private void downsampleArchive() {
+    while (archive.isFull()) {
+      archiveIntervalMs *= 2;
+      int kept = 0;
+      for (int i = 0; i < archive.size; i++) {
+        if (kept > 0 && archive.getTime(kept - 1) / archiveIntervalMs == archive.getTime(i) / archiveIntervalMs) {
+          kept--;
+        }
+        archive.copy(kept, archive, i);
+        kept++;
+      }
+      archive.size = kept;
+    }
+  }
+
+  /**
+   * Returns the samples of metric {@code metricIndex} taken from {@code startMs} to {@code endMs}, inclusive.
+   */
+  public synchronized TimeSeries get(int metricIndex, long startMs, long endMs) {
+    int numSamples = count(archive, startMs, endMs) + count(recent, startMs, endMs);
+    long[] times = new long[numSamples];
+    double[] values = new double[numSamples];
+    int n = 0;
+    for (Samples samples : new Samples[] {archive, recent}) {
+      for (int i = 0; i < samples.size; i++) {
+        long time = samples.getTime(i);
+        if (time >= startMs && time <= endMs) {
+          times[n] = time;
+          values[n] = samples.values[metricIndex][samples.index(i)];
+          n++;
+        }
+      }
+    }
+    return new TimeSeries(times, values);
+  }
+
+  private static int count(Samples samples, long startMs, long endMs) {
+    int count = 0;
+    for (int i = 0; i < samples.size; i++) {
+      long time = samples.getTime(i);
+      if (time >= startMs && time <= endMs) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns all samples of metric {@code metricIndex}, oldest first.
+   */
+  public TimeSeries getAll(int metricIndex) {
+    return get(metricIndex, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Returns all samples of each metric, taken at the same times.
+   */
+  public synchronized TimeSeries[] getAll() {
+    TimeSeries[] series = new TimeSeries[recent.values.length];
+    for (int metric = 0; metric < series.length; metric++) {
+      series[metric] = getAll(metric);
+    }
+    return series;
+  }
+
+  public synchronized int size() {
+    return archive.size + recent.size;
+  }
+
+  public synchronized long getArchiveIntervalMs() {
+    return archiveIntervalMs;
+  }
+}
@@ -50,4 +50,16 @@ public class GetTaskInfosRequestPBImpl implements GetTaskInfosRequest {
     }
     viaProto = false;
   }
+
+  @Override
+  public long getSinceVersion() {
+    YarnTensorFlowClusterProtos.GetTaskInfosRequestProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getSinceVersion();
+  }
+
+  @Override
+  public void setSinceVersion(long sinceVersion) {
+    maybeInitBuilder();
+    builder.setSinceVersion(sinceVersion);
+  }
 }
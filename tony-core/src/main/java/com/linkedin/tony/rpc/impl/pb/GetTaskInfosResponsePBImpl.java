@@ -69,4 +69,28 @@ public class GetTaskInfosResponsePBImpl implements GetTaskInfosResponse {
     builder.addAllTaskInfos(taskInfos.stream().map(ProtoUtils::taskInfoToTaskInfoProto)
         .collect(Collectors.toList()));
   }
+
+  @Override
+  public long getVersion() {
+    GetTaskInfosResponseProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getVersion();
+  }
+
+  @Override
+  public void setVersion(long version) {
+    maybeInitBuilder();
+    builder.setVersion(version);
+  }
+
+  @Override
+  public boolean isDelta() {
+    GetTaskInfosResponseProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getDelta();
+  }
+
+  @Override
+  public void setDelta(boolean delta) {
+    maybeInitBuilder();
+    builder.setDelta(delta);
+  }
 }
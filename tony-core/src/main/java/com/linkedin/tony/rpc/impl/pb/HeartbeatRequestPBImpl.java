@@ -15,6 +15,7 @@ public class HeartbeatRequestPBImpl implements HeartbeatRequest {
   private boolean viaProto = false;
 
   private String taskId = null;
+  private double[] metrics = null;
 
   public HeartbeatRequestPBImpl() {
     builder = HeartbeatRequestProto.newBuilder();
@@ -45,6 +46,12 @@ public class HeartbeatRequestPBImpl implements HeartbeatRequest {
     if (this.taskId != null) {
       builder.setTaskId(this.taskId);
     }
+    if (this.metrics != null) {
+      builder.clearMetrics();
+      for (double metric : this.metrics) {
+        builder.addMetrics(metric);
+      }
+    }
   }
 
   private void maybeInitBuilder() {
@@ -75,4 +82,38 @@ public class HeartbeatRequestPBImpl implements HeartbeatRequest {
     }
     this.taskId = taskId;
   }
+
+  @Override
+  public int getTaskHandle() {
+    HeartbeatRequestProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getTaskHandle();
+  }
+
+  @Override
+  public void setTaskHandle(int taskHandle) {
+    maybeInitBuilder();
+    builder.setTaskHandle(taskHandle);
+  }
+
+  @Override
+  public double[] getMetrics() {
+    if (this.metrics != null) {
+      return this.metrics;
+    }
+    HeartbeatRequestProtoOrBuilder p = viaProto ? proto : builder;
+    this.metrics = new double[p.getMetricsCount()];
+    for (int i = 0; i < this.metrics.length; i++) {
+      this.metrics[i] = p.getMetrics(i);
+    }
+    return this.metrics;
+  }
+
+  @Override
+  public void setMetrics(double[] metrics) {
+    maybeInitBuilder();
+    if (metrics == null) {
+      builder.clearMetrics();
+    }
+    this.metrics = metrics;
+  }
 }
@@ -6,6 +6,7 @@ package com.linkedin.tony.rpc.impl.pb;
 
 import com.linkedin.tony.rpc.HeartbeatResponse;
 import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.HeartbeatResponseProto;
+import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.HeartbeatResponseProtoOrBuilder;
 
 
 public class HeartbeatResponsePBImpl implements HeartbeatResponse {
@@ -48,4 +49,40 @@ public class HeartbeatResponsePBImpl implements HeartbeatResponse {
     }
     viaProto = false;
   }
+
+  @Override
+  public long getClusterSpecVersion() {
+    HeartbeatResponseProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getClusterSpecVersion();
+  }
+
+  @Override
+  public void setClusterSpecVersion(long clusterSpecVersion) {
+    maybeInitBuilder();
+    builder.setClusterSpecVersion(clusterSpecVersion);
+  }
+
+  @Override
+  public int getSessionId() {
+    HeartbeatResponseProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getSessionId();
+  }
+
+  @Override
+  public void setSessionId(int sessionId) {
+    maybeInitBuilder();
+    builder.setSessionId(sessionId);
+  }
+
+  @Override
+  public boolean getPreempted() {
+    HeartbeatResponseProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getPreempted();
+  }
+
+  @Override
+  public void setPreempted(boolean preempted) {
+    maybeInitBuilder();
+    builder.setPreempted(preempted);
+  }
 }
@@ -101,4 +101,16 @@ public class RegisterWorkerSpecRequestPBImpl implements RegisterWorkerSpecReques
     }
     this.spec = spec;
   }
+
+  @Override
+  public long getWaitMs() {
+    RegisterWorkerSpecRequestProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getWaitMs();
+  }
+
+  @Override
+  public void setWaitMs(long waitMs) {
+    maybeInitBuilder();
+    builder.setWaitMs(waitMs);
+  }
 }
@@ -74,4 +74,16 @@ public class RegisterWorkerSpecResponsePBImpl implements RegisterWorkerSpecRespo
     }
     this.spec = spec;
   }
+
+  @Override
+  public int getTaskHandle() {
+    RegisterWorkerSpecResponseProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getTaskHandle();
+  }
+
+  @Override
+  public void setTaskHandle(int taskHandle) {
+    maybeInitBuilder();
+    builder.setTaskHandle(taskHandle);
+  }
 }
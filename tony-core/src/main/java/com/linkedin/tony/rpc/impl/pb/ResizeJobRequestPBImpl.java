@@ -0,0 +1,90 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc.impl.pb;
+
+import com.linkedin.tony.rpc.ResizeJobRequest;
+import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.ResizeJobRequestProto;
+import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.ResizeJobRequestProtoOrBuilder;
+
+
+public class ResizeJobRequestPBImpl implements ResizeJobRequest {
+  private ResizeJobRequestProto proto = ResizeJobRequestProto.getDefaultInstance();
+  private ResizeJobRequestProto.Builder builder = null;
+  private boolean viaProto = false;
+
+  private String jobName = null;
+
+  public ResizeJobRequestPBImpl() {
+    builder = ResizeJobRequestProto.newBuilder();
+  }
+
+  public ResizeJobRequestPBImpl(ResizeJobRequestProto proto) {
+    this.proto = proto;
+    viaProto = true;
+  }
+
+  private void mergeLocalToProto() {
+    if (viaProto) {
+      maybeInitBuilder();
+    }
+    mergeLocalToBuilder();
+    proto = builder.build();
+    viaProto = true;
+  }
+
+  private void mergeLocalToBuilder() {
+    if (this.jobName != null) {
+      builder.setJobName(this.jobName);
+    }
+  }
+
+  public ResizeJobRequestProto getProto() {
+    mergeLocalToProto();
+    proto = viaProto ? proto : builder.build();
+    viaProto = true;
+    return proto;
+  }
+
+  private void maybeInitBuilder() {
+    if (viaProto || builder == null) {
+      builder = ResizeJobRequestProto.newBuilder(proto);
+    }
+    viaProto = false;
+  }
+
+  @Override
+  public String getJobName() {
+    ResizeJobRequestProtoOrBuilder p = viaProto ? proto : builder;
+    if (this.jobName != null) {
+      return this.jobName;
+    }
+    if (!p.hasJobName()) {
+      return null;
+    }
+    this.jobName = p.getJobName();
+    return this.jobName;
+  }
+
+  @Override
+  public void setJobName(String jobName) {
+    maybeInitBuilder();
+    if (jobName == null) {
+      builder.clearJobName();
+    }
+    this.jobName = jobName;
+  }
+
+  @Override
+  public int getNumInstances() {
+    ResizeJobRequestProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getNumInstances();
+  }
+
+  @Override
+  public void setNumInstances(int numInstances) {
+    maybeInitBuilder();
+    builder.setNumInstances(numInstances);
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc.impl.pb;
+
+import com.linkedin.tony.rpc.ResizeJobResponse;
+import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.ResizeJobResponseProto;
+import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.ResizeJobResponseProtoOrBuilder;
+
+
+public class ResizeJobResponsePBImpl implements ResizeJobResponse {
+  private ResizeJobResponseProto proto = ResizeJobResponseProto.getDefaultInstance();
+  private ResizeJobResponseProto.Builder builder = null;
+  private boolean viaProto = false;
+
+  public ResizeJobResponsePBImpl() {
+    builder = ResizeJobResponseProto.newBuilder();
+  }
+
+  public ResizeJobResponsePBImpl(ResizeJobResponseProto proto) {
+    this.proto = proto;
+    viaProto = true;
+  }
+
+  public ResizeJobResponseProto getProto() {
+    proto = viaProto ? proto : builder.build();
+    viaProto = true;
+    return proto;
+  }
+
+  private void maybeInitBuilder() {
+    if (viaProto || builder == null) {
+      builder = ResizeJobResponseProto.newBuilder(proto);
+    }
+    viaProto = false;
+  }
+
+  @Override
+  public int getNumInstances() {
+    ResizeJobResponseProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getNumInstances();
+  }
+
+  @Override
+  public void setNumInstances(int numInstances) {
+    maybeInitBuilder();
+    builder.setNumInstances(numInstances);
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc.impl.pb;
+
+import com.linkedin.tony.rpc.UpdateMetricsRequest;
+import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.UpdateMetricsRequestProto;
+import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.UpdateMetricsRequestProtoOrBuilder;
+
+
+public class UpdateMetricsRequestPBImpl implements UpdateMetricsRequest {
+  private UpdateMetricsRequestProto proto = UpdateMetricsRequestProto.getDefaultInstance();
+  private UpdateMetricsRequestProto.Builder builder = null;
+  private boolean viaProto = false;
+
+  private String taskType = null;
+  private double[] values = null;
+
+  public UpdateMetricsRequestPBImpl() {
+    builder = UpdateMetricsRequestProto.newBuilder();
+  }
+
+  public UpdateMetricsRequestPBImpl(UpdateMetricsRequestProto proto) {
+    this.proto = proto;
+    viaProto = true;
+  }
+
+  private void mergeLocalToProto() {
+    if (viaProto) {
+      maybeInitBuilder();
+    }
+    mergeLocalToBuilder();
+    proto = builder.build();
+    viaProto = true;
+  }
+
+  private void mergeLocalToBuilder() {
+    if (this.taskType != null) {
+      builder.setTaskType(this.taskType);
+    }
+    if (this.values != null) {
+      builder.clearValues();
+      for (double value : this.values) {
+        builder.addValues(value);
+      }
+    }
+  }
+
+  public UpdateMetricsRequestProto getProto() {
+    mergeLocalToProto();
+    proto = viaProto ? proto : builder.build();
+    viaProto = true;
+    return proto;
+  }
+
+  private void maybeInitBuilder() {
+    if (viaProto || builder == null) {
+      builder = UpdateMetricsRequestProto.newBuilder(proto);
+    }
+    viaProto = false;
+  }
+
+  @Override
+  public String getTaskType() {
+    UpdateMetricsRequestProtoOrBuilder p = viaProto ? proto : builder;
+    if (this.taskType != null) {
+      return this.taskType;
+    }
+    if (!p.hasTaskType()) {
+      return null;
+    }
+    this.taskType = p.getTaskType();
+    return this.taskType;
+  }
+
+  @Override
+  public void setTaskType(String taskType) {
+    maybeInitBuilder();
+    if (taskType == null) {
+      builder.clearTaskType();
+    }
+    this.taskType = taskType;
+  }
+
+  @Override
+  public int getTaskIndex() {
+    UpdateMetricsRequestProtoOrBuilder p = viaProto ? proto : builder;
+    return p.getTaskIndex();
+  }
+
+  @Override
+  public void setTaskIndex(int taskIndex) {
+    maybeInitBuilder();
+    builder.setTaskIndex(taskIndex);
+  }
+
+  @Override
+  public double[] getValues() {
+    if (this.values != null) {
+      return this.values;
+    }
+    UpdateMetricsRequestProtoOrBuilder p = viaProto ? proto : builder;
+    this.values = new double[p.getValuesCount()];
+    for (int i = 0; i < this.values.length; i++) {
+      this.values[i] = p.getValues(i);
+    }
+    return this.values;
+  }
+
+  @Override
+  public void setValues(double[] values) {
+    maybeInitBuilder();
+    if (values == null) {
+      builder.clearValues();
+    }
+    this.values = values;
+  }
+}
@@ -19,8 +19,11 @@ import com.linkedin.tony.rpc.RegisterTensorBoardUrlRequest;
 import com.linkedin.tony.rpc.RegisterTensorBoardUrlResponse;
 import com.linkedin.tony.rpc.RegisterWorkerSpecRequest;
 import com.linkedin.tony.rpc.RegisterWorkerSpecResponse;
+import com.linkedin.tony.rpc.ResizeJobRequest;
+import com.linkedin.tony.rpc.ResizeJobResponse;
 import com.linkedin.tony.rpc.TensorFlowCluster;
 import com.linkedin.tony.rpc.TensorFlowClusterPB;
+import com.linkedin.tony.rpc.UpdateMetricsRequest;
 import com.linkedin.tony.rpc.impl.pb.EmptyPBImpl;
 import com.linkedin.tony.rpc.impl.pb.GetClusterSpecRequestPBImpl;
 import com.linkedin.tony.rpc.impl.pb.GetClusterSpecResponsePBImpl;
@@ -34,6 +37,9 @@ import com.linkedin.tony.rpc.impl.pb.RegisterTensorBoardUrlRequestPBImpl;
 import com.linkedin.tony.rpc.impl.pb.RegisterTensorBoardUrlResponsePBImpl;
 import com.linkedin.tony.rpc.impl.pb.RegisterWorkerSpecRequestPBImpl;
 import com.linkedin.tony.rpc.impl.pb.RegisterWorkerSpecResponsePBImpl;
+import com.linkedin.tony.rpc.impl.pb.ResizeJobRequestPBImpl;
+import com.linkedin.tony.rpc.impl.pb.ResizeJobResponsePBImpl;
+import com.linkedin.tony.rpc.impl.pb.UpdateMetricsRequestPBImpl;
 import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos;
 import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.GetClusterSpecRequestProto;
 import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.GetTaskInfosRequestProto;
@@ -145,6 +151,29 @@ public class TensorFlowClusterPBClientImpl implements TensorFlowCluster, Closeab
     }
   }
 
+  @Override
+  public ResizeJobResponse resizeJob(ResizeJobRequest request) throws YarnException, IOException {
+    YarnTensorFlowClusterProtos.ResizeJobRequestProto requestProto = ((ResizeJobRequestPBImpl) request).getProto();
+    try {
+      return new ResizeJobResponsePBImpl(proxy.resizeJob(null, requestProto));
+    } catch (ServiceException e) {
+      RPCUtil.unwrapAndThrowException(e);
+      return null;
+    }
+  }
+
+  @Override
+  public Empty updateMetrics(UpdateMetricsRequest request) throws YarnException, IOException {
+    YarnTensorFlowClusterProtos.UpdateMetricsRequestProto requestProto =
+        ((UpdateMetricsRequestPBImpl) request).getProto();
+    try {
+      return new EmptyPBImpl(proxy.updateMetrics(null, requestProto));
+    } catch (ServiceException e) {
+      RPCUtil.unwrapAndThrowException(e);
+      return null;
+    }
+  }
+
   @Override
   public long getProtocolVersion(String protocol, long version) {
     return TensorFlowCluster.versionID;
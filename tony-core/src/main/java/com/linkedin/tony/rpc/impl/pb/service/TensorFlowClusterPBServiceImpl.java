@@ -13,6 +13,7 @@ import com.linkedin.tony.rpc.HeartbeatResponse;
 import com.linkedin.tony.rpc.RegisterExecutionResultResponse;
 import com.linkedin.tony.rpc.RegisterTensorBoardUrlResponse;
 import com.linkedin.tony.rpc.RegisterWorkerSpecResponse;
+import com.linkedin.tony.rpc.ResizeJobResponse;
 import com.linkedin.tony.rpc.TensorFlowCluster;
 import com.linkedin.tony.rpc.TensorFlowClusterPB;
 import com.linkedin.tony.rpc.impl.pb.EmptyPBImpl;
@@ -28,6 +29,9 @@ import com.linkedin.tony.rpc.impl.pb.RegisterTensorBoardUrlRequestPBImpl;
 import com.linkedin.tony.rpc.impl.pb.RegisterTensorBoardUrlResponsePBImpl;
 import com.linkedin.tony.rpc.impl.pb.RegisterWorkerSpecRequestPBImpl;
 import com.linkedin.tony.rpc.impl.pb.RegisterWorkerSpecResponsePBImpl;
+import com.linkedin.tony.rpc.impl.pb.ResizeJobRequestPBImpl;
+import com.linkedin.tony.rpc.impl.pb.ResizeJobResponsePBImpl;
+import com.linkedin.tony.rpc.impl.pb.UpdateMetricsRequestPBImpl;
 import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos;
 import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.EmptyProto;
 import com.linkedin.tony.rpc.proto.YarnTensorFlowClusterProtos.GetClusterSpecRequestProto;
@@ -135,4 +139,28 @@ public class TensorFlowClusterPBServiceImpl implements TensorFlowClusterPB {
       throw new ServiceException(e);
     }
   }
+
+  @Override
+  public YarnTensorFlowClusterProtos.ResizeJobResponseProto resizeJob(RpcController controller,
+      YarnTensorFlowClusterProtos.ResizeJobRequestProto proto) throws ServiceException {
+    ResizeJobRequestPBImpl request = new ResizeJobRequestPBImpl(proto);
+    try {
+      ResizeJobResponse response = real.resizeJob(request);
+      return ((ResizeJobResponsePBImpl) response).getProto();
+    } catch (YarnException | IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public EmptyProto updateMetrics(RpcController controller,
+      YarnTensorFlowClusterProtos.UpdateMetricsRequestProto proto) throws ServiceException {
+    UpdateMetricsRequestPBImpl request = new UpdateMetricsRequestPBImpl(proto);
+    try {
+      Empty response = real.updateMetrics(request);
+      return ((EmptyPBImpl) response).getProto();
+    } catch (YarnException | IOException e) {
+      throw new ServiceException(e);
+    }
+  }
 }
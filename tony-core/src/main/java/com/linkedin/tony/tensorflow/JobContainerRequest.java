@@ -5,6 +5,7 @@
 package com.linkedin.tony.tensorflow;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 
 public class JobContainerRequest {
@@ -12,21 +13,30 @@ public class JobContainerRequest {
   private long memory;
   private int vCores;
   private int priority;
+  private long allocationRequestId;
   private int gpu;
   private String jobName;
   private String nodeLabelsExpression;
-  private List<String> dependsOn;
+  // Dependencies on other job types, each parsed from upstream[:condition[:fraction]]
+  private List<JobDependency> dependencies;
 
   public JobContainerRequest(String jobName, int numInstances, long memory, int vCores, int gpu, int priority,
       String nodeLabelsExpression, final List<String> dependsOn) {
+    this(jobName, numInstances, memory, vCores, gpu, priority, priority, nodeLabelsExpression, dependsOn);
+  }
+
+  public JobContainerRequest(String jobName, int numInstances, long memory, int vCores, int gpu, int priority,
+      long allocationRequestId, String nodeLabelsExpression, final List<String> dependsOn) {
     this.numInstances = numInstances;
     this.memory = memory;
     this.vCores = vCores;
     this.priority = priority;
+    this.allocationRequestId = allocationRequestId;
     this.gpu = gpu;
     this.jobName = jobName;
     this.nodeLabelsExpression = nodeLabelsExpression;
-    this.dependsOn = dependsOn;
+    this.dependencies = dependsOn.stream().filter(dependency -> !dependency.trim().isEmpty())
+        .map(JobDependency::parse).collect(Collectors.toList());
   }
 
   public int getNumInstances() {
@@ -49,6 +59,14 @@ public class JobContainerRequest {
     return priority;
   }
 
+  /**
+   * Id used to match containers allocated for this request back to it, on Hadoop versions that support
+   * allocationRequestId. Unique per job type.
+   */
+  public long getAllocationRequestId() {
+    return allocationRequestId;
+  }
+
   public String getJobName() {
     return jobName;
   }
@@ -57,7 +75,14 @@ public class JobContainerRequest {
     return nodeLabelsExpression;
   }
 
+  /**
+   * Names of the job types this job type depends on.
+   */
   public final List<String> getDependsOn() {
-    return dependsOn;
+    return dependencies.stream().map(JobDependency::getUpstream).collect(Collectors.toList());
+  }
+
+  public final List<JobDependency> getDependencies() {
+    return dependencies;
   }
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.tensorflow;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A job type's dependency on an upstream job type: the job type is scheduled once enough tasks of the upstream job
+ * type reached a state. Written as {@code upstream[:condition[:fraction]]}, e.g. {@code prepare:succeeded:0.9} to
+ * start once 90% of the prepare tasks succeeded. The default is to wait for all upstream tasks to complete.
+ */
+public class JobDependency {
+  public enum Condition {
+    /** Upstream tasks finished, whether they succeeded or not. **/
+    COMPLETED,
+    /** Upstream tasks finished successfully. **/
+    SUCCEEDED,
+    /** Upstream tasks are running and registered their address. **/
+    REGISTERED
+  }
+
+  private final String upstream;
+  private final Condition condition;
+  private final double fraction;
+
+  public JobDependency(String upstream, Condition condition, double fraction) {
+    Preconditions.checkArgument(fraction >= 0 && fraction <= 1,
+        "Fraction of " + upstream + " tasks to depend on must be between 0 and 1, got " + fraction);
+    this.upstream = upstream;
+    this.condition = condition;
+    this.fraction = fraction;
+  }
+
+  /**
+   * Parses a dependency written as {@code upstream[:condition[:fraction]]}.
+   * @throws IllegalArgumentException if the condition or fraction is invalid
+   */
+  public static JobDependency parse(String dependency) {
+    String[] parts = dependency.trim().split(":");
+    Preconditions.checkArgument(parts.length <= 3, "Invalid job dependency: " + dependency);
+    Condition condition = parts.length > 1 ? Condition.valueOf(parts[1].trim().toUpperCase()) : Condition.COMPLETED;
+    double fraction = parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 1.0;
+    return new JobDependency(parts[0].trim(), condition, fraction);
+  }
+
+  public String getUpstream() {
+    return upstream;
+  }
+
+  public Condition getCondition() {
+    return condition;
+  }
+
+  /**
+   * Number of the {@code numUpstreamInstances} upstream tasks that have to meet the condition.
+   */
+  public int getThreshold(int numUpstreamInstances) {
+    // Tolerate rounding, so that e.g. 0.9 of 10 instances is 9 instances
+    return (int) Math.ceil(fraction * numUpstreamInstances - 1e-9);
+  }
+
+  @Override
+  public String toString() {
+    return upstream + ":" + condition.name().toLowerCase() + ":" + fraction;
+  }
+}
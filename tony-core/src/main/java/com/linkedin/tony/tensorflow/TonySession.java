@@ -6,17 +6,27 @@ package com.linkedin.tony.tensorflow;
 
 import com.google.common.base.Preconditions;
 import com.linkedin.tony.Constants;
+import com.linkedin.tony.TonyConfigurationKeys;
 import com.linkedin.tony.rpc.TaskInfo;
 import com.linkedin.tony.rpc.impl.TaskStatus;
 import com.linkedin.tony.util.Utils;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -52,6 +62,39 @@ public class TonySession {
   // A map from task name to an array of TFTasks with that name.
   private Map<String, TonyTask[]> jobTasks = new ConcurrentHashMap<>();
 
+  // Every task gets a dense integer handle (its job type's offset plus its index) so that executor RPCs can be
+  // resolved through a flat array instead of parsing "job:index" ids. Tasks are set by launcher threads and read by
+  // RPC handler threads.
+  private final Map<String, Integer> jobHandleOffsets = new HashMap<>();
+  private final AtomicReferenceArray<TonyTask> tasksByHandle;
+
+  // Indices of the tasks of each job type that haven't been assigned a container yet, so that allocated containers
+  // can be matched to tasks concurrently.
+  private final Map<String, PendingTasks> pendingTasksByJob = new HashMap<>();
+  // Job types by the allocationRequestId of their container requests, and by their priority where it is unique to the
+  // job type, as on versions of YARN without allocationRequestId. Ids can be added while the session runs, see
+  // newAllocationRequestId.
+  private final Map<Long, String> jobsByAllocationRequestId = new ConcurrentHashMap<>();
+  private final Map<Integer, String> jobsByPriority = new HashMap<>();
+  private final AtomicLong nextAllocationRequestId = new AtomicLong();
+
+  // Job types whose number of instances can change while the session runs. Their task arrays and handle ranges are
+  // sized for their max instances.
+  private final Map<String, ElasticJob> elasticJobs = new HashMap<>();
+
+  // Bumped whenever a task joins or leaves the cluster, so that executors can tell when to re-fetch the cluster spec.
+  private final AtomicLong clusterSpecVersion = new AtomicLong();
+
+  // Bumped whenever a task's TaskInfo is created or changes status, so that the AM only rebuilds the task infos it
+  // serves to clients when they changed.
+  private final AtomicLong taskInfosVersion = new AtomicLong();
+
+  // Number of times a failed task of each job type may be relaunched under the same index.
+  private final Map<String, Integer> maxTaskRetries = new HashMap<>();
+  private final AtomicInteger numRetriedTasks = new AtomicInteger();
+  // Number of times each task was replaced while running, which doesn't count against its retries. Guarded by this.
+  private final Map<String, Integer> numTaskReplacements = new HashMap<>();
+
   private FinalApplicationStatus sessionFinalStatus = FinalApplicationStatus.UNDEFINED;
   private String sessionFinalMessage = null;
   private String jvmArgs;
@@ -62,6 +105,16 @@ public class TonySession {
 
   private int numExpectedTasks = 0;
 
+  // Task counters, updated on task state transitions so that count queries don't need to scan all tasks. The totals
+  // only change after construction when elastic job types are resized, under the session's lock.
+  private volatile int totalTasks = 0;
+  private volatile int totalTrackedTasks = 0;
+  private final Map<String, JobTaskCounters> jobTaskCounters = new HashMap<>();
+  private final AtomicInteger numScheduledTasks = new AtomicInteger();
+  private final AtomicInteger numCompletedTasks = new AtomicInteger();
+  private final AtomicInteger numCompletedTrackedTasks = new AtomicInteger();
+  private final AtomicInteger numFailedTasks = new AtomicInteger();
+
   public enum TaskType {
     TASK_TYPE_CHIEF, TASK_TYPE_PARAMETER_SERVER, TASK_TYPE_OTHERS
   }
@@ -77,6 +130,7 @@ public class TonySession {
   private ConcurrentHashMap<ContainerId, TonyTask> containerIdMap = new ConcurrentHashMap<>();
 
   public TonySession() {
+    tasksByHandle = new AtomicReferenceArray<>(0);
   }
 
   private TonySession(Builder builder) {
@@ -84,9 +138,38 @@ public class TonySession {
     this.jvmArgs = builder.jvmArgs;
     this.tonyConf = builder.tonyConf;
 
+    int numHandles = 0;
+    Set<Integer> sharedPriorities = new HashSet<>();
     for (Map.Entry<String, JobContainerRequest> entry : containerRequests.entrySet()) {
-      jobTasks.put(entry.getKey(), new TonyTask[entry.getValue().getNumInstances()]);
+      String jobName = entry.getKey();
+      int numInstances = entry.getValue().getNumInstances();
+      int capacity = numInstances;
+      if (Utils.isJobTypeElastic(jobName, tonyConf)) {
+        int minInstances = Math.min(numInstances,
+            tonyConf.getInt(TonyConfigurationKeys.getMinInstancesKey(jobName), numInstances));
+        capacity = Math.max(numInstances, tonyConf.getInt(TonyConfigurationKeys.getMaxInstancesKey(jobName), 0));
+        elasticJobs.put(jobName, new ElasticJob(minInstances, capacity, numInstances));
+      }
+      maxTaskRetries.put(jobName, Utils.getMaxTaskRetries(jobName, tonyConf));
+      boolean tracked = Utils.isJobTypeTracked(jobName, tonyConf);
+      pendingTasksByJob.put(jobName, new PendingTasks(jobName, numInstances));
+      jobsByAllocationRequestId.put(entry.getValue().getAllocationRequestId(), jobName);
+      if (jobsByPriority.putIfAbsent(entry.getValue().getPriority(), jobName) != null) {
+        sharedPriorities.add(entry.getValue().getPriority());
+      }
+      jobTasks.put(jobName, new TonyTask[capacity]);
+      jobTaskCounters.put(jobName, new JobTaskCounters(tracked));
+      jobHandleOffsets.put(jobName, numHandles);
+      numHandles += capacity;
+      totalTasks += numInstances;
+      if (tracked) {
+        totalTrackedTasks += numInstances;
+      }
     }
+    tasksByHandle = new AtomicReferenceArray<>(numHandles);
+    jobsByPriority.keySet().removeAll(sharedPriorities);
+    nextAllocationRequestId.set(jobsByAllocationRequestId.keySet().stream().mapToLong(Long::longValue).max()
+        .orElse(-1) + 1);
   }
 
   public Map<String, TonyTask[]> getTonyTasks() {
@@ -154,72 +237,384 @@ public class TonySession {
   }
 
   public boolean allTasksScheduled() {
-    for (TonyTask[] tasks : jobTasks.values()) {
-      for (TonyTask task : tasks) {
-        if (task == null || task.getTaskInfo() == null) {
-          return false;
-        }
-      }
-    }
-
-    return true;
+    return numScheduledTasks.get() == totalTasks;
   }
 
   public int getTotalTasks() {
-    return jobTasks.values().stream().reduce(0, (currTotal, taskArr) -> currTotal + taskArr.length, (count1, count2) -> count1 + count2);
+    return totalTasks;
   }
 
   public int getTotalTrackedTasks() {
-    return jobTasks.entrySet().stream().filter(entry -> Utils.isJobTypeTracked(entry.getKey(), tonyConf))
-        .mapToInt(entry -> entry.getValue().length).sum();
+    return totalTrackedTasks;
   }
 
   public int getNumCompletedTasks() {
-    return (int) jobTasks.values().stream().flatMap(arr -> Arrays.stream(arr))
-        .filter(task -> task != null && task.isCompleted()).count();
+    return numCompletedTasks.get();
   }
 
   public int getNumCompletedTrackedTasks() {
-    return (int) jobTasks.entrySet().stream().filter(entry -> Utils.isJobTypeTracked(entry.getKey(), tonyConf))
-        .flatMap(entry -> Arrays.stream(entry.getValue())).filter(task -> task != null && task.isCompleted()).count();
+    return numCompletedTrackedTasks.get();
   }
 
   public int getNumFailedTasks() {
-    return (int) jobTasks.values().stream().flatMap(arr -> Arrays.stream(arr)).filter(task -> task != null && task.isFailed()).count();
+    return numFailedTasks.get();
+  }
+
+  public int getNumCompletedTasks(String jobName) {
+    JobTaskCounters counters = jobTaskCounters.get(jobName);
+    return counters == null ? 0 : counters.numCompleted.get();
+  }
+
+  public int getNumFailedTasks(String jobName) {
+    JobTaskCounters counters = jobTaskCounters.get(jobName);
+    return counters == null ? 0 : counters.numFailed.get();
+  }
+
+  /**
+   * Returns whether {@code jobName} is a tracked job type, i.e. one whose completion the application waits for.
+   * Resolved once from the configuration when the session is built.
+   */
+  public boolean isJobTypeTracked(String jobName) {
+    JobTaskCounters counters = jobTaskCounters.get(jobName);
+    return counters != null && counters.tracked;
+  }
+
+  private void onTaskScheduled(String jobName) {
+    JobTaskCounters counters = jobTaskCounters.get(jobName);
+    if (counters != null) {
+      counters.numScheduled.incrementAndGet();
+    }
+    numScheduledTasks.incrementAndGet();
+  }
+
+  private void onTaskRetried(String jobName) {
+    // The task's next attempt is scheduled again once it gets a container.
+    JobTaskCounters counters = jobTaskCounters.get(jobName);
+    if (counters != null) {
+      counters.numScheduled.decrementAndGet();
+    }
+    numScheduledTasks.decrementAndGet();
+  }
+
+  /**
+   * Number of failed tasks that have been queued to be relaunched.
+   */
+  public int getNumRetriedTasks() {
+    return numRetriedTasks.get();
+  }
+
+  private void onTaskExitStatusSet(TonyTask task, boolean failed) {
+    String jobName = task.getJobName();
+    if (task.isReleased()) {
+      onReleasedTaskCompleted(task);
+    }
+    JobTaskCounters counters = jobTaskCounters.get(jobName);
+    if (counters != null) {
+      counters.numCompleted.incrementAndGet();
+      if (failed) {
+        counters.numFailed.incrementAndGet();
+      }
+      if (counters.tracked) {
+        numCompletedTrackedTasks.incrementAndGet();
+      }
+    }
+    numCompletedTasks.incrementAndGet();
+    if (failed) {
+      numFailedTasks.incrementAndGet();
+    }
   }
 
   /** Number of expected tasks that have been scheduled at current time **/
-  public int getNumExpectedTasks() {
+  public synchronized int getNumExpectedTasks() {
     return numExpectedTasks;
   }
 
-  public void addNumExpectedTask(int numExpectedTasksToAdd) {
+  /**
+   * Adds to the number of expected tasks, negative when scheduled tasks of an elastic job type are released.
+   */
+  public synchronized void addNumExpectedTask(int numExpectedTasksToAdd) {
     numExpectedTasks += numExpectedTasksToAdd;
   }
 
   /**
-   * Get a TensorFlow task that hasn't been scheduled.
-   * In the absence of allocationRequestId, we are relying on the fact that each tensorflow job will
-   * have a distinct priority (Ensured in {@link Utils#parseContainerRequests(Configuration)}).
-   * @param priority the priority of the allocated container
-   * @return task to be assigned to this allocation
+   * Returns whether {@code jobName}'s instances can be resized while the session runs.
    */
-  public synchronized TonyTask getAndInitMatchingTaskByPriority(int priority) {
-    for (Map.Entry<String, JobContainerRequest> entry : containerRequests.entrySet()) {
-      String jobName = entry.getKey();
-      if (entry.getValue().getPriority() != priority) {
-        LOG.debug("Ignoring jobname {" + jobName + "} as priority doesn't match");
-        continue;
+  public boolean isElastic(String jobName) {
+    return elasticJobs.containsKey(jobName);
+  }
+
+  /**
+   * Returns the current number of instances of {@code jobName}, which only differs from the requested number of
+   * instances for elastic job types that have been resized.
+   */
+  public synchronized int getNumInstances(String jobName) {
+    ElasticJob job = elasticJobs.get(jobName);
+    if (job != null) {
+      return job.numInstances;
+    }
+    JobContainerRequest request = containerRequests.get(jobName);
+    return request == null ? 0 : request.getNumInstances();
+  }
+
+  public long getClusterSpecVersion() {
+    return clusterSpecVersion.get();
+  }
+
+  public long getTaskInfosVersion() {
+    return taskInfosVersion.get();
+  }
+
+  /**
+   * Grows or shrinks elastic job type {@code jobName} to {@code numInstances}, clamped to its min and max instances.
+   * New instances are queued for allocation under the lowest free task indices. Shrinking first drops instances that
+   * haven't been assigned a container yet, then releases running tasks starting from the highest index. The chief is
+   * never released. Released tasks don't fail the session when their containers are stopped.
+   * @return what changed, or null if {@code jobName} isn't an elastic job type
+   */
+  public synchronized Resize resizeJob(String jobName, int numInstances) {
+    ElasticJob job = elasticJobs.get(jobName);
+    if (job == null) {
+      return null;
+    }
+    int target = Math.max(job.minInstances, Math.min(job.maxInstances, numInstances));
+    Resize resize = new Resize();
+    if (target > job.numInstances) {
+      PendingTasks pendingTasks = pendingTasksByJob.get(jobName);
+      while (job.numInstances < target) {
+        int index = job.usedIndices.nextClearBit(0);
+        if (index >= job.maxInstances) {
+          // Slots of released tasks whose containers haven't exited yet can't be reused.
+          break;
+        }
+        job.usedIndices.set(index);
+        pendingTasks.indices.add(index);
+        onInstancesAdded(jobName, 1);
+        job.numInstances++;
+        resize.numAdded++;
+      }
+    } else if (target < job.numInstances) {
+      PendingTasks pendingTasks = pendingTasksByJob.get(jobName);
+      List<Integer> pendingIndices = new ArrayList<>(pendingTasks.indices);
+      pendingIndices.sort(Collections.reverseOrder());
+      for (int index : pendingIndices) {
+        if (job.numInstances == target) {
+          break;
+        }
+        if (!isChief(jobName, String.valueOf(index)) && pendingTasks.indices.remove(index)) {
+          job.usedIndices.clear(index);
+          onInstancesAdded(jobName, -1);
+          job.numInstances--;
+          resize.numDropped++;
+        }
       }
       TonyTask[] tasks = jobTasks.get(jobName);
-      for (int i = 0; i < tasks.length; i++) {
-        if (tasks[i] == null) {
-          tasks[i] = new TonyTask(jobName, String.valueOf(i), sessionId, System.currentTimeMillis());
-          return tasks[i];
+      for (int index = tasks.length - 1; index >= 0 && job.numInstances > target; index--) {
+        TonyTask task = tasks[index];
+        // Only release tasks whose container has been started, so that stopping the container can't race its start.
+        if (task != null && !task.isReleased() && !task.isCompleted() && !isChief(jobName, task.getTaskIndex())
+            && task.getTaskInfo() != null && task.getTaskInfo().getStatus() == TaskStatus.RUNNING) {
+          task.released = true;
+          job.numInstances--;
+          resize.releasedTasks.add(task);
         }
       }
+      if (!resize.releasedTasks.isEmpty()) {
+        clusterSpecVersion.incrementAndGet();
+      }
+    }
+    resize.numInstances = job.numInstances;
+    return resize;
+  }
+
+  /**
+   * Releases a task of an elastic job type whose container was preempted, if the job type can keep running without
+   * it, so that its completion doesn't fail the session.
+   * @return whether the task was released
+   */
+  public synchronized boolean releasePreemptedTask(TonyTask task) {
+    ElasticJob job = elasticJobs.get(task.getJobName());
+    if (job == null || task.isReleased() || task.isCompleted() || job.numInstances <= job.minInstances
+        || isChief(task.getJobName(), task.getTaskIndex())) {
+      return false;
+    }
+    task.released = true;
+    job.numInstances--;
+    clusterSpecVersion.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Queues a failed task to be relaunched in a new container under the same index, if its job type has retries left
+   * for that index. The other tasks keep running, and the task keeps its slot in the cluster spec until the new attempt
+   * registers its address.
+   * @return whether the task will be retried, in which case a container needs to be requested for it
+   */
+  public synchronized boolean retryTask(TonyTask task, int exitStatus) {
+    if (exitStatus == ContainerExitStatus.SUCCESS || exitStatus == ContainerExitStatus.KILLED_BY_APPMASTER
+        || task.isCompleted() || task.isReleased() || trainingFinished
+        || getFinalStatus() == FinalApplicationStatus.FAILED
+        || task.getAttempt() - numTaskReplacements.getOrDefault(task.getId(), 0)
+            >= maxTaskRetries.getOrDefault(task.getJobName(), 0)) {
+      return false;
+    }
+    requeueTask(task, exitStatus);
+    numRetriedTasks.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Queues a running task to be relaunched in a new container under the same index, e.g. because it runs on a slow
+   * node. Unlike {@link #retryTask}, this doesn't count against the task's retries. The caller stops the task's
+   * current container.
+   * @return whether the task will be relaunched, in which case a container needs to be requested for it
+   */
+  public synchronized boolean replaceTask(TonyTask task) {
+    if (task.isCompleted() || task.isReleased() || trainingFinished
+        || getFinalStatus() == FinalApplicationStatus.FAILED) {
+      return false;
+    }
+    requeueTask(task, ContainerExitStatus.KILLED_BY_APPMASTER);
+    numTaskReplacements.merge(task.getId(), 1, Integer::sum);
+    return true;
+  }
+
+  private void requeueTask(TonyTask task, int exitStatus) {
+    task.retried = true;
+    task.setExitStatus(exitStatus);
+    pendingTasksByJob.get(task.getJobName()).indices.add(Integer.parseInt(task.getTaskIndex()));
+  }
+
+  /**
+   * Restores a task attempt recorded by a previous AM attempt, or a task whose container was kept from the failed
+   * session of this attempt, taking its index out of the tasks waiting for a container.
+   * @param container the task's container if it is still running, or null if the task completed
+   * @param containerUrl the URL of the task's container
+   * @return the restored task, or null if the task's index isn't waiting for a container in this session
+   */
+  public synchronized TonyTask recoverTask(String jobName, int index, int attempt, Container container,
+      String containerUrl) {
+    PendingTasks pendingTasks = pendingTasksByJob.get(jobName);
+    if (pendingTasks == null || !pendingTasks.indices.remove(index)) {
+      return null;
+    }
+    int handle = jobHandleOffsets.get(jobName) + index;
+    TonyTask task = new TonyTask(jobName, String.valueOf(index), handle, sessionId, attempt,
+        System.currentTimeMillis());
+    task.taskInfo = new TaskInfo(jobName, task.getTaskIndex(), containerUrl);
+    task.setStatus(TaskStatus.RUNNING);
+    onTaskScheduled(jobName);
+    if (container != null) {
+      task.addContainer(container);
     }
-    return null;
+    jobTasks.get(jobName)[index] = task;
+    tasksByHandle.set(handle, task);
+    return task;
+  }
+
+  /**
+   * Number of tasks of {@code jobName} that are waiting for a container.
+   */
+  public int getNumPendingTasks(String jobName) {
+    PendingTasks pendingTasks = pendingTasksByJob.get(jobName);
+    return pendingTasks == null ? 0 : pendingTasks.indices.size();
+  }
+
+  private void onInstancesAdded(String jobName, int numInstances) {
+    totalTasks += numInstances;
+    if (isJobTypeTracked(jobName)) {
+      totalTrackedTasks += numInstances;
+    }
+  }
+
+  private synchronized void onReleasedTaskCompleted(TonyTask task) {
+    // The task's slot can be reused once its container is gone.
+    ElasticJob job = elasticJobs.get(task.getJobName());
+    if (job != null) {
+      job.usedIndices.clear(Integer.parseInt(task.getTaskIndex()));
+    }
+  }
+
+  /**
+   * Returns the job type of the container request tagged with {@code allocationRequestId}. If allocationRequestId isn't
+   * supported by this version of YARN (it is negative) or doesn't belong to any request, we fall back to the job type
+   * with {@code priority}, which is unique per job type on those versions of YARN (Ensured in
+   * {@link Utils#parseContainerRequests(Configuration)}).
+   * @return the job type, or null if no job type matches
+   */
+  public String getJobName(long allocationRequestId, int priority) {
+    String jobName = allocationRequestId >= 0 ? jobsByAllocationRequestId.get(allocationRequestId) : null;
+    return jobName != null ? jobName : jobsByPriority.get(priority);
+  }
+
+  /**
+   * Get a TensorFlow task that hasn't been scheduled for a container allocated for the request tagged with
+   * {@code allocationRequestId}, or with {@code priority} where allocationRequestId isn't supported (see
+   * {@link #getJobName(long, int)}).
+   * Safe to call concurrently from multiple launcher threads.
+   * @param allocationRequestId the allocationRequestId of the allocated container, or -1 if unsupported
+   * @param priority the priority of the allocated container
+   * @return task to be assigned to this allocation, or null if all tasks of the matching job have been assigned
+   */
+  public TonyTask getAndInitMatchingTask(long allocationRequestId, int priority) {
+    String jobName = getJobName(allocationRequestId, priority);
+    return jobName == null ? null : getAndInitMatchingTask(jobName);
+  }
+
+  /**
+   * Returns a new allocationRequestId for a container request of {@code jobName}, e.g. one asking for a container for
+   * a single task on its preferred hosts. Containers allocated for it resolve to {@code jobName} in
+   * {@link #getJobName(long, int)}.
+   */
+  public long newAllocationRequestId(String jobName) {
+    long allocationRequestId = nextAllocationRequestId.getAndIncrement();
+    jobsByAllocationRequestId.put(allocationRequestId, jobName);
+    return allocationRequestId;
+  }
+
+  /**
+   * Get a TensorFlow task of {@code jobName} that hasn't been scheduled.
+   * Safe to call concurrently from multiple launcher threads.
+   * @return task to be assigned to the allocated container, or null if all tasks of {@code jobName} have been assigned
+   */
+  public TonyTask getAndInitMatchingTask(String jobName) {
+    return getAndInitMatchingTask(jobName, -1);
+  }
+
+  /**
+   * Get a TensorFlow task of {@code jobName} that hasn't been scheduled, preferably the one with index
+   * {@code preferredIndex}, e.g. because the container was allocated on the hosts preferred by that task. Falls back to
+   * the next task waiting for a container if that task was already assigned one.
+   * Safe to call concurrently from multiple launcher threads.
+   * @return task to be assigned to the allocated container, or null if all tasks of {@code jobName} have been assigned
+   */
+  public TonyTask getAndInitMatchingTask(String jobName, int preferredIndex) {
+    PendingTasks pendingTasks = pendingTasksByJob.get(jobName);
+    return pendingTasks == null ? null : pendingTasks.initNextTask(preferredIndex);
+  }
+
+  /**
+   * Returns the indices of the tasks of {@code jobName} waiting for a container, in the order they get containers.
+   */
+  public List<Integer> getPendingTaskIndices(String jobName) {
+    PendingTasks pendingTasks = pendingTasksByJob.get(jobName);
+    return pendingTasks == null ? Collections.emptyList() : new ArrayList<>(pendingTasks.indices);
+  }
+
+  /**
+   * Returns whether task {@code index} of {@code jobName} is waiting for a container.
+   */
+  public boolean isTaskPending(String jobName, int index) {
+    PendingTasks pendingTasks = pendingTasksByJob.get(jobName);
+    return pendingTasks != null && pendingTasks.indices.contains(index);
+  }
+
+  /**
+   * Get a TensorFlow task that hasn't been scheduled, matching the allocated container by priority only.
+   * @param priority the priority of the allocated container
+   * @return task to be assigned to this allocation
+   */
+  public TonyTask getAndInitMatchingTaskByPriority(int priority) {
+    return getAndInitMatchingTask(-1, priority);
   }
 
   public Map<String, List<String>> getClusterSpec() {
@@ -231,7 +626,7 @@ public class TonySession {
 
       List<String> builder = new ArrayList<>();
       for (TonyTask task : tasks) {
-        if (task == null) {
+        if (task == null || task.isReleased()) {
           continue;
         }
 
@@ -252,6 +647,10 @@ public class TonySession {
     TonyTask task = getTask(jobName, jobIndex);
     Preconditions.checkNotNull(task);
     task.setExitStatus(exitCode);
+    if (task.isReleased()) {
+      // Stopped while resizing an elastic job type, or preempted while the job type could do without it.
+      return;
+    }
     // If the chief worker failed[chief or worker 0], short circuit and stop the training. Note that even though other
     // worker failures will also fail the job but we don't short circuit the training because the training can still
     // continue, while if chief worker is dead, TensorFlow training will hang.
@@ -279,11 +678,16 @@ public class TonySession {
       TonyTask[] tasks = entry.getValue();
 
       // If the job type is not tracked, continue.
-      if (!Utils.isJobTypeTracked(jobName, tonyConf)) {
+      if (!isJobTypeTracked(jobName)) {
         continue;
       }
 
+      boolean elastic = isElastic(jobName);
       for (TonyTask task : tasks) {
+        if (elastic && (task == null || task.isReleased())) {
+          // Unused slot or released task of an elastic job type.
+          continue;
+        }
         if (task == null) {
           String msg = "Job is null, this should not happen.";
           LOG.error(msg);
@@ -327,20 +731,30 @@ public class TonySession {
     sessionFinalMessage = message;
   }
 
-  private TonyTask getTask(String jobName, String taskIndex) {
-    for (Map.Entry<String, TonyTask[]> entry : jobTasks.entrySet()) {
-      TonyTask[] tasks = entry.getValue();
-      for (TonyTask task : tasks) {
-        if (task != null) {
-          String job = task.getJobName();
-          String index = task.getTaskIndex();
-          if (job.equals(jobName) && index.equals(taskIndex)) {
-            return task;
-          }
-        }
-      }
+  public TonyTask getTask(String jobName, String taskIndex) {
+    TonyTask[] tasks = jobTasks.get(jobName);
+    if (tasks == null) {
+      return null;
+    }
+    try {
+      int index = Integer.parseInt(taskIndex);
+      return index >= 0 && index < tasks.length ? tasks[index] : null;
+    } catch (NumberFormatException e) {
+      return null;
     }
-    return null;
+  }
+
+  /**
+   * Returns the task with the given RPC handle (see {@link TonyTask#getRpcHandle()}), or null if the handle is unknown
+   * or belongs to another attempt of the task than the current one.
+   */
+  public TonyTask getTask(int rpcHandle) {
+    int numHandles = tasksByHandle.length();
+    if (rpcHandle < 0 || numHandles == 0) {
+      return null;
+    }
+    TonyTask task = tasksByHandle.get(rpcHandle % numHandles);
+    return task != null && task.getAttempt() == rpcHandle / numHandles ? task : null;
   }
 
   /**
@@ -359,6 +773,110 @@ public class TonySession {
     return containerIdMap.get(containerId);
   }
 
+  /**
+   * Queue of the indices of a job type's tasks that haven't been assigned a container yet.
+   */
+  private class PendingTasks {
+    private final String jobName;
+    private final Queue<Integer> indices = new ConcurrentLinkedQueue<>();
+
+    PendingTasks(String jobName, int numInstances) {
+      this.jobName = jobName;
+      for (int i = 0; i < numInstances; i++) {
+        indices.add(i);
+      }
+    }
+
+    TonyTask initNextTask(int preferredIndex) {
+      if (isElastic(jobName)) {
+        // Resizing must see the task either still pending or already initialized.
+        synchronized (TonySession.this) {
+          return pollAndInitTask(preferredIndex);
+        }
+      }
+      return pollAndInitTask(preferredIndex);
+    }
+
+    private TonyTask pollAndInitTask(int preferredIndex) {
+      Integer index = preferredIndex >= 0 && indices.remove(preferredIndex) ? Integer.valueOf(preferredIndex)
+          : indices.poll();
+      if (index == null) {
+        LOG.debug("All tasks of jobname {" + jobName + "} have already been assigned a container");
+        return null;
+      }
+      int handle = jobHandleOffsets.get(jobName) + index;
+      TonyTask previous = jobTasks.get(jobName)[index];
+      int attempt = previous != null && previous.isRetried() ? previous.getAttempt() + 1 : 0;
+      TonyTask task = new TonyTask(jobName, String.valueOf(index), handle, sessionId, attempt,
+          System.currentTimeMillis());
+      jobTasks.get(jobName)[index] = task;
+      tasksByHandle.set(handle, task);
+      return task;
+    }
+  }
+
+  /**
+   * Instance bounds and current size of an elastic job type, guarded by the session's lock.
+   */
+  private static class ElasticJob {
+    private final int minInstances;
+    private final int maxInstances;
+    private int numInstances;
+    // Task indices that are pending allocation or held by a task, reusable once a released task's container exits.
+    private final BitSet usedIndices = new BitSet();
+
+    ElasticJob(int minInstances, int maxInstances, int numInstances) {
+      this.minInstances = minInstances;
+      this.maxInstances = maxInstances;
+      this.numInstances = numInstances;
+      usedIndices.set(0, numInstances);
+    }
+  }
+
+  /**
+   * Outcome of {@link #resizeJob(String, int)}.
+   */
+  public static class Resize {
+    private int numInstances;
+    private int numAdded = 0;
+    private int numDropped = 0;
+    private final List<TonyTask> releasedTasks = new ArrayList<>();
+
+    /** Number of instances of the job type after the resize. **/
+    public int getNumInstances() {
+      return numInstances;
+    }
+
+    /** Number of instances queued for allocation, which containers need to be requested for. **/
+    public int getNumAdded() {
+      return numAdded;
+    }
+
+    /** Number of instances dropped before they were assigned a container, whose requests can be withdrawn. **/
+    public int getNumDropped() {
+      return numDropped;
+    }
+
+    /** Running tasks whose containers need to be stopped. **/
+    public List<TonyTask> getReleasedTasks() {
+      return releasedTasks;
+    }
+  }
+
+  /**
+   * Task counters for a single job type.
+   */
+  private static class JobTaskCounters {
+    private final boolean tracked;
+    private final AtomicInteger numScheduled = new AtomicInteger();
+    private final AtomicInteger numCompleted = new AtomicInteger();
+    private final AtomicInteger numFailed = new AtomicInteger();
+
+    JobTaskCounters(boolean tracked) {
+      this.tracked = tracked;
+    }
+  }
+
   /**
    * Builder to compose the TonySession class.
    */
@@ -387,9 +905,12 @@ public class TonySession {
   public class TonyTask {
     private final String jobName;
     private final String taskIndex;
+    private final int handle;
     private final int sessionId;
-    private String host;
-    private int port = -1;
+    private final int attempt;
+    // Set by the RPC handler that registers the task, and read by the others
+    private volatile String host;
+    private volatile int port = -1;
     private TaskInfo taskInfo;
     private final long startTime;
 
@@ -403,7 +924,17 @@ public class TonySession {
     /**
      * Set to true when exit status is set.
      */
-    boolean completed = false;
+    volatile boolean completed = false;
+
+    /**
+     * Set to true when the task of an elastic job type is released, after which it's no longer part of the cluster.
+     */
+    volatile boolean released = false;
+
+    /**
+     * Set to true when the task failed or was replaced, and a new attempt has been queued in its place.
+     */
+    volatile boolean retried = false;
 
     public String getJobName() {
       return jobName;
@@ -413,6 +944,29 @@ public class TonySession {
       return sessionId;
     }
 
+    /**
+     * Number of times this task's index was relaunched, after failing or being replaced, before this attempt. 0 for the
+     * first attempt.
+     */
+    public int getAttempt() {
+      return attempt;
+    }
+
+    /**
+     * Dense integer id of this task's index within its session, shared by all attempts of the index.
+     */
+    public int getHandle() {
+      return handle;
+    }
+
+    /**
+     * Id handed to the TaskExecutor on registration: the task's handle tagged with its attempt, so that RPCs from an
+     * earlier attempt's executor that is still running aren't taken for this attempt's.
+     */
+    public int getRpcHandle() {
+      return handle + attempt * tasksByHandle.length();
+    }
+
     public String getTaskIndex() {
       return taskIndex;
     }
@@ -441,13 +995,34 @@ public class TonySession {
       return taskInfo.getStatus() == TaskStatus.FAILED;
     }
 
+    public boolean isReleased() {
+      return released;
+    }
+
+    public boolean isRetried() {
+      return retried;
+    }
+
     String getHostPort() {
       return String.format("%s:%d", host, port < 0 ? 0 : port);
     }
 
     public void setHostPort(String hostPort) {
-      this.host = hostPort.split(":")[0];
       this.port = Integer.parseInt(hostPort.split(":")[1]);
+      this.host = hostPort.split(":")[0];
+      clusterSpecVersion.incrementAndGet();
+    }
+
+    /**
+     * Sets the task's address unless it has already registered one, e.g. in a call the executor retried.
+     * @return whether the address was set
+     */
+    public synchronized boolean registerHostPort(String hostPort) {
+      if (host != null) {
+        return false;
+      }
+      setHostPort(hostPort);
+      return true;
     }
 
     synchronized int getExitStatus() {
@@ -458,18 +1033,24 @@ public class TonySession {
       // Only set exit status if it hasn't been set yet
       if (exitStatus == -1) {
         this.exitStatus = status;
-        switch (status) {
+        // Released tasks are stopped or preempted on purpose, which isn't a failure.
+        switch (released ? ContainerExitStatus.KILLED_BY_APPMASTER : status) {
           case ContainerExitStatus.SUCCESS:
-            taskInfo.setStatus(TaskStatus.SUCCEEDED);
+            setStatus(TaskStatus.SUCCEEDED);
             break;
           case ContainerExitStatus.KILLED_BY_APPMASTER:
-            taskInfo.setStatus(TaskStatus.FINISHED);
+            setStatus(TaskStatus.FINISHED);
             break;
           default:
-            taskInfo.setStatus(TaskStatus.FAILED);
+            setStatus(TaskStatus.FAILED);
             break;
         }
         this.completed = true;
+        if (retried) {
+          onTaskRetried(jobName);
+        } else {
+          onTaskExitStatusSet(this, taskInfo.getStatus() == TaskStatus.FAILED);
+        }
       }
     }
 
@@ -480,14 +1061,30 @@ public class TonySession {
       return taskInfo;
     }
 
-    public void setTaskInfo(Container container) {
+    public synchronized void setTaskInfo(Container container) {
+      boolean firstScheduled = taskInfo == null;
       taskInfo = new TaskInfo(jobName, taskIndex, Utils.constructContainerUrl(container));
+      taskInfosVersion.incrementAndGet();
+      if (firstScheduled) {
+        onTaskScheduled(jobName);
+      }
+    }
+
+    /**
+     * Sets the status of the task's {@link TaskInfo}. Its status shouldn't be set directly, so that the AM notices the
+     * change.
+     */
+    public void setStatus(TaskStatus status) {
+      taskInfo.setStatus(status);
+      taskInfosVersion.incrementAndGet();
     }
 
-    TonyTask(String jobName, String taskIndex, int sessionId, long startTime) {
+    TonyTask(String jobName, String taskIndex, int handle, int sessionId, int attempt, long startTime) {
       this.jobName = jobName;
       this.taskIndex = taskIndex;
+      this.handle = handle;
       this.sessionId = sessionId;
+      this.attempt = attempt;
       this.startTime = startTime;
     }
 
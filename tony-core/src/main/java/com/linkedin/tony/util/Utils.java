@@ -35,7 +35,9 @@ import org.apache.hadoop.yarn.api.records.Container;
 import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.api.records.LocalResourceType;
+import org.apache.hadoop.yarn.api.records.Priority;
 import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.client.api.AMRMClient;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.exceptions.YarnException;
 
@@ -43,23 +45,30 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -72,10 +81,38 @@ public class Utils {
 
   private static final String WORKER_LOG_URL_TEMPLATE = "http://%s/node/containerlogs/%s/%s";
 
+  // allocationRequestId was added to ContainerRequest and Container in Hadoop 2.9 (YARN-4879), so to support older
+  // versions, we look them up through reflection once. Both are null when allocationRequestId is not supported.
+  private static final Constructor<AMRMClient.ContainerRequest> ALLOCATION_REQUEST_ID_CONSTRUCTOR;
+  private static final Method GET_ALLOCATION_REQUEST_ID_METHOD;
+
+  static {
+    Constructor<AMRMClient.ContainerRequest> constructor = null;
+    Method method = null;
+    try {
+      constructor = AMRMClient.ContainerRequest.class.getConstructor(Resource.class, String[].class, String[].class,
+          Priority.class, long.class, boolean.class, String.class);
+      method = Container.class.getMethod(Constants.GET_ALLOCATION_REQUEST_ID_METHOD);
+    } catch (NoSuchMethodException nsme) {
+      constructor = null;
+      method = null;
+    }
+    ALLOCATION_REQUEST_ID_CONSTRUCTOR = constructor;
+    GET_ALLOCATION_REQUEST_ID_METHOD = method;
+  }
+
+  /**
+   * Returns a random time between half and one and a half times {@code ms}, so that tasks polling the AM at the same
+   * interval spread their calls out instead of calling in lockstep.
+   */
+  public static long jitter(long ms) {
+    return ms <= 0 ? 0 : ms / 2 + ThreadLocalRandom.current().nextLong(ms);
+  }
+
   /**
    * Poll a callable till it returns true or time out
    * @param func a function that returns a boolean
-   * @param interval the interval we poll (in seconds).
+   * @param interval the interval we poll (in seconds), jittered by {@link #jitter(long)}.
    * @param timeout the timeout we will stop polling (in seconds).
    * @return if the func returned true before timing out.
    * @throws IllegalArgumentException if {@code interval} or {@code timeout} is negative
@@ -84,15 +121,14 @@ public class Utils {
     Preconditions.checkArgument(interval >= 0, "Interval must be non-negative.");
     Preconditions.checkArgument(timeout >= 0, "Timeout must be non-negative.");
 
-    int remainingTime = timeout;
+    long deadline = System.currentTimeMillis() + timeout * 1000L;
     try {
-      while (timeout == 0 || remainingTime >= 0) {
+      while (timeout == 0 || System.currentTimeMillis() <= deadline) {
         if (func.call()) {
           LOG.info("Poll function finished within " + timeout + " seconds");
           return true;
         }
-        Thread.sleep(interval * 1000);
-        remainingTime -= interval;
+        Thread.sleep(jitter(interval * 1000L));
       }
     } catch (Exception e) {
       LOG.error("Polled function threw exception.", e);
@@ -102,12 +138,12 @@ public class Utils {
   }
 
   /**
-   * Polls the function {@code func} every {@code interval} seconds until the function returns non-null or until
+   * Polls the function {@code func} about every {@code interval} seconds until the function returns non-null or until
    * {@code timeout} seconds is reached, and which point this function returns null. If {@code timeout} is 0, the
    * function will be polled forever until it returns non-null.
    *
    * @param func  the function to poll
-   * @param interval  the interval, in seconds, at which to poll the function
+   * @param interval  the interval, in seconds, at which to poll the function, jittered by {@link #jitter(long)}
    * @param timeout  the maximum time to poll for until giving up and returning null
    * @param <T>  the type of the object returned by the function
    * @return  the non-null object returned by the function or null if {@code timeout} is reached
@@ -117,17 +153,16 @@ public class Utils {
     Preconditions.checkArgument(interval >= 0, "Interval must be non-negative.");
     Preconditions.checkArgument(timeout >= 0, "Timeout must be non-negative.");
 
-    int remainingTime = timeout;
+    long deadline = System.currentTimeMillis() + timeout * 1000L;
     T ret;
     try {
-      while (timeout == 0 || remainingTime >= 0) {
+      while (timeout == 0 || System.currentTimeMillis() <= deadline) {
         ret = func.call();
         if (ret != null) {
           LOG.info("pollTillNonNull function finished within " + timeout + " seconds");
           return ret;
         }
-        Thread.sleep(interval * 1000);
-        remainingTime -= interval;
+        Thread.sleep(jitter(interval * 1000L));
       }
     } catch (Exception e) {
       LOG.error("pollTillNonNull function threw exception", e);
@@ -197,6 +232,48 @@ public class Utils {
     return;
   }
 
+  /**
+   * Returns whether this version of YARN supports tagging container requests with an allocationRequestId.
+   */
+  public static boolean isAllocationRequestIdSupported() {
+    return ALLOCATION_REQUEST_ID_CONSTRUCTOR != null;
+  }
+
+  /**
+   * Creates a container request tagged with {@code allocationRequestId}, so that allocated containers can be matched
+   * back to the request regardless of their priority. Falls back to an untagged request when allocationRequestId is
+   * not supported by this version of YARN, in which case containers are matched by priority.
+   */
+  public static AMRMClient.ContainerRequest createContainerRequest(Resource capability, String[] nodes,
+      String[] racks, Priority priority, long allocationRequestId, boolean relaxLocality,
+      String nodeLabelsExpression) {
+    if (ALLOCATION_REQUEST_ID_CONSTRUCTOR != null) {
+      try {
+        return ALLOCATION_REQUEST_ID_CONSTRUCTOR.newInstance(capability, nodes, racks, priority, allocationRequestId,
+            relaxLocality, nodeLabelsExpression);
+      } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+        LOG.warn("Failed to create container request with allocationRequestId, falling back to priority", e);
+      }
+    }
+    return new AMRMClient.ContainerRequest(capability, nodes, racks, priority, relaxLocality, nodeLabelsExpression);
+  }
+
+  /**
+   * Returns the allocationRequestId of the request {@code container} was allocated for, or -1 if allocationRequestId
+   * is not supported by this version of YARN.
+   */
+  public static long getAllocationRequestId(Container container) {
+    if (GET_ALLOCATION_REQUEST_ID_METHOD == null) {
+      return -1;
+    }
+    try {
+      return (long) GET_ALLOCATION_REQUEST_ID_METHOD.invoke(container);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      LOG.warn("Failed to invoke '" + Constants.GET_ALLOCATION_REQUEST_ID_METHOD + "' on " + container.getId(), e);
+      return -1;
+    }
+  }
+
   public static String constructUrl(String urlString) {
     if (!urlString.startsWith("http")) {
       return "http://" + urlString;
@@ -280,6 +357,20 @@ public class Utils {
    * @throws InterruptedException
    */
   public static int executeShell(String taskCommand, long timeout, Map<String, String> env) throws IOException, InterruptedException {
+    Process taskProcess = startShell(taskCommand, env);
+    if (timeout > 0) {
+      taskProcess.waitFor(timeout, TimeUnit.MILLISECONDS);
+    } else {
+      taskProcess.waitFor();
+    }
+    return taskProcess.exitValue();
+
+  }
+
+  /**
+   * Starts {@code taskCommand} in a shell without waiting for it, e.g. so that the caller can kill it.
+   */
+  public static Process startShell(String taskCommand, Map<String, String> env) throws IOException {
     LOG.info("Executing command: " + taskCommand);
     String executablePath = taskCommand.trim().split(" ")[0];
     File executable = new File(executablePath);
@@ -301,14 +392,72 @@ public class Utils {
     if (env != null) {
       taskProcessBuilder.environment().putAll(env);
     }
-    Process taskProcess = taskProcessBuilder.start();
-    if (timeout > 0) {
-      taskProcess.waitFor(timeout, TimeUnit.MILLISECONDS);
-    } else {
-      taskProcess.waitFor();
+    return taskProcessBuilder.start();
+  }
+
+  /**
+   * Returns the pid of {@code process}, or -1 if it can't be determined. Java 8 only keeps it in a private field of its
+   * UNIX process implementation.
+   */
+  public static int getPid(Process process) {
+    try {
+      Field pidField = process.getClass().getDeclaredField("pid");
+      pidField.setAccessible(true);
+      return pidField.getInt(process);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.warn("Failed to get the pid of " + process, e);
+      return -1;
     }
-    return taskProcess.exitValue();
+  }
+
+  /**
+   * Returns {@code pid} followed by the pids of all processes descended from it, as listed in /proc, or just
+   * {@code pid} where /proc isn't available. Java 8 has no API for process trees, and killing a shell only kills the
+   * shell, not the commands it runs.
+   */
+  public static List<Integer> getProcessTree(int pid) {
+    Map<Integer, List<Integer>> childrenByParent = new HashMap<>();
+    File[] procs = new File("/proc").listFiles((dir, name) -> name.chars().allMatch(Character::isDigit));
+    for (File proc : procs == null ? new File[0] : procs) {
+      try {
+        // The parent pid is the second field after the command name, which is in parentheses and may contain spaces.
+        String stat = new String(Files.readAllBytes(new File(proc, "stat").toPath()), StandardCharsets.UTF_8);
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+        childrenByParent.computeIfAbsent(Integer.parseInt(fields[1]), k -> new ArrayList<>())
+            .add(Integer.parseInt(proc.getName()));
+      } catch (IOException | RuntimeException e) {
+        // The process exited while listing.
+      }
+    }
+    List<Integer> tree = new ArrayList<>();
+    Deque<Integer> toVisit = new ArrayDeque<>();
+    toVisit.add(pid);
+    while (!toVisit.isEmpty()) {
+      int next = toVisit.poll();
+      tree.add(next);
+      toVisit.addAll(childrenByParent.getOrDefault(next, Collections.emptyList()));
+    }
+    return tree;
+  }
+
+  /**
+   * Sends {@code signal} to the processes {@code pids}. Processes that already exited are skipped silently.
+   */
+  public static void signalProcesses(List<Integer> pids, String signal) {
+    List<String> command = new ArrayList<>(Arrays.asList("kill", "-s", signal));
+    pids.forEach(pid -> command.add(String.valueOf(pid)));
+    try {
+      new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.to(
+          new File("/dev/null"))).start().waitFor();
+    } catch (IOException e) {
+      LOG.warn("Failed to send signal " + signal + " to processes " + pids, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
+  public static boolean isProcessAlive(int pid) {
+    return new File("/proc/" + pid).exists();
   }
 
   public static String getCurrentHostName() {
@@ -356,12 +505,18 @@ public class Utils {
     Set<String> jobNames = getAllJobTypes(conf);
     Set<String> untrackedJobTypes = Arrays.stream(getUntrackedJobTypes(conf)).collect(Collectors.toSet());
     Map<String, JobContainerRequest> containerRequests = new HashMap<>();
+    boolean allocationRequestIdSupported = isAllocationRequestIdSupported();
     int priority = 0;
+    long allocationRequestId = 0;
 
     List<String> prepareStageTasks = new ArrayList<>(conf.getTrimmedStringCollection(TonyConfigurationKeys.APPLICATION_PREPARE_STAGE));
     List<String> trainingStageTasks = new ArrayList<>(conf.getTrimmedStringCollection(TonyConfigurationKeys.APPLICATION_TRAINING_STAGE));
     ensureStagedTasksIntegrity(prepareStageTasks, trainingStageTasks, jobNames);
-    List<String> tasksToDependOn = prepareStageTasks.stream().filter(x -> !untrackedJobTypes.contains(x)).collect(Collectors.toList());
+    // The training stage starts once the prepare stage met the start condition, all prepare tasks completed by default
+    String trainingStartCondition = conf.get(TonyConfigurationKeys.APPLICATION_TRAINING_STAGE_START_CONDITION,
+        TonyConfigurationKeys.DEFAULT_APPLICATION_TRAINING_STAGE_START_CONDITION);
+    List<String> tasksToDependOn = prepareStageTasks.stream().filter(x -> !untrackedJobTypes.contains(x))
+        .map(x -> x + ":" + trainingStartCondition).collect(Collectors.toList());
 
     for (String jobName : jobNames) {
       int numInstances = conf.getInt(TonyConfigurationKeys.getInstancesKey(jobName), 0);
@@ -379,18 +534,30 @@ public class Utils {
       if (trainingStageTasks.contains(jobName)) {
         dependsOn.addAll(tasksToDependOn);
       }
-
-      /* The priority of different task types MUST be different.
-       * Otherwise the requests will overwrite each other on the RM
-       * scheduling side. See YARN-7631 for details.
-       * For now we set the priorities of different task types arbitrarily.
+      dependsOn.addAll(conf.getTrimmedStringCollection(TonyConfigurationKeys.getDependsOnKey(jobName)));
+
+      /* Where YARN supports allocationRequestId, each task type's requests are tagged with their own id, which
+       * allocated containers are matched back to tasks by, so task types get their configured priority.
+       * Older versions of YARN (e.g. Hadoop 2.7) only tell the requests of different task types apart by
+       * priority, so the priority of different task types MUST be different there. Otherwise the requests will
+       * overwrite each other on the RM scheduling side. See YARN-7631 for details. For those we set the
+       * priorities of different task types arbitrarily.
        */
       if (numInstances > 0) {
-        // We rely on unique priority behavior to match allocation request to task in Hadoop 2.7
+        int jobPriority;
+        if (allocationRequestIdSupported) {
+          jobPriority = conf.getInt(TonyConfigurationKeys.getPriorityKey(jobName),
+              TonyConfigurationKeys.DEFAULT_PRIORITY);
+        } else {
+          if (conf.get(TonyConfigurationKeys.getPriorityKey(jobName)) != null) {
+            LOG.warn("Ignoring " + TonyConfigurationKeys.getPriorityKey(jobName) + ", this version of YARN needs a "
+                + "unique priority per task type.");
+          }
+          jobPriority = priority++;
+        }
         containerRequests.put(jobName,
-                new JobContainerRequest(jobName, numInstances, memory, vCores, gpus, priority,
-                    nodeLabel, dependsOn));
-        priority++;
+                new JobContainerRequest(jobName, numInstances, memory, vCores, gpus, jobPriority,
+                    allocationRequestId++, nodeLabel, dependsOn));
       }
     }
     return containerRequests;
@@ -617,6 +784,30 @@ public class Utils {
     return !Arrays.asList(getUntrackedJobTypes(tonyConf)).contains(taskName);
   }
 
+  /**
+   * Returns whether {@code jobName}'s instances can be resized while the job runs, i.e. whether its min instances are
+   * configured.
+   */
+  public static boolean isJobTypeElastic(String jobName, Configuration tonyConf) {
+    return tonyConf.getInt(TonyConfigurationKeys.getMinInstancesKey(jobName), 0) > 0;
+  }
+
+  /**
+   * Returns how many times a failed {@code jobName} task may be relaunched before its failure fails the session.
+   */
+  public static int getMaxTaskRetries(String jobName, Configuration tonyConf) {
+    return Math.max(0, tonyConf.getInt(TonyConfigurationKeys.getMaxTaskRetriesKey(jobName),
+        TonyConfigurationKeys.DEFAULT_MAX_TASK_RETRIES));
+  }
+
+  /**
+   * Returns whether tasks of any job type may be relaunched after failing, in which case the cluster spec can change
+   * while tasks are running.
+   */
+  public static boolean isTaskRetryEnabled(Configuration tonyConf) {
+    return getAllJobTypes(tonyConf).stream().anyMatch(jobName -> getMaxTaskRetries(jobName, tonyConf) > 0);
+  }
+
   public static String[] getStopOnFailureJobTypes(Configuration conf) {
     return conf.getStrings(TonyConfigurationKeys.STOP_ON_FAILURE_JOBTYPES, "");
   }
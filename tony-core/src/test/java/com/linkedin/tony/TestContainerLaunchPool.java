@@ -0,0 +1,116 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestContainerLaunchPool {
+  private static final ApplicationAttemptId ATTEMPT_ID =
+      ApplicationAttemptId.newInstance(ApplicationId.newInstance(1L, 1), 1);
+
+  private static Container newContainer(int id, NodeId nodeId) {
+    Container container = mock(Container.class);
+    when(container.getId()).thenReturn(ContainerId.newContainerId(ATTEMPT_ID, id));
+    when(container.getNodeId()).thenReturn(nodeId);
+    return container;
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(condition.getAsBoolean());
+  }
+
+  @Test
+  public void testPerNodeInFlightCap() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setInt(TonyConfigurationKeys.CONTAINER_LAUNCHER_THREADS, 4);
+    conf.setInt(TonyConfigurationKeys.CONTAINER_LAUNCHER_MAX_IN_FLIGHT_PER_NODE, 2);
+    ContainerLaunchPool pool = new ContainerLaunchPool(conf);
+    NodeId node1 = NodeId.newInstance("host1", 8041);
+    NodeId node2 = NodeId.newInstance("host2", 8041);
+    List<ContainerId> launched = new CopyOnWriteArrayList<>();
+
+    for (int i = 1; i <= 5; i++) {
+      Container container = newContainer(i, node1);
+      pool.submit(container, () -> launched.add(container.getId()));
+    }
+    Container other = newContainer(6, node2);
+    pool.submit(other, () -> launched.add(other.getId()));
+
+    waitFor(() -> launched.size() == 3);
+    assertEquals(pool.getNumInFlight(node1), 2);
+    assertEquals(pool.getNumInFlight(node2), 1);
+    assertTrue(launched.contains(other.getId()));
+
+    // Every completed start on node1 lets one more launch through, whether it succeeded or failed.
+    pool.onContainerStarted(ContainerId.newContainerId(ATTEMPT_ID, 1));
+    waitFor(() -> launched.size() == 4);
+    pool.onStartContainerError(ContainerId.newContainerId(ATTEMPT_ID, 2));
+    waitFor(() -> launched.size() == 5);
+    assertEquals(pool.getNumInFlight(node1), 2);
+
+    assertEquals(pool.getMetrics().get(Constants.AM_CONTAINER_START_ERRORS), 1.0);
+    assertTrue(pool.getMetrics().get(Constants.AM_CONTAINER_LAUNCH_MAX_QUEUE_DEPTH) >= 1);
+    pool.stop();
+  }
+
+  @Test
+  public void testFailedLaunchReleasesNode() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setInt(TonyConfigurationKeys.CONTAINER_LAUNCHER_MAX_IN_FLIGHT_PER_NODE, 1);
+    ContainerLaunchPool pool = new ContainerLaunchPool(conf);
+    NodeId node = NodeId.newInstance("host1", 8041);
+    List<ContainerId> launched = new CopyOnWriteArrayList<>();
+
+    pool.submit(newContainer(1, node), () -> {
+      throw new IllegalStateException("no task");
+    });
+    Container container = newContainer(2, node);
+    pool.submit(container, () -> launched.add(container.getId()));
+
+    waitFor(() -> launched.size() == 1);
+    assertEquals(pool.getMetrics().get(Constants.AM_CONTAINER_START_ERRORS), 1.0);
+    pool.stop();
+  }
+
+  @Test
+  public void testLaunchRateLimit() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setInt(TonyConfigurationKeys.CONTAINER_LAUNCHER_MAX_IN_FLIGHT_PER_NODE, 0);
+    conf.setFloat(TonyConfigurationKeys.CONTAINER_LAUNCHER_MAX_LAUNCHES_PER_SECOND, 20);
+    ContainerLaunchPool pool = new ContainerLaunchPool(conf);
+    NodeId node = NodeId.newInstance("host1", 8041);
+    List<ContainerId> launched = new CopyOnWriteArrayList<>();
+
+    long start = System.nanoTime();
+    for (int i = 1; i <= 11; i++) {
+      Container container = newContainer(i, node);
+      pool.submit(container, () -> launched.add(container.getId()));
+    }
+    waitFor(() -> launched.size() == 11);
+    // 11 launches at 20 per second take at least half a second.
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 450);
+    pool.stop();
+  }
+}
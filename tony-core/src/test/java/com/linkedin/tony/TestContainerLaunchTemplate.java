@@ -0,0 +1,156 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.linkedin.tony.util.Utils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.ApplicationConstants;
+import org.apache.hadoop.yarn.api.records.ApplicationAccessType;
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestContainerLaunchTemplate {
+  private static final String TASK_COMMAND = "$JAVA_HOME/bin/java -Xmx1536m com.linkedin.tony.TaskExecutor";
+
+  private static Map<String, String> containerEnv() {
+    Map<String, String> env = new HashMap<>();
+    for (int i = 0; i < 50; i++) {
+      env.put("ENV_" + i, "value-" + i);
+    }
+    env.put(Constants.AM_HOST, "am-host");
+    env.put(Constants.AM_PORT, "1234");
+    return env;
+  }
+
+  @Test
+  public void testLaunchContext() {
+    Map<String, String> jobEnv = new HashMap<>();
+    jobEnv.put("ENV_0", "overridden");
+    ContainerLaunchTemplate template = new ContainerLaunchTemplate(Constants.WORKER_JOB_NAME, containerEnv(), jobEnv,
+        new HashMap<>(), TASK_COMMAND, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+    ContainerLaunchContext chief = template.newLaunchContext("0", true, 2, 4);
+    ContainerLaunchContext worker = template.newLaunchContext("1", false, 2, 4);
+
+    assertEquals(chief.getEnvironment().get(Constants.JOB_NAME), Constants.WORKER_JOB_NAME);
+    assertEquals(chief.getEnvironment().get(Constants.TASK_INDEX), "0");
+    assertEquals(chief.getEnvironment().get(Constants.TASK_NUM), "4");
+    assertEquals(chief.getEnvironment().get(Constants.SESSION_ID), "2");
+    assertEquals(chief.getEnvironment().get(Constants.IS_CHIEF), "true");
+    assertEquals(chief.getEnvironment().get("ENV_0"), "overridden");
+    assertEquals(worker.getEnvironment().get(Constants.TASK_INDEX), "1");
+    assertNull(worker.getEnvironment().get(Constants.IS_CHIEF));
+    assertFalse(template.getEnvironment().containsKey(Constants.TASK_INDEX));
+    assertFalse(template.getEnvironment().containsKey(Constants.TASK_NUM));
+    assertEquals(worker.getCommands(), template.getCommands());
+    assertEquals(worker.getApplicationACLs().get(ApplicationAccessType.VIEW_APP), "*");
+    assertEquals(worker.getTokens().remaining(), 3);
+  }
+
+  /**
+   * Launch contexts built from a template must be the same as the ones built per container before templates.
+   */
+  @Test
+  public void testLaunchContextMatchesPerContainerConstruction() {
+    Configuration tonyConf = new Configuration(false);
+    Map<String, String> containerEnv = containerEnv();
+    Map<String, LocalResource> resources = new HashMap<>();
+    ContainerLaunchTemplate template = new ContainerLaunchTemplate(Constants.WORKER_JOB_NAME, containerEnv,
+        Utils.getContainerEnvForDocker(tonyConf, Constants.WORKER_JOB_NAME), resources, TASK_COMMAND, null);
+
+    for (int i = 0; i < 3; i++) {
+      ContainerLaunchContext expected = buildPerContainer(tonyConf, containerEnv, resources, String.valueOf(i), i == 0);
+      ContainerLaunchContext actual = template.newLaunchContext(String.valueOf(i), i == 0, 0, 1000);
+      assertEquals(actual.getEnvironment(), expected.getEnvironment());
+      assertEquals(actual.getCommands(), expected.getCommands());
+      assertEquals(actual.getLocalResources(), expected.getLocalResources());
+      assertEquals(actual.getApplicationACLs(), expected.getApplicationACLs());
+    }
+  }
+
+  /**
+   * Building 1,000 launch contexts from a template must not be slower than building them per container. The fastest
+   * of several rounds is compared, so that JIT warm-up and GC pauses don't decide the outcome.
+   */
+  @Test
+  public void benchmarkLaunchContextConstruction() {
+    int numContainers = 1000;
+    int numRounds = 5;
+    Configuration tonyConf = new Configuration(false);
+    Map<String, String> containerEnv = containerEnv();
+    Map<String, LocalResource> resources = new HashMap<>();
+    long templateNanos = Long.MAX_VALUE;
+    long perContainerNanos = Long.MAX_VALUE;
+
+    for (int round = 0; round < numRounds; round++) {
+      List<ContainerLaunchContext> contexts = new ArrayList<>(numContainers);
+      long start = System.nanoTime();
+      ContainerLaunchTemplate template = new ContainerLaunchTemplate(Constants.WORKER_JOB_NAME, containerEnv,
+          Utils.getContainerEnvForDocker(tonyConf, Constants.WORKER_JOB_NAME), resources, TASK_COMMAND, null);
+      for (int i = 0; i < numContainers; i++) {
+        contexts.add(template.newLaunchContext(String.valueOf(i), i == 0, 0, numContainers));
+      }
+      templateNanos = Math.min(templateNanos, System.nanoTime() - start);
+      assertEquals(contexts.size(), numContainers);
+
+      contexts.clear();
+      start = System.nanoTime();
+      for (int i = 0; i < numContainers; i++) {
+        contexts.add(buildPerContainer(tonyConf, containerEnv, resources, String.valueOf(i), i == 0));
+      }
+      perContainerNanos = Math.min(perContainerNanos, System.nanoTime() - start);
+      assertEquals(contexts.size(), numContainers);
+    }
+
+    assertTrue(templateNanos <= perContainerNanos, "Built " + numContainers + " launch contexts in "
+        + templateNanos / 1e6 + " ms from a template, " + perContainerNanos / 1e6 + " ms per container");
+  }
+
+  @Test
+  public void testTaskNumFollowsResizes() {
+    ContainerLaunchTemplate template = new ContainerLaunchTemplate(Constants.WORKER_JOB_NAME, containerEnv(),
+        new HashMap<>(), new HashMap<>(), TASK_COMMAND, null);
+    assertEquals(template.newLaunchContext("0", true, 0, 4).getEnvironment().get(Constants.TASK_NUM), "4");
+    // An elastic job type grew after the template was built.
+    assertEquals(template.newLaunchContext("4", false, 0, 6).getEnvironment().get(Constants.TASK_NUM), "6");
+  }
+
+  // Launch context construction as done for every container before templates.
+  private static ContainerLaunchContext buildPerContainer(Configuration tonyConf, Map<String, String> containerEnv,
+      Map<String, LocalResource> resources, String taskIndex, boolean isChief) {
+    Map<String, String> env = new ConcurrentHashMap<>(containerEnv);
+    env.putAll(Utils.getContainerEnvForDocker(tonyConf, Constants.WORKER_JOB_NAME));
+    env.put(Constants.JOB_NAME, Constants.WORKER_JOB_NAME);
+    env.put(Constants.TASK_INDEX, taskIndex);
+    env.put(Constants.TASK_NUM, "1000");
+    if (isChief) {
+      env.put(Constants.IS_CHIEF, Boolean.TRUE.toString());
+    }
+    env.put(Constants.SESSION_ID, "0");
+    List<CharSequence> arguments = new ArrayList<>(5);
+    arguments.add(TASK_COMMAND);
+    arguments.add("1>" + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stdout");
+    arguments.add("2>" + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stderr");
+    List<String> commands = new ArrayList<>();
+    commands.add(String.join(" ", arguments));
+    Map<ApplicationAccessType, String> acls = new HashMap<>(2);
+    acls.put(ApplicationAccessType.VIEW_APP, "*");
+    acls.put(ApplicationAccessType.MODIFY_APP, " ");
+    return ContainerLaunchContext.newInstance(resources, env, commands, null, null, acls);
+  }
+}
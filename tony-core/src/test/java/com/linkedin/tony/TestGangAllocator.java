@@ -0,0 +1,151 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.Priority;
+import org.apache.hadoop.yarn.client.api.AMRMClient;
+import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestGangAllocator {
+  private AMRMClientAsync<AMRMClient.ContainerRequest> amRMClient;
+  private ScheduledExecutorService timer;
+  private List<Container> launched;
+  private List<Container> rerequested;
+
+  @BeforeMethod
+  public void setUp() {
+    amRMClient = mock(AMRMClientAsync.class);
+    timer = mock(ScheduledExecutorService.class);
+    when(timer.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenReturn(mock(ScheduledFuture.class));
+    launched = new ArrayList<>();
+    rerequested = new ArrayList<>();
+  }
+
+  private GangAllocator newAllocator(float quorum) {
+    Configuration conf = new Configuration(false);
+    conf.setFloat(TonyConfigurationKeys.GANG_ALLOCATION_QUORUM, quorum);
+    conf.setInt(TonyConfigurationKeys.GANG_ALLOCATION_TIMEOUT_MS, 1000);
+    conf.setInt(TonyConfigurationKeys.GANG_ALLOCATION_BACKOFF_MS, 100);
+    return new GangAllocator(amRMClient, launched::add, rerequested::add, conf, timer);
+  }
+
+  private static Container newContainer(int priority) {
+    Container container = mock(Container.class);
+    when(container.getPriority()).thenReturn(Priority.newInstance(priority));
+    when(container.getId()).thenReturn(mock(ContainerId.class));
+    return container;
+  }
+
+  @Test
+  public void testContainersHeldUntilGangForms() {
+    GangAllocator allocator = newAllocator(1.0f);
+    allocator.onContainersRequested(3);
+
+    allocator.onContainersAllocated(Arrays.asList(newContainer(1), newContainer(1)));
+    assertTrue(launched.isEmpty());
+    assertEquals(allocator.getNumHeldContainers(), 2);
+
+    allocator.onContainersAllocated(Collections.singletonList(newContainer(1)));
+    assertEquals(launched.size(), 3);
+    assertEquals(allocator.getNumHeldContainers(), 0);
+    // Asks are withdrawn by the scheduler, which knows which ask each container fulfilled.
+    verify(amRMClient, never()).removeContainerRequest(any());
+  }
+
+  @Test
+  public void testContainersAfterQuorumLaunchImmediately() {
+    GangAllocator allocator = newAllocator(0.5f);
+    allocator.onContainersRequested(4);
+
+    allocator.onContainersAllocated(Collections.singletonList(newContainer(1)));
+    assertTrue(launched.isEmpty());
+    allocator.onContainersAllocated(Collections.singletonList(newContainer(1)));
+    assertEquals(launched.size(), 2);
+    allocator.onContainersAllocated(Collections.singletonList(newContainer(1)));
+    assertEquals(launched.size(), 3);
+  }
+
+  @Test
+  public void testPartialGangReleasedOnDeadline() {
+    GangAllocator allocator = newAllocator(1.0f);
+    allocator.onContainersRequested(3);
+    Container first = newContainer(1);
+    Container second = newContainer(1);
+    allocator.onContainersAllocated(Arrays.asList(first, second));
+    verify(timer).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+
+    allocator.onDeadline();
+    verify(amRMClient).releaseAssignedContainer(first.getId());
+    verify(amRMClient).releaseAssignedContainer(second.getId());
+    assertEquals(allocator.getNumHeldContainers(), 0);
+    assertEquals(allocator.getNumReleases(), 1);
+    assertTrue(launched.isEmpty());
+    // Released containers are re-requested after the backoff, which doubles with every consecutive release.
+    ArgumentCaptor<Runnable> rerequest = ArgumentCaptor.forClass(Runnable.class);
+    verify(timer).schedule(rerequest.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+    assertTrue(rerequested.isEmpty());
+    rerequest.getValue().run();
+    assertEquals(rerequested, Arrays.asList(first, second));
+    allocator.onContainersAllocated(Collections.singletonList(newContainer(1)));
+    allocator.onDeadline();
+    verify(timer).schedule(any(Runnable.class), eq(200L), eq(TimeUnit.MILLISECONDS));
+
+    // The gang still needs all three containers.
+    allocator.onContainersAllocated(Arrays.asList(newContainer(1), newContainer(1)));
+    assertTrue(launched.isEmpty());
+    allocator.onContainersAllocated(Collections.singletonList(newContainer(1)));
+    assertEquals(launched.size(), 3);
+    verify(amRMClient, never()).addContainerRequest(any());
+  }
+
+  @Test
+  public void testResetForgetsTheGang() {
+    GangAllocator allocator = newAllocator(1.0f);
+    allocator.onContainersRequested(3);
+    Container held = newContainer(1);
+    allocator.onContainersAllocated(Collections.singletonList(held));
+    allocator.onDeadline();
+    ArgumentCaptor<Runnable> rerequest = ArgumentCaptor.forClass(Runnable.class);
+    verify(timer).schedule(rerequest.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+    held = newContainer(1);
+    allocator.onContainersAllocated(Collections.singletonList(held));
+
+    allocator.reset();
+    verify(amRMClient).releaseAssignedContainer(held.getId());
+    assertEquals(allocator.getNumHeldContainers(), 0);
+    // Containers released before the reset are not asked for again.
+    rerequest.getValue().run();
+    assertTrue(rerequested.isEmpty());
+
+    // The retried session's gang only counts its own containers.
+    allocator.onContainersRequested(1);
+    allocator.onContainersAllocated(Collections.singletonList(newContainer(1)));
+    assertEquals(launched.size(), 1);
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.linkedin.tony.tensorflow.JobContainerRequest;
+import com.linkedin.tony.tensorflow.JobDependency;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestJobDependencyGraph {
+
+  private static JobContainerRequest newRequest(String jobName, int numInstances, String... dependsOn) {
+    return new JobContainerRequest(jobName, numInstances, 0L, 1, 0, 1, "", Arrays.asList(dependsOn));
+  }
+
+  @Test
+  public void testParseDependency() {
+    JobDependency dependency = JobDependency.parse("prepare");
+    assertEquals(dependency.getUpstream(), "prepare");
+    assertEquals(dependency.getCondition(), JobDependency.Condition.COMPLETED);
+    assertEquals(dependency.getThreshold(10), 10);
+
+    dependency = JobDependency.parse(" prepare : succeeded : 0.9 ");
+    assertEquals(dependency.getCondition(), JobDependency.Condition.SUCCEEDED);
+    assertEquals(dependency.getThreshold(10), 9);
+    assertEquals(dependency.getThreshold(3), 3);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testParseInvalidFraction() {
+    JobDependency.parse("prepare:succeeded:1.5");
+  }
+
+  @Test
+  public void testTopologicalOrder() {
+    JobDependencyGraph graph = JobDependencyGraph.build(Arrays.asList(newRequest("cleanup", 1, "worker"),
+        newRequest("worker", 1, "ps", "db"), newRequest("ps", 1, "db"), newRequest("db", 1)));
+    assertEquals(graph.getTopologicalOrder(), Arrays.asList("db", "ps", "worker", "cleanup"));
+    assertEquals(graph.getReadyJobs().size(), 1);
+    assertEquals(graph.getReadyJobs().get(0).getJobName(), "db");
+  }
+
+  @Test
+  public void testCycle() {
+    assertNull(JobDependencyGraph.build(Arrays.asList(newRequest("a", 1, "b"), newRequest("b", 1, "c"),
+        newRequest("c", 1, "a"))));
+    assertNull(JobDependencyGraph.build(Collections.singletonList(newRequest("a", 1, "a"))));
+  }
+
+  @Test
+  public void testQuorumOfSucceededTasks() {
+    JobContainerRequest prepare = newRequest("prepare", 10);
+    JobContainerRequest worker = newRequest("worker", 2, "prepare:succeeded:0.9");
+    JobDependencyGraph graph = JobDependencyGraph.build(Arrays.asList(prepare, worker));
+
+    // Failures don't count towards succeeded.
+    assertTrue(graph.onTaskCompleted("prepare", false).isEmpty());
+    for (int i = 0; i < 8; i++) {
+      assertTrue(graph.onTaskCompleted("prepare", true).isEmpty());
+    }
+    assertFalse(graph.isReady(worker));
+    List<JobContainerRequest> ready = graph.onTaskCompleted("prepare", true);
+    assertEquals(ready, Collections.singletonList(worker));
+    assertTrue(graph.isReady(worker));
+
+    // A job type only becomes ready once.
+    assertTrue(graph.onTaskCompleted("prepare", true).isEmpty());
+  }
+
+  @Test
+  public void testMixedConditions() {
+    JobContainerRequest ps = newRequest("ps", 2);
+    JobContainerRequest prepare = newRequest("prepare", 1);
+    JobContainerRequest worker = newRequest("worker", 4, "ps:registered", "prepare");
+    JobDependencyGraph graph = JobDependencyGraph.build(Arrays.asList(ps, prepare, worker));
+
+    assertTrue(graph.onTaskRegistered("ps").isEmpty());
+    assertTrue(graph.onTaskRegistered("ps").isEmpty());
+    // Registration doesn't satisfy a completion dependency.
+    assertTrue(graph.onTaskRegistered("prepare").isEmpty());
+    assertFalse(graph.isReady(worker));
+    assertEquals(graph.onTaskCompleted("prepare", false), Collections.singletonList(worker));
+  }
+
+  @Test
+  public void testThresholdsFollowResizes() {
+    JobContainerRequest ps = newRequest("ps", 4);
+    JobContainerRequest worker = newRequest("worker", 2, "ps:registered:0.5");
+    JobDependencyGraph graph = JobDependencyGraph.build(Arrays.asList(ps, worker));
+
+    // Growing ps to 8 instances makes the workers wait for 4 of them.
+    assertTrue(graph.onInstancesChanged("ps", 8).isEmpty());
+    for (int i = 0; i < 3; i++) {
+      assertTrue(graph.onTaskRegistered("ps").isEmpty());
+    }
+    // Shrinking it back to 4 means the 3 registered are enough.
+    assertEquals(graph.onInstancesChanged("ps", 4), Collections.singletonList(worker));
+    assertTrue(graph.isReady(worker));
+
+    // A met dependency stays met.
+    assertTrue(graph.onInstancesChanged("ps", 20).isEmpty());
+    assertTrue(graph.isReady(worker));
+  }
+
+  @Test
+  public void testDependencyOnMissingJobType() {
+    JobContainerRequest worker = newRequest("worker", 1, "evaluator");
+    JobDependencyGraph graph = JobDependencyGraph.build(Collections.singletonList(worker));
+    assertTrue(graph.isReady(worker));
+  }
+}
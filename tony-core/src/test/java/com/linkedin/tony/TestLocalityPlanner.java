@@ -0,0 +1,77 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestLocalityPlanner {
+  private static BlockLocation block(long length, String... hosts) {
+    String[] names = Arrays.stream(hosts).map(host -> host + ":50010").toArray(String[]::new);
+    String[] topologyPaths = Arrays.stream(hosts).map(host -> "/rack-" + host.charAt(0) + "/" + host + ":50010")
+        .toArray(String[]::new);
+    return new BlockLocation(names, hosts, topologyPaths, 0, length);
+  }
+
+  @Test
+  public void testPlacementsFollowInputShards() {
+    LocalityPlanner planner = new LocalityPlanner(new Configuration(false), new Configuration(false));
+    List<BlockLocation> blocks = new ArrayList<>();
+    blocks.add(block(100, "a1", "a2", "b1"));
+    blocks.add(block(100, "a1", "a3", "b2"));
+    blocks.add(block(100, "c1", "c2", "b2"));
+    blocks.add(block(100, "c1", "c3", "b3"));
+
+    List<LocalityPlanner.Placement> placements = planner.planPlacements(Constants.WORKER_JOB_NAME, blocks, 2);
+    assertEquals(placements.size(), 2);
+    assertEquals(placements.get(0).getNodes().length, LocalityPlanner.MAX_PREFERRED_HOSTS_PER_TASK);
+    assertEquals(placements.get(0).getNodes()[0], "a1");
+    assertEquals(placements.get(1).getNodes()[0], "c1");
+    assertTrue(Arrays.asList(placements.get(1).getRacks()).contains("/rack-c"));
+  }
+
+  @Test
+  public void testFewerBlocksThanInstances() {
+    LocalityPlanner planner = new LocalityPlanner(new Configuration(false), new Configuration(false));
+    List<LocalityPlanner.Placement> placements = planner.planPlacements(Constants.WORKER_JOB_NAME,
+        Arrays.asList(block(100, "a1"), block(100, "b1")), 5);
+    assertEquals(placements.size(), 5);
+    assertEquals(placements.get(4).getNodes()[0], "a1");
+    assertNull(planner.planPlacements(Constants.WORKER_JOB_NAME, new ArrayList<>(), 5));
+  }
+
+  @Test
+  public void testNoPlacementsWithoutInputPaths() {
+    LocalityPlanner planner = new LocalityPlanner(new Configuration(false), new Configuration(false));
+    planner.loadBlockLocations(Collections.singletonList(Constants.WORKER_JOB_NAME));
+    assertNull(planner.planPlacements(Constants.WORKER_JOB_NAME, 2));
+  }
+
+  @Test
+  public void testLocalityMetrics() {
+    LocalityPlanner planner = new LocalityPlanner(new Configuration(false), new Configuration(false));
+    List<LocalityPlanner.Placement> placements = planner.planPlacements(Constants.WORKER_JOB_NAME,
+        Arrays.asList(block(100, "a1", "b1"), block(100, "a2", "b2")), 2);
+    planner.onContainerAllocated(Constants.WORKER_JOB_NAME, "a1", placements.get(0));
+    // b2 holds input of the job type, but not of this instance's shard.
+    planner.onContainerAllocated(Constants.WORKER_JOB_NAME, "b2", placements.get(0));
+
+    Map<String, Double> metrics = planner.getLocalityMetrics();
+    assertEquals(metrics.size(), 2);
+    assertEquals(metrics.get(Constants.AM_NODE_LOCAL_ALLOCATION_SHARE + "_" + Constants.WORKER_JOB_NAME), 0.5);
+    assertEquals(metrics.get(Constants.AM_RACK_LOCAL_ALLOCATION_SHARE + "_" + Constants.WORKER_JOB_NAME), 0.5);
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestNodeBlacklist {
+  @Test
+  public void testBlacklistAfterMaxFailures() {
+    NodeBlacklist blacklist = new NodeBlacklist(2, 10);
+    assertFalse(blacklist.recordFailure("host1"));
+    assertFalse(blacklist.recordFailure("host2"));
+    assertTrue(blacklist.recordFailure("host1"));
+    assertTrue(blacklist.isBlacklisted("host1"));
+    assertFalse(blacklist.isBlacklisted("host2"));
+
+    // Further failures don't blacklist the node again
+    assertFalse(blacklist.recordFailure("host1"));
+    assertEquals(blacklist.getNumFailures("host1"), 3);
+    assertEquals(blacklist.getNumBlacklisted(), 1);
+  }
+
+  @Test
+  public void testMaxBlacklistedNodes() {
+    NodeBlacklist blacklist = new NodeBlacklist(1, 1);
+    assertTrue(blacklist.recordFailure("host1"));
+    assertFalse(blacklist.recordFailure("host2"));
+    assertFalse(blacklist.onNodeUnusable("host3"));
+    assertEquals(blacklist.getNumBlacklisted(), 1);
+  }
+
+  @Test
+  public void testUnusableNodesLeaveBlacklistWhenUsable() {
+    NodeBlacklist blacklist = new NodeBlacklist(2, 10);
+    assertTrue(blacklist.onNodeUnusable("host1"));
+    assertFalse(blacklist.onNodeUnusable("host1"));
+    assertTrue(blacklist.onNodeUsable("host1"));
+    assertFalse(blacklist.isBlacklisted("host1"));
+    assertFalse(blacklist.onNodeUsable("host1"));
+  }
+
+  @Test
+  public void testFailingNodesStayBlacklistedWhenUsable() {
+    NodeBlacklist blacklist = new NodeBlacklist(1, 10);
+    assertTrue(blacklist.recordFailure("host1"));
+    assertFalse(blacklist.onNodeUnusable("host1"));
+    assertFalse(blacklist.onNodeUsable("host1"));
+
+    // A node that was unusable first is already blacklisted when it reaches the failure limit
+    assertTrue(blacklist.onNodeUnusable("host2"));
+    assertFalse(blacklist.recordFailure("host2"));
+    assertFalse(blacklist.onNodeUsable("host2"));
+    assertTrue(blacklist.isBlacklisted("host2"));
+  }
+
+  @Test
+  public void testStragglerNodesAreBlacklistedRightAway() {
+    NodeBlacklist blacklist = new NodeBlacklist(3, 2);
+    assertTrue(blacklist.onStraggler("host1"));
+    assertFalse(blacklist.onStraggler("host1"));
+    assertTrue(blacklist.isBlacklisted("host1"));
+
+    // An unusable node stays blacklisted once a straggler was replaced on it
+    assertTrue(blacklist.onNodeUnusable("host2"));
+    assertFalse(blacklist.onStraggler("host2"));
+    assertFalse(blacklist.onNodeUsable("host2"));
+
+    // Stragglers don't blacklist more than the maximum number of nodes
+    assertFalse(blacklist.onStraggler("host3"));
+    assertEquals(blacklist.getNumBlacklisted(), 2);
+  }
+
+  @Test
+  public void testIsNodeFailure() {
+    assertTrue(NodeBlacklist.isNodeFailure(ContainerExitStatus.DISKS_FAILED, null));
+    assertTrue(NodeBlacklist.isNodeFailure(ContainerExitStatus.INVALID, "Container launch failed"));
+    assertTrue(NodeBlacklist.isNodeFailure(ContainerExitStatus.ABORTED,
+        "Container released on a *lost* node"));
+    assertFalse(NodeBlacklist.isNodeFailure(ContainerExitStatus.ABORTED, "Container released by application"));
+    assertFalse(NodeBlacklist.isNodeFailure(1, "Exception from container-launch"));
+    assertFalse(NodeBlacklist.isNodeFailure(ContainerExitStatus.KILLED_EXCEEDED_PMEM, null));
+    assertFalse(NodeBlacklist.isNodeFailure(ContainerExitStatus.SUCCESS, null));
+    assertFalse(NodeBlacklist.isNodeFailure(ContainerExitStatus.KILLED_BY_APPMASTER, null));
+    assertFalse(NodeBlacklist.isNodeFailure(ContainerExitStatus.PREEMPTED, null));
+  }
+}
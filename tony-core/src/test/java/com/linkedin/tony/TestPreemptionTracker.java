@@ -0,0 +1,97 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.PreemptionContainer;
+import org.apache.hadoop.yarn.api.records.PreemptionContract;
+import org.apache.hadoop.yarn.api.records.PreemptionMessage;
+import org.apache.hadoop.yarn.api.records.StrictPreemptionContract;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestPreemptionTracker {
+  private static final ApplicationAttemptId ATTEMPT_ID =
+      ApplicationAttemptId.newInstance(ApplicationId.newInstance(1L, 1), 1);
+  private static final ContainerId CONTAINER_1 = ContainerId.newContainerId(ATTEMPT_ID, 1);
+  private static final ContainerId CONTAINER_2 = ContainerId.newContainerId(ATTEMPT_ID, 2);
+
+  private static PreemptionContainer newPreemptionContainer(ContainerId containerId) {
+    PreemptionContainer container = mock(PreemptionContainer.class);
+    when(container.getId()).thenReturn(containerId);
+    return container;
+  }
+
+  @Test
+  public void testGetContainersReadsBothContracts() {
+    StrictPreemptionContract strict = mock(StrictPreemptionContract.class);
+    when(strict.getContainers()).thenReturn(Collections.singleton(newPreemptionContainer(CONTAINER_1)));
+    PreemptionContract contract = mock(PreemptionContract.class);
+    when(contract.getContainers()).thenReturn(Collections.singleton(newPreemptionContainer(CONTAINER_2)));
+    PreemptionMessage message = mock(PreemptionMessage.class);
+    when(message.getStrictContract()).thenReturn(strict);
+    when(message.getContract()).thenReturn(contract);
+
+    assertEquals(PreemptionTracker.getContainers(message), ImmutableSet.of(CONTAINER_1, CONTAINER_2));
+    assertTrue(PreemptionTracker.getContainers(mock(PreemptionMessage.class)).isEmpty());
+    assertTrue(PreemptionTracker.getContainers(null).isEmpty());
+  }
+
+  @Test
+  public void testUpdateOnlyReturnsNewContainers() {
+    PreemptionTracker tracker = new PreemptionTracker(1000);
+    assertEquals(tracker.update(ImmutableSet.of(CONTAINER_1), 0), Collections.singletonList(CONTAINER_1));
+    assertEquals(tracker.update(ImmutableSet.of(CONTAINER_1, CONTAINER_2), 100),
+        Collections.singletonList(CONTAINER_2));
+    assertTrue(tracker.update(ImmutableSet.of(CONTAINER_1, CONTAINER_2), 200).isEmpty());
+    assertTrue(tracker.isWarned(CONTAINER_1));
+    assertEquals(tracker.getNumWarned(), 2);
+  }
+
+  @Test
+  public void testSparedContainersAreForgotten() {
+    PreemptionTracker tracker = new PreemptionTracker(1000);
+    tracker.update(ImmutableSet.of(CONTAINER_1, CONTAINER_2), 0);
+    tracker.update(ImmutableSet.of(CONTAINER_2), 500);
+    assertFalse(tracker.isWarned(CONTAINER_1));
+    assertEquals(tracker.pollDue(1000), Collections.singletonList(CONTAINER_2));
+  }
+
+  @Test
+  public void testPollDueReturnsEachContainerOnce() {
+    PreemptionTracker tracker = new PreemptionTracker(1000);
+    Set<ContainerId> requested = ImmutableSet.of(CONTAINER_1);
+    tracker.update(requested, 0);
+    assertTrue(tracker.pollDue(999).isEmpty());
+    assertEquals(tracker.pollDue(1000), Collections.singletonList(CONTAINER_1));
+    assertFalse(tracker.isWarned(CONTAINER_1));
+
+    // The RM keeps requesting the released container until it is gone
+    assertTrue(tracker.update(requested, 1500).isEmpty());
+    assertTrue(tracker.pollDue(3000).isEmpty());
+    assertEquals(tracker.getNumReleased(), 1);
+  }
+
+  @Test
+  public void testWarnSkipsKnownContainers() {
+    PreemptionTracker tracker = new PreemptionTracker(1000);
+    tracker.update(ImmutableSet.of(CONTAINER_1), 0);
+    assertEquals(tracker.warn(Arrays.asList(CONTAINER_1, CONTAINER_2), 100), Collections.singletonList(CONTAINER_2));
+    tracker.remove(CONTAINER_2);
+    assertFalse(tracker.isWarned(CONTAINER_2));
+  }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestRegistrationBarrier {
+
+  @Test
+  public void testWaitersReleasedOnLastRegistration() throws Exception {
+    AtomicInteger numRegistered = new AtomicInteger();
+    AtomicLong now = new AtomicLong(1000);
+    RegistrationBarrier barrier = new RegistrationBarrier(() -> numRegistered.get() == 2, 1, now::get);
+
+    numRegistered.incrementAndGet();
+    barrier.onTaskRegistered();
+    CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+      try {
+        return barrier.await(60 * 1000);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    now.set(1500);
+    numRegistered.incrementAndGet();
+    barrier.onTaskRegistered();
+    assertTrue(waiter.get(10, TimeUnit.SECONDS));
+    assertEquals(barrier.getLatencyMs(), 500);
+    // Once all tasks registered, calls don't wait.
+    assertTrue(barrier.await(60 * 1000));
+  }
+
+  @Test
+  public void testNoWaitingWithoutSpareHandlers() throws Exception {
+    RegistrationBarrier barrier = new RegistrationBarrier(() -> false, 0);
+    long startTime = System.currentTimeMillis();
+    assertFalse(barrier.await(60 * 1000));
+    assertTrue(System.currentTimeMillis() - startTime < 60 * 1000);
+    assertTrue(barrier.getLatencyMs() < 0);
+  }
+
+  @Test
+  public void testWaitTimesOut() throws Exception {
+    RegistrationBarrier barrier = new RegistrationBarrier(() -> false, 1);
+    assertFalse(barrier.await(50));
+  }
+}
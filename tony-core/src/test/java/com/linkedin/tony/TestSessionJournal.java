@@ -0,0 +1,94 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.linkedin.tony.SessionJournal.RecoveredSession;
+import com.linkedin.tony.SessionJournal.RecoveredTask;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class TestSessionJournal {
+
+  private static RecoveredSession replay(String... lines) throws Exception {
+    return SessionJournal.replay(new BufferedReader(new StringReader(String.join("\n", lines))));
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    RecoveredSession session = replay(
+        "S\t0",
+        "A\tworker\t0\t0\tcontainer_1_0001_01_000002\thost1:8042",
+        // Records of an earlier session are discarded
+        "S\t1",
+        "A\tps\t0\t0\tcontainer_1_0001_01_000003\thost1:8042",
+        "A\tworker\t0\t0\tcontainer_1_0001_01_000004\thost2:8042",
+        "R\tps\t0\thost1:1234",
+        "R\tworker\t0\thost2:1234",
+        "C\tworker\t0\t1",
+        // A retry of worker 0 replaces its failed attempt
+        "A\tworker\t0\t1\tcontainer_1_0001_01_000005\thost3:8042",
+        // Never assigned, and torn by a crash
+        "C\tworker\t1\t0",
+        "R\tps\t0");
+
+    assertEquals(session.getSessionId(), 1);
+    List<RecoveredTask> tasks = new ArrayList<>(session.getTasks());
+    assertEquals(tasks.size(), 2);
+
+    RecoveredTask ps = tasks.get(0);
+    assertEquals(ps.getId(), "ps:0");
+    assertEquals(ps.getContainerId(), "container_1_0001_01_000003");
+    assertEquals(ps.getHostPort(), "host1:1234");
+    assertNull(ps.getExitStatus());
+
+    RecoveredTask worker = tasks.get(1);
+    assertEquals(worker.getId(), "worker:0");
+    assertEquals(worker.getAttempt(), 1);
+    assertEquals(worker.getContainerId(), "container_1_0001_01_000005");
+    assertEquals(worker.getNodeHttpAddress(), "host3:8042");
+    assertNull(worker.getHostPort());
+    assertNull(worker.getExitStatus());
+  }
+
+  @Test
+  public void testReadLatestSkipsAttemptsWithoutSnapshot() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path jobDir = new Path(Files.createTempDirectory("session-journal").toString());
+    try {
+      writeJournal(fs, jobDir, 1, "S\t0", "A\tworker\t0\t0\tcontainer_1_0001_01_000002\thost1:8042");
+      writeJournal(fs, jobDir, 2, "S\t0", "A\tworker\t0\t0\tcontainer_1_0001_01_000002\thost1:8042",
+          "A\tps\t0\t0\tcontainer_1_0001_02_000003\thost2:8042");
+      // Attempt 3 failed before writing its snapshot.
+      writeJournal(fs, jobDir, 3);
+
+      RecoveredSession session = SessionJournal.readLatest(fs, jobDir, 4);
+      assertEquals(session.getTasks().size(), 2);
+      assertNull(SessionJournal.readLatest(fs, jobDir, 1));
+    } finally {
+      fs.delete(jobDir, true);
+    }
+  }
+
+  private static void writeJournal(FileSystem fs, Path jobDir, int appAttemptId, String... lines) throws Exception {
+    try (FSDataOutputStream out = fs.create(SessionJournal.getJournalPath(jobDir, appAttemptId))) {
+      for (String line : lines) {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+    }
+  }
+}
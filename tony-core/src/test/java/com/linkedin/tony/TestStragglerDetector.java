@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.conf.Configuration;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class TestStragglerDetector {
+
+  private static Configuration newConf(String signal) {
+    Configuration conf = new Configuration(false);
+    conf.set(TonyConfigurationKeys.STRAGGLER_SIGNAL, signal);
+    conf.setFloat(TonyConfigurationKeys.STRAGGLER_SLOWDOWN_FACTOR, 2.0f);
+    conf.setLong(TonyConfigurationKeys.STRAGGLER_MIN_DURATION_MS, 1000);
+    return conf;
+  }
+
+  @Test
+  public void testUtilizationStraggler() {
+    StragglerDetector detector = new StragglerDetector(newConf("cpu"));
+    assertEquals(detector.getMetricName(), Constants.CPU_UTILIZATION);
+
+    // worker:2 falls behind, but has to stay behind for a second before it's a straggler.
+    assertNull(detector.update("worker", ImmutableMap.of("worker:0", 90.0, "worker:1", 80.0, "worker:2", 30.0), 0));
+    assertNull(detector.update("worker", ImmutableMap.of("worker:0", 90.0, "worker:1", 80.0, "worker:2", 30.0), 500));
+    assertEquals(detector.update("worker", ImmutableMap.of("worker:0", 90.0, "worker:1", 80.0, "worker:2", 30.0), 1000),
+        "worker:2");
+
+    // Catching up resets the clock.
+    assertNull(detector.update("worker", ImmutableMap.of("worker:0", 90.0, "worker:1", 80.0, "worker:2", 60.0), 1500));
+    assertNull(detector.update("worker", ImmutableMap.of("worker:0", 90.0, "worker:1", 80.0, "worker:2", 30.0), 2000));
+  }
+
+  @Test
+  public void testTooFewTasksToCompare() {
+    StragglerDetector detector = new StragglerDetector(newConf("gpu"));
+    // Tasks that haven't reported the metric yet don't count.
+    for (long now = 0; now <= 2000; now += 1000) {
+      assertNull(detector.update("worker", ImmutableMap.of("worker:0", 90.0, "worker:1", 10.0, "worker:2", -1.0), now));
+    }
+  }
+
+  @Test
+  public void testStepRateStraggler() {
+    StragglerDetector detector = new StragglerDetector(newConf("step"));
+    assertEquals(detector.getMetricName(), Constants.TRAINING_STEP);
+
+    // Steps are compared by how fast they advance, not by their value.
+    assertNull(detector.update("worker", ImmutableMap.of("worker:0", 100.0, "worker:1", 100.0, "worker:2", 500.0), 0));
+    assertNull(detector.update("worker", ImmutableMap.of("worker:0", 200.0, "worker:1", 200.0, "worker:2", 520.0),
+        1000));
+    assertEquals(detector.update("worker", ImmutableMap.of("worker:0", 300.0, "worker:1", 300.0, "worker:2", 540.0),
+        2000), "worker:2");
+
+    // A new attempt starts without a rate.
+    assertNull(detector.update("worker", ImmutableMap.of("worker:0", 400.0, "worker:1", 400.0, "worker:2#1", 0.0),
+        3000));
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.linkedin.tony.rpc.TaskInfo;
+import com.linkedin.tony.rpc.TaskInfoUpdate;
+import com.linkedin.tony.rpc.impl.TaskStatus;
+import java.util.Arrays;
+import java.util.Collections;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestTaskInfoSnapshot {
+
+  private static TaskInfo newTaskInfo(String index, TaskStatus status) {
+    TaskInfo taskInfo = new TaskInfo("worker", index, "url" + index);
+    taskInfo.setStatus(status);
+    return taskInfo;
+  }
+
+  @Test
+  public void testDeltas() {
+    TaskInfo worker0 = newTaskInfo("0", TaskStatus.RUNNING);
+    TaskInfo worker1 = newTaskInfo("1", TaskStatus.RUNNING);
+    TaskInfoSnapshot snapshot = TaskInfoSnapshot.create(100).update(Arrays.asList(worker0, worker1));
+    assertEquals(snapshot.getVersion(), 101);
+
+    TaskInfoUpdate update = snapshot.getUpdate(-1);
+    assertFalse(update.isDelta());
+    assertEquals(update.getTaskInfos().size(), 2);
+
+    // Unchanged task infos don't make a new version.
+    assertSame(snapshot.update(Arrays.asList(worker0, worker1)), snapshot);
+    update = snapshot.getUpdate(101);
+    assertTrue(update.isDelta());
+    assertTrue(update.getTaskInfos().isEmpty());
+
+    // The snapshot keeps its own copies of the task infos.
+    worker1.setStatus(TaskStatus.SUCCEEDED);
+    assertEquals(snapshot.getUpdate(-1).getTaskInfos().iterator().next().getStatus(), TaskStatus.RUNNING);
+    snapshot = snapshot.update(Arrays.asList(worker0, worker1));
+    update = snapshot.getUpdate(101);
+    assertTrue(update.isDelta());
+    assertEquals(update.getVersion(), 102);
+    assertEquals(update.getTaskInfos(), Collections.singleton(newTaskInfo("1", TaskStatus.SUCCEEDED)));
+  }
+
+  @Test
+  public void testFullUpdateAfterRemoval() {
+    TaskInfoSnapshot snapshot = TaskInfoSnapshot.create(0).update(Arrays.asList(
+        newTaskInfo("0", TaskStatus.RUNNING), newTaskInfo("1", TaskStatus.RUNNING)));
+    snapshot = snapshot.update(Collections.singletonList(newTaskInfo("0", TaskStatus.RUNNING)));
+
+    TaskInfoUpdate update = snapshot.getUpdate(1);
+    assertFalse(update.isDelta());
+    assertEquals(update.getTaskInfos(), Collections.singleton(newTaskInfo("0", TaskStatus.RUNNING)));
+    assertTrue(snapshot.getUpdate(2).isDelta());
+  }
+
+  @Test
+  public void testFullUpdateForVersionAhead() {
+    // E.g. a client of a previous AM attempt
+    TaskInfoSnapshot snapshot = TaskInfoSnapshot.create(0).update(
+        Collections.singletonList(newTaskInfo("0", TaskStatus.RUNNING)));
+    assertFalse(snapshot.getUpdate(1000).isDelta());
+  }
+}
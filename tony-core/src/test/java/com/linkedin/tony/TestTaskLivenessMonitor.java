@@ -0,0 +1,136 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony;
+
+import com.linkedin.tony.events.Metric;
+import com.linkedin.tony.tensorflow.TonySession.TonyTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.conf.Configuration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestTaskLivenessMonitor {
+  private static final int HEARTBEAT_INTERVAL_MS = 1000;
+
+  private final AtomicLong now = new AtomicLong();
+  private final List<TonyTask> expired = new ArrayList<>();
+  private TaskLivenessMonitor monitor;
+
+  @BeforeMethod
+  public void setUp() {
+    Configuration conf = new Configuration(false);
+    conf.setInt(TonyConfigurationKeys.TASK_HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS);
+    conf.setInt(TonyConfigurationKeys.TASK_MAX_MISSED_HEARTBEATS, 5);
+    now.set(0);
+    expired.clear();
+    monitor = new TaskLivenessMonitor(conf, expired::add, now::get);
+  }
+
+  private static TonyTask newTask(int handle) {
+    TonyTask task = mock(TonyTask.class);
+    when(task.getHandle()).thenReturn(handle);
+    when(task.getId()).thenReturn("worker:" + handle);
+    return task;
+  }
+
+  private void advanceTo(long timeMs) {
+    while (now.get() < timeMs) {
+      now.addAndGet(HEARTBEAT_INTERVAL_MS);
+      monitor.tick();
+    }
+  }
+
+  @Test
+  public void testExpiresTaskWithoutHeartbeats() {
+    TonyTask alive = newTask(0);
+    TonyTask dead = newTask(1);
+    monitor.register(alive);
+    monitor.register(dead);
+
+    for (long time = 1000; time <= 4000; time += 1000) {
+      advanceTo(time);
+      assertTrue(monitor.receivedPing(alive));
+    }
+    assertTrue(expired.isEmpty());
+    advanceTo(5000);
+    assertEquals(expired.size(), 1);
+    assertEquals(expired.get(0), dead);
+
+    // An expired task is no longer monitored.
+    assertFalse(monitor.receivedPing(dead));
+    advanceTo(20000);
+    assertEquals(expired.size(), 2);
+    assertEquals(expired.get(1), alive);
+  }
+
+  @Test
+  public void testUnregisteredAndReplacedTasksDontExpire() {
+    TonyTask unregistered = newTask(0);
+    TonyTask firstAttempt = newTask(1);
+    monitor.register(unregistered);
+    monitor.register(firstAttempt);
+    advanceTo(1000);
+    monitor.unregister(unregistered);
+
+    // The next attempt takes over the handle, the first attempt's heartbeats no longer count.
+    TonyTask secondAttempt = newTask(1);
+    monitor.register(secondAttempt);
+    assertFalse(monitor.receivedPing(firstAttempt));
+    // Unregistering a replaced attempt leaves the new one alone.
+    monitor.unregister(firstAttempt);
+    for (long time = 2000; time <= 10000; time += 1000) {
+      advanceTo(time);
+      monitor.receivedPing(secondAttempt);
+    }
+    assertTrue(expired.isEmpty());
+  }
+
+  @Test
+  public void testHeartbeatMetrics() {
+    // Handles beyond the initial capacity grow the arrays.
+    TonyTask task = newTask(100);
+    monitor.register(task);
+    advanceTo(1000);
+    monitor.receivedPing(task);
+    advanceTo(4000);
+    monitor.receivedPing(task);
+
+    List<Metric> metrics = monitor.getTaskMetrics(task);
+    assertEquals(metrics.get(0).getName(), Constants.MAX_HEARTBEAT_INTERVAL_MS);
+    assertEquals(metrics.get(0).getValue(), 3000.0, 0.0);
+    assertEquals(metrics.get(1).getName(), Constants.MISSED_HEARTBEATS);
+    assertEquals(metrics.get(1).getValue(), 2.0, 0.0);
+    assertEquals(monitor.getMetrics().get(Constants.AM_MISSED_HEARTBEATS), 2.0, 0.0);
+    assertTrue(expired.isEmpty());
+  }
+
+  @Test
+  public void testTimerWheelCascades() {
+    List<Long> fired = new ArrayList<>();
+    TimerWheel wheel = new TimerWheel(1, 0);
+    // Deadlines on every level of the wheel, and beyond it
+    long[] deadlines = {5, 64, 100, 5000, 300000, 20000000};
+    for (int i = 0; i < deadlines.length; i++) {
+      wheel.schedule(i, deadlines[i]);
+    }
+    for (int i = 0; i < deadlines.length; i++) {
+      wheel.advance(deadlines[i] - 1, fired::add);
+      assertEquals(fired.size(), i);
+      wheel.advance(deadlines[i], fired::add);
+      assertEquals(fired.size(), i + 1);
+      assertEquals((long) fired.get(i), i);
+    }
+    assertEquals(wheel.size(), 0);
+  }
+}
@@ -4,8 +4,7 @@
  */
 package com.linkedin.tony;
 
-import com.linkedin.tony.rpc.MetricsRpc;
-import com.linkedin.tony.rpc.impl.MetricsWritable;
+import com.linkedin.tony.rpc.ApplicationRpc;
 import org.apache.hadoop.conf.Configuration;
 import org.mockito.Mock;
 import org.testng.Assert;
@@ -24,7 +23,7 @@ public class TestTaskMonitor {
   Configuration tonyConf = mock(Configuration.class);
 
   @Mock
-  MetricsRpc metricsRpcClient;
+  ApplicationRpc rpcClient;
 
   @Mock
   private TaskMonitor taskMonitor = mock(TaskMonitor.class);
@@ -35,7 +34,7 @@ public class TestTaskMonitor {
         .thenReturn(TonyConfigurationKeys.DEFAULT_GPU_PATH_TO_EXEC);
     when(tonyConf.getInt(TonyConfigurationKeys.getResourceKey("worker", "gpus"), 0))
         .thenReturn(1);
-    taskMonitor = new TaskMonitor("worker", 0, yarnConf, tonyConf, metricsRpcClient);
+    taskMonitor = new TaskMonitor("worker", 0, yarnConf, tonyConf, rpcClient);
     taskMonitor.initMetrics();
   }
 
@@ -46,8 +45,7 @@ public class TestTaskMonitor {
     taskMonitor.setAvgMetrics(TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX, 0.3);
     taskMonitor.numRefreshes++;
     taskMonitor.setAvgMetrics(TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX, 0.5);
-    MetricsWritable metrics = taskMonitor.getMetrics();
-    Assert.assertEquals(metrics.getMetric(TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX).getValue(), 0.3);
+    Assert.assertEquals(taskMonitor.getMetrics()[TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX], 0.3);
   }
 
   @Test
@@ -57,7 +55,6 @@ public class TestTaskMonitor {
     taskMonitor.setMaxMetrics(TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX, 0.4);
     taskMonitor.numRefreshes++;
     taskMonitor.setMaxMetrics(TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX, 0.2);
-    MetricsWritable metrics = taskMonitor.getMetrics();
-    Assert.assertEquals(metrics.getMetric(TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX).getValue(), 0.4);
+    Assert.assertEquals(taskMonitor.getMetrics()[TaskMonitor.AVG_GPU_FB_MEMORY_USAGE_INDEX], 0.4);
   }
 }
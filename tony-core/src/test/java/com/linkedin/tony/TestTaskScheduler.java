@@ -6,17 +6,25 @@ package com.linkedin.tony;
 
 import com.linkedin.tony.tensorflow.JobContainerRequest;
 import com.linkedin.tony.tensorflow.TonySession;
+import com.linkedin.tony.util.Utils;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.apache.hadoop.yarn.api.records.Priority;
 import org.apache.hadoop.yarn.client.api.AMRMClient;
 import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.testng.SkipException;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
@@ -24,6 +32,9 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertFalse;
 
@@ -103,7 +114,7 @@ public class TestTaskScheduler {
     assertFalse(taskScheduler.checkDependencySatisfied(workerJob));
 
     for (int i = 0; i < dbWriterJob.getNumInstances(); i++) {
-      taskScheduler.registerDependencyCompleted("dbwriter");
+      taskScheduler.registerDependencyCompleted("dbwriter", true);
     }
     assertTrue(taskScheduler.checkDependencySatisfied(dbJob));
     assertTrue(taskScheduler.checkDependencySatisfied(dbWriterJob));
@@ -112,7 +123,7 @@ public class TestTaskScheduler {
     assertFalse(taskScheduler.checkDependencySatisfied(workerJob));
 
     for (int i = 0; i < dbJob.getNumInstances(); i++) {
-      taskScheduler.registerDependencyCompleted("db");
+      taskScheduler.registerDependencyCompleted("db", true);
     }
 
     assertTrue(taskScheduler.checkDependencySatisfied(dbJob));
@@ -123,7 +134,7 @@ public class TestTaskScheduler {
 
     // Test ps job not fully finished, should not start workerJob
     for (int i = 0; i < psJob.getNumInstances() - 1; i++) {
-      taskScheduler.registerDependencyCompleted("ps");
+      taskScheduler.registerDependencyCompleted("ps", true);
     }
 
     assertTrue(taskScheduler.checkDependencySatisfied(dbJob));
@@ -132,7 +143,7 @@ public class TestTaskScheduler {
     assertFalse(taskScheduler.checkDependencySatisfied(cleanupJob));
     assertFalse(taskScheduler.checkDependencySatisfied(workerJob));
 
-    taskScheduler.registerDependencyCompleted("ps");
+    taskScheduler.registerDependencyCompleted("ps", true);
 
     assertTrue(taskScheduler.checkDependencySatisfied(dbJob));
     assertTrue(taskScheduler.checkDependencySatisfied(dbWriterJob));
@@ -141,7 +152,7 @@ public class TestTaskScheduler {
     assertTrue(taskScheduler.checkDependencySatisfied(workerJob));
 
     for (int i = 0; i < workerJob.getNumInstances(); i++) {
-      taskScheduler.registerDependencyCompleted("worker");
+      taskScheduler.registerDependencyCompleted("worker", true);
     }
 
     assertTrue(taskScheduler.checkDependencySatisfied(dbJob));
@@ -150,4 +161,102 @@ public class TestTaskScheduler {
     assertTrue(taskScheduler.checkDependencySatisfied(cleanupJob));
     assertTrue(taskScheduler.checkDependencySatisfied(workerJob));
   }
+
+  @Test
+  public void testContainersGoToTheInstanceTheyWerePlacedFor() {
+    if (Utils.isAllocationRequestIdSupported()) {
+      throw new SkipException("Containers are matched by allocationRequestId on this version of YARN");
+    }
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 2);
+    TonySession workerSession = new TonySession.Builder().setTonyConf(tonyConf).build();
+    LocalityPlanner localityPlanner = mock(LocalityPlanner.class);
+    List<LocalityPlanner.Placement> placements = Arrays.asList(
+        new LocalityPlanner.Placement(Collections.singletonList("a1"), Collections.emptyList()),
+        new LocalityPlanner.Placement(Collections.singletonList("b1"), Collections.emptyList()));
+    when(localityPlanner.planPlacements(Constants.WORKER_JOB_NAME, 2)).thenReturn(placements);
+    AMRMClientAsync<AMRMClient.ContainerRequest> client = mock(AMRMClientAsync.class);
+    TaskScheduler scheduler = new TaskScheduler(workerSession, client, new HashMap<>(), fileSystem, tonyConf,
+        new HashMap<>(), null, localityPlanner);
+    scheduler.scheduleTasks();
+    ArgumentCaptor<AMRMClient.ContainerRequest> asks = ArgumentCaptor.forClass(AMRMClient.ContainerRequest.class);
+    verify(client, times(2)).addContainerRequest(asks.capture());
+
+    // The container placed on b1 goes to instance 1, although instance 0 is first in line.
+    Container container = newContainer(workerSession.getContainerRequestForType(Constants.WORKER_JOB_NAME)
+        .getPriority(), "b1");
+    scheduler.onContainerAllocated(container);
+    verify(client).removeContainerRequest(asks.getAllValues().get(1));
+    verify(localityPlanner).onContainerAllocated(Constants.WORKER_JOB_NAME, "b1", placements.get(1));
+    assertEquals(scheduler.getAndInitMatchingTask(container).getTaskIndex(), "1");
+
+    // A container on another host fulfills the remaining ask.
+    container = newContainer(workerSession.getContainerRequestForType(Constants.WORKER_JOB_NAME).getPriority(), "c1");
+    scheduler.onContainerAllocated(container);
+    verify(client).removeContainerRequest(asks.getAllValues().get(0));
+    assertEquals(scheduler.getAndInitMatchingTask(container).getTaskIndex(), "0");
+  }
+
+  @Test
+  public void testReleasedContainerIsAskedForAgain() {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 1);
+    TonySession workerSession = new TonySession.Builder().setTonyConf(tonyConf).build();
+    AMRMClientAsync<AMRMClient.ContainerRequest> client = mock(AMRMClientAsync.class);
+    TaskScheduler scheduler = new TaskScheduler(workerSession, client, new HashMap<>(), fileSystem, tonyConf,
+        new HashMap<>());
+    scheduler.scheduleTasks();
+    ArgumentCaptor<AMRMClient.ContainerRequest> ask = ArgumentCaptor.forClass(AMRMClient.ContainerRequest.class);
+    verify(client).addContainerRequest(ask.capture());
+
+    Container container = newContainer(workerSession.getContainerRequestForType(Constants.WORKER_JOB_NAME)
+        .getPriority(), "a1");
+    scheduler.onContainerAllocated(container);
+    verify(client).removeContainerRequest(ask.getValue());
+    scheduler.onContainerReleased(container);
+    verify(client, times(2)).addContainerRequest(ask.getValue());
+
+    // Withdrawn when the session is reset.
+    scheduler.withdrawOutstandingAsks();
+    verify(client, times(2)).removeContainerRequest(ask.getValue());
+  }
+
+  @Test
+  public void testReplacedStragglerAvoidsItsHost() {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 1);
+    TonySession workerSession = new TonySession.Builder().setTonyConf(tonyConf).build();
+    AMRMClientAsync<AMRMClient.ContainerRequest> client = mock(AMRMClientAsync.class);
+    TaskScheduler scheduler = new TaskScheduler(workerSession, client, new HashMap<>(), fileSystem, tonyConf,
+        new HashMap<>());
+    scheduler.scheduleTasks();
+    int priority = workerSession.getContainerRequestForType(Constants.WORKER_JOB_NAME).getPriority();
+    Container container = newContainer(priority, "a1");
+    assertTrue(scheduler.onContainerAllocated(container));
+    TonySession.TonyTask task = scheduler.getAndInitMatchingTask(container);
+
+    assertTrue(workerSession.replaceTask(task));
+    scheduler.onTaskReplaced(Constants.WORKER_JOB_NAME, "a1");
+    verify(client).updateBlacklist(Collections.singletonList("a1"), Collections.emptyList());
+
+    // A container the RM allocated on the straggler's host before it saw the blacklist is turned down.
+    Container sameHostContainer = newContainer(priority, "a1");
+    assertFalse(scheduler.onContainerAllocated(sameHostContainer));
+    verify(client).releaseAssignedContainer(sameHostContainer.getId());
+    assertTrue(workerSession.isTaskPending(Constants.WORKER_JOB_NAME, 0));
+
+    Container otherHostContainer = newContainer(priority, "a2");
+    assertTrue(scheduler.onContainerAllocated(otherHostContainer));
+    TonySession.TonyTask replacement = scheduler.getAndInitMatchingTask(otherHostContainer);
+    assertEquals(replacement.getTaskIndex(), "0");
+    assertEquals(replacement.getAttempt(), 1);
+  }
+
+  private static Container newContainer(int priority, String host) {
+    Container container = mock(Container.class);
+    when(container.getId()).thenReturn(mock(ContainerId.class));
+    when(container.getPriority()).thenReturn(Priority.newInstance(priority));
+    when(container.getNodeId()).thenReturn(NodeId.newInstance(host, 8041));
+    return container;
+  }
 }
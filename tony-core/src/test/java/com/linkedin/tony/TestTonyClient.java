@@ -65,6 +65,14 @@ public class TestTonyClient {
     TonyClient.validateTonyConf(conf);
   }
 
+  @Test(expectedExceptions = RuntimeException.class)
+  public void testValidateTonyConfTooFewFooInstances() {
+    Configuration conf = new Configuration();
+    conf.setInt(TonyConfigurationKeys.getMinInstancesKey("foo"), 3);
+    conf.setInt("tony.foo.instances", 2);
+    TonyClient.validateTonyConf(conf);
+  }
+
   /**
    * 10 GPUs total requested, max is 5. Conf validation should fail.
    */
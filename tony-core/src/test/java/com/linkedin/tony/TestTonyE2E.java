@@ -9,8 +9,13 @@ import com.linkedin.minitony.cluster.MiniCluster;
 import com.linkedin.minitony.cluster.MiniTonyUtils;
 import com.linkedin.tony.client.CallbackHandler;
 import com.linkedin.tony.client.TaskUpdateListener;
+import com.linkedin.tony.events.ApplicationFinished;
+import com.linkedin.tony.events.Event;
+import com.linkedin.tony.events.EventType;
+import com.linkedin.tony.events.Metric;
 import com.linkedin.tony.rpc.TaskInfo;
 import com.linkedin.tony.rpc.impl.TaskStatus;
+import com.linkedin.tony.util.ParserUtils;
 import java.util.HashSet;
 import org.apache.commons.cli.ParseException;
 import org.apache.hadoop.conf.Configuration;
@@ -190,6 +195,55 @@ public class TestTonyE2E  {
     Assert.assertEquals(exitCode, 0);
   }
 
+  /**
+   * The chief worker fails in the first session. The AM retries the job, keeping the containers of the other tasks,
+   * whose executors restart their tasks for the new session.
+   */
+  @Test
+  public void testAMRetryReusingContainersShouldPass() throws Exception {
+    client.init(new String[]{
+        "--src_dir", "tony-core/src/test/resources/scripts",
+        "--executes", "python exit_1_in_first_session.py",
+        "--hdfs_classpath", libPath,
+        "--container_env", Constants.SKIP_HADOOP_PATH + "=true",
+        "--conf", "tony.ps.instances=1",
+        "--conf", "tony.worker.instances=2",
+        "--conf", "tony.am.retry-count=1",
+        "--conf", "tony.am.retry-reuse-containers.enabled=true",
+    });
+    int exitCode = client.start();
+    Assert.assertEquals(exitCode, 0);
+    // The ps and the worker that didn't fail keep their containers in the retried session.
+    Assert.assertEquals(getApplicationMetric(Constants.AM_REUSED_CONTAINERS), 2.0);
+  }
+
+  /**
+   * Returns the value of metric {@code name} that the AM of the last application recorded when it finished, or null if
+   * it didn't record the metric. The AM writes its history after the client returns, so this waits for it.
+   */
+  private Double getApplicationMetric(String name) throws Exception {
+    FileSystem fs = FileSystem.get(cluster.getHdfsConf());
+    Path jobDir = new Path(new Path(conf.get(TonyConfigurationKeys.TONY_HISTORY_LOCATION,
+        TonyConfigurationKeys.DEFAULT_TONY_HISTORY_LOCATION), Constants.TONY_HISTORY_INTERMEDIATE),
+        handler.getAppId().toString());
+    long deadline = System.currentTimeMillis() + 30000;
+    while (System.currentTimeMillis() < deadline) {
+      for (Event event : ParserUtils.parseEvents(fs, jobDir)) {
+        if (event.getType() != EventType.APPLICATION_FINISHED) {
+          continue;
+        }
+        for (Metric metric : ((ApplicationFinished) event.getEvent()).getMetrics()) {
+          if (metric.getName().toString().equals(name)) {
+            return metric.getValue();
+          }
+        }
+        return null;
+      }
+      Thread.sleep(500);
+    }
+    return null;
+  }
+
   @Test
   public void testWorkerTrainingPyTorchShouldPass() throws ParseException, IOException {
     client.init(new String[]{
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+
+public class TestAdmissionController {
+  @Test
+  public void testRetryAfterGrowsWithQueueLength() {
+    AdmissionController controller = new AdmissionController(100, 1000);
+    assertEquals(controller.getRetryAfterMs(0), 0);
+    assertEquals(controller.getRetryAfterMs(100), 0);
+    assertEquals(controller.getRetryAfterMs(101), 1010);
+    assertEquals(controller.getRetryAfterMs(300), 3000);
+    // Capped at ten times the base wait
+    assertEquals(controller.getRetryAfterMs(5000), 10000);
+    assertEquals(controller.getNumRejected(), 3);
+  }
+
+  @Test
+  public void testAdmitThrowsWithRetryAfter() throws Exception {
+    AdmissionController controller = new AdmissionController(10, 500);
+    controller.admit(10);
+    try {
+      controller.admit(20);
+      fail("Call should have been turned away");
+    } catch (AMBusyException e) {
+      assertEquals(e.getRetryAfterMs(), 1000);
+    }
+  }
+
+  @Test
+  public void testRetryAfterSurvivesRemoteMessage() {
+    // The RPC layer recreates the exception on the client from its stringified stack trace
+    String remoteMessage = new AMBusyException(1234).getMessage() + "\n\tat com.linkedin.tony.rpc.Foo.bar(Foo.java:1)";
+    assertEquals(new AMBusyException(remoteMessage).getRetryAfterMs(), 1234);
+    assertEquals(new AMBusyException("something else").getRetryAfterMs(), 0);
+  }
+}
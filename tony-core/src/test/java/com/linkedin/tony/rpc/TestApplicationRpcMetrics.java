@@ -0,0 +1,70 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import java.io.IOException;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+
+public class TestApplicationRpcMetrics {
+  @Test
+  public void testRecordsCallsPerMethod() throws Exception {
+    TensorFlowCluster cluster = mock(TensorFlowCluster.class);
+    when(cluster.getClusterSpec(any())).thenThrow(new IOException("failed"));
+    when(cluster.registerWorkerSpec(any())).thenThrow(new AMBusyException(100));
+    ApplicationRpcMetrics rpcMetrics = new ApplicationRpcMetrics();
+    TensorFlowCluster instrumented = rpcMetrics.instrument(cluster);
+
+    ApplicationRpcMetrics.setCallReceiveTime(System.currentTimeMillis() - 50);
+    try {
+      instrumented.taskExecutorHeartbeat(null);
+      instrumented.taskExecutorHeartbeat(null);
+    } finally {
+      ApplicationRpcMetrics.setCallReceiveTime(-1);
+    }
+    try {
+      instrumented.getClusterSpec(null);
+      fail("The call's exception should be rethrown");
+    } catch (IOException e) {
+      assertEquals(e.getMessage(), "failed");
+    }
+    try {
+      instrumented.registerWorkerSpec(null);
+      fail("The call's exception should be rethrown");
+    } catch (AMBusyException e) {
+      // expected
+    }
+
+    Map<String, Double> metrics = rpcMetrics.getMetrics();
+    assertEquals(metrics.get("AM_RPC_TASK_EXECUTOR_HEARTBEAT_CALLS"), 2.0);
+    assertEquals(metrics.get("AM_RPC_TASK_EXECUTOR_HEARTBEAT_ERRORS"), 0.0);
+    assertTrue(metrics.get("AM_RPC_TASK_EXECUTOR_HEARTBEAT_QUEUE_AVG_MS") >= 50);
+    assertEquals(metrics.get("AM_RPC_GET_CLUSTER_SPEC_ERRORS"), 1.0);
+    assertEquals(metrics.get("AM_RPC_GET_CLUSTER_SPEC_QUEUE_AVG_MS"), 0.0);
+    assertEquals(metrics.get("AM_RPC_REGISTER_WORKER_SPEC_ERRORS"), 0.0);
+    assertEquals(metrics.get("AM_RPC_REGISTER_WORKER_SPEC_REJECTED"), 1.0);
+    assertEquals(metrics.get("AM_RPC_REGISTER_WORKER_SPEC_MAX_IN_FLIGHT"), 1.0);
+    assertTrue(rpcMetrics.getSummary().contains("taskExecutorHeartbeat calls=2 errors=0 rejected=0 in-flight=0"));
+  }
+
+  @Test
+  public void testProtocolMethodsArentRecorded() throws Exception {
+    TensorFlowCluster cluster = mock(TensorFlowCluster.class);
+    when(cluster.getProtocolVersion(anyString(), anyLong())).thenReturn(TensorFlowCluster.versionID);
+    ApplicationRpcMetrics rpcMetrics = new ApplicationRpcMetrics();
+    assertEquals(rpcMetrics.instrument(cluster).getProtocolVersion("protocol", 0), TensorFlowCluster.versionID);
+    assertTrue(rpcMetrics.getMetrics().isEmpty());
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import com.linkedin.tony.rpc.impl.ApplicationRpcClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.conf.Configuration;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+/**
+ * Tests heartbeats and registrations from many simulated executors against an {@link ApplicationRpcServer}.
+ */
+public class TestApplicationRpcServer {
+  private static final int NUM_EXECUTORS = 200;
+  private static final int NUM_HEARTBEATS_PER_EXECUTOR = 5;
+  // Sizes of the jobs starting in registration storms, spanning an order of magnitude
+  private static final int[] STORM_SIZES = {50, 150, 500};
+  // Time between the heartbeats of an executor during registration storms
+  private static final long HEARTBEAT_INTERVAL_MS = 50;
+  private static final int NUM_HANDLERS = 16;
+  // Time the AM spends on each heartbeat, standing in for the liveness monitor and the other per-call work
+  private static final long HEARTBEAT_SERVICE_TIME_MS = 1;
+  // Time the AM spends on each registration, which updates the cluster spec
+  private static final long REGISTRATION_SERVICE_TIME_MS = 5;
+  private static final int ADMISSION_MAX_QUEUE_LENGTH = 2 * NUM_HANDLERS;
+  private static final long ADMISSION_RETRY_AFTER_MS = 20;
+  // How far measured queue times may exceed the ideal, for RPC overhead and scheduling delays
+  private static final int QUEUE_TIME_SLACK = 4;
+
+  @Test
+  public void testHeartbeatReportsPreemption() throws Exception {
+    ApplicationRpc appRpc = mock(ApplicationRpc.class);
+    when(appRpc.taskExecutorHeartbeat(eq(1), any())).thenReturn(true);
+    when(appRpc.taskExecutorHeartbeat("worker:2")).thenReturn(true);
+    Configuration conf = new Configuration();
+    ApplicationRpcServer server = new ApplicationRpcServer("localhost", appRpc, conf, 1, 1);
+    server.start();
+    server.join();
+    try {
+      ApplicationRpcClient client = ApplicationRpcClient.getInstance("localhost", server.getRpcPort(), conf);
+      assertTrue(client.taskExecutorHeartbeat(1));
+      assertFalse(client.taskExecutorHeartbeat(0));
+      assertTrue(client.taskExecutorHeartbeat("worker:2"));
+      // The task is resolved once per heartbeat, by the heartbeat itself.
+      verify(appRpc, never()).getTaskHandle(anyString());
+    } finally {
+      server.stopServer();
+    }
+  }
+
+  /**
+   * Every executor has one heartbeat in flight at a time, so with enough handlers a heartbeat waits behind at most
+   * about {@code NUM_EXECUTORS / NUM_HANDLERS} others. With a single handler it would wait behind all of them.
+   */
+  @Test
+  public void testHeartbeatQueueTimeUnderManyExecutors() throws Exception {
+    AtomicInteger numHeartbeats = new AtomicInteger();
+    ApplicationRpc appRpc = mock(ApplicationRpc.class, withSettings().stubOnly());
+    doAnswer(invocation -> {
+      Thread.sleep(HEARTBEAT_SERVICE_TIME_MS);
+      numHeartbeats.incrementAndGet();
+      return false;
+    }).when(appRpc).taskExecutorHeartbeat(anyInt(), any());
+
+    Configuration conf = new Configuration();
+    ApplicationRpcServer server = new ApplicationRpcServer("localhost", appRpc, conf, NUM_HANDLERS, 2);
+    // Returns once the RPC server is listening
+    server.start();
+    server.join();
+    ExecutorService executors = Executors.newFixedThreadPool(NUM_EXECUTORS);
+    try {
+      ApplicationRpcClient client = ApplicationRpcClient.getInstance("localhost", server.getRpcPort(), conf);
+      CountDownLatch startLatch = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < NUM_EXECUTORS; i++) {
+        int taskHandle = i;
+        futures.add(executors.submit(() -> {
+          startLatch.await();
+          for (int j = 0; j < NUM_HEARTBEATS_PER_EXECUTOR; j++) {
+            client.taskExecutorHeartbeat(taskHandle);
+          }
+          return null;
+        }));
+      }
+      startLatch.countDown();
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+
+      assertEquals(numHeartbeats.get(), NUM_EXECUTORS * NUM_HEARTBEATS_PER_EXECUTOR);
+      double queueP99Ms = server.getRpcMetrics().getMetrics().get("AM_RPC_TASK_EXECUTOR_HEARTBEAT_QUEUE_P99_MS");
+      long maxQueueP99Ms = QUEUE_TIME_SLACK * NUM_EXECUTORS / NUM_HANDLERS * HEARTBEAT_SERVICE_TIME_MS;
+      assertTrue(queueP99Ms <= maxQueueP99Ms, "Heartbeats from " + NUM_EXECUTORS + " executors waited " + queueP99Ms
+          + " ms for one of " + NUM_HANDLERS + " handlers at p99, expected at most " + maxQueueP99Ms + " ms");
+    } finally {
+      executors.shutdownNow();
+      server.stopServer();
+    }
+  }
+
+  /**
+   * Starts jobs of growing sizes whose executors all register at once, and then heartbeat at a fixed interval while
+   * the other executors are still registering. With admission control, registrations are turned away while the AM is
+   * busy, so the time heartbeats wait for a handler stays about the same from the smallest job to one ten times as
+   * large, instead of growing with the registration storm. Turned away registrations are retried until they get
+   * through.
+   */
+  @Test
+  public void testQueueStaysFlatUnderRegistrationStorms() throws Exception {
+    double smallestQueueP99Ms = -1;
+    for (int numExecutors : STORM_SIZES) {
+      double queueP99Ms = runRegistrationStorm(numExecutors);
+      if (smallestQueueP99Ms < 0) {
+        smallestQueueP99Ms = queueP99Ms;
+        continue;
+      }
+      // Queue times are measured in milliseconds, so very short ones are compared to a registration's service time.
+      double maxQueueP99Ms = QUEUE_TIME_SLACK * Math.max(smallestQueueP99Ms, REGISTRATION_SERVICE_TIME_MS);
+      assertTrue(queueP99Ms <= maxQueueP99Ms, "Heartbeats waited " + queueP99Ms + " ms for a handler at p99 with "
+          + numExecutors + " executors, " + smallestQueueP99Ms + " ms with " + STORM_SIZES[0] + " executors");
+    }
+  }
+
+  /**
+   * Returns the p99 time heartbeats waited for a handler during a registration storm of {@code numExecutors}.
+   */
+  private double runRegistrationStorm(int numExecutors) throws Exception {
+    AtomicInteger numRegistrations = new AtomicInteger();
+    AtomicInteger numHeartbeats = new AtomicInteger();
+    ApplicationRpc appRpc = mock(ApplicationRpc.class, withSettings().stubOnly());
+    doAnswer(invocation -> {
+      Thread.sleep(REGISTRATION_SERVICE_TIME_MS);
+      numRegistrations.incrementAndGet();
+      return "spec";
+    }).when(appRpc).registerWorkerSpec(anyString(), anyString(), anyLong());
+    doAnswer(invocation -> {
+      Thread.sleep(HEARTBEAT_SERVICE_TIME_MS);
+      numHeartbeats.incrementAndGet();
+      return false;
+    }).when(appRpc).taskExecutorHeartbeat(anyInt(), any());
+
+    Configuration conf = new Configuration();
+    ApplicationRpcServer server = new ApplicationRpcServer("localhost", appRpc, conf, NUM_HANDLERS, 2);
+    AdmissionController admissionController =
+        new AdmissionController(ADMISSION_MAX_QUEUE_LENGTH, ADMISSION_RETRY_AFTER_MS);
+    server.setAdmissionController(admissionController);
+    server.start();
+    server.join();
+    ExecutorService executors = Executors.newFixedThreadPool(numExecutors);
+    try {
+      ApplicationRpcClient client = ApplicationRpcClient.getInstance("localhost", server.getRpcPort(), conf);
+      CountDownLatch startLatch = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < numExecutors; i++) {
+        int taskHandle = i;
+        futures.add(executors.submit(() -> {
+          startLatch.await();
+          client.registerWorkerSpec("worker:" + taskHandle, "localhost:" + taskHandle, 0);
+          for (int j = 0; j < NUM_HEARTBEATS_PER_EXECUTOR; j++) {
+            client.taskExecutorHeartbeat(taskHandle);
+            Thread.sleep(HEARTBEAT_INTERVAL_MS);
+          }
+          return null;
+        }));
+      }
+      startLatch.countDown();
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+
+      assertEquals(numRegistrations.get(), numExecutors);
+      assertEquals(numHeartbeats.get(), numExecutors * NUM_HEARTBEATS_PER_EXECUTOR);
+      // Storms far larger than the admission limit fill the queue before the first registrations are served.
+      if (numExecutors > 10 * ADMISSION_MAX_QUEUE_LENGTH) {
+        assertTrue(admissionController.getNumRejected() > 0);
+      }
+      return server.getRpcMetrics().getMetrics().get("AM_RPC_TASK_EXECUTOR_HEARTBEAT_QUEUE_P99_MS");
+    } finally {
+      executors.shutdownNow();
+      server.stopServer();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import com.linkedin.tony.rpc.impl.DecorrelatedJitterRetryPolicy;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.hadoop.io.retry.RetryPolicy.RetryAction;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class TestDecorrelatedJitterRetryPolicy {
+  private static final long BASE_SLEEP_MS = 100;
+  private static final long MAX_SLEEP_MS = 1000;
+
+  @Test
+  public void testSleepsStayWithinBounds() {
+    DecorrelatedJitterRetryPolicy policy = new DecorrelatedJitterRetryPolicy(1000, BASE_SLEEP_MS, MAX_SLEEP_MS, 0);
+    Set<Long> sleeps = new HashSet<>();
+    for (int retries = 0; retries < 1000; retries++) {
+      RetryAction action = policy.shouldRetry(new IOException(), retries, 0, true);
+      assertEquals(action.action, RetryAction.RetryDecision.RETRY);
+      assertTrue(action.delayMillis >= BASE_SLEEP_MS && action.delayMillis <= MAX_SLEEP_MS, "" + action.delayMillis);
+      sleeps.add(action.delayMillis);
+    }
+    // Randomized, unlike a fixed sleep
+    assertTrue(sleeps.size() > 1);
+  }
+
+  @Test
+  public void testFailsAfterMaxRetries() {
+    DecorrelatedJitterRetryPolicy policy = new DecorrelatedJitterRetryPolicy(3, BASE_SLEEP_MS, MAX_SLEEP_MS, 0);
+    for (int retries = 0; retries < 3; retries++) {
+      assertEquals(policy.shouldRetry(new IOException(), retries, 0, true).action,
+          RetryAction.RetryDecision.RETRY);
+    }
+    assertEquals(policy.shouldRetry(new IOException(), 3, 0, true).action, RetryAction.RetryDecision.FAIL);
+
+    // A new call starts over
+    assertEquals(policy.shouldRetry(new IOException(), 0, 0, true).action, RetryAction.RetryDecision.RETRY);
+  }
+
+  @Test
+  public void testBusyRetriesHonourRetryAfter() {
+    DecorrelatedJitterRetryPolicy policy = new DecorrelatedJitterRetryPolicy(1, BASE_SLEEP_MS, MAX_SLEEP_MS, 2);
+    RetryAction action = policy.shouldRetry(new AMBusyException(5000), 0, 0, true);
+    assertEquals(action.action, RetryAction.RetryDecision.RETRY);
+    assertTrue(action.delayMillis >= 5000 && action.delayMillis < 10000, "" + action.delayMillis);
+
+    // Busy retries don't count against the failure retries
+    assertEquals(policy.shouldRetry(new IOException(), 1, 0, true).action, RetryAction.RetryDecision.RETRY);
+    assertEquals(policy.shouldRetry(new AMBusyException(5000), 2, 0, true).action, RetryAction.RetryDecision.RETRY);
+    assertEquals(policy.shouldRetry(new AMBusyException(5000), 3, 0, true).action, RetryAction.RetryDecision.FAIL);
+    assertEquals(policy.shouldRetry(new IOException(), 3, 0, true).action, RetryAction.RetryDecision.FAIL);
+  }
+}
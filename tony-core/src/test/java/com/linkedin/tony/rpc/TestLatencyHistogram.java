@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class TestLatencyHistogram {
+  @Test
+  public void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(histogram.getCount(), 0);
+    assertEquals(histogram.getMean(), 0.0);
+    assertEquals(histogram.getPercentile(0.99), 0);
+  }
+
+  @Test
+  public void testPercentilesWithinFactorOfTwo() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(histogram.getCount(), 100);
+    assertEquals(histogram.getMax(), 100);
+    assertEquals(histogram.getMean(), 50.5);
+    // 50 is in the bucket of [32, 64), 99 and 100 in [64, 128), which is capped at the maximum
+    assertEquals(histogram.getPercentile(0.5), 63);
+    assertEquals(histogram.getPercentile(0.99), 100);
+    assertEquals(histogram.getPercentile(0), 1);
+  }
+
+  @Test
+  public void testNegativeValuesCountAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(0);
+    assertEquals(histogram.getPercentile(1), 0);
+    assertEquals(histogram.getCount(), 2);
+  }
+
+  @Test
+  public void testConcurrentRecords() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int thread = 0; thread < 8; thread++) {
+      futures.add(CompletableFuture.runAsync(() -> {
+        for (int i = 0; i < 10000; i++) {
+          histogram.record(i % 1000);
+        }
+      }));
+    }
+    futures.forEach(CompletableFuture::join);
+    assertEquals(histogram.getCount(), 80000);
+    assertEquals(histogram.getMax(), 999);
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc.impl;
+
+import com.linkedin.tony.events.TaskMetricsTimeSeries;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class TestMetricsRpcServer {
+  @Test
+  public void testTimeSeriesRoundTrip() throws Exception {
+    AtomicLong clock = new AtomicLong(1000);
+    MetricsRpcServer server = new MetricsRpcServer(Arrays.asList("a", "b"), 10, 100, clock::get);
+    server.updateMetrics("worker", 0, 0, 0, new double[] {1, 2, 3});
+    clock.set(1500);
+    server.updateMetrics("ps", 0, 0, 0, new double[] {7, 8});
+    clock.set(2000);
+    server.updateMetrics("worker", 0, 0, 0, new double[] {4, 5});
+
+    assertEquals(server.getMetric("worker", 0, "b"), 5.0);
+    TaskMetricsHistory.TimeSeries series = server.getTimeSeries("worker", 0, 0, 0, "b", 0, 1500);
+    assertEquals(series.getTimes(), new long[] {1000});
+    assertEquals(series.getValues(), new double[] {2});
+    assertNull(server.getTimeSeries("worker", 0, 0, 0, "c", 0, 1500));
+    assertNull(server.getTimeSeries("worker", 1, 0, 0, "a", 0, 1500));
+
+    File file = Files.createTempFile("task-metrics", ".avro").toFile();
+    file.deleteOnExit();
+    server.writeTimeSeries(FileSystem.getLocal(new Configuration()), new Path(file.getAbsolutePath()));
+    List<TaskMetricsTimeSeries> records = new ArrayList<>();
+    try (DataFileReader<TaskMetricsTimeSeries> reader =
+        new DataFileReader<>(file, new SpecificDatumReader<>(TaskMetricsTimeSeries.class))) {
+      reader.forEach(records::add);
+    }
+
+    assertEquals(records.size(), 2);
+    assertEquals(records.get(0).getTaskType().toString(), "ps");
+    TaskMetricsTimeSeries worker = records.get(1);
+    assertEquals(worker.getTaskType().toString(), "worker");
+    assertEquals((long) worker.getStartTime(), 1000);
+    assertEquals(worker.getTimeDeltas(), Arrays.asList(0L, 1000L));
+    assertEquals(worker.getMetrics().get(0).getName().toString(), "a");
+    assertEquals(worker.getMetrics().get(0).getValues(), Arrays.asList(1.0, 4.0));
+  }
+
+  @Test
+  public void testNoHistoryKeepsLatestValues() {
+    MetricsRpcServer server = new MetricsRpcServer(Arrays.asList("a"), 0, 100);
+    server.updateMetrics("worker", 0, 0, 0, new double[] {1});
+    assertEquals(server.getMetric("worker", 0, "a"), 1.0);
+    assertNull(server.getTimeSeries("worker", 0, 0, 0, "a", 0, Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testClearMetricsKeepsHistory() {
+    AtomicLong clock = new AtomicLong(1000);
+    MetricsRpcServer server = new MetricsRpcServer(Arrays.asList("a"), 10, 100, clock::get);
+    server.updateMetrics("worker", 0, 0, 0, new double[] {1});
+    server.updateMetrics("worker", 1, 0, 0, new double[] {2});
+
+    // Worker 0 is relaunched, its next attempt hasn't reported yet.
+    server.clearMetrics("worker", 0);
+    assertNull(server.getMetric("worker", 0, "a"));
+    assertEquals(server.getMetric("worker", 1, "a"), 2.0);
+    assertEquals(server.getTimeSeries("worker", 0, 0, 0, "a", 0, 2000).getValues(), new double[] {1});
+  }
+
+  @Test
+  public void testAttemptsKeepSeparateHistories() throws Exception {
+    AtomicLong clock = new AtomicLong(1000);
+    MetricsRpcServer server = new MetricsRpcServer(Arrays.asList("a"), 10, 100, clock::get);
+    server.updateMetrics("worker", 0, 0, 0, new double[] {1});
+    // Worker 0 fails and its replacement reports from another container.
+    clock.set(2000);
+    server.updateMetrics("worker", 0, 0, 1, new double[] {2});
+
+    assertEquals(server.getMetric("worker", 0, "a"), 2.0);
+    assertEquals(server.getTimeSeries("worker", 0, 0, 0, "a", 0, 3000).getValues(), new double[] {1});
+    assertEquals(server.getTimeSeries("worker", 0, 0, 1, "a", 0, 3000).getValues(), new double[] {2});
+    assertNull(server.getTimeSeries("worker", 0, 1, 0, "a", 0, 3000));
+
+    File file = Files.createTempFile("task-metrics", ".avro").toFile();
+    file.deleteOnExit();
+    server.writeTimeSeries(FileSystem.getLocal(new Configuration()), new Path(file.getAbsolutePath()));
+    List<TaskMetricsTimeSeries> records = new ArrayList<>();
+    try (DataFileReader<TaskMetricsTimeSeries> reader =
+        new DataFileReader<>(file, new SpecificDatumReader<>(TaskMetricsTimeSeries.class))) {
+      reader.forEach(records::add);
+    }
+
+    assertEquals(records.size(), 2);
+    assertEquals((int) records.get(0).getAttempt(), 0);
+    assertEquals((long) records.get(0).getStartTime(), 1000);
+    assertEquals((int) records.get(1).getAttempt(), 1);
+    assertEquals((long) records.get(1).getStartTime(), 2000);
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+ * See LICENSE in the project root for license information.
+ */
+package com.linkedin.tony.rpc.impl;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class TestTaskMetricsHistory {
+  @Test
+  public void testSamplesInSameIntervalReplaceEachOther() {
+    TaskMetricsHistory history = new TaskMetricsHistory(1, 4, 10);
+    history.add(0, new double[] {1});
+    history.add(5, new double[] {2});
+    // Older than the latest sample
+    history.add(3, new double[] {9});
+    assertEquals(history.size(), 1);
+    history.add(10, new double[] {3});
+
+    TaskMetricsHistory.TimeSeries series = history.getAll(0);
+    assertEquals(series.getTimes(), new long[] {5, 10});
+    assertEquals(series.getValues(), new double[] {2, 3});
+  }
+
+  @Test
+  public void testOldSamplesAreDownsampled() {
+    TaskMetricsHistory history = new TaskMetricsHistory(1, 4, 10);
+    for (int i = 0; i < 8; i++) {
+      history.add(i * 10, new double[] {i});
+    }
+    assertEquals(history.size(), 8);
+    assertEquals(history.getArchiveIntervalMs(), 10);
+
+    // The full archive keeps the latest of each two samples to make room
+    history.add(80, new double[] {8});
+    assertEquals(history.getArchiveIntervalMs(), 20);
+    history.add(90, new double[] {9});
+
+    TaskMetricsHistory.TimeSeries series = history.getAll(0);
+    assertEquals(series.getTimes(), new long[] {10, 30, 50, 60, 70, 80, 90});
+    assertEquals(series.getValues(), new double[] {1, 3, 5, 6, 7, 8, 9});
+  }
+
+  @Test
+  public void testGetReturnsSamplesInRange() {
+    TaskMetricsHistory history = new TaskMetricsHistory(2, 4, 10);
+    for (int i = 0; i < 10; i++) {
+      history.add(i * 10, new double[] {i, -i});
+    }
+    TaskMetricsHistory.TimeSeries series = history.get(1, 30, 70);
+    assertEquals(series.getTimes(), new long[] {30, 50, 60, 70});
+    assertEquals(series.getValues(), new double[] {-3, -5, -6, -7});
+    assertEquals(history.get(0, 100, 200).getTimes().length, 0);
+  }
+}
@@ -6,7 +6,17 @@ package com.linkedin.tony.tensorflow;
 
 import com.linkedin.tony.Constants;
 import com.linkedin.tony.TonyConfigurationKeys;
+import com.linkedin.tony.rpc.impl.TaskStatus;
+import com.linkedin.tony.util.Utils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.FinalApplicationStatus;
 import org.apache.hadoop.yarn.api.records.impl.pb.ContainerPBImpl;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -34,4 +44,255 @@ public class TestTonySession {
     Assert.assertEquals(session.getNumCompletedTasks(), 2);
     Assert.assertEquals(session.getNumCompletedTrackedTasks(), 1);
   }
+
+  @Test
+  public void testTaskHandles() {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.PS_JOB_NAME), 2);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 3);
+    TonySession session = new TonySession.Builder().setTonyConf(tonyConf).build();
+
+    List<Integer> handles = new ArrayList<>();
+    for (JobContainerRequest request : session.getContainersRequests()) {
+      for (int i = 0; i < request.getNumInstances(); i++) {
+        TonySession.TonyTask task = session.getAndInitMatchingTask(request.getJobName());
+        Assert.assertFalse(handles.contains(task.getHandle()));
+        handles.add(task.getHandle());
+        Assert.assertSame(session.getTask(task.getRpcHandle()), task);
+        Assert.assertSame(session.getTask(task.getJobName(), task.getTaskIndex()), task);
+        Assert.assertSame(session.getTask(task.getId()), task);
+      }
+    }
+    Assert.assertEquals(handles.size(), session.getTotalTasks());
+    Assert.assertNull(session.getTask(-1));
+    Assert.assertNull(session.getTask(session.getTotalTasks()));
+    Assert.assertNull(session.getTask(Constants.WORKER_JOB_NAME, "3"));
+    Assert.assertNull(session.getTask("evaluator", "0"));
+  }
+
+  @Test
+  public void testMatchTasksByAllocationRequestId() throws Exception {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.PS_JOB_NAME), 20);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 200);
+    TonySession session = new TonySession.Builder().setTonyConf(tonyConf).build();
+    JobContainerRequest workerRequest = session.getContainerRequestForType(Constants.WORKER_JOB_NAME);
+    JobContainerRequest psRequest = session.getContainerRequestForType(Constants.PS_JOB_NAME);
+
+    Assert.assertEquals(session.getJobName(psRequest.getAllocationRequestId(), -1), Constants.PS_JOB_NAME);
+    Assert.assertNotEquals(psRequest.getAllocationRequestId(), workerRequest.getAllocationRequestId());
+    if (!Utils.isAllocationRequestIdSupported()) {
+      // Without allocationRequestId, containers are matched by the job type's unique priority.
+      Assert.assertNotEquals(psRequest.getPriority(), workerRequest.getPriority());
+      TonySession.TonyTask psTask = session.getAndInitMatchingTask(-1, psRequest.getPriority());
+      Assert.assertEquals(psTask.getJobName(), Constants.PS_JOB_NAME);
+    }
+
+    int numThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<TonySession.TonyTask>> futures = new ArrayList<>();
+    for (int i = 0; i < workerRequest.getNumInstances() + 1; i++) {
+      futures.add(executor.submit(() -> session.getAndInitMatchingTask(workerRequest.getAllocationRequestId(), -1)));
+    }
+    List<String> indices = new ArrayList<>();
+    int numUnmatched = 0;
+    for (Future<TonySession.TonyTask> future : futures) {
+      TonySession.TonyTask task = future.get();
+      if (task == null) {
+        numUnmatched++;
+        continue;
+      }
+      Assert.assertEquals(task.getJobName(), Constants.WORKER_JOB_NAME);
+      Assert.assertFalse(indices.contains(task.getTaskIndex()));
+      indices.add(task.getTaskIndex());
+      Assert.assertSame(session.getTask(task.getRpcHandle()), task);
+    }
+    executor.shutdown();
+    Assert.assertEquals(indices.size(), workerRequest.getNumInstances());
+    Assert.assertEquals(numUnmatched, 1);
+  }
+
+  @Test
+  public void testTaskCountersMatchFullScanUnderConcurrentUpdates() throws Exception {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.PS_JOB_NAME), 50);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 500);
+    TonySession session = new TonySession.Builder().setTonyConf(tonyConf).build();
+
+    List<TonySession.TonyTask> tasks = new ArrayList<>();
+    for (JobContainerRequest request : session.getContainersRequests()) {
+      for (int i = 0; i < request.getNumInstances(); i++) {
+        tasks.add(session.getAndInitMatchingTask(request.getJobName()));
+      }
+    }
+    Assert.assertFalse(session.allTasksScheduled());
+
+    int numThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      int offset = t;
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int i = offset; i < tasks.size(); i += numThreads) {
+          TonySession.TonyTask task = tasks.get(i);
+          task.setTaskInfo(new ContainerPBImpl());
+          // Complete two thirds of the tasks, fail every fifth one and report some exit statuses twice.
+          if (i % 3 != 0) {
+            int exitCode = i % 5 == 0 ? 1 : 0;
+            session.onTaskCompleted(task.getJobName(), task.getTaskIndex(), exitCode);
+            if (i % 7 == 0) {
+              session.onTaskCompleted(task.getJobName(), task.getTaskIndex(), exitCode);
+            }
+          }
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    int completed = 0;
+    int completedTracked = 0;
+    int failed = 0;
+    int completedWorkers = 0;
+    for (TonySession.TonyTask task : tasks) {
+      if (task.isCompleted()) {
+        completed++;
+        if (!task.getJobName().equals(Constants.PS_JOB_NAME)) {
+          completedTracked++;
+        }
+        if (task.getJobName().equals(Constants.WORKER_JOB_NAME)) {
+          completedWorkers++;
+        }
+      }
+      if (task.isFailed()) {
+        failed++;
+      }
+    }
+    int total = session.getTonyTasks().values().stream().mapToInt(arr -> arr.length).sum();
+    long scheduled = session.getTonyTasks().values().stream().flatMap(Arrays::stream)
+        .filter(task -> task != null && task.getTaskInfo() != null).count();
+
+    Assert.assertTrue(session.allTasksScheduled());
+    Assert.assertEquals(scheduled, total);
+    Assert.assertEquals(session.getTotalTasks(), total);
+    Assert.assertEquals(session.getTotalTrackedTasks(), 500);
+    Assert.assertEquals(session.getNumCompletedTasks(), completed);
+    Assert.assertEquals(session.getNumCompletedTrackedTasks(), completedTracked);
+    Assert.assertEquals(session.getNumFailedTasks(), failed);
+    Assert.assertEquals(session.getNumCompletedTasks(Constants.WORKER_JOB_NAME), completedWorkers);
+    Assert.assertFalse(session.isJobTypeTracked(Constants.PS_JOB_NAME));
+    Assert.assertTrue(session.isJobTypeTracked(Constants.WORKER_JOB_NAME));
+  }
+
+  @Test
+  public void testResizeElasticJob() {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 2);
+    tonyConf.setInt(TonyConfigurationKeys.getMinInstancesKey(Constants.WORKER_JOB_NAME), 1);
+    tonyConf.setInt(TonyConfigurationKeys.getMaxInstancesKey(Constants.WORKER_JOB_NAME), 4);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.PS_JOB_NAME), 1);
+    TonySession session = new TonySession.Builder().setTonyConf(tonyConf).build();
+    Assert.assertTrue(session.isElastic(Constants.WORKER_JOB_NAME));
+    Assert.assertNull(session.resizeJob(Constants.PS_JOB_NAME, 2));
+
+    // Growing is clamped to max instances.
+    TonySession.Resize resize = session.resizeJob(Constants.WORKER_JOB_NAME, 10);
+    Assert.assertEquals(resize.getNumInstances(), 4);
+    Assert.assertEquals(resize.getNumAdded(), 2);
+    Assert.assertEquals(session.getTotalTasks(), 5);
+
+    // Shrinking drops pending instances first and is clamped to min instances, keeping the chief.
+    resize = session.resizeJob(Constants.WORKER_JOB_NAME, 0);
+    Assert.assertEquals(resize.getNumInstances(), 1);
+    Assert.assertEquals(resize.getNumDropped(), 3);
+    Assert.assertTrue(resize.getReleasedTasks().isEmpty());
+    Assert.assertEquals(session.getTotalTasks(), 2);
+
+    session.resizeJob(Constants.WORKER_JOB_NAME, 3);
+    List<TonySession.TonyTask> workers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      TonySession.TonyTask task = session.getAndInitMatchingTask(Constants.WORKER_JOB_NAME);
+      task.setTaskInfo(new ContainerPBImpl());
+      task.getTaskInfo().setStatus(TaskStatus.RUNNING);
+      workers.add(task);
+    }
+    Assert.assertNull(session.getAndInitMatchingTask(Constants.WORKER_JOB_NAME));
+
+    // Running tasks are released from the highest index, and completing them doesn't fail the session.
+    long version = session.getClusterSpecVersion();
+    resize = session.resizeJob(Constants.WORKER_JOB_NAME, 2);
+    Assert.assertEquals(resize.getReleasedTasks().size(), 1);
+    TonySession.TonyTask released = resize.getReleasedTasks().get(0);
+    Assert.assertEquals(released.getTaskIndex(), "2");
+    Assert.assertTrue(released.isReleased());
+    Assert.assertTrue(session.getClusterSpecVersion() > version);
+    session.onTaskCompleted(Constants.WORKER_JOB_NAME, "2", 143);
+    Assert.assertEquals(session.getNumFailedTasks(), 0);
+    Assert.assertEquals(session.getNumInstances(Constants.WORKER_JOB_NAME), 2);
+  }
+
+  @Test
+  public void testRetryFailedTask() {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 2);
+    tonyConf.setInt(TonyConfigurationKeys.getMaxTaskRetriesKey(Constants.WORKER_JOB_NAME), 1);
+    TonySession session = new TonySession.Builder().setTonyConf(tonyConf).build();
+    session.getAndInitMatchingTask(Constants.WORKER_JOB_NAME).setTaskInfo(new ContainerPBImpl());
+    TonySession.TonyTask task = session.getAndInitMatchingTask(Constants.WORKER_JOB_NAME);
+    task.setTaskInfo(new ContainerPBImpl());
+    Assert.assertTrue(session.allTasksScheduled());
+
+    Assert.assertFalse(session.retryTask(task, 0));
+    Assert.assertTrue(session.retryTask(task, 1));
+    Assert.assertTrue(task.isRetried());
+    Assert.assertFalse(session.allTasksScheduled());
+    Assert.assertEquals(session.getNumFailedTasks(), 0);
+    Assert.assertEquals(session.getNumRetriedTasks(), 1);
+
+    // The failed index is relaunched as the task's next attempt.
+    TonySession.TonyTask retry = session.getAndInitMatchingTask(Constants.WORKER_JOB_NAME);
+    Assert.assertEquals(retry.getTaskIndex(), task.getTaskIndex());
+    Assert.assertEquals(retry.getAttempt(), 1);
+    Assert.assertEquals(retry.getHandle(), task.getHandle());
+    Assert.assertSame(session.getTask(task.getId()), retry);
+    Assert.assertSame(session.getTask(retry.getRpcHandle()), retry);
+    // Heartbeats from the failed attempt's executor don't keep the new attempt alive.
+    Assert.assertNull(session.getTask(task.getRpcHandle()));
+    retry.setTaskInfo(new ContainerPBImpl());
+    Assert.assertTrue(session.allTasksScheduled());
+
+    // Out of retries, the failure is final.
+    Assert.assertFalse(session.retryTask(retry, 1));
+    session.onTaskCompleted(retry.getJobName(), retry.getTaskIndex(), 1);
+    Assert.assertEquals(session.getNumFailedTasks(), 1);
+    Assert.assertEquals(session.getFinalStatus(), FinalApplicationStatus.FAILED);
+  }
+
+  @Test
+  public void testReplaceTaskKeepsRetries() {
+    Configuration tonyConf = new Configuration(false);
+    tonyConf.setInt(TonyConfigurationKeys.getInstancesKey(Constants.WORKER_JOB_NAME), 1);
+    tonyConf.setInt(TonyConfigurationKeys.getMaxTaskRetriesKey(Constants.WORKER_JOB_NAME), 1);
+    TonySession session = new TonySession.Builder().setTonyConf(tonyConf).build();
+    TonySession.TonyTask task = session.getAndInitMatchingTask(Constants.WORKER_JOB_NAME);
+    task.setTaskInfo(new ContainerPBImpl());
+
+    Assert.assertTrue(session.replaceTask(task));
+    Assert.assertTrue(task.isRetried());
+    Assert.assertEquals(session.getNumRetriedTasks(), 0);
+    TonySession.TonyTask replacement = session.getAndInitMatchingTask(Constants.WORKER_JOB_NAME);
+    Assert.assertEquals(replacement.getAttempt(), 1);
+    replacement.setTaskInfo(new ContainerPBImpl());
+    Assert.assertTrue(session.allTasksScheduled());
+
+    // The replacement still has the index's retry.
+    Assert.assertTrue(session.retryTask(replacement, 1));
+    Assert.assertEquals(session.getNumFailedTasks(), 0);
+  }
 }
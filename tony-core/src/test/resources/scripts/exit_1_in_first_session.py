@@ -0,0 +1,14 @@
+#
+# Copyright 2019 LinkedIn Corporation. All rights reserved. Licensed under the BSD-2 Clause license.
+# See LICENSE in the project root for license information.
+#
+import os
+import time
+
+# In the first session, the chief worker fails while the other tasks keep running. Retried sessions succeed.
+if os.environ.get('SESSION_ID') == '0':
+    if os.environ.get('JOB_NAME') == 'worker' and os.environ.get('TASK_INDEX') == '0':
+        time.sleep(1)
+        exit(1)
+    time.sleep(60)
+exit(0)